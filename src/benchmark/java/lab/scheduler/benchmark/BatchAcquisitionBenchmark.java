@@ -0,0 +1,84 @@
+package lab.scheduler.benchmark;
+
+import lab.scheduler.config.ScheduleTemplate;
+import lab.scheduler.config.SchedulerConfig;
+import lab.scheduler.core.SchedulerManager;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/*
+* Runs N cron jobs firing on the same second every 2 seconds on a pool of a few workers, with the static trigger
+* acquisition of Quartz, with adaptiveBatchAcquisition and with adaptiveBatchAcquisition plus a submission queue.
+* It measures how late the last job of each burst starts: the first burst, which comes in while the scheduler
+* warms up, and the median of the bursts after it.
+*
+* Usage: gradle benchmark -PbenchmarkClass=BatchAcquisitionBenchmark -PbenchmarkArgs="<jobs> <workers> <seconds> <queueCapacity>"
+* */
+@Slf4j
+public class BatchAcquisitionBenchmark {
+    private static final Map<Long, LongAccumulator> burstLateness = new ConcurrentSkipListMap<>();
+
+    public static class BurstJob implements Job {
+        @Override
+        public void execute(JobExecutionContext context) {
+            long scheduled = context.getScheduledFireTime().getTime();
+            burstLateness.computeIfAbsent(scheduled, k -> new LongAccumulator(Math::max, 0))
+                    .accumulate(System.currentTimeMillis() - scheduled);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 12;
+        int queueCapacity = args.length > 3 ? Integer.parseInt(args[3]) : 256;
+
+        report("static batch", run(jobs, workers, seconds, false, 0));
+        report("adaptive batch", run(jobs, workers, seconds, true, 0));
+        report("adaptive batch + queue of " + queueCapacity, run(jobs, workers, seconds, true, queueCapacity));
+        Runtime.getRuntime().halt(0);
+    }
+
+    private static List<Long> run(int jobs, int workers, int seconds, boolean adaptive, int queueCapacity) throws Exception {
+        SchedulerManager manager = SchedulerManager.getInstance();
+        SchedulerConfig config = new SchedulerConfig();
+        config.setAutoAdjustThreadCount(false);
+        config.setThreadCount(workers);
+        config.setAdaptiveBatchAcquisition(adaptive);
+        config.setSubmissionQueueCapacity(queueCapacity);
+        for (int i = 0; i < jobs; i++) {
+            ScheduleTemplate template = new ScheduleTemplate();
+            template.setJobClass(BurstJob.class);
+            template.setCronExpression("0/2 * * * * ?");
+            template.setJobName("burst-" + i);
+            config.addScheduleTemplate(template);
+        }
+        burstLateness.clear();
+        String schedulerId = manager.registerScheduler(config);
+        manager.startScheduler(schedulerId);
+        Thread.sleep(seconds * 1000L + 500);
+        manager.removeScheduler(schedulerId);
+
+        List<Long> bursts = new ArrayList<>();
+        burstLateness.values().forEach(lateness -> bursts.add(lateness.get()));
+        return bursts;
+    }
+
+    private static void report(String name, List<Long> bursts) {
+        if (bursts.isEmpty()) {
+            log.info("{}: no fires", name);
+            return;
+        }
+        List<Long> steady = new ArrayList<>(bursts.subList(1, bursts.size()));
+        steady.sort(null);
+        log.info("{}\n  bursts                : {}\n  first burst lateness  : {} ms\n  steady burst lateness : p50 {} ms",
+                name, bursts.size(), bursts.get(0), steady.isEmpty() ? "-" : steady.get(steady.size() / 2));
+    }
+}
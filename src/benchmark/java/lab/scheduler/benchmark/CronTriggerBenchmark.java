@@ -0,0 +1,74 @@
+package lab.scheduler.benchmark;
+
+import lab.scheduler.core.CachedCronTrigger;
+import lab.scheduler.core.CronFireTimeTable;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.CronScheduleBuilder;
+import org.quartz.CronTrigger;
+import org.quartz.ScheduleBuilder;
+import org.quartz.TriggerBuilder;
+import org.quartz.spi.OperableTrigger;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.TimeZone;
+
+/*
+* Measures what a fire of a cron trigger costs in the job store: the clone handed out by acquireNextTriggers and
+* triggered() computing the next fire time, for Quartz's CronTriggerImpl and CachedCronTrigger. Many triggers share
+* each expression and fire round by round, like jobs of the same schedule. It also checks that both trigger types
+* compute the same fire times.
+*
+* Usage: gradle benchmark -PbenchmarkClass=CronTriggerBenchmark -PbenchmarkArgs="<triggers per expression> <rounds>"
+* */
+@Slf4j
+public class CronTriggerBenchmark {
+    private static final String[] EXPRESSIONS = {"* * * * * ?", "0/5 * 8-18 ? * MON-FRI", "0 0/15 * L * ?"};
+
+    public static void main(String[] args) throws Exception {
+        int triggers = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        for (String expression : EXPRESSIONS) {
+            Date startTime = new Date();
+            CronFireTimeTable table = CronFireTimeTable.of(expression, TimeZone.getDefault()); //Kept shared across the runs
+            run(expression, false, startTime, triggers / 10, rounds); //Warm up, and lets the table fill in the background
+            run(expression, true, startTime, triggers / 10, rounds);
+            Thread.sleep(200);
+            Result plain = run(expression, false, startTime, triggers, rounds);
+            Result cached = run(expression, true, startTime, triggers, rounds);
+            log.info("'{}', {} fires\n  CronTriggerImpl   : {} ns/fire, {} bytes/fire\n  CachedCronTrigger : {} ns/fire, {} bytes/fire\n"
+                            + "  table             : {} fire times, {} hits, {} misses\n  same fire times   : {}",
+                    expression, (long) triggers * rounds, plain.elapsedNanos / plain.fires, plain.allocatedBytes / plain.fires,
+                    cached.elapsedNanos / cached.fires, cached.allocatedBytes / cached.fires,
+                    table.getBufferedFireTimes(), table.getHitCount(), table.getMissCount(), plain.checksum == cached.checksum);
+        }
+    }
+
+    private static Result run(String expression, boolean cached, Date startTime, int triggers, int rounds) {
+        ScheduleBuilder<CronTrigger> schedule = cached ? CachedCronTrigger.cronSchedule(expression) : CronScheduleBuilder.cronSchedule(expression);
+        OperableTrigger[] stored = new OperableTrigger[triggers];
+        for (int i = 0; i < triggers; i++) {
+            stored[i] = (OperableTrigger) TriggerBuilder.newTrigger().withIdentity("trigger-" + i).forJob("job-" + i)
+                    .startAt(startTime).withSchedule(schedule).build();
+            stored[i].computeFirstFireTime(null);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (OperableTrigger trigger : stored) {
+                OperableTrigger acquired = (OperableTrigger) trigger.clone();
+                trigger.triggered(null);
+                checksum += acquired.getNextFireTime().getTime() ^ trigger.getNextFireTime().getTime();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        return new Result((long) triggers * rounds, elapsed, allocated, checksum);
+    }
+
+    private record Result(long fires, long elapsedNanos, long allocatedBytes, long checksum) {}
+}
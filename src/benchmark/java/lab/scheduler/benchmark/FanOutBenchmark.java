@@ -0,0 +1,99 @@
+package lab.scheduler.benchmark;
+
+import lab.scheduler.config.ScheduleTemplate;
+import lab.scheduler.config.SchedulerConfig;
+import lab.scheduler.core.SchedulerManager;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.Scheduler;
+import org.quartz.impl.matchers.GroupMatcher;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+* Runs N templates sharing one cron expression which fires every second, with their own triggers and with
+* fanOutTriggers. It measures the CPU time of the scheduler thread per second, the triggers in the job store and
+* how late the jobs start after their scheduled fire time.
+*
+* Usage: gradle benchmark -PbenchmarkClass=FanOutBenchmark -PbenchmarkArgs="<templates> <seconds> <threads>"
+* */
+@Slf4j
+public class FanOutBenchmark {
+    private static long[] lags;
+    private static final AtomicInteger fires = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        int templates = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        run(false, templates / 10, 2, threads); //Warm up
+        run(true, templates / 10, 2, threads);
+        report("own triggers", templates, run(false, templates, seconds, threads));
+        report("fan-out triggers", templates, run(true, templates, seconds, threads));
+        Runtime.getRuntime().halt(0);
+    }
+
+    private static Result run(boolean fanOut, int templates, int seconds, int threads) throws Exception {
+        SchedulerManager manager = SchedulerManager.getInstance();
+        SchedulerConfig config = new SchedulerConfig();
+        config.setAutoAdjustThreadCount(false);
+        config.setThreadCount(threads);
+        config.setFanOutTriggers(fanOut);
+        for (int i = 0; i < templates; i++) {
+            ScheduleTemplate template = new ScheduleTemplate();
+            template.setJobName("fan-out-" + i);
+            template.setCronExpression("* * * * * ?");
+            template.setJobFunction(context -> {
+                int fire = fires.getAndIncrement();
+                if (fire < lags.length) {
+                    lags[fire] = System.currentTimeMillis() - context.getScheduledFireTime().getTime();
+                }
+            });
+            config.addScheduleTemplate(template);
+        }
+        lags = new long[templates * (seconds + 2)];
+        fires.set(0);
+
+        String schedulerId = manager.registerScheduler("fan-out-" + fanOut + "-" + templates, config);
+        Scheduler scheduler = manager.getScheduler(schedulerId);
+        int storedTriggers = scheduler.getTriggerKeys(GroupMatcher.anyGroup()).size();
+        manager.startScheduler(schedulerId);
+        Thread.sleep(1500); //Past the first fires, which come in while the scheduler starts
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        long schedulerThreadId = schedulerThreadId(threadBean, scheduler.getSchedulerName());
+        long cpuBefore = threadBean.getThreadCpuTime(schedulerThreadId);
+        int firesBefore = fires.get();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        long cpuNanos = threadBean.getThreadCpuTime(schedulerThreadId) - cpuBefore;
+        int measuredFires = fires.get() - firesBefore;
+        manager.removeScheduler(schedulerId);
+
+        int recorded = Math.min(fires.get(), lags.length);
+        long[] sorted = Arrays.copyOf(lags, recorded);
+        Arrays.sort(sorted);
+        return new Result(storedTriggers, cpuNanos / seconds, measuredFires, sorted[recorded / 2], sorted[(int) (recorded * 0.99)], sorted[recorded - 1]);
+    }
+
+    private static long schedulerThreadId(ThreadMXBean threadBean, String schedulerName) {
+        for (ThreadInfo thread : threadBean.getThreadInfo(threadBean.getAllThreadIds())) {
+            if (thread != null && thread.getThreadName().equals(schedulerName + "_QuartzSchedulerThread")) {
+                return thread.getThreadId();
+            }
+        }
+        throw new IllegalStateException("No scheduler thread of " + schedulerName);
+    }
+
+    private static void report(String name, int templates, Result result) {
+        log.info("{}, {} templates\n  triggers stored       : {}\n  scheduler thread CPU  : {} us per second\n"
+                        + "  fires                 : {}\n  start lag             : p50 {} ms, p99 {} ms, max {} ms",
+                name, templates, result.storedTriggers, result.cpuNanosPerSecond / 1000, result.fires, result.lagP50, result.lagP99, result.lagMax);
+    }
+
+    private record Result(int storedTriggers, long cpuNanosPerSecond, int fires, long lagP50, long lagP99, long lagMax) {}
+}
@@ -0,0 +1,90 @@
+package lab.scheduler.benchmark;
+
+import lab.scheduler.core.ResizableSimpleThreadPool;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.simpl.SimpleThreadPool;
+import org.quartz.spi.ThreadPool;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/*
+* Measures the cost of handing a fired job to a worker when a whole pool fires on the same second.
+* Quartz's SimpleThreadPool uses the same monitor based handoff (wait(500)/notifyAll) that ResizableSimpleThreadPool used before,
+* so it is the baseline here.
+*
+* Usage: gradle benchmark -PbenchmarkClass=HandoffLatencyBenchmark -PbenchmarkArgs="<poolSize> <bursts>"
+* */
+@Slf4j
+public class HandoffLatencyBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int poolSize = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int bursts = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        SimpleThreadPool monitorPool = new SimpleThreadPool(poolSize, Thread.NORM_PRIORITY);
+        monitorPool.setInstanceName("bench-monitor");
+        ResizableSimpleThreadPool lockFreePool = new ResizableSimpleThreadPool(poolSize, Thread.NORM_PRIORITY);
+        lockFreePool.setInstanceName("bench-lockfree");
+        lockFreePool.setInstanceId("bench-lockfree");
+        lockFreePool.setMaxThreadCount(poolSize);
+
+        monitorPool.initialize();
+        lockFreePool.initialize();
+        try {
+            //Warm up both pools before measuring
+            run(monitorPool, poolSize, bursts / 4 + 1);
+            run(lockFreePool, poolSize, bursts / 4 + 1);
+
+            report("monitor handoff (SimpleThreadPool)", run(monitorPool, poolSize, bursts));
+            report("lock-free handoff (ResizableSimpleThreadPool)", run(lockFreePool, poolSize, bursts));
+        } finally {
+            monitorPool.shutdown(true);
+            lockFreePool.shutdown(true);
+        }
+    }
+
+    /*
+    * Fires 'poolSize' jobs at once, like a same-second cron burst, and records for each job
+    * how long it took from runInThread() to the start of the job and how long the caller was blocked.
+    * */
+    private static Result run(ThreadPool pool, int poolSize, int bursts) throws InterruptedException {
+        long[] handoffNanos = new long[poolSize * bursts];
+        long[] callerNanos = new long[poolSize * bursts];
+        int idx = 0;
+        for (int b = 0; b < bursts; b++) {
+            CountDownLatch done = new CountDownLatch(poolSize);
+            pool.blockForAvailableThreads();
+            for (int i = 0; i < poolSize; i++) {
+                final int slot = idx++;
+                final long submitted = System.nanoTime();
+                pool.runInThread(() -> {
+                    handoffNanos[slot] = System.nanoTime() - submitted;
+                    done.countDown();
+                });
+                callerNanos[slot] = System.nanoTime() - submitted;
+            }
+            done.await();
+            Thread.sleep(2); //Let every worker return to the idle set before the next burst
+        }
+        return new Result(handoffNanos, callerNanos);
+    }
+
+    private static void report(String name, Result result) {
+        log.info("{}\n  job start latency : {}\n  runInThread block : {}", name, percentiles(result.handoffNanos), percentiles(result.callerNanos));
+    }
+
+    private static String percentiles(long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return String.format("p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+                at(sorted, 0.50), at(sorted, 0.99), at(sorted, 0.999), sorted[sorted.length - 1] / 1000.0);
+    }
+
+    private static double at(long[] sorted, double percentile) {
+        int i = (int) Math.min(sorted.length - 1, Math.round(percentile * (sorted.length - 1)));
+        return sorted[i] / 1000.0;
+    }
+
+    private record Result(long[] handoffNanos, long[] callerNanos) {}
+}
@@ -0,0 +1,113 @@
+package lab.scheduler.benchmark;
+
+import lab.scheduler.config.JobInstancePolicy;
+import lab.scheduler.core.FunctionalJob;
+import lab.scheduler.core.PooledJobFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.*;
+import org.quartz.impl.StdSchedulerFactory;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredBundle;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.Properties;
+
+/*
+* Measures the bytes allocated and the time spent providing the job instance of one fire, for every JobInstancePolicy
+* of PooledJobFactory. The job has a constructor which builds a lookup table, like jobs holding parsers or buffers.
+* NEW matches Quartz's default PropertySettingJobFactory. FUNCTION is a job function registered on a template.
+*
+* Usage: gradle benchmark -PbenchmarkClass=JobAllocationBenchmark -PbenchmarkArgs="<fires>"
+* */
+@Slf4j
+public class JobAllocationBenchmark {
+
+    public static class HeavyJob implements Job {
+        private final long[] table = new long[4096];
+        private String target;
+
+        public HeavyJob() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = i * 31L;
+            }
+        }
+
+        public void setTarget(String target) {
+            this.target = target;
+        }
+
+        @Override
+        public void execute(JobExecutionContext context) {
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int fires = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        Properties props = new Properties();
+        props.setProperty("org.quartz.scheduler.instanceName", "JobAllocationBenchmark");
+        props.setProperty("org.quartz.threadPool.threadCount", "1");
+        Scheduler scheduler = new StdSchedulerFactory(props).getScheduler();
+        try {
+            for (JobInstancePolicy policy : JobInstancePolicy.values()) {
+                run(scheduler, policy, fires / 4); //Warm up
+            }
+            runFunction(scheduler, fires / 4);
+            for (JobInstancePolicy policy : JobInstancePolicy.values()) {
+                report(policy.name(), fires, run(scheduler, policy, fires));
+            }
+            report("FUNCTION", fires, runFunction(scheduler, fires));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    /*
+    * Provides and releases the instance of one job the way a fire does, on the calling thread only,
+    * so the thread's allocation counter covers exactly the job factory.
+    * */
+    private static Result run(Scheduler scheduler, JobInstancePolicy policy, int fires) throws SchedulerException {
+        PooledJobFactory factory = new PooledJobFactory();
+        JobDetail jobDetail = JobBuilder.newJob(HeavyJob.class)
+                .withIdentity("heavy-" + policy)
+                .usingJobData(PooledJobFactory.POLICY_KEY, policy.name())
+                .usingJobData("target", "bench")
+                .build();
+        return measure(scheduler, factory, jobDetail, fires);
+    }
+
+    private static Result runFunction(Scheduler scheduler, int fires) throws SchedulerException {
+        PooledJobFactory factory = new PooledJobFactory();
+        JobDetail jobDetail = JobBuilder.newJob(FunctionalJob.class)
+                .withIdentity("function")
+                .build();
+        long[] table = new HeavyJob().table; //Captured once instead of built per fire
+        factory.registerFunction(scheduler.getSchedulerName(), jobDetail.getKey(), context -> table[0]++);
+        return measure(scheduler, factory, jobDetail, fires);
+    }
+
+    private static Result measure(Scheduler scheduler, PooledJobFactory factory, JobDetail jobDetail, int fires) throws SchedulerException {
+        OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger().forJob(jobDetail).build();
+        Date now = new Date();
+        TriggerFiredBundle bundle = new TriggerFiredBundle(jobDetail, trigger, null, false, now, now, null, null);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < fires; i++) {
+            Job job = factory.newJob(bundle, scheduler);
+            factory.release(jobDetail, job);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        return new Result(allocated, elapsed, factory.getCreatedInstances());
+    }
+
+    private static void report(String name, int fires, Result result) {
+        log.info("{}\n  allocated : {} bytes/fire\n  time      : {} ns/fire\n  instances : {} created for {} fires",
+                name, result.allocatedBytes / fires, result.elapsedNanos / fires, result.createdInstances, fires);
+    }
+
+    private record Result(long allocatedBytes, long elapsedNanos, long createdInstances) {}
+}
@@ -0,0 +1,144 @@
+package lab.scheduler.benchmark;
+
+import lab.scheduler.core.TimingWheelJobStore;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.*;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.quartz.simpl.RAMJobStore;
+import org.quartz.spi.JobStore;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.SchedulerSignaler;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/*
+* Compares RAMJobStore and TimingWheelJobStore holding many one-shot simple triggers, the shape addScheduleJob
+* gives SIMPLE_TRIGGER templates. Half of the triggers are due, spread over the last minutes, the rest over the next
+* minutes. It measures the heap held per trigger, storing them, draining the due ones through acquire, fire and
+* complete the way the scheduler thread does, and removing the rest.
+*
+* Usage: JAVA_TOOL_OPTIONS=-Xmx3g gradle benchmark -PbenchmarkClass=JobStoreBenchmark -PbenchmarkArgs="<triggers> <batch size>"
+* */
+@Slf4j
+public class JobStoreBenchmark {
+    private static final long SPREAD_MS = 20 * 60 * 1000L;
+
+    public static class NoOpJob implements Job {
+        @Override
+        public void execute(JobExecutionContext context) {
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int triggers = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+        run(new RAMJobStore(), triggers / 10, batchSize); //Warm up
+        run(new TimingWheelJobStore(), triggers / 10, batchSize);
+        report("RAMJobStore", triggers, run(new RAMJobStore(), triggers, batchSize));
+        report("TimingWheelJobStore", triggers, run(new TimingWheelJobStore(), triggers, batchSize));
+    }
+
+    private static Result run(JobStore store, int triggers, int batchSize) throws Exception {
+        if (store instanceof RAMJobStore ramJobStore) {
+            ramJobStore.setMisfireThreshold(2 * SPREAD_MS); //Due triggers fire instead of misfiring
+        } else {
+            ((TimingWheelJobStore) store).setMisfireThreshold(2 * SPREAD_MS);
+        }
+        store.initialize(null, new NoOpSignaler());
+        long heapBefore = usedHeap();
+
+        long now = System.currentTimeMillis();
+        long start = System.nanoTime();
+        for (int i = 0; i < triggers; i++) {
+            JobDetail job = JobBuilder.newJob(NoOpJob.class).withIdentity("job-" + i, "group-" + (i % 16)).build();
+            //Scattered start times, so stores can't profit from triggers arriving in fire time order
+            long startTime = now - SPREAD_MS + Math.floorMod(i * 2_654_435_761L, 2 * SPREAD_MS);
+            Trigger trigger = TriggerBuilder.newTrigger().withIdentity("trigger-" + i, "group-" + (i % 16))
+                    .forJob(job).startAt(new Date(startTime)).build();
+            ((OperableTrigger) trigger).computeFirstFireTime(null);
+            store.storeJobAndTrigger(job, (OperableTrigger) trigger);
+        }
+        long storeNanos = System.nanoTime() - start;
+        long heapBytes = usedHeap() - heapBefore;
+
+        long[] acquireNanos = new long[triggers];
+        int acquires = 0;
+        int fired = 0;
+        start = System.nanoTime();
+        while (true) {
+            long acquireStart = System.nanoTime();
+            List<OperableTrigger> acquired = store.acquireNextTriggers(System.currentTimeMillis(), batchSize, 0);
+            acquireNanos[acquires++] = System.nanoTime() - acquireStart;
+            if (acquired.isEmpty()) {
+                break;
+            }
+            store.triggersFired(acquired).forEach(result -> {
+                OperableTrigger trigger = result.getTriggerFiredBundle().getTrigger();
+                store.triggeredJobComplete(trigger, result.getTriggerFiredBundle().getJobDetail(),
+                        Trigger.CompletedExecutionInstruction.DELETE_TRIGGER);
+            });
+            fired += acquired.size();
+        }
+        long drainNanos = System.nanoTime() - start;
+
+        List<String> groups = store.getTriggerGroupNames();
+        int remaining = store.getNumberOfTriggers();
+        start = System.nanoTime();
+        for (String group : groups) {
+            for (TriggerKey triggerKey : store.getTriggerKeys(GroupMatcher.triggerGroupEquals(group))) {
+                store.removeTrigger(triggerKey);
+            }
+        }
+        long removeNanos = System.nanoTime() - start;
+
+        Arrays.sort(acquireNanos, 0, acquires);
+        return new Result(heapBytes, storeNanos, fired, drainNanos, acquireNanos[acquires / 2],
+                acquireNanos[(int) (acquires * 0.99)], acquireNanos[acquires - 1], remaining, removeNanos);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void report(String name, int triggers, Result result) {
+        log.info("{} with {} triggers\n  heap      : {} bytes/trigger\n  store     : {} ns/trigger\n"
+                        + "  drain     : {} fires, {} ns/fire\n  acquire   : p50 {} us, p99 {} us, max {} us\n  remove    : {} triggers, {} ns/trigger",
+                name, triggers, result.heapBytes / triggers, result.storeNanos / triggers,
+                result.fired, result.drainNanos / Math.max(1, result.fired),
+                result.acquireP50 / 1000, result.acquireP99 / 1000, result.acquireMax / 1000,
+                result.remaining, result.removeNanos / Math.max(1, result.remaining));
+    }
+
+    private record Result(long heapBytes, long storeNanos, int fired, long drainNanos, long acquireP50, long acquireP99,
+                          long acquireMax, int remaining, long removeNanos) {}
+
+    private static class NoOpSignaler implements SchedulerSignaler {
+        @Override
+        public void notifyTriggerListenersMisfired(Trigger trigger) {
+        }
+
+        @Override
+        public void notifySchedulerListenersFinalized(Trigger trigger) {
+        }
+
+        @Override
+        public void notifySchedulerListenersJobDeleted(JobKey jobKey) {
+        }
+
+        @Override
+        public void signalSchedulingChange(long candidateNewNextFireTime) {
+        }
+
+        @Override
+        public void notifySchedulerListenersError(String string, SchedulerException jpe) {
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package lab.scheduler.benchmark;
+
+import lab.scheduler.config.ScheduleTemplate;
+import lab.scheduler.config.SchedulerConfig;
+import lab.scheduler.core.ReloadResult;
+import lab.scheduler.core.SchedulerManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+* Applies a config which changes, adds and removes one template of N to a running scheduler, once with
+* reloadScheduler and once by removing the scheduler and registering it again. Half of the templates run a job
+* function, the other half a job class, so the reload also shows that unchanged function templates are kept.
+*
+* Usage: gradle benchmark -PbenchmarkClass=ReloadBenchmark -PbenchmarkArgs="<templates> <rounds>"
+* */
+@Slf4j
+public class ReloadBenchmark {
+    private static final Runnable NOOP = () -> {};
+
+    public static class NoopJob implements org.quartz.Job {
+        @Override
+        public void execute(org.quartz.JobExecutionContext context) {
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int templates = args.length > 0 ? Integer.parseInt(args[0]) : 8000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        SchedulerManager manager = SchedulerManager.getInstance();
+        long reloadNanos = 0;
+        long reregisterNanos = 0;
+        ReloadResult lastReload = null;
+        for (int round = 0; round <= rounds; round++) { //Round 0 warms up
+            String schedulerId = manager.registerScheduler("reload", config(templates, false));
+
+            long start = System.nanoTime();
+            ReloadResult reload = manager.reloadScheduler(schedulerId, config(templates, true));
+            long reloaded = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            manager.removeScheduler(schedulerId);
+            schedulerId = manager.registerScheduler("reload", config(templates, true));
+            long reregistered = System.nanoTime() - start;
+            manager.removeScheduler(schedulerId);
+
+            if (round > 0) {
+                reloadNanos += reloaded;
+                reregisterNanos += reregistered;
+                lastReload = reload;
+            }
+        }
+        log.info("{} templates, {} rounds\n  reloadScheduler           : {} ms ({} added, {} removed, {} changed, {} unchanged)\n"
+                        + "  removeScheduler + register: {} ms",
+                templates, rounds, TimeUnit.NANOSECONDS.toMillis(reloadNanos / rounds), lastReload.added().size(),
+                lastReload.removed().size(), lastReload.changed().size(), lastReload.unchanged(),
+                TimeUnit.NANOSECONDS.toMillis(reregisterNanos / rounds));
+        Runtime.getRuntime().halt(0);
+    }
+
+    private static SchedulerConfig config(int templates, boolean edited) {
+        SchedulerConfig config = new SchedulerConfig();
+        config.setAutoAdjustThreadCount(false);
+        for (int i = 0; i < templates; i++) {
+            if (edited && i == 1) {
+                continue; //Removed
+            }
+            ScheduleTemplate template = new ScheduleTemplate();
+            template.setJobName("job-" + i);
+            template.setCronExpression("0 " + (edited && i == 0 ? 30 : i % 60) + " * * * ?"); //Changed
+            if (i % 2 == 0) {
+                template.setJobFunction(NOOP);
+            } else {
+                template.setJobClass(NoopJob.class);
+            }
+            config.addScheduleTemplate(template);
+        }
+        if (edited) {
+            ScheduleTemplate added = new ScheduleTemplate();
+            added.setJobName("job-added");
+            added.setCronExpression("0 0 * * * ?");
+            added.setJobFunction(NOOP);
+            config.addScheduleTemplate(added);
+        }
+        return config;
+    }
+}
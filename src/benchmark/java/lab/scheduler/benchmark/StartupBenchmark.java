@@ -0,0 +1,87 @@
+package lab.scheduler.benchmark;
+
+import lab.scheduler.config.RegistrationMode;
+import lab.scheduler.config.ScheduleTemplate;
+import lab.scheduler.config.SchedulerConfig;
+import lab.scheduler.core.SchedulerManager;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+* Measures how long registering and starting a scheduler with N templates takes, and the time from the start
+* until its first and its last job fired, for every registration mode. Every template fires once, right after
+* its trigger is created. The delay between registering and starting stands for the rest of an application's boot.
+*
+* Usage: gradle benchmark -PbenchmarkClass=StartupBenchmark -PbenchmarkArgs="<templates> <bootDelayMs>"
+* */
+@Slf4j
+public class StartupBenchmark {
+    private static volatile CountDownLatch fired;
+    private static final AtomicLong firstFire = new AtomicLong();
+
+    public static class FireOnceJob implements Job {
+        @Override
+        public void execute(JobExecutionContext context) {
+            firstFire.compareAndSet(0, System.nanoTime());
+            fired.countDown();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int templates = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long bootDelayMs = args.length > 1 ? Long.parseLong(args[1]) : 500;
+
+        run(RegistrationMode.EAGER, Math.min(templates, 100), 0); //Warm up class loading and the JIT
+        for (RegistrationMode mode : RegistrationMode.values()) {
+            report(mode, run(mode, templates, bootDelayMs));
+        }
+        SchedulerManager.getInstance().stopAllSchedulers();
+    }
+
+    private static Result run(RegistrationMode mode, int templates, long bootDelayMs) throws Exception {
+        SchedulerManager manager = SchedulerManager.getInstance();
+        SchedulerConfig config = new SchedulerConfig();
+        config.setAutoAdjustThreadCount(false);
+        config.setThreadCount(10);
+        config.setRegistrationMode(mode);
+        for (int i = 0; i < templates; i++) {
+            ScheduleTemplate template = new ScheduleTemplate();
+            template.setJobName("startup-" + i);
+            template.setJobClass(FireOnceJob.class);
+            template.setSimpleTrigger(null, null, 0, 0);
+            config.addScheduleTemplate(template);
+        }
+        fired = new CountDownLatch(templates);
+        firstFire.set(0);
+
+        long registerStart = System.nanoTime();
+        String schedulerId = manager.registerScheduler("startup-" + mode + "-" + templates, config);
+        long registered = System.nanoTime();
+        Thread.sleep(bootDelayMs);
+        long startCall = System.nanoTime();
+        manager.startScheduler(schedulerId);
+        long started = System.nanoTime();
+        if (!fired.await(2, TimeUnit.MINUTES)) {
+            throw new IllegalStateException(fired.getCount() + " jobs did not fire");
+        }
+        long allFired = System.nanoTime();
+        manager.removeScheduler(schedulerId);
+        return new Result(registered - registerStart, started - startCall, firstFire.get() - startCall, allFired - startCall, templates);
+    }
+
+    private static void report(RegistrationMode mode, Result result) {
+        log.info("{} ({} templates)\n  registerScheduler : {}ms\n  startScheduler    : {}ms\n  first fire        : {}ms after start\n  all fired         : {}ms after start",
+                mode, result.templates, millis(result.registerNanos), millis(result.startNanos), millis(result.firstFireNanos), millis(result.allFiredNanos));
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private record Result(long registerNanos, long startNanos, long firstFireNanos, long allFiredNanos, int templates) {}
+}
@@ -0,0 +1,6 @@
+package lab.scheduler.config;
+
+public enum ConcurrencyLimitPolicy {
+    DEFER,
+    COALESCE
+}
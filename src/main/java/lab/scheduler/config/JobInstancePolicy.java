@@ -0,0 +1,7 @@
+package lab.scheduler.config;
+
+public enum JobInstancePolicy {
+    NEW,
+    SHARED,
+    POOLED
+}
@@ -0,0 +1,6 @@
+package lab.scheduler.config;
+
+public enum JobStoreType {
+    RAM,
+    TIMING_WHEEL
+}
@@ -0,0 +1,8 @@
+package lab.scheduler.config;
+
+public enum MisfirePolicy {
+    SMART,
+    FIRE_ONCE,
+    SKIP,
+    CATCH_UP
+}
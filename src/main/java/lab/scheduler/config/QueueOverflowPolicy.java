@@ -0,0 +1,7 @@
+package lab.scheduler.config;
+
+public enum QueueOverflowPolicy {
+    CALLER_RUNS,
+    DROP_OLDEST,
+    MISFIRE
+}
@@ -1,10 +1,18 @@
 package lab.scheduler.config;
 
+import lab.scheduler.core.CachedCronTrigger;
+import lab.scheduler.core.ConcurrencyLimiter;
+import lab.scheduler.core.FunctionalJob;
+import lab.scheduler.core.MisfireCatchUp;
+import lab.scheduler.core.PooledJobFactory;
 import lab.scheduler.core.SchedulerManager;
+import lab.scheduler.core.StaggeredCronTrigger;
 import lab.scheduler.cluster.JobClusterOption;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.quartz.*;
+import org.quartz.spi.MutableTrigger;
 import org.quartz.utils.Key;
 
 import java.text.ParseException;
@@ -12,6 +20,8 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
 
 @Slf4j
 @Getter
@@ -32,26 +42,73 @@ public class ScheduleTemplate {
     private Map<String, Object> jobParams;
     private TriggerType triggerType;
     private Class<? extends Job> jobClass;
+    private Consumer<JobExecutionContext> jobFunction;
+    @Getter(AccessLevel.NONE)
+    private Object userJobFunction; //The Runnable or Consumer as given, jobFunction wraps a Runnable
     private boolean removeThreadWhenNextJobNotExist = true;
     private JobClusterOption jobClusterOption = JobClusterOption.FOLLOW_SCHEDULER_DEFAULT;
+    private JobInstancePolicy jobInstancePolicy;
+    private int maxConcurrentExecutions = 0;
+    private ConcurrencyLimitPolicy concurrencyLimitPolicy = ConcurrencyLimitPolicy.DEFER;
+    private long staggerWindowMs = -1;
+    private MisfirePolicy misfirePolicy = MisfirePolicy.SMART;
 
     public Trigger getTrigger() throws IllegalStateException {
+        return getTrigger(0);
+    }
+
+    /**
+     * Builds the trigger, staggering a cron trigger over <code>defaultStaggerWindowMs</code> unless the template
+     * sets a stagger window of its own.
+     * */
+    public Trigger getTrigger(long defaultStaggerWindowMs) throws IllegalStateException {
         if (triggerType == null) {
             throw new IllegalStateException("Trigger type not set");
         }
-        return getTrigger(triggerType);
+        return getTrigger(triggerType, defaultStaggerWindowMs);
     }
 
     public Trigger getTrigger(TriggerType triggerType) {
+        return getTrigger(triggerType, 0);
+    }
+
+    private Trigger getTrigger(TriggerType triggerType, long defaultStaggerWindowMs) {
+        Trigger trigger = buildTrigger(triggerType, defaultStaggerWindowMs);
+        if (misfirePolicy != MisfirePolicy.SMART) {
+            ((MutableTrigger) trigger).setMisfireInstruction(misfireInstructionOf(triggerType));
+        }
+        return trigger;
+    }
+
+    /**
+     * Maps the misfire policy to the instruction of the trigger type. Quartz fires a misfired trigger once for
+     * FIRE_ONCE and CATCH_UP and skips to its next fire time for SKIP, MisfirePolicyListener coalesces the late fires
+     * which are still within the misfire threshold.
+     * */
+    private int misfireInstructionOf(TriggerType triggerType) {
+        boolean skip = misfirePolicy == MisfirePolicy.SKIP;
+        return switch (triggerType) {
+            case CRON_TRIGGER -> skip ? CronTrigger.MISFIRE_INSTRUCTION_DO_NOTHING : CronTrigger.MISFIRE_INSTRUCTION_FIRE_ONCE_NOW;
+            case SIMPLE_TRIGGER -> skip ? SimpleTrigger.MISFIRE_INSTRUCTION_RESCHEDULE_NEXT_WITH_REMAINING_COUNT
+                    : SimpleTrigger.MISFIRE_INSTRUCTION_RESCHEDULE_NOW_WITH_REMAINING_REPEAT_COUNT;
+            case CALENDAR_INTERVAL_TRIGGER -> skip ? CalendarIntervalTrigger.MISFIRE_INSTRUCTION_DO_NOTHING
+                    : CalendarIntervalTrigger.MISFIRE_INSTRUCTION_FIRE_ONCE_NOW;
+            case DAILY_TIME_INTERVAL_TRIGGER -> skip ? DailyTimeIntervalTrigger.MISFIRE_INSTRUCTION_DO_NOTHING
+                    : DailyTimeIntervalTrigger.MISFIRE_INSTRUCTION_FIRE_ONCE_NOW;
+        };
+    }
+
+    private Trigger buildTrigger(TriggerType triggerType, long defaultStaggerWindowMs) {
         if (jobName == null || jobName.isEmpty()) {
             jobName = Key.createUniqueName(jobGroupName);
         }
         switch (triggerType) {
             case CRON_TRIGGER -> {
+                long offsetMs = StaggeredCronTrigger.offsetOf(jobGroupName, jobName, staggerWindowMs < 0 ? defaultStaggerWindowMs : staggerWindowMs);
                 return TriggerBuilder.newTrigger()
                         .withIdentity("trg-" + jobName, triggerGroupName)
                         .withPriority(priority)
-                        .withSchedule(CronScheduleBuilder.cronSchedule(cronExpression))
+                        .withSchedule(offsetMs > 0 ? StaggeredCronTrigger.cronSchedule(cronExpression, offsetMs) : CachedCronTrigger.cronSchedule(cronExpression))
                         .forJob(jobName, jobGroupName)
                         .build();
             }
@@ -60,14 +117,8 @@ public class ScheduleTemplate {
                         .withIdentity("trg-" + jobName, triggerGroupName)
                         .withPriority(priority)
                         .forJob(jobName, jobGroupName);
-                if (startTime == null) {
-                    startTime = new Date();
-                }
-                if (endTime == null) {
-                    endTime = toFormattedDate("9999-12-31 23:59:59");
-                }
-                trgBuilder.startAt(startTime);
-                trgBuilder.endAt(endTime);
+                trgBuilder.startAt(startTime == null ? new Date() : startTime);
+                trgBuilder.endAt(endTime == null ? toFormattedDate("9999-12-31 23:59:59") : endTime);
 
                 SimpleScheduleBuilder simSchd = SimpleScheduleBuilder.simpleSchedule();
                 if (repeatCount <= -1) {
@@ -93,14 +144,8 @@ public class ScheduleTemplate {
                         .withSchedule(CalendarIntervalScheduleBuilder.calendarIntervalSchedule()
                                 .withInterval(repeatInterval, intervalUnit))
                         .forJob(jobName, jobGroupName) ;
-                if (startTime == null) {
-                    startTime = new Date();
-                }
-                if (endTime == null) {
-                    endTime = toFormattedDate("9999-12-31 23:59:59");
-                }
-                trgBuilder.startAt(startTime);
-                trgBuilder.endAt(endTime);
+                trgBuilder.startAt(startTime == null ? new Date() : startTime);
+                trgBuilder.endAt(endTime == null ? toFormattedDate("9999-12-31 23:59:59") : endTime);
 
                 return trgBuilder.build();
             }
@@ -114,14 +159,10 @@ public class ScheduleTemplate {
                                 .endingDailyAt(endTimeOfDay))
                         .forJob(jobName, jobGroupName);
 
-                if (startTime == null) {
-                    startTime = new Date();
-                }
-                if (endTime == null) {
-                    endTime = toFormattedDate("9999-12-31 23:59:59");
-                }
-                trgBuilder.startAt(startTime);
-                trgBuilder.endAt(endTime);
+                trgBuilder.startAt(startTime == null ? new Date() : startTime);
+                trgBuilder.endAt(endTime == null ? toFormattedDate("9999-12-31 23:59:59") : endTime);
+
+                return trgBuilder.build();
             }
         }
         throw new IllegalArgumentException("Unsupported trigger type: " + triggerType);
@@ -131,29 +172,98 @@ public class ScheduleTemplate {
         if (jobName == null || jobName.isEmpty()) {
             jobName = Key.createUniqueName(jobGroupName);
         }
-        if (jobClass == null) {
-            Class<? extends Job> clazz = SchedulerManager.getInstance().getDefaultJobClass();
+        Class<? extends Job> clazz = jobFunction != null ? FunctionalJob.class : jobClass;
+        if (clazz == null) {
+            clazz = SchedulerManager.getInstance().getDefaultJobClass();
             if (clazz == null) {
                 throw new IllegalStateException("Job class not set. You must specify at ScheduleTemplate or a default job class at ScheduleManager.");
             }
-            jobClass = clazz;
         }
-        JobBuilder builder = JobBuilder.newJob(jobClass)
+        JobBuilder builder = JobBuilder.newJob(clazz)
                 .withIdentity(jobName, jobGroupName);
         JobDataMap dataMap = new JobDataMap();
         dataMap.put("clusterOption", jobClusterOption);
+        if (jobInstancePolicy != null) {
+            dataMap.put(PooledJobFactory.POLICY_KEY, jobInstancePolicy);
+        }
+        if (maxConcurrentExecutions > 0) {
+            dataMap.put(ConcurrencyLimiter.MAX_CONCURRENT_EXECUTIONS_KEY, maxConcurrentExecutions);
+            dataMap.put(ConcurrencyLimiter.LIMIT_POLICY_KEY, concurrencyLimitPolicy);
+        }
+        if (misfirePolicy != MisfirePolicy.SMART) {
+            dataMap.put(MisfireCatchUp.MISFIRE_POLICY_KEY, misfirePolicy);
+        }
         if (jobParams != null) {
             for (String key : jobParams.keySet()) {
                 dataMap.put(key, jobParams.get(key));
             }
-            builder.setJobData(dataMap);
         }
+        builder.setJobData(dataMap);
         if (description != null && !description.isEmpty()) {
             builder.withDescription(description);
         }
         return builder.build();
     }
 
+    /**
+     * Checks the template can build its job and trigger without building them.
+     * */
+    public void validate() throws IllegalStateException {
+        if (triggerType == null) {
+            throw new IllegalStateException("Trigger type not set");
+        }
+        if (jobClass == null && jobFunction == null && SchedulerManager.getInstance().getDefaultJobClass() == null) {
+            throw new IllegalStateException("Job class not set. You must specify at ScheduleTemplate or a default job class at ScheduleManager.");
+        }
+        switch (triggerType) {
+            case CRON_TRIGGER -> {
+                if (cronExpression == null) {
+                    throw new IllegalStateException("Cron expression not set");
+                }
+            }
+            case SIMPLE_TRIGGER -> {
+                if (repeatInterval > 0 && intervalUnit == null) {
+                    throw new IllegalStateException("Interval unit not set");
+                }
+            }
+            case CALENDAR_INTERVAL_TRIGGER, DAILY_TIME_INTERVAL_TRIGGER -> {
+                if (intervalUnit == null) {
+                    throw new IllegalStateException("Interval unit not set");
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if the other template builds the same job and trigger, so a reload can keep the trigger running.
+     * */
+    public boolean hasSameDefinition(ScheduleTemplate other) {
+        return other != null
+                && Objects.equals(jobName, other.jobName)
+                && priority == other.priority
+                && Objects.equals(cronExpression, other.cronExpression)
+                && Objects.equals(startTime, other.startTime)
+                && Objects.equals(endTime, other.endTime)
+                && repeatCount == other.repeatCount
+                && repeatInterval == other.repeatInterval
+                && intervalUnit == other.intervalUnit
+                && Objects.equals(startTimeOfDay, other.startTimeOfDay)
+                && Objects.equals(endTimeOfDay, other.endTimeOfDay)
+                && Objects.equals(description, other.description)
+                && triggerGroupName.equals(other.triggerGroupName)
+                && jobGroupName.equals(other.jobGroupName)
+                && Objects.equals(jobParams, other.jobParams)
+                && triggerType == other.triggerType
+                && jobClass == other.jobClass
+                && userJobFunction == other.userJobFunction
+                && jobClusterOption == other.jobClusterOption
+                && jobInstancePolicy == other.jobInstancePolicy
+                && maxConcurrentExecutions == other.maxConcurrentExecutions
+                && concurrencyLimitPolicy == other.concurrencyLimitPolicy
+                && staggerWindowMs == other.staggerWindowMs
+                && misfirePolicy == other.misfirePolicy;
+    }
+
     public void setJobName(String jobName) {
         if (jobName != null && jobName.isEmpty()) {
             jobName = null;
@@ -341,10 +451,104 @@ public class ScheduleTemplate {
         this.jobClass = jobClass;
     }
 
+    /**
+     * Sets the function the job runs on every fire instead of an instance of the job class. It is called directly by
+     * PooledJobFactory, so it may capture state. The function is kept in memory only, persistent job stores can't restore it.
+     * */
+    public void setJobFunction(Consumer<JobExecutionContext> jobFunction) {
+        this.jobFunction = jobFunction;
+        this.userJobFunction = jobFunction;
+    }
+
+    public void setJobFunction(Runnable jobFunction) {
+        this.jobFunction = jobFunction == null ? null : context -> jobFunction.run();
+        this.userJobFunction = jobFunction;
+    }
+
     public void setJobClusterOption(JobClusterOption jobClusterOption) {
         this.jobClusterOption = jobClusterOption;
     }
 
+    /**
+     * Sets how the instances of the job class are provided on each fire, see PooledJobFactory.
+     * null (default) follows the @JobInstance annotation of the job class, or NEW without it.
+     * */
+    public void setJobInstancePolicy(JobInstancePolicy jobInstancePolicy) {
+        this.jobInstancePolicy = jobInstancePolicy;
+    }
+
+    public void setJobInstancePolicy(String jobInstancePolicy) {
+        jobInstancePolicy = jobInstancePolicy.toUpperCase().trim();
+        switch (jobInstancePolicy) {
+            case "NEW" : case "PROTOTYPE" : this.jobInstancePolicy = JobInstancePolicy.NEW; break;
+            case "SHARED" : case "SINGLETON" : this.jobInstancePolicy = JobInstancePolicy.SHARED; break;
+            case "POOLED" : case "POOL" : this.jobInstancePolicy = JobInstancePolicy.POOLED; break;
+            default: throw new IllegalArgumentException("Unknown job instance policy: " + jobInstancePolicy);
+        }
+    }
+
+    /**
+     * Sets how many fires of the job may run at the same time, see ConcurrencyLimiter. 0 (default) doesn't cap them.
+     * */
+    public void setMaxConcurrentExecutions(int maxConcurrentExecutions) {
+        if (maxConcurrentExecutions < 0) {
+            throw new IllegalArgumentException("maxConcurrentExecutions cannot be negative");
+        }
+        this.maxConcurrentExecutions = maxConcurrentExecutions;
+    }
+
+    /**
+     * Sets what happens to the fires over the cap of the job or its group. DEFER (default) runs each of them later,
+     * COALESCE runs one of them later.
+     * */
+    public void setConcurrencyLimitPolicy(ConcurrencyLimitPolicy concurrencyLimitPolicy) {
+        if (concurrencyLimitPolicy == null) {
+            throw new IllegalArgumentException("concurrencyLimitPolicy cannot be null");
+        }
+        this.concurrencyLimitPolicy = concurrencyLimitPolicy;
+    }
+
+    public void setConcurrencyLimitPolicy(String concurrencyLimitPolicy) {
+        concurrencyLimitPolicy = concurrencyLimitPolicy.toUpperCase().trim();
+        switch (concurrencyLimitPolicy) {
+            case "DEFER" : case "QUEUE" : setConcurrencyLimitPolicy(ConcurrencyLimitPolicy.DEFER); break;
+            case "COALESCE" : case "MERGE" : setConcurrencyLimitPolicy(ConcurrencyLimitPolicy.COALESCE); break;
+            default: throw new IllegalArgumentException("Unknown concurrency limit policy: " + concurrencyLimitPolicy);
+        }
+    }
+
+    /**
+     * Spreads the fires of a cron trigger over a window by shifting all of them by an offset hashed from the job name,
+     * so jobs sharing the same cron second don't fire at once. The window should not exceed the period of the
+     * expression. 0 turns staggering off, a negative value (default) follows the staggerWindowMs of the scheduler.
+     * */
+    public void setStaggerWindowMs(long staggerWindowMs) {
+        this.staggerWindowMs = staggerWindowMs;
+    }
+
+    /**
+     * Sets what happens to the fires missed while the scheduler was down, paused or saturated. SMART (default) keeps
+     * the Quartz default of the trigger type, FIRE_ONCE runs the job once for all of them, SKIP waits for the next
+     * fire time and CATCH_UP runs the job once, telling it how many fires it covers, see MisfireCatchUp.
+     * */
+    public void setMisfirePolicy(MisfirePolicy misfirePolicy) {
+        if (misfirePolicy == null) {
+            throw new IllegalArgumentException("misfirePolicy cannot be null");
+        }
+        this.misfirePolicy = misfirePolicy;
+    }
+
+    public void setMisfirePolicy(String misfirePolicy) {
+        misfirePolicy = misfirePolicy.toUpperCase().trim();
+        switch (misfirePolicy) {
+            case "SMART" : case "DEFAULT" : setMisfirePolicy(MisfirePolicy.SMART); break;
+            case "FIRE_ONCE" : case "FIRE_ONCE_NOW" : case "ONCE" : setMisfirePolicy(MisfirePolicy.FIRE_ONCE); break;
+            case "SKIP" : case "DO_NOTHING" : setMisfirePolicy(MisfirePolicy.SKIP); break;
+            case "CATCH_UP" : case "COALESCE" : setMisfirePolicy(MisfirePolicy.CATCH_UP); break;
+            default: throw new IllegalArgumentException("Unknown misfire policy: " + misfirePolicy);
+        }
+    }
+
     public void setJobClusterOption(boolean jobHAOption) {
         if (jobHAOption) {
             this.jobClusterOption = JobClusterOption.FOLLOW_SCHEDULER_DEFAULT;
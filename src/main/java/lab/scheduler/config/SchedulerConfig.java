@@ -1,8 +1,16 @@
 package lab.scheduler.config;
 
+import lab.scheduler.core.ForkJoinThreadPool;
 import lab.scheduler.core.ResizableSimpleThreadPool;
+import lab.scheduler.core.ResizableThreadPool;
+import lab.scheduler.core.TimingWheelJobStore;
+import lab.scheduler.core.VirtualThreadPool;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.quartz.spi.ThreadPool;
 
 import java.io.FileReader;
 import java.io.IOException;
@@ -16,9 +24,37 @@ public class SchedulerConfig {
     private boolean autoAdjustThreadCount = true;
     private int threadCount = 1;
     private int maxThreadCount = 100;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean maxThreadCountSet = false;
+    private boolean autoScaleThreadCount = false;
+    private int minThreadCount = 1;
+    private long workerKeepAliveMs = 0;
+    private int coreThreadCount = -1;
+    private int submissionQueueCapacity = 0;
+    private long handoffTimeoutMs = 1000;
+    private QueueOverflowPolicy queueOverflowPolicy = QueueOverflowPolicy.CALLER_RUNS;
+    private boolean adaptiveBatchAcquisition = false;
+    private int maxBatchSize = 0;
+    private long batchTimeWindowMs = 0;
     private String threadPoolName;
+    private ThreadPoolType threadPoolType = ThreadPoolType.RESIZABLE_SIMPLE;
     private String threadPoolClass;
+    private JobStoreType jobStoreType = JobStoreType.RAM;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean jobStoreClassSet = false; //The job store class property was set for the jobStoreType
+    private boolean fanOutTriggers = false;
     private boolean shutdownAfterAllJobsDone = true;
+    private long shutdownTimeoutMs = 0;
+    private long startTimeoutMs = 0;
+    private int guaranteedThreadCount = 0;
+    private boolean sharedEngine = false;
+    private RegistrationMode registrationMode = RegistrationMode.EAGER;
+    private Map<String, Integer> groupConcurrencyLimits = new HashMap<>();
+    private int maxAsyncInFlight = 0;
+    private long staggerWindowMs = 0;
+    private int catchUpParallelism = 0;
     private Properties properties = new Properties();
     private Map<String, ScheduleTemplate> scheduleTemplates = new HashMap<>();
 
@@ -26,20 +62,307 @@ public class SchedulerConfig {
         if (autoAdjustThreadCount) {
             setThreadCount(scheduleTemplates.size());
         }
+        String poolClass = getThreadPoolClassName();
+        properties.setProperty("org.quartz.threadPool.class", poolClass);
+        if (!isResizableThreadPool(poolClass)) {
+            properties.remove("org.quartz.threadPool.maxThreadCount"); //Quartz fails on a property the pool class has no setter for
+        } else if (maxThreadCountSet) {
+            properties.setProperty("org.quartz.threadPool.maxThreadCount", String.valueOf(maxThreadCount));
+        } //Else each pool keeps its own default, e.g. 10000 concurrent jobs of VirtualThreadPool
+        if (autoScaleThreadCount && poolClass.equals(ResizableSimpleThreadPool.class.getName())) {
+            properties.setProperty("org.quartz.threadPool.autoScale", "true");
+            properties.setProperty("org.quartz.threadPool.minThreadCount", String.valueOf(minThreadCount));
+        } else {
+            properties.remove("org.quartz.threadPool.autoScale");
+            properties.remove("org.quartz.threadPool.minThreadCount");
+        }
+        if (workerKeepAliveMs > 0 && poolClass.equals(ResizableSimpleThreadPool.class.getName())) {
+            properties.setProperty("org.quartz.threadPool.keepAliveMs", String.valueOf(workerKeepAliveMs));
+            properties.setProperty("org.quartz.threadPool.coreThreadCount", String.valueOf(coreThreadCount));
+        } else {
+            properties.remove("org.quartz.threadPool.keepAliveMs");
+            properties.remove("org.quartz.threadPool.coreThreadCount");
+        }
+        if (submissionQueueCapacity > 0 && poolClass.equals(ResizableSimpleThreadPool.class.getName())) {
+            properties.setProperty("org.quartz.threadPool.queueCapacity", String.valueOf(submissionQueueCapacity));
+            properties.setProperty("org.quartz.threadPool.handoffTimeoutMs", String.valueOf(handoffTimeoutMs));
+            properties.setProperty("org.quartz.threadPool.queueOverflowPolicy", queueOverflowPolicy.name());
+        } else {
+            properties.remove("org.quartz.threadPool.queueCapacity");
+            properties.remove("org.quartz.threadPool.handoffTimeoutMs");
+            properties.remove("org.quartz.threadPool.queueOverflowPolicy");
+        }
+        String timingWheelJobStore = TimingWheelJobStore.class.getName();
+        if (jobStoreType == JobStoreType.TIMING_WHEEL) {
+            String jobStoreClass = properties.getProperty("org.quartz.jobStore.class");
+            if (jobStoreClass != null && !jobStoreClass.equals(timingWheelJobStore)) {
+                throw new IllegalStateException("jobStoreType TIMING_WHEEL conflicts with the job store class " + jobStoreClass + " set in the properties");
+            }
+            if (jobStoreClass == null) {
+                properties.setProperty("org.quartz.jobStore.class", timingWheelJobStore);
+                jobStoreClassSet = true;
+            }
+        } else if (jobStoreClassSet) {
+            properties.remove("org.quartz.jobStore.class", timingWheelJobStore);
+            jobStoreClassSet = false;
+        }
+        if (adaptiveBatchAcquisition) {
+            properties.setProperty("org.quartz.scheduler.batchTriggerAcquisitionMaxCount", String.valueOf(getResolvedMaxBatchSize()));
+            properties.setProperty("org.quartz.scheduler.batchTriggerAcquisitionFireAheadTimeWindow", String.valueOf(batchTimeWindowMs));
+            String jobStoreClass = properties.getProperty("org.quartz.jobStore.class", "");
+            if (jobStoreClass.contains("jdbcjobstore")) {
+                //Batches bigger than 1 are only safe when JDBC job stores acquire triggers within the TRIGGER_ACCESS lock
+                properties.setProperty("org.quartz.jobStore.acquireTriggersWithinLock", "true");
+            }
+        }
         return properties;
     }
 
+    /**
+     * Returns the thread pool class the scheduler is built with. A class set by setThreadPoolClass(String) wins over the threadPoolType.
+     * */
+    public String getThreadPoolClassName() {
+        if (threadPoolClass != null) {
+            return threadPoolClass;
+        }
+        switch (threadPoolType) {
+            case VIRTUAL : return VirtualThreadPool.class.getName();
+            case FORK_JOIN : return ForkJoinThreadPool.class.getName();
+            default: return ResizableSimpleThreadPool.class.getName();
+        }
+    }
+
+    private boolean isResizableThreadPool(String poolClass) {
+        try {
+            return ResizableThreadPool.class.isAssignableFrom(Class.forName(poolClass));
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
     public void setThreadCount(int threadCount) {
         this.threadCount = threadCount;
         properties.setProperty("org.quartz.threadPool.threadCount", String.valueOf(threadCount));
     }
 
     public void setMaxThreadCount(int maxThreadCount) {
+        if (maxThreadCount < 1) {
+            throw new IllegalArgumentException("maxThreadCount must be at least 1");
+        }
         this.maxThreadCount = maxThreadCount;
+        this.maxThreadCountSet = true;
         properties.setProperty("org.quartz.threadPool.maxThreadCount", String.valueOf(maxThreadCount));
-        properties.setProperty("org.quartz.threadPool.class", ResizableSimpleThreadPool.class.getName());
-        /*if (!properties.containsKey("org.quartz.threadPool.class")) {
-        }*/
+    }
+
+    /**
+     * Lets ResizableSimpleThreadPool grow and shrink itself between minThreadCount and maxThreadCount
+     * from its measured utilization. The thresholds can be tuned with 'org.quartz.threadPool.*' properties
+     * (scaleUpBusyRatio, scaleDownBusyRatio, scaleUpHandoffWaitMs, scaleUpBlockedRatio, scaleUpIntervals, scaleDownIntervals, autoScaleIntervalMs).
+     * */
+    public void setAutoScaleThreadCount(boolean autoScaleThreadCount) {
+        this.autoScaleThreadCount = autoScaleThreadCount;
+    }
+
+    public void setMinThreadCount(int minThreadCount) {
+        if (minThreadCount < 1) {
+            throw new IllegalArgumentException("minThreadCount must be at least 1");
+        }
+        this.minThreadCount = minThreadCount;
+    }
+
+    /**
+     * Lets idle workers of ResizableSimpleThreadPool retire after the given time while the pool is larger than coreThreadCount.
+     * 0 (default) keeps idle workers forever.
+     * */
+    public void setWorkerKeepAliveMs(long workerKeepAliveMs) {
+        if (workerKeepAliveMs < 0) {
+            throw new IllegalArgumentException("workerKeepAliveMs cannot be negative");
+        }
+        this.workerKeepAliveMs = workerKeepAliveMs;
+    }
+
+    /**
+     * Sets the number of workers which never retire. A negative value (default) means the initial thread count.
+     * */
+    public void setCoreThreadCount(int coreThreadCount) {
+        this.coreThreadCount = coreThreadCount;
+    }
+
+    /**
+     * Puts a bounded queue in front of the workers of ResizableSimpleThreadPool, so the scheduler thread does not block
+     * while all workers are busy. 0 (default) disables the queue.
+     * */
+    public void setSubmissionQueueCapacity(int submissionQueueCapacity) {
+        if (submissionQueueCapacity < 0) {
+            throw new IllegalArgumentException("submissionQueueCapacity cannot be negative");
+        }
+        this.submissionQueueCapacity = submissionQueueCapacity;
+    }
+
+    /**
+     * Sets how long the scheduler thread may wait for a free queue slot before the queueOverflowPolicy applies.
+     * */
+    public void setHandoffTimeoutMs(long handoffTimeoutMs) {
+        if (handoffTimeoutMs < 1) {
+            throw new IllegalArgumentException("handoffTimeoutMs must be at least 1");
+        }
+        this.handoffTimeoutMs = handoffTimeoutMs;
+    }
+
+    public void setQueueOverflowPolicy(QueueOverflowPolicy queueOverflowPolicy) {
+        if (queueOverflowPolicy == null) {
+            throw new IllegalArgumentException("queueOverflowPolicy cannot be null");
+        }
+        this.queueOverflowPolicy = queueOverflowPolicy;
+    }
+
+    public void setQueueOverflowPolicy(String queueOverflowPolicy) {
+        queueOverflowPolicy = queueOverflowPolicy.toUpperCase().trim();
+        switch (queueOverflowPolicy) {
+            case "CALLER_RUNS" : case "CALLER" : setQueueOverflowPolicy(QueueOverflowPolicy.CALLER_RUNS); break;
+            case "DROP_OLDEST" : case "DROP" : setQueueOverflowPolicy(QueueOverflowPolicy.DROP_OLDEST); break;
+            case "MISFIRE" : case "SKIP" : setQueueOverflowPolicy(QueueOverflowPolicy.MISFIRE); break;
+            default: throw new IllegalArgumentException("Unknown queue overflow policy: " + queueOverflowPolicy);
+        }
+    }
+
+    /**
+     * Sets when registerScheduler creates the Quartz scheduler, its workers and the jobs and triggers of the templates.
+     * EAGER (default) creates them while registering. LAZY defers them to the first startScheduler or getScheduler call.
+     * BACKGROUND starts creating them on a background thread right after registering, which startScheduler waits for.
+     * The config and its templates are validated while registering in all modes. Schedulers on the shared engine are always created eagerly.
+     * */
+    public void setRegistrationMode(RegistrationMode registrationMode) {
+        if (registrationMode == null) {
+            throw new IllegalArgumentException("registrationMode cannot be null");
+        }
+        this.registrationMode = registrationMode;
+    }
+
+    /**
+     * Caps how many fires of the jobs in the job group may run at the same time. 0 removes the cap.
+     * Fires over the cap follow the concurrencyLimitPolicy of their template.
+     * */
+    public void setGroupConcurrencyLimit(String jobGroupName, int maxConcurrentExecutions) {
+        if (maxConcurrentExecutions < 0) {
+            throw new IllegalArgumentException("maxConcurrentExecutions cannot be negative");
+        }
+        if (maxConcurrentExecutions == 0) {
+            groupConcurrencyLimits.remove(jobGroupName);
+        } else {
+            groupConcurrencyLimits.put(jobGroupName, maxConcurrentExecutions);
+        }
+    }
+
+    public void setRegistrationMode(String registrationMode) {
+        registrationMode = registrationMode.toUpperCase().trim();
+        switch (registrationMode) {
+            case "EAGER" : setRegistrationMode(RegistrationMode.EAGER); break;
+            case "LAZY" : case "DEFERRED" : setRegistrationMode(RegistrationMode.LAZY); break;
+            case "BACKGROUND" : case "ASYNC" : setRegistrationMode(RegistrationMode.BACKGROUND); break;
+            default: throw new IllegalArgumentException("Unknown registration mode: " + registrationMode);
+        }
+    }
+
+    /**
+     * Sets the upper bound of the trigger acquisition batch. 0 (default) means maxThreadCount.
+     * */
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 0) {
+            throw new IllegalArgumentException("maxBatchSize cannot be negative");
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getResolvedMaxBatchSize() {
+        return maxBatchSize > 0 ? maxBatchSize : Math.max(maxThreadCount, threadCount);
+    }
+
+    /**
+     * Sets how early a trigger may fire when it is acquired in the batch of an earlier trigger.
+     * With adaptiveBatchAcquisition the window shrinks to 0 while the thread pool is saturated.
+     * */
+    public void setBatchTimeWindowMs(long batchTimeWindowMs) {
+        if (batchTimeWindowMs < 0) {
+            throw new IllegalArgumentException("batchTimeWindowMs cannot be negative");
+        }
+        this.batchTimeWindowMs = batchTimeWindowMs;
+    }
+
+    /**
+     * Bounds how long stopping the scheduler waits for running jobs when shutdownAfterAllJobsDone is true.
+     * Jobs still running at the deadline are interrupted. 0 (default) waits for all jobs to complete.
+     * */
+    public void setShutdownTimeoutMs(long shutdownTimeoutMs) {
+        if (shutdownTimeoutMs < 0) {
+            throw new IllegalArgumentException("shutdownTimeoutMs cannot be negative");
+        }
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+    }
+
+    /**
+     * Bounds how long startAllSchedulers waits for this scheduler to start, e.g. while its job store recovers.
+     * A start which takes longer is reported as timed out and completes in the background. 0 (default) waits until it started.
+     * */
+    public void setStartTimeoutMs(long startTimeoutMs) {
+        if (startTimeoutMs < 0) {
+            throw new IllegalArgumentException("startTimeoutMs cannot be negative");
+        }
+        this.startTimeoutMs = startTimeoutMs;
+    }
+
+    /**
+     * Spreads the fires of the cron templates over a window, each shifted by an offset hashed from its job name,
+     * unless the template sets a stagger window of its own. 0 (default) doesn't stagger them.
+     * */
+    public void setStaggerWindowMs(long staggerWindowMs) {
+        if (staggerWindowMs < 0) {
+            throw new IllegalArgumentException("staggerWindowMs cannot be negative");
+        }
+        this.staggerWindowMs = staggerWindowMs;
+    }
+
+    /**
+     * Caps how many fires catching up missed fires of CATCH_UP templates run at the same time, the others wait
+     * for one of them to complete. 0 (default) doesn't cap them.
+     * */
+    public void setCatchUpParallelism(int catchUpParallelism) {
+        if (catchUpParallelism < 0) {
+            throw new IllegalArgumentException("catchUpParallelism cannot be negative");
+        }
+        this.catchUpParallelism = catchUpParallelism;
+    }
+
+    /**
+     * Caps how many AsyncJob fires can wait on their stage at the same time after their worker was released.
+     * A fire over the cap keeps its worker until one completes. 0 (default) doesn't cap them.
+     * On the shared engine the cap of the first config applies to all hosted schedulers.
+     * */
+    public void setMaxAsyncInFlight(int maxAsyncInFlight) {
+        if (maxAsyncInFlight < 0) {
+            throw new IllegalArgumentException("maxAsyncInFlight cannot be negative");
+        }
+        this.maxAsyncInFlight = maxAsyncInFlight;
+    }
+
+    /**
+     * Sets the workers this scheduler can always grow to when ResizableSimpleThreadPoolManager enforces a worker budget.
+     * 0 (default) guarantees 1 worker.
+     * */
+    public void setGuaranteedThreadCount(int guaranteedThreadCount) {
+        if (guaranteedThreadCount < 0) {
+            throw new IllegalArgumentException("guaranteedThreadCount cannot be negative");
+        }
+        this.guaranteedThreadCount = guaranteedThreadCount;
+    }
+
+    /**
+     * Registers the scheduler as a namespace on one Quartz engine shared by all schedulers with this flag,
+     * instead of building a Quartz scheduler of its own. Its jobs and triggers are put into groups prefixed with
+     * the scheduler ID and a '/'. The engine is built from the properties of the first such config.
+     * */
+    public void setSharedEngine(boolean sharedEngine) {
+        this.sharedEngine = sharedEngine;
     }
 
     public void setThreadPoolName(String threadPoolName) {
@@ -47,14 +370,78 @@ public class SchedulerConfig {
         properties.setProperty("org.quartz.scheduler.threadName", threadPoolName);
     }
 
-    @Deprecated
+    public void setThreadPoolType(ThreadPoolType threadPoolType) {
+        if (threadPoolType == null) {
+            throw new IllegalArgumentException("threadPoolType cannot be null");
+        }
+        this.threadPoolType = threadPoolType;
+        this.threadPoolClass = null;
+    }
+
+    public void setThreadPoolType(String threadPoolType) {
+        threadPoolType = threadPoolType.toUpperCase().trim();
+        switch (threadPoolType) {
+            case "RESIZABLE_SIMPLE" : case "RESIZABLE" : case "SIMPLE" : setThreadPoolType(ThreadPoolType.RESIZABLE_SIMPLE); break;
+            case "VIRTUAL" : case "VIRTUAL_THREAD" : setThreadPoolType(ThreadPoolType.VIRTUAL); break;
+            case "FORK_JOIN" : case "FORKJOIN" : case "WORK_STEALING" : setThreadPoolType(ThreadPoolType.FORK_JOIN); break;
+            default: throw new IllegalArgumentException("Unknown thread pool type: " + threadPoolType);
+        }
+    }
+
     /**
-     * Deprecated this method for compatibility with ResizableSimpleThreadPool
+     * Selects the job store. RAM keeps the org.quartz.jobStore.class of the properties, which is RAMJobStore unless
+     * they name another one. TIMING_WHEEL uses TimingWheelJobStore, an in-memory store built for millions of triggers.
+     * */
+    public void setJobStoreType(JobStoreType jobStoreType) {
+        if (jobStoreType == null) {
+            throw new IllegalArgumentException("jobStoreType cannot be null");
+        }
+        this.jobStoreType = jobStoreType;
+    }
+
+    public void setJobStoreType(String jobStoreType) {
+        jobStoreType = jobStoreType.toUpperCase().trim();
+        switch (jobStoreType) {
+            case "RAM" : case "RAM_JOB_STORE" : case "DEFAULT" : setJobStoreType(JobStoreType.RAM); break;
+            case "TIMING_WHEEL" : case "WHEEL" : case "TIMING_WHEEL_JOB_STORE" : setJobStoreType(JobStoreType.TIMING_WHEEL); break;
+            default: throw new IllegalArgumentException("Unknown job store type: " + jobStoreType);
+        }
+    }
+
+    /**
+     * Groups the cron templates with the same schedule into one fan-out trigger, whose fires dispatch their jobs as a
+     * batch onto the thread pool, so the scheduler thread and the job store handle one trigger per schedule. The jobs
+     * keep their keys and are seen by listeners as before, see FanOutGroups. It pays off when many templates share an
+     * expression, and is ignored by job stores which persist jobs. Staggered templates only share a trigger with the
+     * ones of the same offset. false (default) gives every template its own trigger. Like the job store settings,
+     * it takes effect when the scheduler is registered.
+     * */
+    public void setFanOutTriggers(boolean fanOutTriggers) {
+        this.fanOutTriggers = fanOutTriggers;
+    }
+
+    /**
+     * Sets a custom org.quartz.spi.ThreadPool implementation. Only pools implementing ResizableThreadPool
+     * are resized when jobs are added to or removed from a running scheduler.
      * */
     public void setThreadPoolClass(String threadPoolClass) {
+        Class<?> clazz = null;
+        try {
+            clazz = Class.forName(threadPoolClass);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Could not find class: " + threadPoolClass + ", ClassNotFoundException");
+        }
+        if (!ThreadPool.class.isAssignableFrom(clazz)) {
+            throw new IllegalArgumentException("'" + threadPoolClass + "' is not type of ThreadPool class");
+        }
         this.threadPoolClass = threadPoolClass;
-        //properties.setProperty("org.quartz.threadPool.class", threadPoolClass);
-        properties.setProperty("org.quartz.threadPool.class", ResizableSimpleThreadPool.class.getName());
+    }
+
+    public void setThreadPoolClass(Class<? extends ThreadPool> threadPoolClass) {
+        if (threadPoolClass == null) {
+            throw new IllegalArgumentException("threadPoolClass cannot be null");
+        }
+        this.threadPoolClass = threadPoolClass.getName();
     }
 
     public void setProperties(Properties properties) {
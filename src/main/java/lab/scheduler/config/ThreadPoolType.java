@@ -0,0 +1,7 @@
+package lab.scheduler.config;
+
+public enum ThreadPoolType {
+    RESIZABLE_SIMPLE,
+    VIRTUAL,
+    FORK_JOIN
+}
@@ -0,0 +1,58 @@
+package lab.scheduler.core;
+
+import org.quartz.core.QuartzSchedulerResources;
+
+/**
+ * <p>
+ * Adapts the trigger acquisition of a running Quartz scheduler to the capacity of its thread pool.
+ * Each loop of the scheduler thread acquires at most min(blockForAvailableThreads(), maxBatchSize) triggers
+ * firing within batchTimeWindow of the first one, and reads both values from QuartzSchedulerResources right after
+ * blockForAvailableThreads() returns. The pool calls {@link #adapt(int, int)} before returning, on the scheduler
+ * thread itself, so a burst of triggers sharing the same second is acquired and dispatched in one batch.
+ * </p>
+ * <p>
+ * The batch follows the pool's current capacity, capped by <code>maxBatchSize</code>. The time window lets
+ * triggers fire up to <code>maxTimeWindowMs</code> early while the pool has headroom and shrinks to 0
+ * as it saturates, so a busy pool gets exact fire times.
+ * </p>
+ */
+final class AdaptiveBatchAcquisition {
+
+    private final QuartzSchedulerResources resources;
+    private final int maxBatchSize;
+    private final long maxTimeWindowMs;
+
+    AdaptiveBatchAcquisition(QuartzSchedulerResources resources, int maxBatchSize, long maxTimeWindowMs) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        if (maxTimeWindowMs < 0) {
+            throw new IllegalArgumentException("maxTimeWindowMs cannot be negative");
+        }
+        this.resources = resources;
+        this.maxBatchSize = maxBatchSize;
+        this.maxTimeWindowMs = maxTimeWindowMs;
+    }
+
+    void adapt(int availableCapacity, int totalCapacity) {
+        int batchSize = Math.max(1, Math.min(Math.max(totalCapacity, availableCapacity), maxBatchSize));
+        long timeWindow = 0;
+        if (maxTimeWindowMs > 0 && totalCapacity > 0) {
+            timeWindow = maxTimeWindowMs * Math.min(availableCapacity, totalCapacity) / totalCapacity;
+        }
+        if (resources.getMaxBatchSize() != batchSize) {
+            resources.setMaxBatchSize(batchSize);
+        }
+        if (resources.getBatchTimeWindow() != timeWindow) {
+            resources.setBatchTimeWindow(timeWindow);
+        }
+    }
+
+    int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    long getMaxTimeWindowMs() {
+        return maxTimeWindowMs;
+    }
+}
@@ -0,0 +1,35 @@
+package lab.scheduler.core;
+
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * <p>
+ * A job which returns while its work goes on, e.g. while it waits on a remote call, so its worker is released at once.
+ * The fire completes when the returned stage completes: its value becomes the result of the fire, and the listeners
+ * registered through SchedulerManager see jobWasExecuted and triggerComplete only then. A stage which completes
+ * exceptionally is reported to the job listeners as a JobExecutionException.
+ * </p>
+ * <p>
+ * The job store considers the fire complete when executeAsync returns, so DisallowConcurrentExecution doesn't cover
+ * the asynchronous part, cap it with maxConcurrentExecutions instead. Refire requests of a failed stage are not honoured.
+ * On a scheduler without an AsyncJobTracker the worker waits for the stage.
+ * </p>
+ */
+public interface AsyncJob extends Job {
+
+    /**
+     * Starts the work of the fire.
+     *
+     * @return the stage completing with the result of the fire, null if the fire is already complete
+     * */
+    CompletionStage<?> executeAsync(JobExecutionContext context) throws JobExecutionException;
+
+    @Override
+    default void execute(JobExecutionContext context) throws JobExecutionException {
+        AsyncJobTracker.launch(this, context);
+    }
+}
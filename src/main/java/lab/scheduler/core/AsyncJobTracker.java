@@ -0,0 +1,230 @@
+package lab.scheduler.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.SchedulerException;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Tracks the fires of AsyncJobs whose stage is still running after their worker was released, for one Quartz scheduler.
+ * It is put into the SchedulerContext under {@link #CONTEXT_KEY}, so the jobs find it through their execution context.
+ * </p>
+ * <p>
+ * The in-flight cap bounds how many fires can wait on their stage at the same time. A fire over the cap keeps its
+ * worker until an in-flight fire completes, which pushes back on the scheduler like synchronous jobs do.
+ * A changed cap applies to the fires launched afterwards. Stopping a scheduler doesn't wait for in-flight fires.
+ * </p>
+ */
+@Slf4j
+public class AsyncJobTracker {
+    public static final String CONTEXT_KEY = AsyncJobTracker.class.getName();
+    private static final String COMPLETION_KEY = AsyncJobTracker.class.getName() + ".completion";
+
+    private final ConcurrencyPermits permits = new ConcurrencyPermits();
+    private volatile int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAccumulator peakInFlight = new LongAccumulator(Math::max, 0);
+    private final LongAdder launchedCount = new LongAdder();
+    private final LongAdder completedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LatencyHistogram completionTimes = new LatencyHistogram();
+
+    /**
+     * Sets how many fires can wait on their stage at the same time. 0 removes the cap.
+     * */
+    public synchronized void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 0) {
+            throw new IllegalArgumentException("maxInFlight cannot be negative");
+        }
+        int delta = maxInFlight - this.maxInFlight;
+        if (delta > 0) {
+            permits.release(delta);
+        } else if (delta < 0) {
+            permits.reducePermits(-delta); //In-flight fires keep their permits, so the new cap applies as they complete.
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getPeakInFlight() {
+        return peakInFlight.get();
+    }
+
+    public long getLaunchedCount() {
+        return launchedCount.sum();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.sum();
+    }
+
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * Returns how long the stages took from their launch to their completion.
+     * */
+    public LatencyHistogram.Snapshot getCompletionTimes() {
+        return completionTimes.snapshot();
+    }
+
+    static void launch(AsyncJob job, JobExecutionContext context) throws JobExecutionException {
+        AsyncJobTracker tracker = of(context);
+        if (tracker != null) {
+            tracker.track(job, context);
+            return;
+        }
+        CompletionStage<?> stage = job.executeAsync(context);
+        if (stage != null) {
+            try {
+                context.setResult(stage.toCompletableFuture().join());
+            } catch (CompletionException e) {
+                throw asJobExecutionException(e);
+            }
+        }
+    }
+
+    private void track(AsyncJob job, JobExecutionContext context) throws JobExecutionException {
+        boolean permit = acquire();
+        long launchTime = System.nanoTime();
+        CompletionStage<?> stage;
+        try {
+            stage = job.executeAsync(context);
+        } catch (JobExecutionException | RuntimeException e) {
+            if (permit) {
+                permits.release();
+            }
+            throw e;
+        }
+        if (stage == null) {
+            if (permit) {
+                permits.release();
+            }
+            return;
+        }
+        Completion completion = new Completion();
+        context.put(COMPLETION_KEY, completion);
+        launchedCount.increment();
+        peakInFlight.accumulate(inFlight.incrementAndGet());
+        stage.whenComplete((result, error) -> {
+            inFlight.decrementAndGet();
+            if (permit) {
+                permits.release();
+            }
+            completionTimes.recordNanos(System.nanoTime() - launchTime);
+            if (error == null) {
+                completedCount.increment();
+                context.setResult(result);
+                completion.complete(context, null);
+            } else {
+                failedCount.increment();
+                completion.complete(context, asJobExecutionException(error));
+            }
+        });
+    }
+
+    private boolean acquire() throws JobExecutionException {
+        if (maxInFlight == 0) {
+            return false;
+        }
+        try {
+            permits.acquire();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JobExecutionException("Interrupted while waiting for an in-flight async fire to complete", e);
+        }
+    }
+
+    /**
+     * Runs the action once the fire is complete: when its stage completes for an AsyncJob still in flight, at once
+     * otherwise. The action gets the failure of the stage, null if it completed normally or the fire wasn't async.
+     * The actions of a fire run one after another in the order they were added.
+     * */
+    public static void whenComplete(JobExecutionContext context, Consumer<JobExecutionException> action) {
+        if (context.get(COMPLETION_KEY) instanceof Completion completion) {
+            completion.add(context, action);
+        } else {
+            action.accept(null);
+        }
+    }
+
+    private static AsyncJobTracker of(JobExecutionContext context) {
+        try {
+            return context.getScheduler().getContext().get(CONTEXT_KEY) instanceof AsyncJobTracker tracker ? tracker : null;
+        } catch (SchedulerException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The callbacks of one async fire. They run in the order they were added, which is the order Quartz notifies the
+     * listeners in, also when the stage completes while they are still being added.
+     * */
+    private static final class Completion {
+        private final Queue<Consumer<JobExecutionException>> callbacks = new ArrayDeque<>();
+        private boolean complete;
+        private boolean draining;
+        private JobExecutionException error;
+
+        private void add(JobExecutionContext context, Consumer<JobExecutionException> callback) {
+            synchronized (this) {
+                if (!complete || draining) {
+                    callbacks.add(callback);
+                    return;
+                }
+            }
+            run(context, callback, error);
+        }
+
+        private void complete(JobExecutionContext context, JobExecutionException error) {
+            synchronized (this) {
+                this.error = error;
+                complete = true;
+                draining = true;
+            }
+            while (true) {
+                Consumer<JobExecutionException> callback;
+                synchronized (this) {
+                    callback = callbacks.poll();
+                    if (callback == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+                run(context, callback, error);
+            }
+        }
+
+        private static void run(JobExecutionContext context, Consumer<JobExecutionException> callback, JobExecutionException error) {
+            try {
+                callback.accept(error);
+            } catch (RuntimeException e) {
+                log.error("Completion callback of the async fire of '{}' failed", context.getJobDetail().getKey(), e);
+            }
+        }
+    }
+
+    private static JobExecutionException asJobExecutionException(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof JobExecutionException jobExecutionException ? jobExecutionException : new JobExecutionException(cause);
+    }
+}
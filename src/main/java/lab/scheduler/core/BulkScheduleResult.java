@@ -0,0 +1,30 @@
+package lab.scheduler.core;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outcome of scheduling a batch of templates.
+ *
+ * @param schedulerId   the scheduler the templates were scheduled on
+ * @param scheduledJobs the number of templates which were scheduled
+ * @param failures      the exception of every template which could not be built or scheduled, by job name
+ * @param elapsedMs     how long the batch took
+ */
+public record BulkScheduleResult(String schedulerId,
+                                 int scheduledJobs,
+                                 Map<String, Exception> failures,
+                                 long elapsedMs) {
+
+    public BulkScheduleResult {
+        failures = failures == null ? Map.of() : Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+    }
+
+    /**
+     * Returns true if every template was scheduled.
+     */
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+}
@@ -0,0 +1,128 @@
+package lab.scheduler.core;
+
+import org.quartz.CronExpression;
+import org.quartz.CronTrigger;
+import org.quartz.ScheduleBuilder;
+import org.quartz.impl.triggers.CronTriggerImpl;
+import org.quartz.spi.MutableTrigger;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * <p>
+ * A cron trigger which looks its fire times up in the {@link CronFireTimeTable} shared by all triggers with the same
+ * expression and time zone, instead of computing them with a CronExpression of its own. Cloning it, which job stores
+ * do on every acquisition, doesn't parse the expression again either.
+ * </p>
+ * <p>
+ * JDBC job stores keep it as a plain cron trigger, which computes its fire times the usual way once loaded.
+ * </p>
+ */
+public class CachedCronTrigger extends CronTriggerImpl {
+    private static final long serialVersionUID = 1L;
+
+    private String cronExpression;
+    private TimeZone timeZone;
+    private transient CronFireTimeTable table;
+
+    public CachedCronTrigger() {
+    }
+
+    /**
+     * Returns a schedule firing at the times of the cron expression, looked up in the shared table.
+     * */
+    public static ScheduleBuilder<CronTrigger> cronSchedule(String cronExpression) {
+        CachedCronTrigger prototype = new CachedCronTrigger();
+        try {
+            prototype.setCronExpression(cronExpression);
+        } catch (ParseException e) {
+            throw new RuntimeException("CronExpression '" + cronExpression + "' is invalid.", e);
+        }
+        return prototype.getScheduleBuilder();
+    }
+
+    @Override
+    public void setCronExpression(String cronExpression) throws ParseException {
+        table = CronFireTimeTable.of(cronExpression, getTimeZone());
+        this.cronExpression = cronExpression;
+    }
+
+    @Override
+    public void setCronExpression(CronExpression cronExpression) {
+        if (cronExpression.getTimeZone() != null) {
+            timeZone = cronExpression.getTimeZone();
+        }
+        try {
+            setCronExpression(cronExpression.getCronExpression());
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(e); //It was parsed already
+        }
+    }
+
+    @Override
+    public String getCronExpression() {
+        return cronExpression;
+    }
+
+    @Override
+    public TimeZone getTimeZone() {
+        if (timeZone == null) {
+            timeZone = TimeZone.getDefault();
+        }
+        return timeZone;
+    }
+
+    @Override
+    public void setTimeZone(TimeZone timeZone) {
+        this.timeZone = timeZone;
+        table = null;
+    }
+
+    @Override
+    public String getExpressionSummary() {
+        return cronExpression == null ? null : table().getExpressionSummary();
+    }
+
+    @Override
+    protected Date getTimeAfter(Date afterTime) {
+        return cronExpression == null ? null : table().getTimeAfter(afterTime);
+    }
+
+    @Override
+    protected Date getTimeBefore(Date endTime) {
+        return cronExpression == null ? null : table().getTimeBefore(endTime);
+    }
+
+    private CronFireTimeTable table() {
+        CronFireTimeTable current = table;
+        if (current == null) {
+            //After a time zone change or deserialization
+            try {
+                current = CronFireTimeTable.of(cronExpression, getTimeZone());
+            } catch (ParseException e) {
+                throw new IllegalStateException("CronExpression '" + cronExpression + "' is invalid.", e);
+            }
+            table = current;
+        }
+        return current;
+    }
+
+    /**
+     * Returns a builder of triggers with the cron expression, time zone and misfire instruction of this one,
+     * so rebuilding the trigger through getTriggerBuilder keeps its type.
+     * */
+    @Override
+    public ScheduleBuilder<CronTrigger> getScheduleBuilder() {
+        return new ScheduleBuilder<>() {
+            @Override
+            protected MutableTrigger build() {
+                CachedCronTrigger trigger = (CachedCronTrigger) CachedCronTrigger.this.clone();
+                trigger.setNextFireTime(null);
+                trigger.setPreviousFireTime(null);
+                return trigger;
+            }
+        };
+    }
+}
@@ -0,0 +1,305 @@
+package lab.scheduler.core;
+
+import lab.scheduler.config.ConcurrencyLimitPolicy;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Caps how many fires of a job, and of all jobs of a job group, run at the same time. A fire over a cap is vetoed
+ * by {@link lab.scheduler.listeners.ConcurrencyLimitListener} before its job runs, so it gives its worker back at once,
+ * and is remembered as deferred. When a running fire of the job or its group completes, one deferred fire is
+ * triggered again through the scheduler.
+ * </p>
+ * <p>
+ * DEFER runs every fire over the cap later. COALESCE keeps at most one deferred fire per job, which stands for
+ * all fires over the cap since it was deferred.
+ * </p>
+ * <p>
+ * The cap of a job is read from its job data on every fire, so replacing the job changes it. Group caps are set
+ * per job group name as stored in the job store.
+ * </p>
+ * <p>
+ * A non-durable job is held durable by {@link DeferredJobHolds} while it has deferred fires, else the job store would
+ * delete it together with its last trigger before they ran. The state of a job is dropped with the job,
+ * {@link lab.scheduler.listeners.ConcurrencyLimitSchedulerListener} reports its deletion.
+ * </p>
+ */
+@Slf4j
+public class ConcurrencyLimiter {
+    public static final String MAX_CONCURRENT_EXECUTIONS_KEY = "maxConcurrentExecutions";
+    public static final String LIMIT_POLICY_KEY = "concurrencyLimitPolicy";
+    private static final String PERMIT_KEY = ConcurrencyLimiter.class.getName() + ".permit";
+
+    private final DeferredJobHolds holds;
+    private final Map<String, Integer> groupLimits = new ConcurrentHashMap<>();
+    private final Map<JobKey, AtomicInteger> runningJobs = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> runningGroups = new ConcurrentHashMap<>();
+    private final Map<JobKey, AtomicInteger> deferredFires = new ConcurrentHashMap<>();
+    private final Map<String, Queue<JobKey>> deferredJobsByGroup = new ConcurrentHashMap<>();
+    private final Set<JobKey> deletedRunningJobs = ConcurrentHashMap.newKeySet();
+    private final LongAdder deferredCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    private record Permit(boolean job, boolean group) {}
+
+    public ConcurrencyLimiter() {
+        this(new DeferredJobHolds());
+    }
+
+    public ConcurrencyLimiter(DeferredJobHolds holds) {
+        this.holds = holds;
+    }
+
+    /**
+     * Sets how many fires of the jobs of the group may run at the same time. 0 removes the cap.
+     * */
+    public void setGroupLimit(String jobGroup, int maxConcurrentExecutions) {
+        if (maxConcurrentExecutions < 0) {
+            throw new IllegalArgumentException("maxConcurrentExecutions cannot be negative");
+        }
+        if (maxConcurrentExecutions == 0) {
+            groupLimits.remove(jobGroup);
+        } else {
+            groupLimits.put(jobGroup, maxConcurrentExecutions);
+        }
+    }
+
+    public int getGroupLimit(String jobGroup) {
+        return groupLimits.getOrDefault(jobGroup, 0);
+    }
+
+    /**
+     * Takes the permits of the fire.
+     *
+     * @return false if a cap is reached, the fire was deferred or coalesced and must be vetoed
+     * */
+    public boolean tryAcquire(JobExecutionContext context) {
+        JobDetail jobDetail = context.getJobDetail();
+        JobKey jobKey = jobDetail.getKey();
+        int jobLimit = intOf(jobDetail.getJobDataMap().get(MAX_CONCURRENT_EXECUTIONS_KEY));
+        int groupLimit = groupLimits.getOrDefault(jobKey.getGroup(), 0);
+        if (jobLimit <= 0 && groupLimit <= 0) {
+            return true;
+        }
+        if (jobLimit > 0 && !acquire(runningJobs, jobKey, jobLimit)) {
+            defer(context.getScheduler(), jobDetail, jobLimit, groupLimit);
+            return false;
+        }
+        if (groupLimit > 0 && !acquire(runningGroups, jobKey.getGroup(), groupLimit)) {
+            if (jobLimit > 0) {
+                releaseJob(jobKey);
+            }
+            defer(context.getScheduler(), jobDetail, jobLimit, groupLimit);
+            return false;
+        }
+        context.put(PERMIT_KEY, new Permit(jobLimit > 0, groupLimit > 0));
+        return true;
+    }
+
+    /**
+     * Gives the permits of a completed or vetoed fire back and triggers a deferred fire they free.
+     * */
+    public void release(JobExecutionContext context) {
+        if (!(context.get(PERMIT_KEY) instanceof Permit permit)) {
+            return;
+        }
+        context.put(PERMIT_KEY, null);
+        JobKey jobKey = context.getJobDetail().getKey();
+        if (permit.job()) {
+            releaseJob(jobKey);
+        }
+        if (permit.group()) {
+            runningGroups.get(jobKey.getGroup()).decrementAndGet();
+        }
+        replay(context.getScheduler(), takeDeferred(jobKey, permit.group()));
+    }
+
+    private void replay(Scheduler scheduler, JobKey deferredJob) {
+        if (deferredJob == null) {
+            return;
+        }
+        try {
+            scheduler.triggerJob(deferredJob);
+        } catch (SchedulerException e) {
+            log.warn("Dropped a deferred fire of '{}': {}", deferredJob, e.getMessage());
+        }
+        if (getPendingFires(deferredJob) == 0) {
+            updateDurability(scheduler, deferredJob);
+        }
+    }
+
+    /**
+     * Drops the deferred fires of a deleted job. Its running fires still give their permits back.
+     * */
+    public void jobDeleted(JobKey jobKey) {
+        deferredFires.remove(jobKey);
+        holds.jobDeleted(jobKey);
+        Queue<JobKey> deferredJobs = deferredJobsByGroup.get(jobKey.getGroup());
+        if (deferredJobs != null) {
+            deferredJobs.remove(jobKey);
+        }
+        AtomicInteger running = runningJobs.get(jobKey);
+        if (running != null) {
+            deletedRunningJobs.add(jobKey);
+            if (running.get() == 0 && deletedRunningJobs.remove(jobKey)) {
+                runningJobs.remove(jobKey, running);
+            }
+        }
+    }
+
+    /**
+     * Drops the deferred fires of all jobs, after the scheduling data of the scheduler was cleared.
+     * */
+    public void clear() {
+        Set<JobKey> jobKeys = new HashSet<>(runningJobs.keySet());
+        jobKeys.addAll(deferredFires.keySet());
+        jobKeys.forEach(this::jobDeleted);
+    }
+
+    public long getDeferredCount() {
+        return deferredCount.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    public int getPendingFires(JobKey jobKey) {
+        AtomicInteger pending = deferredFires.get(jobKey);
+        return pending == null ? 0 : pending.get();
+    }
+
+    private static <K> boolean acquire(Map<K, AtomicInteger> running, K key, int limit) {
+        AtomicInteger count = running.computeIfAbsent(key, k -> new AtomicInteger());
+        while (true) {
+            int current = count.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (count.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private static <K> boolean isFree(Map<K, AtomicInteger> running, K key, int limit) {
+        AtomicInteger count = limit > 0 ? running.get(key) : null;
+        return count == null || count.get() < limit;
+    }
+
+    private void releaseJob(JobKey jobKey) {
+        AtomicInteger running = runningJobs.get(jobKey);
+        if (running != null && running.decrementAndGet() == 0
+                && !deletedRunningJobs.isEmpty() && deletedRunningJobs.remove(jobKey)) {
+            runningJobs.remove(jobKey, running);
+        }
+    }
+
+    /**
+     * Remembers the fire as deferred. The fires holding the permits replay it when they complete, but if the last of
+     * them completed after this fire failed to take its permit and before it was deferred, nothing would. So the permits
+     * are checked again once it is deferred, and a deferred fire is replayed if they are free by now.
+     * */
+    private void defer(Scheduler scheduler, JobDetail jobDetail, int jobLimit, int groupLimit) {
+        defer(scheduler, jobDetail);
+        JobKey jobKey = jobDetail.getKey();
+        if (isFree(runningJobs, jobKey, jobLimit) && isFree(runningGroups, jobKey.getGroup(), groupLimit)) {
+            replay(scheduler, takeDeferred(jobKey, groupLimit > 0));
+        }
+    }
+
+    private void defer(Scheduler scheduler, JobDetail jobDetail) {
+        JobKey jobKey = jobDetail.getKey();
+        AtomicInteger pending = deferredFires.computeIfAbsent(jobKey, key -> new AtomicInteger());
+        int before;
+        if (policyOf(jobDetail) == ConcurrencyLimitPolicy.COALESCE) {
+            before = pending.getAndUpdate(count -> Math.max(count, 1));
+            if (before > 0) {
+                coalescedCount.increment();
+                return;
+            }
+        } else {
+            before = pending.getAndIncrement();
+        }
+        deferredCount.increment();
+        if (before == 0) {
+            deferredJobsByGroup.computeIfAbsent(jobKey.getGroup(), group -> new ConcurrentLinkedQueue<>()).offer(jobKey);
+            if (!jobDetail.isDurable() || holds.isHeld(jobKey)) {
+                updateDurability(scheduler, jobKey);
+            }
+        }
+    }
+
+    private void updateDurability(Scheduler scheduler, JobKey jobKey) {
+        holds.update(scheduler, jobKey, this, () -> getPendingFires(jobKey) > 0);
+    }
+
+    /**
+     * Takes a deferred fire of the job, or else of another job of its group. A freed group permit goes round-robin
+     * over the deferred jobs of the group instead, so one busy job can't starve the others.
+     * */
+    private JobKey takeDeferred(JobKey jobKey, boolean groupPermit) {
+        if (!groupPermit && takePending(jobKey)) {
+            return jobKey;
+        }
+        Queue<JobKey> deferredJobs = deferredJobsByGroup.get(jobKey.getGroup());
+        if (deferredJobs == null) {
+            return null;
+        }
+        JobKey deferredJob;
+        while ((deferredJob = deferredJobs.poll()) != null) {
+            if (takePending(deferredJob)) {
+                if (getPendingFires(deferredJob) > 0) {
+                    deferredJobs.offer(deferredJob);
+                }
+                return deferredJob;
+            }
+        }
+        return null;
+    }
+
+    private boolean takePending(JobKey jobKey) {
+        AtomicInteger pending = deferredFires.get(jobKey);
+        if (pending == null) {
+            return false;
+        }
+        while (true) {
+            int current = pending.get();
+            if (current == 0) {
+                return false;
+            }
+            if (pending.compareAndSet(current, current - 1)) {
+                return true;
+            }
+        }
+    }
+
+    private static ConcurrencyLimitPolicy policyOf(JobDetail jobDetail) {
+        Object policy = jobDetail.getJobDataMap().get(LIMIT_POLICY_KEY);
+        if (policy instanceof ConcurrencyLimitPolicy limitPolicy) {
+            return limitPolicy;
+        }
+        return ConcurrencyLimitPolicy.DEFER;
+    }
+
+    private static int intOf(Object value) {
+        if (value instanceof Number number) {
+            return number.intValue();
+        }
+        return 0;
+    }
+}
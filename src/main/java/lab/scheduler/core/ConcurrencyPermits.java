@@ -0,0 +1,20 @@
+package lab.scheduler.core;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * A semaphore used as a resizable concurrency cap. Permits can be taken back while they are held,
+ * in which case the cap shrinks as the holders release them.
+ */
+class ConcurrencyPermits extends Semaphore {
+    private static final long serialVersionUID = 1L;
+
+    ConcurrencyPermits() {
+        super(0);
+    }
+
+    @Override
+    protected void reducePermits(int reduction) {
+        super.reducePermits(reduction);
+    }
+}
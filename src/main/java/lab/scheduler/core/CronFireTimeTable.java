@@ -0,0 +1,259 @@
+package lab.scheduler.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.CronExpression;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.text.ParseException;
+import java.time.Instant;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * The upcoming fire times of one cron expression in one time zone, shared by all {@link CachedCronTrigger}s with it,
+ * so their next fire time is found by a binary search over an array instead of the calendar arithmetic of
+ * CronExpression. The expression is parsed once per table, and clones of the triggers share it. A table is only
+ * referenced weakly by the registry of tables, so it is dropped once the last trigger using it is gone.
+ * </p>
+ * <p>
+ * A table is filled in the background the first time it's asked, and extended in the background once lookups reach
+ * the last quarter of it, keeping the fire times of the last minute for fires which come late. A lookup outside of
+ * the table, e.g. of a misfire far in the past, is computed by the expression.
+ * </p>
+ * <p>
+ * CronExpression doesn't find the same fire time from every time between two fire times when a daylight saving
+ * change lies between them, e.g. it skips the repeated hour when it steps over it from an earlier fire time, but not
+ * when it starts within it. So lookups between two fire times with such a change between them are computed by the
+ * expression as well, and every lookup returns what CronExpression.getTimeAfter would.
+ * </p>
+ */
+@Slf4j
+public final class CronFireTimeTable {
+    private static final int CAPACITY = 256;
+    private static final int MAX_CAPACITY = 4096;
+    private static final long LOOK_BEHIND_MS = 60_000L;
+    private static final int MAX_TABLES = 10_000;
+    private static final Map<Key, TableReference> TABLES = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<CronFireTimeTable> COLLECTED = new ReferenceQueue<>();
+
+    private final CronExpression cronExpression;
+    private final ZoneRules zoneRules;
+    private volatile Buffer buffer = new Buffer(new long[0], new boolean[0]);
+    private volatile boolean complete;
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    private record Key(String cronExpression, String timeZoneId) {}
+
+    /**
+     * The fire times, and for each of them if a daylight saving change lies between it and the fire time before.
+     * */
+    private record Buffer(long[] times, boolean[] afterOffsetChange) {}
+
+    private static final class TableReference extends WeakReference<CronFireTimeTable> {
+        private final Key key;
+
+        private TableReference(Key key, CronFireTimeTable table) {
+            super(table, COLLECTED);
+            this.key = key;
+        }
+    }
+
+    private static final class Holder {
+        private static final ExecutorService REFILL_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CronFireTimeTable-refill");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private CronFireTimeTable(CronExpression cronExpression) {
+        this.cronExpression = cronExpression;
+        this.zoneRules = zoneRulesOf(cronExpression.getTimeZone());
+    }
+
+    private static ZoneRules zoneRulesOf(TimeZone timeZone) {
+        try {
+            return timeZone.toZoneId().getRules();
+        } catch (RuntimeException e) {
+            return null; //A custom time zone, its offsets are compared instead
+        }
+    }
+
+    /**
+     * Returns the table shared by the expression in the time zone, parsing the expression if it's the first one.
+     * Past {@value #MAX_TABLES} distinct expressions the table returned is not shared.
+     * */
+    public static CronFireTimeTable of(String cronExpression, TimeZone timeZone) throws ParseException {
+        Key key = new Key(cronExpression, timeZone.getID());
+        TableReference reference = TABLES.get(key);
+        CronFireTimeTable table = reference == null ? null : reference.get();
+        if (table != null) {
+            return table;
+        }
+        CronExpression expression = new CronExpression(cronExpression);
+        expression.setTimeZone(timeZone);
+        table = new CronFireTimeTable(expression);
+        expungeCollected();
+        if (TABLES.size() >= MAX_TABLES) {
+            return table;
+        }
+        TableReference created = new TableReference(key, table);
+        while (true) {
+            TableReference existing = TABLES.putIfAbsent(key, created);
+            if (existing == null) {
+                return table;
+            }
+            CronFireTimeTable shared = existing.get();
+            if (shared != null) {
+                return shared;
+            }
+            TABLES.remove(key, existing); //Collected, but not expunged yet
+        }
+    }
+
+    public static int getTableCount() {
+        expungeCollected();
+        return TABLES.size();
+    }
+
+    private static void expungeCollected() {
+        Reference<? extends CronFireTimeTable> collected;
+        while ((collected = COLLECTED.poll()) != null) {
+            TableReference reference = (TableReference) collected;
+            TABLES.remove(reference.key, reference);
+        }
+    }
+
+    public String getCronExpression() {
+        return cronExpression.getCronExpression();
+    }
+
+    public TimeZone getTimeZone() {
+        return cronExpression.getTimeZone();
+    }
+
+    public String getExpressionSummary() {
+        return cronExpression.getExpressionSummary();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public int getBufferedFireTimes() {
+        return buffer.times().length;
+    }
+
+    /**
+     * Returns the first fire time after the time, like CronExpression.getTimeAfter.
+     * */
+    public Date getTimeAfter(Date afterTime) {
+        long after = afterTime.getTime();
+        Buffer current = buffer;
+        long[] times = current.times();
+        int size = times.length;
+        if (size > 0 && after >= times[0] && after < times[size - 1]) {
+            int index = Arrays.binarySearch(times, after);
+            index = index >= 0 ? index + 1 : -index - 1;
+            if (index >= size - size / 4 && !complete) {
+                refill();
+            }
+            if (!current.afterOffsetChange()[index]) {
+                hitCount.increment();
+                return new Date(times[index]);
+            }
+        }
+        missCount.increment();
+        if (size == 0 || (after >= times[size - 1] && !complete)) {
+            refill();
+        }
+        return cronExpression.getTimeAfter(afterTime);
+    }
+
+    public Date getTimeBefore(Date endTime) {
+        return cronExpression.getTimeBefore(endTime);
+    }
+
+    private void refill() {
+        if (!refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Holder.REFILL_EXECUTOR.execute(() -> {
+                try {
+                    extend();
+                } catch (RuntimeException e) {
+                    log.warn("Could not extend the fire times of '{}'", getCronExpression(), e);
+                } finally {
+                    refilling.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            refilling.set(false);
+        }
+    }
+
+    /**
+     * Drops the fire times before the last minute and computes the following ones, up to the capacity or at least a
+     * quarter of it more, so a table whose lookups run ahead of time grows up to {@value #MAX_CAPACITY} fire times.
+     * */
+    private void extend() {
+        long keepFrom = System.currentTimeMillis() - LOOK_BEHIND_MS;
+        Buffer current = buffer;
+        long[] times = current.times();
+        int first = Arrays.binarySearch(times, keepFrom);
+        first = first >= 0 ? first : -first - 1;
+        int capacity = Math.min(MAX_CAPACITY, Math.max(CAPACITY, times.length - first + CAPACITY / 4));
+        first = Math.max(first, times.length - (capacity - CAPACITY / 4));
+        long[] extended = new long[capacity];
+        boolean[] afterOffsetChange = new boolean[capacity];
+        int size = times.length - first;
+        System.arraycopy(times, first, extended, 0, size);
+        System.arraycopy(current.afterOffsetChange(), first, afterOffsetChange, 0, size);
+        if (size > 0) {
+            afterOffsetChange[0] = true; //The fire time before it is dropped, lookups before it aren't answered anyway
+        }
+        Date fireTime = new Date(size > 0 ? extended[size - 1] : keepFrom);
+        boolean ended = false;
+        while (size < capacity) {
+            fireTime = cronExpression.getTimeAfter(fireTime);
+            if (fireTime == null) {
+                ended = true;
+                break;
+            }
+            extended[size] = fireTime.getTime();
+            afterOffsetChange[size] = size == 0 || isOffsetChangeBetween(extended[size - 1], extended[size]);
+            size++;
+        }
+        buffer = size == capacity ? new Buffer(extended, afterOffsetChange)
+                : new Buffer(Arrays.copyOf(extended, size), Arrays.copyOf(afterOffsetChange, size));
+        complete = ended;
+    }
+
+    private boolean isOffsetChangeBetween(long from, long to) {
+        if (zoneRules == null) {
+            TimeZone timeZone = cronExpression.getTimeZone();
+            return timeZone.getOffset(from) != timeZone.getOffset(to);
+        }
+        ZoneOffsetTransition transition = zoneRules.nextTransition(Instant.ofEpochMilli(from));
+        return transition != null && transition.toEpochSecond() * 1000 <= to;
+    }
+}
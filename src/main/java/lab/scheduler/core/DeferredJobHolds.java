@@ -0,0 +1,84 @@
+package lab.scheduler.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+/**
+ * <p>
+ * Stores non-durable jobs as durable while fires of them are deferred, else the job store would delete them together
+ * with their last trigger before the deferred fires ran. A job is made non-durable again once its deferred fires ran,
+ * and deleted if it has no triggers left, as the job store would have done with its last trigger.
+ * </p>
+ * <p>
+ * The ConcurrencyLimiter and the MisfireCatchUp of a scheduler share one instance, so a job deferred by both stays
+ * durable until neither of them holds it.
+ * </p>
+ */
+@Slf4j
+public class DeferredJobHolds {
+    private final Map<JobKey, Set<Object>> holders = new ConcurrentHashMap<>();
+    private final Object lock = new Object(); //Never taken by jobDeleted, which the job store calls under its lock
+
+    public boolean isHeld(JobKey jobKey) {
+        return holders.containsKey(jobKey);
+    }
+
+    /**
+     * Holds the job for the owner if it has deferred fires, else lets it go. The supplier is asked under the lock,
+     * so concurrent updates of a job settle on its latest state.
+     * */
+    public void update(Scheduler scheduler, JobKey jobKey, Object owner, BooleanSupplier hasDeferredFires) {
+        synchronized (lock) {
+            boolean hold = hasDeferredFires.getAsBoolean();
+            Set<Object> owners = holders.get(jobKey);
+            if (hold == (owners != null && owners.contains(owner))) {
+                return;
+            }
+            try {
+                if (hold) {
+                    if (owners == null) {
+                        JobDetail stored = scheduler.getJobDetail(jobKey);
+                        if (stored == null || stored.isDurable()) {
+                            return;
+                        }
+                        scheduler.addJob(stored.getJobBuilder().storeDurably().build(), true);
+                        owners = ConcurrentHashMap.newKeySet();
+                        holders.put(jobKey, owners);
+                    }
+                    owners.add(owner);
+                    return;
+                }
+                owners.remove(owner);
+                if (!owners.isEmpty()) {
+                    return;
+                }
+                holders.remove(jobKey, owners);
+                JobDetail stored = scheduler.getJobDetail(jobKey);
+                if (stored != null) {
+                    scheduler.addJob(stored.getJobBuilder().storeDurably(false).build(), true, true);
+                    if (scheduler.getTriggersOfJob(jobKey).isEmpty()) {
+                        scheduler.deleteJob(jobKey);
+                    }
+                }
+            } catch (SchedulerException e) {
+                log.warn("Couldn't change the durability of the job '{}' with deferred fires: {}", jobKey, e.getMessage());
+            }
+        }
+    }
+
+    public void jobDeleted(JobKey jobKey) {
+        holders.remove(jobKey);
+    }
+
+    public void clear() {
+        holders.clear();
+    }
+}
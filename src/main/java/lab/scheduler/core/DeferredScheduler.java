@@ -0,0 +1,53 @@
+package lab.scheduler.core;
+
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Creates the Quartz scheduler of a lazily registered scheduler once, on the first call to get(). A creation which
+ * failed is not remembered, the next call to get() tries again.
+ * <p>
+ * A creation in progress blocks cancel() until it completed, so a scheduler is either never created or handed to the caller to stop.
+ * */
+final class DeferredScheduler {
+    private final String schedulerId;
+    private final Callable<Scheduler> factory;
+    private Scheduler scheduler;
+    private boolean cancelled;
+
+    DeferredScheduler(String schedulerId, Callable<Scheduler> factory) {
+        this.schedulerId = schedulerId;
+        this.factory = factory;
+    }
+
+    synchronized Scheduler get() throws SchedulerException {
+        if (cancelled) {
+            throw new SchedulerException("Scheduler with ID " + schedulerId + " was stopped before it was created");
+        }
+        if (scheduler == null) {
+            try {
+                scheduler = factory.call();
+            } catch (SchedulerException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new SchedulerException("Failed to create the scheduler '" + schedulerId + "'", e);
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * Cancels the creation if it did not happen yet.
+     *
+     * @return false if the scheduler was already created
+     * */
+    synchronized boolean cancel() {
+        if (scheduler != null) {
+            return false;
+        }
+        cancelled = true;
+        return true;
+    }
+}
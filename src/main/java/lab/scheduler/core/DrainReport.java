@@ -0,0 +1,34 @@
+package lab.scheduler.core;
+
+import java.util.List;
+
+/**
+ * Outcome of shutting down a scheduler with a deadline.
+ *
+ * @param schedulerId the scheduler which was drained
+ * @param timeoutMs   the deadline given to the drain, 0 when the drain waited for every job
+ * @param elapsedMs   how long the drain took
+ * @param cutOffJobs  keys of the jobs still running at the deadline, they were interrupted
+ * @param error       the exception which stopped the drain, null if it completed
+ */
+public record DrainReport(String schedulerId,
+                          long timeoutMs,
+                          long elapsedMs,
+                          List<String> cutOffJobs,
+                          Exception error) {
+
+    public DrainReport {
+        cutOffJobs = cutOffJobs == null ? List.of() : List.copyOf(cutOffJobs);
+    }
+
+    static DrainReport failed(String schedulerId, long timeoutMs, long elapsedMs, Exception error) {
+        return new DrainReport(schedulerId, timeoutMs, elapsedMs, List.of(), error);
+    }
+
+    /**
+     * Returns true if every running job finished before the deadline.
+     */
+    public boolean isClean() {
+        return error == null && cutOffJobs.isEmpty();
+    }
+}
@@ -0,0 +1,298 @@
+package lab.scheduler.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.*;
+import org.quartz.core.JobRunShell;
+import org.quartz.core.QuartzScheduler;
+import org.quartz.core.QuartzSchedulerResources;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.TriggerFiredBundle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * The fan-out groups of one Quartz scheduler. The cron jobs whose triggers have the same schedule are the members of
+ * one group, which has a single trigger in the job store. Its job, a {@link FanOutJob}, dispatches the members as a
+ * batch onto the thread pool when it fires, so the scheduler thread acquires and fires one trigger per schedule
+ * instead of one per job.
+ * </p>
+ * <p>
+ * A member stays a durable job of its own in the job store, without a trigger. Each of its fires gets a JobRunShell
+ * of its own with a clone of the group's trigger under the key the member's trigger would have had, so trigger and job
+ * listeners, concurrency limits, misfire policies and triggerJob see it as if it had its own trigger. That key exists
+ * on the fires only, the job store has the group's trigger, see {@link #getTriggerKey(JobKey)}. Deleting a
+ * member takes it out of its group, and a group without members deletes its trigger. Misfires are noticed for the
+ * group's trigger, and pausing a member's job doesn't pause its fires, pausing its trigger group does.
+ * </p>
+ * <p>
+ * It is put into the SchedulerContext under {@link #CONTEXT_KEY}. The groups are kept in memory only, so schedulers
+ * whose job store persists jobs don't get one.
+ * </p>
+ */
+@Slf4j
+public final class FanOutGroups {
+    public static final String CONTEXT_KEY = FanOutGroups.class.getName();
+    static final String DISPATCHER_GROUP = "FanOut-group";
+
+    private final Scheduler scheduler;
+    private final Map<Schedule, Group> groups = new ConcurrentHashMap<>();
+    private final Map<JobKey, Group> groupsByMember = new ConcurrentHashMap<>();
+    private final Map<JobKey, Group> groupsByDispatcher = new ConcurrentHashMap<>();
+    private final AtomicLong groupSequence = new AtomicLong();
+
+    /**
+     * What makes two cron triggers fire at the same times with the same instructions.
+     * */
+    private record Schedule(Class<?> triggerClass, String cronExpression, String timeZoneId, long offsetMs, int priority,
+                            int misfireInstruction, String triggerGroup, Date endTime) {}
+
+    private record Member(JobKey jobKey, TriggerKey triggerKey) {}
+
+    private static final class Group {
+        private final Schedule schedule;
+        private final JobKey dispatcherKey;
+        private final TriggerKey triggerKey;
+        //Copied on write, a fire dispatches the members of the moment without locking
+        private volatile Member[] members = new Member[0];
+        private volatile boolean empty;
+
+        private Group(Schedule schedule, JobKey dispatcherKey, TriggerKey triggerKey) {
+            this.schedule = schedule;
+            this.dispatcherKey = dispatcherKey;
+            this.triggerKey = triggerKey;
+        }
+    }
+
+    /**
+     * The job and trigger of a group created by {@link #join}, which are stored with its first member.
+     * */
+    record Dispatcher(JobDetail jobDetail, Trigger trigger) {}
+
+    FanOutGroups(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Returns the fan-out groups of the scheduler, null if it has none.
+     * */
+    public static FanOutGroups of(Scheduler scheduler) throws SchedulerException {
+        return scheduler.getContext().get(CONTEXT_KEY) instanceof FanOutGroups groups ? groups : null;
+    }
+
+    /**
+     * Returns the trigger the job fires by as a member of a fan-out group, null if it isn't one.
+     * */
+    public static Trigger getFanOutTrigger(Scheduler scheduler, JobKey jobKey) throws SchedulerException {
+        FanOutGroups groups = of(scheduler);
+        TriggerKey triggerKey = groups == null ? null : groups.getTriggerKey(jobKey);
+        return triggerKey == null ? null : scheduler.getTrigger(triggerKey);
+    }
+
+    /**
+     * Returns the key of the trigger of the member's group, null if the job isn't a member. The trigger is shared by
+     * all members of the group, unscheduling it unschedules them all. The key the fires of the member carry, the one
+     * its own trigger would have had, is not in the job store: getTrigger returns null and unscheduleJob false for it.
+     * */
+    public TriggerKey getTriggerKey(JobKey jobKey) {
+        Group group = groupsByMember.get(jobKey);
+        return group == null ? null : group.triggerKey;
+    }
+
+    public int getGroupCount() {
+        return groups.size();
+    }
+
+    public int getMemberCount() {
+        return groupsByMember.size();
+    }
+
+    /**
+     * Returns true if the job can join a fan-out group with the trigger. Only cron triggers without calendar and
+     * trigger data are grouped, and no jobs which disallow concurrent execution, as the job store blocks those by
+     * their own triggers.
+     * */
+    static boolean canFanOut(JobDetail jobDetail, Trigger trigger) {
+        return scheduleOf(jobDetail, trigger) != null;
+    }
+
+    private static Schedule scheduleOf(JobDetail jobDetail, Trigger trigger) {
+        if (!(trigger instanceof CachedCronTrigger cronTrigger) || jobDetail.isConcurrentExectionDisallowed()
+                || trigger.getCalendarName() != null || !trigger.getJobDataMap().isEmpty()) {
+            return null;
+        }
+        long offsetMs = trigger instanceof StaggeredCronTrigger staggered ? staggered.getOffsetMs() : 0;
+        return new Schedule(trigger.getClass(), cronTrigger.getCronExpression(), cronTrigger.getTimeZone().getID(), offsetMs,
+                trigger.getPriority(), trigger.getMisfireInstruction(), trigger.getKey().getGroup(), trigger.getEndTime());
+    }
+
+    /**
+     * Makes the job a member of the group of its trigger's schedule, leaving the group it was a member of.
+     * The job must be stored durably and without the trigger.
+     *
+     * @param dispatcherGroup the job group of the dispatcher if a group is created
+     * @return the dispatcher job and trigger to store if the group was created, null if it existed
+     * */
+    synchronized Dispatcher join(JobDetail jobDetail, Trigger trigger, String dispatcherGroup) {
+        Schedule schedule = scheduleOf(jobDetail, trigger);
+        if (schedule == null) {
+            throw new IllegalArgumentException("The trigger of '" + jobDetail.getKey() + "' can't fan out");
+        }
+        JobKey jobKey = jobDetail.getKey();
+        Group group = groups.get(schedule);
+        Group current = groupsByMember.get(jobKey);
+        if (current != null && current == group) {
+            return null;
+        }
+        if (current != null) {
+            leave(jobKey);
+        }
+        Dispatcher created = null;
+        if (group == null) {
+            JobKey dispatcherKey = new JobKey("fan-out-" + groupSequence.incrementAndGet(), dispatcherGroup);
+            TriggerKey triggerKey = new TriggerKey("trg-" + dispatcherKey.getName(), schedule.triggerGroup());
+            group = new Group(schedule, dispatcherKey, triggerKey);
+            groups.put(schedule, group);
+            groupsByDispatcher.put(dispatcherKey, group);
+            created = new Dispatcher(JobBuilder.newJob(FanOutJob.class).withIdentity(dispatcherKey).build(),
+                    trigger.getTriggerBuilder().withIdentity(triggerKey).forJob(dispatcherKey).build());
+        }
+        Member[] members = Arrays.copyOf(group.members, group.members.length + 1);
+        members[members.length - 1] = new Member(jobKey, trigger.getKey());
+        group.members = members;
+        groupsByMember.put(jobKey, group);
+        return created;
+    }
+
+    /**
+     * Takes the job out of its group. A group left empty takes no members anymore, its dispatcher is deleted by
+     * {@link #deleteEmptyGroups} or by its next fire.
+     *
+     * @return false if the job wasn't a member
+     * */
+    synchronized boolean leave(JobKey jobKey) {
+        Group group = groupsByMember.remove(jobKey);
+        if (group == null) {
+            return false;
+        }
+        Member[] members = group.members;
+        List<Member> remaining = new ArrayList<>(members.length);
+        for (Member member : members) {
+            if (!member.jobKey().equals(jobKey)) {
+                remaining.add(member);
+            }
+        }
+        group.members = remaining.toArray(new Member[0]);
+        if (remaining.isEmpty()) {
+            group.empty = true;
+            groups.remove(group.schedule, group);
+        }
+        return true;
+    }
+
+    /**
+     * Forgets the member or the group of the deleted job. The members of a deleted dispatcher stay in the job store
+     * without a trigger.
+     * */
+    public synchronized void jobDeleted(JobKey jobKey) {
+        if (leave(jobKey)) {
+            return;
+        }
+        Group group = groupsByDispatcher.remove(jobKey);
+        if (group == null) {
+            return;
+        }
+        groups.remove(group.schedule, group);
+        for (Member member : group.members) {
+            groupsByMember.remove(member.jobKey(), group);
+        }
+        group.members = new Member[0];
+        group.empty = true;
+    }
+
+    public synchronized void clear() {
+        groups.clear();
+        groupsByMember.clear();
+        groupsByDispatcher.clear();
+    }
+
+    /**
+     * Deletes the dispatchers and triggers of the groups which have no members left.
+     * */
+    void deleteEmptyGroups() throws SchedulerException {
+        List<JobKey> dispatcherKeys = new ArrayList<>();
+        for (Group group : groupsByDispatcher.values()) {
+            if (group.empty) {
+                dispatcherKeys.add(group.dispatcherKey);
+            }
+        }
+        if (dispatcherKeys.isEmpty()) {
+            return;
+        }
+        scheduler.deleteJobs(dispatcherKeys);
+        dispatcherKeys.forEach(groupsByDispatcher::remove); //Groups whose dispatcher was never stored
+    }
+
+    /**
+     * Runs the members of the group fired by the context, each by a JobRunShell of its own. They are handed to idle
+     * workers or the submission queue of the pool without waiting, so a full pool can't block the dispatching worker.
+     * The members the pool has no capacity for run one after another on the dispatching worker, each trying the pool
+     * again first. Pools which can't take a Runnable without waiting run them all there.
+     * */
+    void dispatch(JobExecutionContext context) throws SchedulerException {
+        Group group = groupsByDispatcher.get(context.getJobDetail().getKey());
+        Member[] members = group == null ? new Member[0] : group.members;
+        if (members.length == 0) {
+            deleteEmptyGroups();
+            return;
+        }
+        QuartzScheduler quartzScheduler = QuartzInternals.getQuartzScheduler(scheduler);
+        QuartzSchedulerResources resources = QuartzInternals.getResources(scheduler);
+        if (quartzScheduler == null || resources == null) {
+            throw new SchedulerException("Fan-out triggers need a local Quartz scheduler");
+        }
+        ResizableThreadPool threadPool = resources.getThreadPool() instanceof ResizableThreadPool pool ? pool : null;
+        OperableTrigger trigger = (OperableTrigger) context.getTrigger();
+        List<JobRunShell> overflow = new ArrayList<>();
+        for (int i = 0; i < members.length; i++) {
+            JobRunShell shell = shellOf(quartzScheduler, resources, context, trigger, members[i], i);
+            if (shell != null && (threadPool == null || !threadPool.tryRunInThread(shell))) {
+                overflow.add(shell);
+            }
+        }
+        for (JobRunShell shell : overflow) {
+            if (threadPool == null || !threadPool.tryRunInThread(shell)) {
+                shell.run();
+            }
+        }
+    }
+
+    private static JobRunShell shellOf(QuartzScheduler quartzScheduler, QuartzSchedulerResources resources,
+                                       JobExecutionContext context, OperableTrigger trigger, Member member, int index) {
+        try {
+            JobDetail jobDetail = resources.getJobStore().retrieveJob(member.jobKey());
+            if (jobDetail == null) {
+                return null; //Deleted since the dispatch started
+            }
+            OperableTrigger memberTrigger = (OperableTrigger) trigger.clone();
+            memberTrigger.setKey(member.triggerKey());
+            memberTrigger.setJobKey(member.jobKey());
+            //Executing jobs are told apart by their fire instance, e.g. to interrupt one of them
+            memberTrigger.setFireInstanceId(trigger.getFireInstanceId() + "/" + index);
+            TriggerFiredBundle bundle = new TriggerFiredBundle(jobDetail, memberTrigger, context.getCalendar(), false,
+                    context.getFireTime(), context.getScheduledFireTime(), context.getPreviousFireTime(), context.getNextFireTime());
+            JobRunShell shell = resources.getJobRunShellFactory().createJobRunShell(bundle);
+            shell.initialize(quartzScheduler);
+            return shell;
+        } catch (SchedulerException | RuntimeException e) {
+            log.error("Couldn't dispatch the fire of '{}' from its fan-out trigger", member.jobKey(), e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package lab.scheduler.core;
+
+import lab.scheduler.config.JobInstancePolicy;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.SchedulerException;
+
+/**
+ * The job of the trigger of a fan-out group, it dispatches the jobs of the group's members, see {@link FanOutGroups}.
+ * */
+@JobInstance(JobInstancePolicy.SHARED)
+public class FanOutJob implements Job {
+    @Override
+    public void execute(JobExecutionContext context) throws JobExecutionException {
+        try {
+            FanOutGroups groups = FanOutGroups.of(context.getScheduler());
+            if (groups != null) {
+                groups.dispatch(context);
+            }
+        } catch (SchedulerException e) {
+            throw new JobExecutionException(e);
+        }
+    }
+}
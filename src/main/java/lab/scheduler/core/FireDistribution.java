@@ -0,0 +1,52 @@
+package lab.scheduler.core;
+
+import java.util.Arrays;
+
+/**
+ * How many fires the triggers of a scheduler make in each second of a horizon, e.g. to check how staggering
+ * spreads jobs sharing the same cron second.
+ *
+ * @param schedulerId    the scheduler whose triggers were evaluated
+ * @param fromMs         the start of the first second, a whole second
+ * @param firesPerSecond the number of fires of every second of the horizon
+ */
+public record FireDistribution(String schedulerId, long fromMs, int[] firesPerSecond) {
+
+    public FireDistribution {
+        firesPerSecond = firesPerSecond.clone();
+    }
+
+    @Override
+    public int[] firesPerSecond() {
+        return firesPerSecond.clone();
+    }
+
+    public long totalFires() {
+        return Arrays.stream(firesPerSecond).asLongStream().sum();
+    }
+
+    public int peakFiresPerSecond() {
+        return Arrays.stream(firesPerSecond).max().orElse(0);
+    }
+
+    /**
+     * Returns the number of seconds without any fire.
+     */
+    public int idleSeconds() {
+        return (int) Arrays.stream(firesPerSecond).filter(fires -> fires == 0).count();
+    }
+
+    /**
+     * Returns the mean number of fires per second over the horizon, which is the peak an even spread would reach.
+     */
+    public double meanFiresPerSecond() {
+        return firesPerSecond.length == 0 ? 0 : (double) totalFires() / firesPerSecond.length;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d fires in %ds, peak %d/s, mean %.1f/s, %d idle seconds, per second %s",
+                schedulerId, totalFires(), firesPerSecond.length, peakFiresPerSecond(), meanFiresPerSecond(), idleSeconds(),
+                Arrays.toString(firesPerSecond));
+    }
+}
@@ -0,0 +1,407 @@
+package lab.scheduler.core;
+
+import org.quartz.SchedulerConfigException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * A {@link ResizableThreadPool} backed by a work-stealing {@link ForkJoinPool}, meant for CPU-bound jobs.
+ * The thread count is the pool parallelism. A job runs on a ForkJoin worker, so any
+ * <code>ForkJoinTask</code> it forks (<code>fork()</code>, <code>invokeAll(...)</code>, <code>RecursiveTask</code>)
+ * is queued on the same pool and idle workers steal it instead of waiting for the next job.
+ * </p>
+ * <p>
+ * {@link #blockForAvailableThreads()} reports the parallelism that is really spare, i.e. not taken by
+ * running jobs nor by the subtasks they forked, so the scheduler does not acquire jobs the cores cannot run yet.
+ * </p>
+ */
+public class ForkJoinThreadPool implements ResizableThreadPool {
+
+    private static final long SATURATED_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private volatile int count = Runtime.getRuntime().availableProcessors();
+    private int maxThreadCount = 300;
+    private int prio = Thread.NORM_PRIORITY;
+    private volatile boolean isShutdown = false;
+    private final Object resizeLock = new Object();
+    private final ConcurrencyPermits permits = new ConcurrencyPermits();
+    private final AtomicInteger lastIdNum = new AtomicInteger();
+    private ForkJoinPool forkJoinPool;
+    private String threadNamePrefix;
+    private String schedulerInstanceName;
+    private String schedulerInstanceId;
+    private boolean minSizeReached = false;
+    private final ThreadPoolMetrics metrics = new ThreadPoolMetrics();
+    private final InFlightJobs inFlight = new InFlightJobs();
+    private volatile boolean draining = false;
+    private volatile long drainTimeoutMs = 0;
+    private volatile long drainStart;
+    private volatile long drainDeadline;
+    private volatile DrainReport drainReport;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    public ForkJoinThreadPool() {}
+
+    public ForkJoinThreadPool(int threadCount) {
+        this.count = threadCount;
+        this.maxThreadCount = Math.max(maxThreadCount, threadCount);
+    }
+
+    public Logger getLog() {
+        return log;
+    }
+
+    public int getPoolSize() {
+        return getThreadCount();
+    }
+
+    /**
+     * Sets the parallelism of the ForkJoinPool. It is also the number of jobs which may run at the same time.
+     */
+    public void setThreadCount(int count) {
+        this.count = count;
+        if (this.count > maxThreadCount) {
+            maxThreadCount = this.count;
+        }
+    }
+
+    public int getThreadCount() {
+        return count;
+    }
+
+    public int getCurrentThreadCount() {
+        return count;
+    }
+
+    public void setThreadPriority(int prio) {
+        this.prio = prio;
+    }
+
+    public int getThreadPriority() {
+        return prio;
+    }
+
+    public void setThreadNamePrefix(String prfx) {
+        this.threadNamePrefix = prfx;
+    }
+
+    public String getThreadNamePrefix() {
+        return threadNamePrefix;
+    }
+
+    public void setInstanceId(String schedulerInstanceId) {
+        this.schedulerInstanceId = schedulerInstanceId;
+    }
+
+    public void setInstanceName(String schedulerInstanceName) {
+        this.schedulerInstanceName = schedulerInstanceName;
+    }
+
+    public void setMaxThreadCount(int maxThreadCount) {
+        if (maxThreadCount < 1) {
+            throw new IllegalArgumentException("maxThreadCount must be at least 1");
+        }
+        this.maxThreadCount = maxThreadCount;
+    }
+
+    public int getMaxThreadCount() {
+        return maxThreadCount;
+    }
+
+    /**
+     * Returns the underlying pool, e.g. for a job which wants to <code>invoke</code> a task graph explicitly.
+     */
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    public void initialize() throws SchedulerConfigException {
+        if (forkJoinPool != null)
+            return;
+
+        if (count <= 0) {
+            throw new SchedulerConfigException("Thread count must be > 0");
+        }
+
+        if (prio <= 0 || prio > 9) {
+            throw new SchedulerConfigException("Thread priority must be > 0 and <= 9");
+        }
+
+        String threadPrefix = getThreadNamePrefix();
+        if (threadPrefix == null) {
+            threadPrefix = schedulerInstanceName + "_ForkJoinWorker";
+        }
+        final String prefix = threadPrefix;
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool -> {
+            ForkJoinWorkerThread wt = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            wt.setName(prefix + "-" + lastIdNum.incrementAndGet());
+            wt.setPriority(prio);
+            return wt;
+        };
+        forkJoinPool = new ForkJoinPool(count, factory,
+                (t, e) -> getLog().error("Error while executing the Runnable: ", e), false);
+        permits.release(count);
+        ResizableSimpleThreadPoolManager.getInstance().register(schedulerInstanceId, this);
+    }
+
+    public int addWorkerThread(int createCount) {
+        if (forkJoinPool == null) {
+            getLog().info("The thread pool " + ForkJoinThreadPool.class.getName() + " is not initialized");
+            return 0;
+        }
+
+        synchronized (resizeLock) {
+            if (isShutdown) {
+                return 0;
+            }
+
+            if (minSizeReached) { //Same rule as ResizableSimpleThreadPool: the parallelism of 1 left after the last job was removed is reused.
+                createCount = createCount - 1;
+                if (createCount >= 0) {
+                    minSizeReached = false;
+                }
+                if (createCount == 0) {
+                    return 0;
+                }
+            }
+
+            if (createCount <= 0) {
+                return 0;
+            }
+
+            if ((count + createCount) > maxThreadCount) {
+                metrics.rejectedGrows.increment();
+                getLog().warn("Max thread count reached. Current parallelism: " + count + ", Count to add: " + createCount + ", Max thread count: " + maxThreadCount);
+                return 0;
+            }
+
+            count += createCount;
+            forkJoinPool.setParallelism(count);
+            permits.release(createCount);
+            metrics.recordGrow(createCount);
+        }
+        getLog().info("Raised the parallelism by " + createCount + " to " + count);
+        return createCount;
+    }
+
+    public int removeWorkerThread(int removeCount) {
+        if (forkJoinPool == null)
+            return 0;
+
+        synchronized (resizeLock) {
+            if (removeCount >= count) {
+                removeCount = count - 1; //Parallelism must be 1 at least.
+            }
+
+            if (count == 1) {
+                minSizeReached = true;
+                return 0;
+            }
+
+            if (removeCount <= 0) {
+                return 0;
+            }
+
+            count -= removeCount;
+            forkJoinPool.setParallelism(count); //Surplus workers retire once they run out of work to steal.
+            permits.reducePermits(removeCount);
+            metrics.recordShrink(removeCount);
+        }
+        getLog().info("Lowered the parallelism by " + removeCount + " to " + count);
+        return removeCount;
+    }
+
+    public void shutdown() {
+        shutdown(true);
+    }
+
+    public void beginDrain(long timeoutMs) {
+        if (timeoutMs < 1) {
+            throw new IllegalArgumentException("timeoutMs must be at least 1");
+        }
+        drainTimeoutMs = timeoutMs;
+        drainStart = System.nanoTime();
+        drainDeadline = drainStart + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        draining = true;
+    }
+
+    public DrainReport getDrainReport() {
+        return drainReport;
+    }
+
+    public void shutdown(boolean waitForJobsToComplete) {
+        getLog().debug("Shutting down threadpool...");
+        isShutdown = true;
+
+        if (forkJoinPool == null) // case where the pool wasn't even initialize()ed
+            return;
+
+        long shutdownStart = draining ? drainStart : System.nanoTime();
+        List<String> cutOffJobs = List.of();
+        forkJoinPool.shutdown();
+        if (waitForJobsToComplete) {
+            boolean interrupted = false;
+            try {
+                if (draining) {
+                    long remaining = drainDeadline - System.nanoTime();
+                    if (!forkJoinPool.awaitTermination(Math.max(remaining, 0), TimeUnit.NANOSECONDS)
+                            | !inFlight.awaitEmpty(drainDeadline)) {
+                        cutOffJobs = inFlight.interruptAll();
+                        getLog().warn("Drain deadline of " + drainTimeoutMs + "ms passed, interrupted "
+                                + cutOffJobs.size() + " running job(s): " + cutOffJobs);
+                    }
+                } else {
+                    // note: with waiting infinite time the
+                    // application may appear to 'hang'.
+                    while (!forkJoinPool.awaitTermination(2, TimeUnit.SECONDS)) {
+                        getLog().debug("Waiting for " + forkJoinPool.getActiveThreadCount() + " active worker(s) to finish");
+                    }
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (cutOffJobs.isEmpty()) {
+                getLog().debug("No executing jobs remaining, all threads stopped.");
+            }
+        }
+        drainReport = new DrainReport(schedulerInstanceId, waitForJobsToComplete && draining ? drainTimeoutMs : 0,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - shutdownStart), cutOffJobs, null);
+        getLog().debug("Shutdown of threadpool complete.");
+        ResizableSimpleThreadPoolManager.getInstance().remove(schedulerInstanceId);
+    }
+
+    /**
+     * <p>
+     * Submit the given <code>Runnable</code> to the ForkJoinPool once the number of running jobs
+     * is under the parallelism. If the pool is asked to shut down while waiting, the Runnable is
+     * executed on a new additional thread since the ForkJoinPool no longer accepts tasks.
+     * </p>
+     */
+    public boolean runInThread(Runnable runnable) {
+        if (runnable == null) {
+            return false;
+        }
+
+        long waitStart = System.nanoTime();
+        boolean acquired = false;
+        while (!acquired && !isShutdown && !draining) {
+            try {
+                acquired = permits.tryAcquire(500, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ignore) {
+            }
+        }
+        metrics.handoffWait.recordNanos(System.nanoTime() - waitStart);
+
+        if (!acquired) {
+            runOnLastJobThread(runnable);
+            return true;
+        }
+        execute(runnable);
+        return true;
+    }
+
+    @Override
+    public boolean tryRunInThread(Runnable runnable) {
+        if (runnable == null || isShutdown || draining || !permits.tryAcquire()) {
+            return false;
+        }
+        execute(runnable);
+        return true;
+    }
+
+    private void execute(Runnable runnable) {
+        try {
+            forkJoinPool.execute(() -> {
+                long started = System.nanoTime();
+                inFlight.track(Thread.currentThread(), runnable);
+                try {
+                    runnable.run();
+                } catch (Throwable exceptionInRunnable) {
+                    getLog().error("Error while executing the Runnable: ", exceptionInRunnable);
+                } finally {
+                    inFlight.untrack(Thread.currentThread());
+                    metrics.jobRunTime.recordNanos(System.nanoTime() - started);
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The ForkJoinPool was shut down after the permit was taken
+            permits.release();
+            runOnLastJobThread(runnable);
+        }
+    }
+
+    private void runOnLastJobThread(Runnable runnable) {
+        Thread lastJob = new Thread(() -> {
+            try {
+                runnable.run();
+            } finally {
+                inFlight.untrack(Thread.currentThread());
+            }
+        }, "ForkJoinWorker-LastJob");
+        lastJob.setPriority(prio);
+        inFlight.track(lastJob, runnable);
+        lastJob.start();
+    }
+
+    public int blockForAvailableThreads() {
+        if (draining) {
+            // No new triggers while draining, the scheduler thread only has to notice it was halted
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+            return 0;
+        }
+        while (!isShutdown && !draining) {
+            boolean hasPermit = false;
+            try {
+                hasPermit = permits.tryAcquire(500, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ignore) {
+            }
+            if (!hasPermit) {
+                continue;
+            }
+            permits.release();
+
+            int spare = getSpareParallelism();
+            if (spare > 0) {
+                return spare;
+            }
+            // A job slot is free but the cores are busy with forked subtasks.
+            LockSupport.parkNanos(this, SATURATED_PARK_NANOS);
+        }
+        return Math.max(getSpareParallelism(), 0);
+    }
+
+    public ThreadPoolMetricsSnapshot getMetrics() {
+        if (forkJoinPool == null) {
+            return metrics.snapshot(getClass().getName(), 0, 0, 0, maxThreadCount, 0, 0, 0);
+        }
+        return metrics.snapshot(getClass().getName(), forkJoinPool.getPoolSize(), Math.max(getSpareParallelism(), 0),
+                forkJoinPool.getActiveThreadCount(), maxThreadCount, 0, forkJoinPool.getQueuedSubmissionCount(), 0);
+    }
+
+    /**
+     * Returns how many more jobs the pool can start right now: the free job slots, limited by
+     * the workers which are neither running a task nor have tasks queued for them.
+     */
+    public int getSpareParallelism() {
+        if (forkJoinPool == null) {
+            return 0;
+        }
+        int idleParallelism = forkJoinPool.getParallelism() - forkJoinPool.getActiveThreadCount()
+                - forkJoinPool.getQueuedSubmissionCount();
+        return Math.min(permits.availablePermits(), idleParallelism);
+    }
+}
@@ -0,0 +1,23 @@
+package lab.scheduler.core;
+
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+
+import java.util.function.Consumer;
+
+/**
+ * Job class of the templates with a job function. PooledJobFactory hands out the instance registered for the job,
+ * which calls the function directly. The functions live in memory only, they are not restored by a persistent job store.
+ * */
+public final class FunctionalJob implements Job {
+    private final Consumer<JobExecutionContext> function;
+
+    FunctionalJob(Consumer<JobExecutionContext> function) {
+        this.function = function;
+    }
+
+    @Override
+    public void execute(JobExecutionContext context) {
+        function.accept(context);
+    }
+}
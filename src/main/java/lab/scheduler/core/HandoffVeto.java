@@ -0,0 +1,29 @@
+package lab.scheduler.core;
+
+/**
+ * <p>
+ * Lets a thread pool discard a fired job without leaving its trigger in the job store in a fired state.
+ * The pool runs the job's <code>JobRunShell</code> through {@link #runVetoed(Runnable)} on its own thread,
+ * where {@link lab.scheduler.listeners.HandoffVetoTriggerListener} vetoes the execution. Quartz then completes
+ * the trigger as usual and notifies listeners of the veto, but the job itself never runs.
+ * </p>
+ */
+public final class HandoffVeto {
+
+    private static final ThreadLocal<Boolean> VETOED = new ThreadLocal<>();
+
+    private HandoffVeto() {}
+
+    public static boolean isVetoed() {
+        return VETOED.get() != null;
+    }
+
+    static void runVetoed(Runnable runnable) {
+        VETOED.set(Boolean.TRUE);
+        try {
+            runnable.run();
+        } finally {
+            VETOED.remove();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package lab.scheduler.core;
+
+import org.quartz.JobExecutionContext;
+import org.quartz.core.JobRunShell;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * The Runnables a thread pool is executing right now, by the thread executing them.
+ * Used to wait for running jobs with a deadline and to interrupt and name the ones still running at the deadline.
+ * </p>
+ */
+final class InFlightJobs {
+
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Map<Thread, Runnable> jobs = new ConcurrentHashMap<>();
+
+    void track(Thread thread, Runnable runnable) {
+        jobs.put(thread, runnable);
+    }
+
+    void untrack(Thread thread) {
+        jobs.remove(thread);
+    }
+
+    int size() {
+        return jobs.size();
+    }
+
+    Set<Thread> threads() {
+        return jobs.keySet();
+    }
+
+    /**
+     * Waits until no job is running or the deadline passed.
+     *
+     * @return true if no job is running
+     */
+    boolean awaitEmpty(long deadlineNanos) {
+        boolean interrupted = false;
+        long remaining;
+        while (!jobs.isEmpty() && (remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, Math.min(remaining, POLL_NANOS));
+            interrupted |= Thread.interrupted();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return jobs.isEmpty();
+    }
+
+    /**
+     * Interrupts the threads of all running jobs.
+     *
+     * @return the keys of the interrupted jobs
+     */
+    List<String> interruptAll() {
+        List<String> interruptedJobs = new ArrayList<>();
+        for (Map.Entry<Thread, Runnable> job : jobs.entrySet()) {
+            job.getKey().interrupt();
+            interruptedJobs.add(describe(job.getValue()));
+        }
+        return interruptedJobs;
+    }
+
+    static String describe(Runnable runnable) {
+        if (runnable instanceof JobRunShell) {
+            Object jec = QuartzInternals.readField(JobRunShell.class, "jec", runnable);
+            if (jec instanceof JobExecutionContext) {
+                return ((JobExecutionContext) jec).getJobDetail().getKey().toString();
+            }
+        }
+        return String.valueOf(runnable);
+    }
+}
@@ -0,0 +1,18 @@
+package lab.scheduler.core;
+
+import lab.scheduler.config.JobInstancePolicy;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares how PooledJobFactory provides the instances of the annotated job class.
+ * The jobInstancePolicy of a ScheduleTemplate wins over the annotation.
+ * */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface JobInstance {
+    JobInstancePolicy value();
+}
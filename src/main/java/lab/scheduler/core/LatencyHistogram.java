@@ -0,0 +1,76 @@
+package lab.scheduler.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * A lock-free latency histogram with power-of-two microsecond buckets. Bucket 0 counts values under 1us
+ * and bucket i counts values in [2^(i-1), 2^i) us. Recording is a couple of LongAdder increments, so it can
+ * sit on the handoff path, and reading never blocks writers.
+ * </p>
+ */
+public class LatencyHistogram {
+
+    static final int BUCKETS = 40;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder sumMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void recordNanos(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets[bucket].increment();
+        sumMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        return new Snapshot(total, sumMicros.sum(), maxMicros.get(), counts);
+    }
+
+    /**
+     * An immutable view of a histogram. Percentiles are reported as the upper bound of the bucket they fall in.
+     */
+    public record Snapshot(long count, long sumMicros, long maxMicros, long[] bucketCounts) {
+
+        public double meanMicros() {
+            return count == 0 ? 0 : sumMicros / (double) count;
+        }
+
+        public long percentileMicros(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile * count);
+            long seen = 0;
+            for (int i = 0; i < bucketCounts.length; i++) {
+                seen += bucketCounts[i];
+                if (seen >= rank) {
+                    return Math.min(i == 0 ? 1 : 1L << i, maxMicros);
+                }
+            }
+            return maxMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + String.format("%.1f", meanMicros()) + "us, p50=" + percentileMicros(0.50)
+                    + "us, p99=" + percentileMicros(0.99) + "us, max=" + maxMicros + "us";
+        }
+    }
+}
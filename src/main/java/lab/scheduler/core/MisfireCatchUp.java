@@ -0,0 +1,287 @@
+package lab.scheduler.core;
+
+import lab.scheduler.config.MisfirePolicy;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.SimpleTrigger;
+import org.quartz.Trigger;
+import org.quartz.TriggerKey;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Applies the misfire policies of the templates to the fires which are late but within the misfire threshold, which
+ * Quartz runs one by one. A late fire whose trigger is already due again is vetoed, so a backlog collapses into the
+ * fire of its last due time. FIRE_ONCE drops the vetoed fires and runs that one, SKIP vetoes it too and waits for the
+ * next fire time.
+ * </p>
+ * <p>
+ * CATCH_UP carries them into the fire that runs, which finds the number of fires it covers under
+ * {@link #COVERED_FIRES_KEY} in its merged job data, see {@link #getCoveredFires}. A trigger which misfired counts
+ * the fire times it missed since its previous fire. At most maxParallelism fires covering more than one fire run at
+ * the same time, the others are deferred with their count and triggered again when one completes. A non-durable job
+ * is held durable by {@link DeferredJobHolds} while it has a deferred catch-up, so it outlives its last trigger.
+ * </p>
+ * <p>
+ * The backlogs and deferred catch-ups are dropped with their triggers and jobs,
+ * {@link lab.scheduler.listeners.MisfirePolicySchedulerListener} reports their removal.
+ * </p>
+ */
+@Slf4j
+public class MisfireCatchUp {
+    public static final String MISFIRE_POLICY_KEY = "misfirePolicy";
+    public static final String COVERED_FIRES_KEY = "coveredFires";
+    private static final String PERMIT_KEY = MisfireCatchUp.class.getName() + ".permit";
+    private static final int MAX_COUNTED_FIRES = 100_000;
+
+    private final DeferredJobHolds holds;
+    private final ConcurrencyPermits permits = new ConcurrencyPermits();
+    private volatile int maxParallelism;
+    private final Map<TriggerKey, Integer> backlogs = new ConcurrentHashMap<>();
+    private final Map<JobKey, Integer> deferredCatchUps = new LinkedHashMap<>();
+    private final LongAdder vetoedCount = new LongAdder();
+    private final LongAdder catchUpCount = new LongAdder();
+    private final LongAdder coveredCount = new LongAdder();
+
+    public MisfireCatchUp() {
+        this(new DeferredJobHolds());
+    }
+
+    public MisfireCatchUp(DeferredJobHolds holds) {
+        this.holds = holds;
+    }
+
+    /**
+     * Returns how many fires the execution covers, 1 unless it catches up missed fires.
+     * */
+    public static int getCoveredFires(JobExecutionContext context) {
+        return Math.max(1, intOf(context.getMergedJobDataMap().get(COVERED_FIRES_KEY)));
+    }
+
+    /**
+     * Sets how many catch-up fires may run at the same time. 0 removes the cap.
+     * */
+    public synchronized void setMaxParallelism(int maxParallelism) {
+        if (maxParallelism < 0) {
+            throw new IllegalArgumentException("maxParallelism cannot be negative");
+        }
+        int delta = maxParallelism - this.maxParallelism;
+        if (delta > 0) {
+            permits.release(delta);
+        } else if (delta < 0) {
+            permits.reducePermits(-delta); //Running catch-ups keep their permits, so the new cap applies as they finish.
+        }
+        this.maxParallelism = maxParallelism;
+    }
+
+    public int getMaxParallelism() {
+        return maxParallelism;
+    }
+
+    /**
+     * Returns the number of late fires which were vetoed because their trigger was already due again.
+     * */
+    public long getVetoedCount() {
+        return vetoedCount.sum();
+    }
+
+    /**
+     * Returns the number of fires which ran for more than one fire.
+     * */
+    public long getCatchUpCount() {
+        return catchUpCount.sum();
+    }
+
+    /**
+     * Returns the number of fires the catch-up fires covered in total.
+     * */
+    public long getCoveredCount() {
+        return coveredCount.sum();
+    }
+
+    /**
+     * Decides whether the fire runs.
+     *
+     * @return false if the fire was coalesced or deferred and must be vetoed
+     * */
+    public boolean tryFire(Trigger trigger, JobExecutionContext context) {
+        MisfirePolicy policy = policyOf(context.getJobDetail());
+        if (policy == null || policy == MisfirePolicy.SMART) {
+            return true;
+        }
+        JobDataMap mergedData = context.getMergedJobDataMap();
+        int covered;
+        if (mergedData.containsKey(COVERED_FIRES_KEY)) {
+            covered = getCoveredFires(context); //A deferred catch-up triggered again
+        } else {
+            Date nextFireTime = trigger.getNextFireTime();
+            if (nextFireTime != null && nextFireTime.getTime() <= System.currentTimeMillis()) {
+                if (policy != MisfirePolicy.FIRE_ONCE) {
+                    backlogs.merge(trigger.getKey(), policy == MisfirePolicy.CATCH_UP ? countFires(trigger, context) : 1, Integer::sum);
+                }
+                vetoedCount.increment();
+                return false;
+            }
+            if (policy == MisfirePolicy.SKIP && backlogs.remove(trigger.getKey()) != null) {
+                vetoedCount.increment(); //The last late fire of the backlog
+                return false;
+            }
+            if (policy != MisfirePolicy.CATCH_UP) {
+                return true;
+            }
+            Integer backlog = backlogs.remove(trigger.getKey());
+            covered = countFires(trigger, context) + (backlog == null ? 0 : backlog);
+            mergedData.put(COVERED_FIRES_KEY, covered);
+        }
+        if (covered <= 1) {
+            return true;
+        }
+        if (maxParallelism > 0) {
+            if (!permits.tryAcquire()) {
+                defer(context.getScheduler(), context.getJobDetail(), covered);
+                return false;
+            }
+            context.put(PERMIT_KEY, Boolean.TRUE);
+        }
+        catchUpCount.increment();
+        coveredCount.add(covered);
+        return true;
+    }
+
+    /**
+     * Gives the permit of a completed or vetoed catch-up fire back and triggers a deferred one.
+     * */
+    public void release(JobExecutionContext context) {
+        if (context.get(PERMIT_KEY) != Boolean.TRUE) {
+            return;
+        }
+        context.put(PERMIT_KEY, null);
+        permits.release();
+        replay(context.getScheduler(), takeDeferred());
+    }
+
+    /**
+     * Drops the backlog of a trigger which was unscheduled or has no fire times left.
+     * */
+    public void triggerRemoved(TriggerKey triggerKey) {
+        backlogs.remove(triggerKey);
+    }
+
+    /**
+     * Drops the deferred catch-up of a job deleted from the scheduler.
+     * */
+    public synchronized void jobDeleted(JobKey jobKey) {
+        deferredCatchUps.remove(jobKey);
+        holds.jobDeleted(jobKey);
+    }
+
+    /**
+     * Drops all backlogs and deferred catch-ups, after the scheduling data of the scheduler was cleared.
+     * */
+    public synchronized void clear() {
+        backlogs.clear();
+        deferredCatchUps.keySet().forEach(holds::jobDeleted);
+        deferredCatchUps.clear();
+    }
+
+    /**
+     * Remembers the catch-up as deferred. A completing catch-up triggers it again, but if the last of them completed
+     * after this one failed to take its permit and before it was deferred, none would. So a deferred catch-up is
+     * triggered again if a permit is free by now.
+     * */
+    private void defer(Scheduler scheduler, JobDetail jobDetail, int covered) {
+        JobKey jobKey = jobDetail.getKey();
+        synchronized (this) {
+            deferredCatchUps.merge(jobKey, covered, Integer::sum);
+        }
+        if (!jobDetail.isDurable() || holds.isHeld(jobKey)) {
+            holds.update(scheduler, jobKey, this, () -> hasDeferred(jobKey));
+        }
+        if (permits.availablePermits() > 0) {
+            replay(scheduler, takeDeferred());
+        }
+    }
+
+    private void replay(Scheduler scheduler, Map.Entry<JobKey, Integer> deferred) {
+        if (deferred == null) {
+            return;
+        }
+        JobKey jobKey = deferred.getKey();
+        try {
+            scheduler.triggerJob(jobKey, new JobDataMap(Map.of(COVERED_FIRES_KEY, deferred.getValue())));
+        } catch (SchedulerException e) {
+            log.warn("Dropped a catch-up of {} fires of '{}': {}", deferred.getValue(), jobKey, e.getMessage());
+        }
+        holds.update(scheduler, jobKey, this, () -> hasDeferred(jobKey));
+    }
+
+    private synchronized boolean hasDeferred(JobKey jobKey) {
+        return deferredCatchUps.containsKey(jobKey);
+    }
+
+    private synchronized Map.Entry<JobKey, Integer> takeDeferred() {
+        Iterator<Map.Entry<JobKey, Integer>> iterator = deferredCatchUps.entrySet().iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        Map.Entry<JobKey, Integer> deferred = iterator.next();
+        iterator.remove();
+        return Map.entry(deferred.getKey(), deferred.getValue());
+    }
+
+    /**
+     * Counts the fire times of the trigger after its previous fire, or from its start time for its first fire,
+     * up to this one. It is 1 for a fire on time.
+     * */
+    private static int countFires(Trigger trigger, JobExecutionContext context) {
+        Date previous = context.getPreviousFireTime();
+        Date scheduled = context.getScheduledFireTime();
+        if (scheduled == null) {
+            return 1;
+        }
+        if (previous == null) {
+            if (trigger instanceof SimpleTrigger || trigger.getStartTime() == null) {
+                return 1;
+            }
+            previous = new Date(trigger.getStartTime().getTime() - 1);
+        }
+        if (trigger instanceof SimpleTrigger simpleTrigger) {
+            //Rescheduling a misfired simple trigger moves its start time, the interval still tells the missed fires
+            long interval = simpleTrigger.getRepeatInterval();
+            return interval <= 0 ? 1 : (int) Math.max(1, Math.min(MAX_COUNTED_FIRES, (scheduled.getTime() - previous.getTime()) / interval));
+        }
+        int fires = 0;
+        Date fireTime = trigger.getFireTimeAfter(previous);
+        while (fireTime != null && !fireTime.after(scheduled) && fires < MAX_COUNTED_FIRES) {
+            fires++;
+            fireTime = trigger.getFireTimeAfter(fireTime);
+        }
+        return Math.max(1, fires);
+    }
+
+    private static MisfirePolicy policyOf(JobDetail jobDetail) {
+        Object policy = jobDetail.getJobDataMap().get(MISFIRE_POLICY_KEY);
+        if (policy instanceof MisfirePolicy misfirePolicy) {
+            return misfirePolicy;
+        }
+        return null;
+    }
+
+    private static int intOf(Object value) {
+        if (value instanceof Number number) {
+            return number.intValue();
+        }
+        return 0;
+    }
+}
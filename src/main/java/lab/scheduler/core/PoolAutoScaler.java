@@ -0,0 +1,123 @@
+package lab.scheduler.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * Grows and shrinks a {@link ResizableSimpleThreadPool} from what the pool measured during the last interval:
+ * the time runInThread() waited for an idle worker, the time blockForAvailableThreads() was blocked and
+ * the peak ratio of busy workers.
+ * </p>
+ * <p>
+ * An interval is hot when any of the signals crosses its scale-up threshold and cold when the peak busy ratio
+ * stayed under the scale-down ratio and nothing waited for a worker. The pool grows after
+ * <code>scaleUpIntervals</code> hot intervals in a row and shrinks after <code>scaleDownIntervals</code>
+ * cold intervals in a row, always between <code>minThreadCount</code> and <code>maxThreadCount</code>.
+ * </p>
+ */
+class PoolAutoScaler implements Runnable {
+
+    private final ResizableSimpleThreadPool pool;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private long lastSampleNanos;
+    private int hotIntervals = 0;
+    private int coldIntervals = 0;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    PoolAutoScaler(ResizableSimpleThreadPool pool, String threadName) {
+        this.pool = pool;
+        this.thread = new Thread(this, threadName);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        lastSampleNanos = System.nanoTime();
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void run() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(pool.getAutoScaleIntervalMs());
+        while (running) {
+            LockSupport.parkNanos(this, intervalNanos);
+            if (!running) {
+                break;
+            }
+            try {
+                pool.replaceDeadWorkers();
+                evaluate();
+            } catch (Throwable t) {
+                log.error("Auto scaling of the thread pool failed", t);
+            }
+        }
+    }
+
+    void evaluate() {
+        long now = System.nanoTime();
+        long elapsedNanos = Math.max(1, now - lastSampleNanos);
+        lastSampleNanos = now;
+
+        ResizableSimpleThreadPool.UtilizationSample sample = pool.sampleUtilization();
+        int live = sample.liveWorkers();
+        if (live < 1) {
+            return;
+        }
+        double peakBusyRatio = sample.peakBusyWorkers() / (double) live;
+        double avgHandoffWaitMs = sample.handoffs() == 0 ? 0 : sample.handoffWaitNanos() / (double) sample.handoffs() / 1_000_000;
+        double blockedRatio = Math.min(1.0, sample.blockedNanos() / (double) elapsedNanos); //A block may have started in the previous interval
+
+        boolean hot = peakBusyRatio >= pool.getScaleUpBusyRatio()
+                || avgHandoffWaitMs >= pool.getScaleUpHandoffWaitMs()
+                || blockedRatio >= pool.getScaleUpBlockedRatio();
+        boolean cold = !hot && peakBusyRatio <= pool.getScaleDownBusyRatio() && sample.blockedNanos() == 0;
+
+        if (hot) {
+            coldIntervals = 0;
+            if (++hotIntervals >= pool.getScaleUpIntervals()) {
+                hotIntervals = 0;
+                grow(live, peakBusyRatio, avgHandoffWaitMs, blockedRatio);
+            }
+        } else if (cold) {
+            hotIntervals = 0;
+            if (++coldIntervals >= pool.getScaleDownIntervals()) {
+                coldIntervals = 0;
+                shrink(live, sample.peakBusyWorkers());
+            }
+        } else {
+            hotIntervals = 0;
+            coldIntervals = 0;
+        }
+    }
+
+    private void grow(int live, double peakBusyRatio, double avgHandoffWaitMs, double blockedRatio) {
+        int step = Math.max(1, (int) Math.ceil(live * 0.25)); //Grow by a quarter so a burst is absorbed in a few intervals
+        step = Math.min(step, pool.getMaxThreadCount() - live);
+        if (step <= 0) {
+            return;
+        }
+        log.info("Auto scaling up by {} workers. busy ratio: {}, avg handoff wait: {}ms, blocked ratio: {}",
+                step, String.format("%.2f", peakBusyRatio), String.format("%.2f", avgHandoffWaitMs), String.format("%.2f", blockedRatio));
+        ResizableSimpleThreadPoolManager.getInstance().addWorkerThread(pool, pool.getSchedulerInstanceId(), step);
+    }
+
+    private void shrink(int live, int peakBusy) {
+        int step = Math.max(1, (live - peakBusy) / 2); //Give back half of the idle workers at a time
+        step = Math.min(step, live - Math.max(1, pool.getMinThreadCount()));
+        if (step <= 0) {
+            return;
+        }
+        log.info("Auto scaling down by {} workers. peak busy workers: {} of {}", step, peakBusy, live);
+        pool.removeWorkerThread(step);
+    }
+}
@@ -0,0 +1,186 @@
+package lab.scheduler.core;
+
+import lab.scheduler.config.JobInstancePolicy;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.*;
+import org.quartz.listeners.TriggerListenerSupport;
+import org.quartz.simpl.PropertySettingJobFactory;
+import org.quartz.spi.TriggerFiredBundle;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * JobFactory which reuses job instances instead of creating one per fire, decided per job by its JobInstancePolicy.
+ * <p>
+ * NEW (default) creates an instance per fire like Quartz's PropertySettingJobFactory. SHARED creates one instance per
+ * job class which all fires run on concurrently, so the class must be stateless; no job data is set on it. POOLED
+ * takes an idle instance of the job class, sets the job data on it again and returns it to the pool once the fire
+ * completed, so an instance runs one fire at a time. The pool grows to the number of concurrent fires of the class.
+ * Pooled instances keep the state of their previous fire, their setters must not rely on defaults.
+ * <p>
+ * The policy is read from the job data of the job, set by ScheduleTemplate, or else from the @JobInstance annotation of the class.
+ * <p>
+ * Jobs of templates with a job function get the FunctionalJob registered for their key, without reflection or copying job data.
+ * */
+@Slf4j
+public class PooledJobFactory extends PropertySettingJobFactory {
+    public static final String POLICY_KEY = "jobInstancePolicy";
+
+    private final Map<Class<? extends Job>, JobInstancePolicy> annotatedPolicies = new ConcurrentHashMap<>();
+    private final Map<Class<? extends Job>, Job> sharedInstances = new ConcurrentHashMap<>();
+    private final Map<Class<? extends Job>, Queue<Job>> pools = new ConcurrentHashMap<>();
+    private final Map<String, Map<JobKey, Job>> functionalJobs = new ConcurrentHashMap<>();
+    private final LongAdder createdInstances = new LongAdder();
+    private final LongAdder reusedInstances = new LongAdder();
+    private final ReleaseListener releaseListener = new ReleaseListener();
+
+    /**
+     * Returns pooled instances once their fire is complete. The trigger listener releases them in triggerComplete, which
+     * Quartz calls after every job listener saw the fire; the job listener only releases the instances of vetoed fires,
+     * which never complete.
+     * */
+    public final class ReleaseListener extends TriggerListenerSupport implements JobListener {
+        @Override
+        public String getName() {
+            return "PooledJobFactoryReleaseListener";
+        }
+
+        @Override
+        public void triggerComplete(Trigger trigger, JobExecutionContext context, Trigger.CompletedExecutionInstruction triggerInstructionCode) {
+            release(context.getJobDetail(), context.getJobInstance());
+        }
+
+        @Override
+        public void jobToBeExecuted(JobExecutionContext context) {
+        }
+
+        @Override
+        public void jobExecutionVetoed(JobExecutionContext context) {
+            release(context.getJobDetail(), context.getJobInstance());
+        }
+
+        @Override
+        public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException) {
+        }
+    }
+
+    @Override
+    public Job newJob(TriggerFiredBundle bundle, Scheduler scheduler) throws SchedulerException {
+        JobDetail jobDetail = bundle.getJobDetail();
+        Class<? extends Job> jobClass = jobDetail.getJobClass();
+        if (jobClass == FunctionalJob.class) {
+            Map<JobKey, Job> jobs = functionalJobs.get(scheduler.getSchedulerName());
+            Job job = jobs == null ? null : jobs.get(jobDetail.getKey());
+            if (job == null) {
+                throw new SchedulerException("No job function is registered for the job '" + jobDetail.getKey() + "'");
+            }
+            return job;
+        }
+        switch (policyOf(jobDetail)) {
+            case SHARED -> {
+                Job job = sharedInstances.get(jobClass);
+                if (job != null) {
+                    reusedInstances.increment();
+                    return job;
+                }
+                Job created = instantiate(jobClass);
+                job = sharedInstances.putIfAbsent(jobClass, created);
+                return job != null ? job : created;
+            }
+            case POOLED -> {
+                Queue<Job> pool = pools.get(jobClass);
+                Job job = pool == null ? null : pool.poll();
+                if (job == null) {
+                    createdInstances.increment();
+                    return super.newJob(bundle, scheduler);
+                }
+                JobDataMap jobDataMap = new JobDataMap();
+                jobDataMap.putAll(scheduler.getContext());
+                jobDataMap.putAll(jobDetail.getJobDataMap());
+                jobDataMap.putAll(bundle.getTrigger().getJobDataMap());
+                setBeanProps(job, jobDataMap);
+                reusedInstances.increment();
+                return job;
+            }
+            default -> {
+                createdInstances.increment();
+                return super.newJob(bundle, scheduler);
+            }
+        }
+    }
+
+    /**
+     * Returns the instance of a completed fire to the pool of its job class if the job is POOLED. The FunctionalJob
+     * of a job function is registered for its key instead and never pooled.
+     * */
+    public void release(JobDetail jobDetail, Job job) {
+        if (jobDetail == null || job == null || job instanceof FunctionalJob || policyOf(jobDetail) != JobInstancePolicy.POOLED) {
+            return;
+        }
+        pools.computeIfAbsent(jobDetail.getJobClass(), jobClass -> new ConcurrentLinkedQueue<>()).offer(job);
+    }
+
+    /**
+     * Registers the function the job runs on every fire. It must be registered before the job is stored.
+     * */
+    public void registerFunction(String schedulerName, JobKey jobKey, Consumer<JobExecutionContext> function) {
+        functionalJobs.computeIfAbsent(schedulerName, name -> new ConcurrentHashMap<>()).put(jobKey, new FunctionalJob(function));
+    }
+
+    public void unregisterFunction(String schedulerName, JobKey jobKey) {
+        Map<JobKey, Job> jobs = functionalJobs.get(schedulerName);
+        if (jobs != null) {
+            jobs.remove(jobKey);
+        }
+    }
+
+    /**
+     * Returns the listener which returns pooled instances after their fire. It must be added to every scheduler using
+     * this factory as trigger and as job listener, after its other listeners so none of them sees an instance which
+     * already runs another fire. Added through SchedulerManager it completes after the stage of an AsyncJob.
+     * */
+    public ReleaseListener getReleaseListener() {
+        return releaseListener;
+    }
+
+    /**
+     * Returns the idle instances of the POOLED job class, which wait in its pool for the next fire.
+     * */
+    public int getIdleInstances(Class<? extends Job> jobClass) {
+        Queue<Job> pool = pools.get(jobClass);
+        return pool == null ? 0 : pool.size();
+    }
+
+    public long getCreatedInstances() {
+        return createdInstances.sum();
+    }
+
+    public long getReusedInstances() {
+        return reusedInstances.sum();
+    }
+
+    private JobInstancePolicy policyOf(JobDetail jobDetail) {
+        Object policy = jobDetail.getJobDataMap().get(POLICY_KEY);
+        if (policy instanceof JobInstancePolicy jobInstancePolicy) {
+            return jobInstancePolicy;
+        }
+        return annotatedPolicies.computeIfAbsent(jobDetail.getJobClass(), jobClass -> {
+            JobInstance annotation = jobClass.getAnnotation(JobInstance.class);
+            return annotation == null ? JobInstancePolicy.NEW : annotation.value();
+        });
+    }
+
+    private Job instantiate(Class<? extends Job> jobClass) throws SchedulerException {
+        try {
+            createdInstances.increment();
+            return jobClass.getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            throw new SchedulerException("Problem instantiating class '" + jobClass.getName() + "'", e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package lab.scheduler.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.Scheduler;
+import org.quartz.core.QuartzScheduler;
+import org.quartz.core.QuartzSchedulerResources;
+import org.quartz.impl.StdScheduler;
+
+import java.lang.reflect.Field;
+
+/**
+ * <p>
+ * Access to the parts of a running Quartz scheduler which Quartz 2.3 does not expose.
+ * Every accessor returns null when the scheduler is not a local StdScheduler or the field cannot be read,
+ * callers must then keep Quartz's default behavior.
+ * </p>
+ */
+@Slf4j
+final class QuartzInternals {
+
+    private QuartzInternals() {}
+
+    static QuartzScheduler getQuartzScheduler(Scheduler scheduler) {
+        if (!(scheduler instanceof StdScheduler)) {
+            return null;
+        }
+        return (QuartzScheduler) readField(StdScheduler.class, "sched", scheduler);
+    }
+
+    static QuartzSchedulerResources getResources(Scheduler scheduler) {
+        QuartzScheduler quartzScheduler = getQuartzScheduler(scheduler);
+        if (quartzScheduler == null) {
+            return null;
+        }
+        return (QuartzSchedulerResources) readField(QuartzScheduler.class, "resources", quartzScheduler);
+    }
+
+    static Object readField(Class<?> declaringClass, String fieldName, Object target) {
+        try {
+            Field field = declaringClass.getDeclaredField(fieldName);
+            field.setAccessible(true);
+            return field.get(target);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Could not read {}.{} of the Quartz scheduler: {}", declaringClass.getSimpleName(), fieldName, e.toString());
+            return null;
+        }
+    }
+}
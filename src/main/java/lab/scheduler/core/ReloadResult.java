@@ -0,0 +1,42 @@
+package lab.scheduler.core;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of reloading the schedule templates of a running scheduler.
+ *
+ * @param schedulerId the reloaded scheduler
+ * @param added       the job names of the templates which were scheduled
+ * @param removed     the job names of the templates which were unscheduled
+ * @param changed     the job names of the templates whose job and trigger were replaced
+ * @param unchanged   the number of templates whose triggers kept running untouched
+ * @param threadDelta the number of workers added, negative if workers were removed
+ * @param failures    the exception of every template which could not be applied, by job name
+ * @param elapsedMs   how long the reload took
+ */
+public record ReloadResult(String schedulerId,
+                           List<String> added,
+                           List<String> removed,
+                           List<String> changed,
+                           int unchanged,
+                           int threadDelta,
+                           Map<String, Exception> failures,
+                           long elapsedMs) {
+
+    public ReloadResult {
+        added = List.copyOf(added);
+        removed = List.copyOf(removed);
+        changed = List.copyOf(changed);
+        failures = failures == null ? Map.of() : Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+    }
+
+    /**
+     * Returns true if every difference of the new config was applied.
+     */
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+}
@@ -1,35 +1,82 @@
 package lab.scheduler.core;
 
+import lab.scheduler.config.QueueOverflowPolicy;
 import org.quartz.SchedulerConfigException;
-import org.quartz.simpl.SimpleThreadPool;
-import org.quartz.spi.ThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.concurrent.locks.LockSupport;
 
-public class ResizableSimpleThreadPool implements ThreadPool {
+public class ResizableSimpleThreadPool implements ResizableThreadPool {
+
+    private static final long HANDOFF_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(500); //Upper bound of a park in case a wakeup is missed.
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long DEAD_WORKER_CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
 
     private int count = 1;
     private int maxThreadCount = 300;
     private int prio = Thread.NORM_PRIORITY;
-    private boolean isShutdown = false;
-    private boolean handoffPending = false;
+    private volatile boolean isShutdown = false;
     private boolean inheritLoader = false;
     private boolean inheritGroup = true;
     private ThreadGroup threadGroup;
-    private final Object nextRunnableLock = new Object();
-    private List<WorkerThread> workers;
-    private LinkedList<WorkerThread> availWorkers = new LinkedList<WorkerThread>();
-    private LinkedList<WorkerThread> busyWorkers = new LinkedList<WorkerThread>();
+    private final Object nextRunnableLock = new Object(); //Guards resizing and shutdown only. The handoff path never takes it.
+    private volatile List<WorkerThread> workers;
+    private final ConcurrentLinkedDeque<WorkerThread> availWorkers = new ConcurrentLinkedDeque<WorkerThread>(); //Used as a LIFO stack so the most recently used worker is handed the next job.
+    private final AtomicInteger availCount = new AtomicInteger();
+    private final Set<WorkerThread> busyWorkers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger pendingHandoffs = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Thread> handoffWaiters = new ConcurrentLinkedQueue<Thread>();
     private String threadNamePrefix;
     private String schedulerInstanceName;
     private String schedulerInstanceId;
     private int lastIdNum = 0;
     private boolean minSizeReached = false;
+    private boolean autoScale = false;
+    private int minThreadCount = 1;
+    private long autoScaleIntervalMs = 1000;
+    private double scaleUpBusyRatio = 0.9;
+    private double scaleDownBusyRatio = 0.5;
+    private long scaleUpHandoffWaitMs = 5;
+    private double scaleUpBlockedRatio = 0.05;
+    private int scaleUpIntervals = 1;
+    private int scaleDownIntervals = 30;
+    private PoolAutoScaler autoScaler;
+    private long keepAliveMs = 0;
+    private int coreThreadCount = -1;
+    private volatile long lastDeadWorkerCheck = 0;
+    private final AtomicInteger replacedWorkers = new AtomicInteger();
+    private final ThreadPoolMetrics metrics = new ThreadPoolMetrics();
+    private volatile AdaptiveBatchAcquisition batchAcquisition;
+    private final InFlightJobs inFlight = new InFlightJobs();
+    private volatile boolean draining = false;
+    private volatile long drainTimeoutMs = 0;
+    private volatile long drainStart;
+    private volatile long drainDeadline;
+    private volatile DrainReport drainReport;
+    private int queueCapacity = 0;
+    private long handoffTimeoutMs = 1000;
+    private QueueOverflowPolicy queueOverflowPolicy = QueueOverflowPolicy.CALLER_RUNS;
+    private final ConcurrentLinkedQueue<Runnable> submissionQueue = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicInteger queuedCount = new AtomicInteger();
+    private final LongAdder handoffWaitNanos = new LongAdder();
+    private final LongAdder handoffCount = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private final AtomicInteger peakBusyWorkers = new AtomicInteger();
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -59,6 +106,15 @@ public class ResizableSimpleThreadPool implements ThreadPool {
         return count;
     }
 
+    public int getCurrentThreadCount() {
+        List<WorkerThread> currentWorkers = workers;
+        return currentWorkers == null ? 0 : currentWorkers.size();
+    }
+
+    String getSchedulerInstanceId() {
+        return schedulerInstanceId;
+    }
+
     public void setThreadPriority(int prio) {
         this.prio = prio;
     }
@@ -103,7 +159,7 @@ public class ResizableSimpleThreadPool implements ThreadPool {
 
     public void setMaxThreadCount(int maxThreadCount) {
         if (maxThreadCount < 1) {
-            throw new IllegalArgumentException("maxThreadCount must be greater than 1");
+            throw new IllegalArgumentException("maxThreadCount must be at least 1");
         }
         this.maxThreadCount = maxThreadCount;
     }
@@ -112,6 +168,171 @@ public class ResizableSimpleThreadPool implements ThreadPool {
         return maxThreadCount;
     }
 
+    /**
+     * Sets how long a worker may stay idle before it retires itself while the pool is larger than
+     * the core thread count. 0 disables retirement.
+     */
+    public void setKeepAliveMs(long keepAliveMs) {
+        if (keepAliveMs < 0) {
+            throw new IllegalArgumentException("keepAliveMs cannot be negative");
+        }
+        this.keepAliveMs = keepAliveMs;
+    }
+
+    public long getKeepAliveMs() {
+        return keepAliveMs;
+    }
+
+    /**
+     * Sets the number of workers that never retire after the keep-alive. A negative value means
+     * the thread count the pool was initialized with.
+     */
+    public void setCoreThreadCount(int coreThreadCount) {
+        this.coreThreadCount = coreThreadCount;
+    }
+
+    public int getCoreThreadCount() {
+        return coreThreadCount;
+    }
+
+    /**
+     * Returns how many workers were replaced after they terminated abnormally.
+     */
+    public int getReplacedWorkerCount() {
+        return replacedWorkers.get();
+    }
+
+    /**
+     * Sets the capacity of the queue in front of the workers. When it is greater than 0, a fired job which finds
+     * no idle worker is queued instead of blocking the scheduler thread, and the scheduler thread never blocks
+     * longer than handoffTimeoutMs. 0 (default) disables the queue.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("queueCapacity cannot be negative");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setHandoffTimeoutMs(long handoffTimeoutMs) {
+        if (handoffTimeoutMs < 1) {
+            throw new IllegalArgumentException("handoffTimeoutMs must be at least 1");
+        }
+        this.handoffTimeoutMs = handoffTimeoutMs;
+    }
+
+    public long getHandoffTimeoutMs() {
+        return handoffTimeoutMs;
+    }
+
+    /**
+     * Sets what happens to a fired job when the queue stayed full for handoffTimeoutMs:
+     * CALLER_RUNS runs it on the scheduler thread, DROP_OLDEST skips the oldest queued fire and queues this one,
+     * MISFIRE skips this fire. Skipped fires are vetoed through HandoffVetoTriggerListener.
+     */
+    public void setQueueOverflowPolicy(String queueOverflowPolicy) {
+        this.queueOverflowPolicy = QueueOverflowPolicy.valueOf(queueOverflowPolicy.toUpperCase().trim());
+    }
+
+    public String getQueueOverflowPolicy() {
+        return queueOverflowPolicy.name();
+    }
+
+    public int getQueueDepth() {
+        return Math.max(queuedCount.get(), 0);
+    }
+
+    /**
+     * Enables resizing the pool from its measured utilization, see {@link PoolAutoScaler}.
+     */
+    public void setAutoScale(boolean autoScale) {
+        this.autoScale = autoScale;
+    }
+
+    public boolean isAutoScale() {
+        return autoScale;
+    }
+
+    public void setMinThreadCount(int minThreadCount) {
+        if (minThreadCount < 1) {
+            throw new IllegalArgumentException("minThreadCount must be at least 1");
+        }
+        this.minThreadCount = minThreadCount;
+    }
+
+    public int getMinThreadCount() {
+        return minThreadCount;
+    }
+
+    public void setAutoScaleIntervalMs(long autoScaleIntervalMs) {
+        if (autoScaleIntervalMs < 10) {
+            throw new IllegalArgumentException("autoScaleIntervalMs must be at least 10");
+        }
+        this.autoScaleIntervalMs = autoScaleIntervalMs;
+    }
+
+    public long getAutoScaleIntervalMs() {
+        return autoScaleIntervalMs;
+    }
+
+    public void setScaleUpBusyRatio(double scaleUpBusyRatio) {
+        this.scaleUpBusyRatio = scaleUpBusyRatio;
+    }
+
+    public double getScaleUpBusyRatio() {
+        return scaleUpBusyRatio;
+    }
+
+    public void setScaleDownBusyRatio(double scaleDownBusyRatio) {
+        this.scaleDownBusyRatio = scaleDownBusyRatio;
+    }
+
+    public double getScaleDownBusyRatio() {
+        return scaleDownBusyRatio;
+    }
+
+    public void setScaleUpHandoffWaitMs(long scaleUpHandoffWaitMs) {
+        this.scaleUpHandoffWaitMs = scaleUpHandoffWaitMs;
+    }
+
+    public long getScaleUpHandoffWaitMs() {
+        return scaleUpHandoffWaitMs;
+    }
+
+    public void setScaleUpBlockedRatio(double scaleUpBlockedRatio) {
+        this.scaleUpBlockedRatio = scaleUpBlockedRatio;
+    }
+
+    public double getScaleUpBlockedRatio() {
+        return scaleUpBlockedRatio;
+    }
+
+    public void setScaleUpIntervals(int scaleUpIntervals) {
+        if (scaleUpIntervals < 1) {
+            throw new IllegalArgumentException("scaleUpIntervals must be at least 1");
+        }
+        this.scaleUpIntervals = scaleUpIntervals;
+    }
+
+    public int getScaleUpIntervals() {
+        return scaleUpIntervals;
+    }
+
+    public void setScaleDownIntervals(int scaleDownIntervals) {
+        if (scaleDownIntervals < 1) {
+            throw new IllegalArgumentException("scaleDownIntervals must be at least 1");
+        }
+        this.scaleDownIntervals = scaleDownIntervals;
+    }
+
+    public int getScaleDownIntervals() {
+        return scaleDownIntervals;
+    }
+
     public void initialize() throws SchedulerConfigException {
 
         if(workers != null && workers.size() > 0) // already initialized...
@@ -127,6 +348,27 @@ public class ResizableSimpleThreadPool implements ThreadPool {
                     "Thread priority must be > 0 and <= 9");
         }
 
+        if (queueCapacity > 0 && handoffTimeoutMs < 1) {
+            throw new SchedulerConfigException(
+                    "handoffTimeoutMs must be >= 1 when the submission queue is enabled");
+        }
+
+        if (autoScale) {
+            if (minThreadCount > maxThreadCount) {
+                throw new SchedulerConfigException(
+                        "minThreadCount must be <= maxThreadCount");
+            }
+            if (scaleDownBusyRatio < 0 || scaleDownBusyRatio >= scaleUpBusyRatio || scaleUpBusyRatio > 1) {
+                throw new SchedulerConfigException(
+                        "Busy ratios must satisfy 0 <= scaleDownBusyRatio < scaleUpBusyRatio <= 1");
+            }
+            count = Math.min(Math.max(count, minThreadCount), maxThreadCount);
+        }
+
+        if (coreThreadCount < 0) {
+            coreThreadCount = count;
+        }
+
         if(isThreadsInheritGroupOfInitializingThread()) {
             threadGroup = Thread.currentThread().getThreadGroup();
         } else {
@@ -151,16 +393,20 @@ public class ResizableSimpleThreadPool implements ThreadPool {
         while(workerThreads.hasNext()) {
             WorkerThread wt = workerThreads.next();
             wt.start();
-            availWorkers.add(wt);
+            pushAvailable(wt);
+        }
+        if (autoScale) {
+            autoScaler = new PoolAutoScaler(this, schedulerInstanceName + "_AutoScaler");
+            autoScaler.start();
         }
         ResizableSimpleThreadPoolManager.getInstance().register(schedulerInstanceId, this);
     }
 
     protected List<WorkerThread> createWorkerThreads(int createCount) {
         if (workers == null) {
-            workers = new LinkedList<WorkerThread>();
+            workers = new CopyOnWriteArrayList<WorkerThread>(); //Written only while resizing, iterated on shutdown.
         }
-        List<WorkerThread> newWorkerThreads = new LinkedList<>();
+        List<WorkerThread> newWorkerThreads = new ArrayList<>();
         for (int i = 1; i<= createCount; ++i) {
             String threadPrefix = getThreadNamePrefix();
             if (threadPrefix == null) {
@@ -180,74 +426,84 @@ public class ResizableSimpleThreadPool implements ThreadPool {
         return newWorkerThreads;
     }
 
-    int addWorkerThread(int createCount) {
+    public int addWorkerThread(int createCount) {
         if(workers == null) {
             getLog().info("The thread pool " + ResizableSimpleThreadPool.class.getName() + " is not initialized");
             return 0;
         }
 
-        if (minSizeReached) { //This flag means that all jobs of this pool were removed and the current pool size is 1.
-            createCount = createCount - 1; //Prevent the increase of unnecessary thread.
-            if (createCount >= 0) {
-                minSizeReached = false; //Change flag to false only when the add size is greater or equal than 0.
-            }
-            if (createCount == 0) { //The createCount '0' at this 'if block' means that it originally '1'. The pool already has 1 thread in it, so no necessity to add.
+        synchronized (nextRunnableLock) {
+            if (isShutdown) {
                 return 0;
             }
-        }
 
-        if (createCount <= 0) {
-            return 0;
-        }
+            if (minSizeReached) { //This flag means that all jobs of this pool were removed and the current pool size is 1.
+                createCount = createCount - 1; //Prevent the increase of unnecessary thread.
+                if (createCount >= 0) {
+                    minSizeReached = false; //Change flag to false only when the add size is greater or equal than 0.
+                }
+                if (createCount == 0) { //The createCount '0' at this 'if block' means that it originally '1'. The pool already has 1 thread in it, so no necessity to add.
+                    return 0;
+                }
+            }
 
-        if ((workers.size() + createCount) > maxThreadCount) {
-            getLog().warn("Max thread count reached. Current threads: " + workers.size() + ", Count to add: " + createCount + ", Max thread count: " + maxThreadCount);
-            return 0;
-        }
+            if (createCount <= 0) {
+                return 0;
+            }
 
-        Iterator<WorkerThread> addedWorkerThreads = createWorkerThreads(createCount).iterator();
-        while(addedWorkerThreads.hasNext()) {
-            WorkerThread wt = addedWorkerThreads.next();
-            wt.start();
-            availWorkers.add(wt);
+            if ((workers.size() + createCount) > maxThreadCount) {
+                metrics.rejectedGrows.increment();
+                getLog().warn("Max thread count reached. Current threads: " + workers.size() + ", Count to add: " + createCount + ", Max thread count: " + maxThreadCount);
+                return 0;
+            }
+
+            Iterator<WorkerThread> addedWorkerThreads = createWorkerThreads(createCount).iterator();
+            while(addedWorkerThreads.hasNext()) {
+                WorkerThread wt = addedWorkerThreads.next();
+                wt.start();
+                pushAvailable(wt);
+            }
+            metrics.recordGrow(createCount);
         }
         getLog().info("Added " + createCount + " workers to the pool");
         return createCount;
     }
 
-    int removeWorkerThread(int removeCount) {
-        int currentSize = workers.size();
-        if (removeCount >= currentSize) {
-            removeCount = currentSize - 1; //Thread pool must have 1 thread at least.
-        }
-
-        if (currentSize == 1) { //Thread pool must have 1 thread at least.
-            minSizeReached = true; //This flag means that all jobs of this pool were removed.
-            return 0;
-        }
-
-        if (removeCount <= 0) {
+    public int removeWorkerThread(int removeCount) {
+        if (workers == null)
             return 0;
-        }
 
         int removedCount = 0;
         synchronized (nextRunnableLock) {
-            getLog().info("Removing " + removeCount + " workers from the pool");
-            if (workers == null)
+            int currentSize = workers.size();
+            if (removeCount >= currentSize) {
+                removeCount = currentSize - 1; //Thread pool must have 1 thread at least.
+            }
+
+            if (currentSize == 1) { //Thread pool must have 1 thread at least.
+                minSizeReached = true; //This flag means that all jobs of this pool were removed.
                 return 0;
+            }
+
+            if (removeCount <= 0) {
+                return 0;
+            }
 
-            Iterator<WorkerThread> availThreads = availWorkers.iterator();
-            while(availThreads.hasNext()) {
-                if (removedCount == removeCount) {
-                    getLog().info("Removed " + removeCount + " workers from the pool");
-                    nextRunnableLock.notifyAll();
+            getLog().info("Removing " + removeCount + " workers from the pool");
+            //Only idle workers are retired. Popping one from the stack is atomic, so it can never be handed a job afterwards.
+            while (removedCount < removeCount) {
+                WorkerThread wt = popAvailable();
+                if (wt == null) {
                     break;
                 }
-                WorkerThread wt = availThreads.next();
                 wt.shutdown();
-                availWorkers.remove(wt);
+                workers.remove(wt);
                 ++removedCount;
             }
+            if (removedCount > 0) {
+                metrics.recordShrink(removedCount);
+            }
+            getLog().info("Removed " + removedCount + " workers from the pool");
         }
         return removedCount;
     }
@@ -259,76 +515,98 @@ public class ResizableSimpleThreadPool implements ThreadPool {
 
     public void shutdown(boolean waitForJobsToComplete) {
 
+        long shutdownStart = draining ? drainStart : System.nanoTime();
         synchronized (nextRunnableLock) {
             getLog().debug("Shutting down threadpool...");
 
             isShutdown = true;
 
+            if (autoScaler != null) {
+                autoScaler.stop();
+            }
+
             if(workers == null) // case where the pool wasn't even initialize()ed
                 return;
 
             // signal each worker thread to shut down
-            Iterator<WorkerThread> workerThreads = workers.iterator();
-            while(workerThreads.hasNext()) {
-                WorkerThread wt = workerThreads.next();
+            for (WorkerThread wt : workers) {
                 wt.shutdown();
-                availWorkers.remove(wt);
             }
+            availWorkers.clear();
+            availCount.set(0);
+
+            // Give parked handoffs a chance to see the shutdown. Active worker
+            // threads will shut down after finishing their current job.
+            signalAllHandoffWaiters();
 
-            // Give waiting (wait(1000)) worker threads a chance to shut down.
-            // Active worker threads will shut down after finishing their
-            // current job.
-            nextRunnableLock.notifyAll();
+            // Jobs still queued were accepted already, run them on additional threads.
+            Runnable queued;
+            while ((queued = pollQueued()) != null) {
+                runOnLastJobThread(queued);
+            }
 
             if (waitForJobsToComplete == true) {
 
+                // Without beginDrain() the wait has no deadline.
+                boolean bounded = draining;
+                long deadline = drainDeadline;
+                List<String> cutOffJobs = List.of();
                 boolean interrupted = false;
                 try {
                     // wait for hand-off in runInThread to complete...
-                    while(handoffPending) {
-                        try {
-                            nextRunnableLock.wait(100);
-                        } catch(InterruptedException e) {
-                            interrupted = true;
-                        }
+                    while (pendingHandoffs.get() > 0 && !(bounded && deadline - System.nanoTime() <= 0)) {
+                        awaitSignal(TimeUnit.MILLISECONDS.toNanos(100), () -> pendingHandoffs.get() > 0);
+                        interrupted |= Thread.interrupted();
                     }
 
                     // Wait until all worker threads are shut down
                     while (busyWorkers.size() > 0) {
-                        WorkerThread wt = (WorkerThread) busyWorkers.getFirst();
-                        try {
-                            getLog().debug(
-                                    "Waiting for thread " + wt.getName()
-                                            + " to shut down");
-
-                            // note: with waiting infinite time the
-                            // application may appear to 'hang'.
-                            nextRunnableLock.wait(2000);
-                        } catch (InterruptedException e) {
-                            interrupted = true;
+                        long waitNanos = TimeUnit.MILLISECONDS.toNanos(2000);
+                        if (bounded) {
+                            long remaining = deadline - System.nanoTime();
+                            if (remaining <= 0) {
+                                break;
+                            }
+                            waitNanos = Math.min(waitNanos, remaining);
                         }
+                        getLog().debug(
+                                "Waiting for " + busyWorkers.size() + " busy worker(s) to shut down");
+
+                        // note: without a drain deadline the application may appear to 'hang'.
+                        awaitSignal(waitNanos, () -> busyWorkers.size() > 0);
+                        interrupted |= Thread.interrupted();
                     }
 
-                    workerThreads = workers.iterator();
-                    while(workerThreads.hasNext()) {
-                        WorkerThread wt = (WorkerThread) workerThreads.next();
-                        try {
-                            wt.join();
-                            workerThreads.remove();
-                        } catch (InterruptedException e) {
-                            interrupted = true;
+                    if (bounded && (busyWorkers.size() > 0 || !inFlight.awaitEmpty(deadline))) {
+                        // Stragglers are interrupted and left behind, their threads end once the job returns
+                        cutOffJobs = inFlight.interruptAll();
+                        getLog().warn("Drain deadline of " + drainTimeoutMs + "ms passed, interrupted "
+                                + cutOffJobs.size() + " running job(s): " + cutOffJobs);
+                    } else {
+                        for (WorkerThread wt : workers) {
+                            try {
+                                wt.join();
+                                workers.remove(wt);
+                            } catch (InterruptedException e) {
+                                interrupted = true;
+                            }
                         }
+                        getLog().debug("No executing jobs remaining, all threads stopped.");
                     }
                 } finally {
                     if (interrupted) {
                         Thread.currentThread().interrupt();
                     }
                 }
-                getLog().debug("No executing jobs remaining, all threads stopped.");
+                drainReport = new DrainReport(schedulerInstanceId, bounded ? drainTimeoutMs : 0,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - shutdownStart), cutOffJobs, null);
+            } else {
+                drainReport = new DrainReport(schedulerInstanceId, 0,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - shutdownStart), List.of(), null);
             }
             getLog().debug("Shutdown of threadpool complete.");
         }
-        ResizableSimpleThreadPoolManager.getInstance().remove(schedulerInstanceName);
+        ResizableSimpleThreadPoolManager.getInstance().remove(schedulerInstanceId);
     }
 
     /**
@@ -347,66 +625,409 @@ public class ResizableSimpleThreadPool implements ThreadPool {
             return false;
         }
 
-        synchronized (nextRunnableLock) {
+        pendingHandoffs.incrementAndGet();
+        try {
+            long waitStart = System.nanoTime();
+            WorkerThread wt;
+            if ((wt = popAvailable()) == null && !isShutdown) {
+                replaceDeadWorkers(); //No idle worker, make sure it is not because some died silently
+                wt = popAvailable();
+            }
 
-            handoffPending = true;
+            if (wt == null && queueCapacity > 0 && !isShutdown) {
+                // Queue it in front of the workers instead of blocking the scheduler thread
+                submitToQueue(runnable, waitStart + TimeUnit.MILLISECONDS.toNanos(handoffTimeoutMs));
+                recordHandoffWait(waitStart);
+                return true;
+            }
 
             // Wait until a worker thread is available
-            while ((availWorkers.size() < 1) && !isShutdown) {
+            while (wt == null && (wt = popAvailable()) == null && !isStopping()) {
+                awaitSignal(HANDOFF_PARK_NANOS, () -> availCount.get() < 1 && !isStopping());
+            }
+            recordHandoffWait(waitStart);
+            dispatch(wt, runnable);
+        } finally {
+            if (pendingHandoffs.decrementAndGet() == 0) {
+                signalHandoffWaiter();
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean tryRunInThread(Runnable runnable) {
+        if (runnable == null || isShutdown || draining) {
+            return false;
+        }
+        WorkerThread wt = popAvailable();
+        if (wt != null) {
+            dispatch(wt, runnable);
+            return true;
+        }
+        if (queueCapacity > 0 && tryReserveQueueSlot()) {
+            submissionQueue.offer(runnable);
+            drainQueueToIdleWorkers();
+            return true;
+        }
+        return false;
+    }
+
+    private void recordHandoffWait(long waitStart) {
+        long waited = System.nanoTime() - waitStart;
+        handoffWaitNanos.add(waited);
+        handoffCount.increment();
+        metrics.handoffWait.recordNanos(waited);
+    }
+
+    private void dispatch(WorkerThread wt, Runnable runnable) {
+        boolean handedOff = false;
+        if (wt != null && !isShutdown) {
+            busyWorkers.add(wt);
+            peakBusyWorkers.accumulateAndGet(busyWorkers.size(), Math::max);
+            handedOff = wt.run(runnable);
+            if (!handedOff) {
+                busyWorkers.remove(wt);
+            }
+        }
+
+        if (!handedOff) {
+            // If the thread pool is going down, execute the Runnable
+            // within a new additional worker thread (no thread from the pool).
+            runOnLastJobThread(runnable);
+        }
+    }
+
+    private void runOnLastJobThread(Runnable runnable) {
+        WorkerThread lastJob = new WorkerThread(this, threadGroup,
+                "WorkerThread-LastJob", prio, runnable);
+        busyWorkers.add(lastJob);
+        workers.add(lastJob);
+        lastJob.start();
+    }
+
+    /**
+     * <p>
+     * Queue the Runnable, waiting until the deadline for a free slot or an idle worker.
+     * If the queue is still full then, the overflow policy decides what happens to it.
+     * </p>
+     */
+    private void submitToQueue(Runnable runnable, long deadline) {
+        while (!tryReserveQueueSlot()) {
+            long remaining = deadline - System.nanoTime();
+            if (isShutdown) {
+                runOnLastJobThread(runnable);
+                return;
+            }
+            if (remaining <= 0) {
+                overflow(runnable);
+                return;
+            }
+            awaitSignal(Math.min(remaining, HANDOFF_PARK_NANOS),
+                    () -> queuedCount.get() >= queueCapacity && availCount.get() < 1 && !isShutdown);
+            WorkerThread wt = popAvailable();
+            if (wt != null) {
+                dispatch(wt, runnable);
+                return;
+            }
+        }
+        submissionQueue.offer(runnable);
+        // A worker may have gone idle between the failed pop and the offer
+        drainQueueToIdleWorkers();
+    }
+
+    private void overflow(Runnable runnable) {
+        switch (queueOverflowPolicy) {
+            case CALLER_RUNS -> {
+                metrics.overflowCallerRuns.increment();
                 try {
-                    nextRunnableLock.wait(500);
-                } catch (InterruptedException ignore) {
+                    runnable.run();
+                } catch (Throwable exceptionInRunnable) {
+                    getLog().error("Error while executing the Runnable on the caller thread: ", exceptionInRunnable);
                 }
             }
-
-            if (!isShutdown) {
-                WorkerThread wt = (WorkerThread)availWorkers.removeFirst();
-                busyWorkers.add(wt);
-                wt.run(runnable);
-            } else {
-                // If the thread pool is going down, execute the Runnable
-                // within a new additional worker thread (no thread from the pool).
-                WorkerThread wt = new WorkerThread(this, threadGroup,
-                        "WorkerThread-LastJob", prio, runnable);
-                busyWorkers.add(wt);
-                workers.add(wt);
-                wt.start();
+            case DROP_OLDEST -> {
+                metrics.overflowDropped.increment();
+                Runnable oldest = submissionQueue.poll(); //Its slot is handed over to the new Runnable
+                if (oldest == null) {
+                    oldest = runnable;
+                } else {
+                    submissionQueue.offer(runnable);
+                }
+                HandoffVeto.runVetoed(oldest);
+                drainQueueToIdleWorkers();
+            }
+            case MISFIRE -> {
+                metrics.overflowMisfired.increment();
+                HandoffVeto.runVetoed(runnable);
             }
-            nextRunnableLock.notifyAll();
-            handoffPending = false;
         }
+    }
 
+    private boolean tryReserveQueueSlot() {
+        int queued;
+        do {
+            queued = queuedCount.get();
+            if (queued >= queueCapacity) {
+                return false;
+            }
+        } while (!queuedCount.compareAndSet(queued, queued + 1));
         return true;
     }
 
+    private Runnable pollQueued() {
+        Runnable queued = submissionQueue.poll();
+        if (queued != null) {
+            queuedCount.decrementAndGet();
+            signalHandoffWaiter();
+        }
+        return queued;
+    }
+
+    /**
+     * Hand queued Runnables to idle workers. Called after queueing and after a worker went idle,
+     * so a Runnable is never left queued while a worker sits idle.
+     */
+    private void drainQueueToIdleWorkers() {
+        while (queuedCount.get() > 0) {
+            WorkerThread wt = popAvailable();
+            if (wt == null) {
+                return;
+            }
+            Runnable queued = pollQueued();
+            if (queued == null) {
+                pushAvailable(wt);
+                return;
+            }
+            dispatch(wt, queued);
+        }
+    }
+
     public int blockForAvailableThreads() {
-        synchronized(nextRunnableLock) {
+        if (draining) {
+            // No new triggers while draining, the scheduler thread only has to notice it was halted
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+            return 0;
+        }
 
-            while((availWorkers.size() < 1 || handoffPending) && !isShutdown) {
-                try {
-                    nextRunnableLock.wait(500);
-                } catch (InterruptedException ignore) {
+        if (queueCapacity > 0) {
+            // Free queue slots count as capacity, and the wait is bounded by the handoff timeout.
+            if (availableCapacity() < 1 && !isStopping()) {
+                long blockStart = System.nanoTime();
+                long deadline = blockStart + TimeUnit.MILLISECONDS.toNanos(handoffTimeoutMs);
+                long remaining;
+                while (availableCapacity() < 1 && !isStopping() && (remaining = deadline - System.nanoTime()) > 0) {
+                    awaitSignal(Math.min(remaining, HANDOFF_PARK_NANOS), () -> availableCapacity() < 1 && !isStopping());
                 }
+                blockedNanos.add(System.nanoTime() - blockStart);
+            }
+            return adaptBatchAcquisition(availableCapacity());
+        }
+
+        if ((availCount.get() < 1 || pendingHandoffs.get() > 0) && !isStopping()) {
+            long blockStart = System.nanoTime();
+            while ((availCount.get() < 1 || pendingHandoffs.get() > 0) && !isStopping()) {
+                awaitSignal(HANDOFF_PARK_NANOS, () -> (availCount.get() < 1 || pendingHandoffs.get() > 0) && !isStopping());
             }
+            blockedNanos.add(System.nanoTime() - blockStart);
+        }
+
+        return adaptBatchAcquisition(Math.max(availCount.get(), 0));
+    }
+
+    private int adaptBatchAcquisition(int availableCapacity) {
+        AdaptiveBatchAcquisition acquisition = batchAcquisition;
+        if (acquisition != null) {
+            List<WorkerThread> currentWorkers = workers;
+            acquisition.adapt(availableCapacity, (currentWorkers == null ? 0 : currentWorkers.size()) + queueCapacity);
+        }
+        return availableCapacity;
+    }
+
+    /**
+     * Lets blockForAvailableThreads() size the trigger acquisition of the scheduler this pool belongs to.
+     */
+    void setBatchAcquisition(AdaptiveBatchAcquisition batchAcquisition) {
+        this.batchAcquisition = batchAcquisition;
+    }
 
-            return availWorkers.size();
+    private boolean isStopping() {
+        return isShutdown || draining;
+    }
+
+    public void beginDrain(long timeoutMs) {
+        if (timeoutMs < 1) {
+            throw new IllegalArgumentException("timeoutMs must be at least 1");
         }
+        drainTimeoutMs = timeoutMs;
+        drainStart = System.nanoTime();
+        drainDeadline = drainStart + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        draining = true;
+        signalAllHandoffWaiters();
+    }
+
+    public DrainReport getDrainReport() {
+        return drainReport;
+    }
+
+    private int availableCapacity() {
+        return Math.max(availCount.get(), 0) + Math.max(queueCapacity - queuedCount.get(), 0);
     }
 
     protected void makeAvailable(WorkerThread wt) {
-        synchronized(nextRunnableLock) {
-            if(!isShutdown) {
-                availWorkers.add(wt);
-            }
-            busyWorkers.remove(wt);
-            nextRunnableLock.notifyAll();
+        busyWorkers.remove(wt); //Removed before it is pushed, so a popper never races its own busyWorkers.add()
+        if (!isShutdown) {
+            pushAvailable(wt);
+        } else {
+            signalAllHandoffWaiters();
         }
     }
 
     protected void clearFromBusyWorkersList(WorkerThread wt) {
-        synchronized(nextRunnableLock) {
-            busyWorkers.remove(wt);
-            nextRunnableLock.notifyAll();
+        busyWorkers.remove(wt);
+        signalAllHandoffWaiters();
+    }
+
+    /**
+     * <p>
+     * Retire an idle worker whose keep-alive elapsed, as long as the pool stays at its core size.
+     * The worker must still be on the idle stack: if a handoff popped it first, it has a job to run.
+     * </p>
+     */
+    boolean retireIdleWorker(WorkerThread wt) {
+        synchronized (nextRunnableLock) {
+            if (isShutdown || workers.size() <= Math.max(1, coreThreadCount)) {
+                return false;
+            }
+            if (!availWorkers.removeFirstOccurrence(wt)) {
+                return false;
+            }
+            availCount.decrementAndGet();
+            workers.remove(wt);
+            wt.shutdown();
+            metrics.recordShrink(1);
+        }
+        getLog().debug("Retired idle worker " + wt.getName() + " after keep-alive of " + keepAliveMs + "ms");
+        return true;
+    }
+
+    /**
+     * <p>
+     * Remove a worker that left its loop without being shut down and start a replacement,
+     * so the capacity of the pool never shrinks silently.
+     * </p>
+     */
+    void replaceWorker(WorkerThread dead, Throwable cause, Runnable orphan) {
+        busyWorkers.remove(dead);
+        if (availWorkers.removeFirstOccurrence(dead)) {
+            availCount.decrementAndGet();
+        }
+        WorkerThread replacement = null;
+        synchronized (nextRunnableLock) {
+            if (!workers.remove(dead)) {
+                return;
+            }
+            if (isShutdown) {
+                if (orphan != null) {
+                    runInThread(orphan); //Runs it on a last-job thread since the pool is going down
+                }
+                return;
+            }
+            replacement = createWorkerThreads(1).get(0);
+            replacement.start();
+            if (orphan != null) {
+                busyWorkers.add(replacement);
+                replacement.run(orphan);
+            } else {
+                pushAvailable(replacement);
+            }
+        }
+        replacedWorkers.incrementAndGet();
+        getLog().warn("Worker " + dead.getName() + " terminated abnormally, started " + replacement.getName() + " to replace it", cause);
+    }
+
+    /**
+     * <p>
+     * Replace workers that died without running their own replacement, e.g. when the Error that
+     * killed them also failed the replacement. Checked at most once a second.
+     * </p>
+     */
+    void replaceDeadWorkers() {
+        long now = System.nanoTime();
+        if (now - lastDeadWorkerCheck < DEAD_WORKER_CHECK_NANOS || workers == null) {
+            return;
+        }
+        lastDeadWorkerCheck = now;
+        for (WorkerThread wt : workers) {
+            if (wt.getState() == Thread.State.TERMINATED && !wt.isShutdownRequested()) {
+                replaceWorker(wt, null, null);
+            }
+        }
+    }
+
+    public ThreadPoolMetricsSnapshot getMetrics() {
+        List<WorkerThread> currentWorkers = workers;
+        return metrics.snapshot(getClass().getName(), currentWorkers == null ? 0 : currentWorkers.size(),
+                Math.max(availCount.get(), 0), busyWorkers.size(), maxThreadCount, replacedWorkers.get(),
+                getQueueDepth(), queueCapacity);
+    }
+
+    /**
+     * Returns the utilization measured since the previous call and starts a new measurement.
+     */
+    UtilizationSample sampleUtilization() {
+        int busy = busyWorkers.size();
+        return new UtilizationSample(handoffWaitNanos.sumThenReset(), handoffCount.sumThenReset(),
+                blockedNanos.sumThenReset(), Math.max(busy, peakBusyWorkers.getAndSet(busy)),
+                workers == null ? 0 : workers.size());
+    }
+
+    record UtilizationSample(long handoffWaitNanos, long handoffs, long blockedNanos, int peakBusyWorkers, int liveWorkers) {}
+
+    private void pushAvailable(WorkerThread wt) {
+        availWorkers.offerFirst(wt);
+        availCount.incrementAndGet();
+        signalHandoffWaiter();
+    }
+
+    private WorkerThread popAvailable() {
+        WorkerThread wt = availWorkers.pollFirst();
+        if (wt != null) {
+            availCount.decrementAndGet();
+        }
+        return wt;
+    }
+
+    /**
+     * <p>
+     * Park the calling thread until a worker is released, a handoff completes
+     * or the timeout elapses. The caller registers itself before re-checking
+     * the condition, so an unpark between the check and the park is never lost.
+     * </p>
+     */
+    private void awaitSignal(long timeoutNanos, BooleanSupplier stillWaiting) {
+        Thread current = Thread.currentThread();
+        handoffWaiters.add(current);
+        try {
+            if (stillWaiting.getAsBoolean()) {
+                LockSupport.parkNanos(this, timeoutNanos);
+            }
+        } finally {
+            handoffWaiters.remove(current);
+        }
+    }
+
+    private void signalHandoffWaiter() {
+        Thread waiter = handoffWaiters.peek();
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    private void signalAllHandoffWaiters() {
+        for (Thread waiter : handoffWaiters) {
+            LockSupport.unpark(waiter);
         }
     }
 
@@ -425,14 +1046,15 @@ public class ResizableSimpleThreadPool implements ThreadPool {
      */
     class WorkerThread extends Thread {
 
-        private final Object lock = new Object();
+        // Marks a worker that has left its loop and can no longer accept a Runnable.
+        private final Runnable retired = () -> {};
 
         // A flag that signals the WorkerThread to terminate.
         private AtomicBoolean run = new AtomicBoolean(true);
 
         private ResizableSimpleThreadPool tp;
 
-        private Runnable runnable = null;
+        private final AtomicReference<Runnable> runnable = new AtomicReference<>();
 
         private boolean runOnce = false;
 
@@ -460,7 +1082,7 @@ public class ResizableSimpleThreadPool implements ThreadPool {
 
             super(threadGroup, name);
             this.tp = tp;
-            this.runnable = runnable;
+            this.runnable.set(runnable);
             if(runnable != null)
                 runOnce = true;
             setPriority(prio);
@@ -473,42 +1095,89 @@ public class ResizableSimpleThreadPool implements ThreadPool {
          */
         void shutdown() {
             run.set(false);
+            LockSupport.unpark(this);
         }
 
-        public void run(Runnable newRunnable) {
-            synchronized(lock) {
-                if(runnable != null) {
-                    throw new IllegalStateException("Already running a Runnable!");
-                }
+        boolean isShutdownRequested() {
+            return !run.get();
+        }
 
-                runnable = newRunnable;
-                lock.notifyAll();
+        /**
+         * <p>
+         * Hand the Runnable to this worker and unpark it. Returns false when
+         * the worker has already left its loop.
+         * </p>
+         */
+        public boolean run(Runnable newRunnable) {
+            if (!runnable.compareAndSet(null, newRunnable)) {
+                if (runnable.get() == retired) {
+                    return false;
+                }
+                throw new IllegalStateException("Already running a Runnable!");
             }
+            LockSupport.unpark(this);
+            return true;
         }
 
         @Override
         public void run() {
-            boolean ran = false;
+            boolean exitedNormally = false;
+            Throwable cause = null;
+            try {
+                loop();
+                exitedNormally = true;
+            } catch (RuntimeException | Error e) {
+                cause = e;
+                throw e;
+            } finally {
+                if (!exitedNormally && !runOnce) {
+                    Runnable orphan = runnable.getAndSet(retired); //Handed over right before the worker died, never started
+                    replaceWorker(this, cause, orphan == retired ? null : orphan);
+                }
+            }
 
-            while (run.get()) {
-                try {
-                    synchronized(lock) {
-                        while (runnable == null && run.get()) {
-                            lock.wait(500);
-                        }
+            //if (log.isDebugEnabled())
+            try {
+                getLog().debug("WorkerThread is shut down.");
+            } catch(Exception e) {
+                // ignore to help with a tomcat glitch
+            }
+        }
 
-                        if (runnable != null) {
-                            ran = true;
-                            runnable.run();
+        private void loop() {
+            long keepAliveNanos = TimeUnit.MILLISECONDS.toNanos(tp.getKeepAliveMs());
+            long idleSince = System.nanoTime();
+            while (true) {
+                Runnable task = runnable.get();
+                if (task == null) {
+                    if (!run.get()) {
+                        if (runnable.compareAndSet(null, retired)) {
+                            break;
                         }
+                        continue;
                     }
-                } catch (InterruptedException unblock) {
-                    // do nothing (loop will terminate if shutdown() was called
-                    try {
-                        getLog().error("Worker thread was interrupt()'ed.", unblock);
-                    } catch(Exception e) {
-                        // ignore to help with a tomcat glitch
+                    if (keepAliveNanos > 0 && System.nanoTime() - idleSince >= keepAliveNanos) {
+                        if (tp.retireIdleWorker(this)) {
+                            continue; //The run flag is down now, the loop ends once no Runnable was handed over meanwhile
+                        }
+                        idleSince = System.nanoTime(); //Still needed at the core size, check again after another keep-alive
                     }
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    if (Thread.interrupted()) {
+                        // do nothing (loop will terminate if shutdown() was called
+                        try {
+                            getLog().error("Worker thread was interrupt()'ed.");
+                        } catch(Exception e) {
+                            // ignore to help with a tomcat glitch
+                        }
+                    }
+                    continue;
+                }
+
+                long started = System.nanoTime();
+                inFlight.track(this, task);
+                try {
+                    task.run();
                 } catch (Throwable exceptionInRunnable) {
                     try {
                         getLog().error("Error while executing the Runnable: ",
@@ -517,9 +1186,9 @@ public class ResizableSimpleThreadPool implements ThreadPool {
                         // ignore to help with a tomcat glitch
                     }
                 } finally {
-                    synchronized(lock) {
-                        runnable = null;
-                    }
+                    inFlight.untrack(this);
+                    metrics.jobRunTime.recordNanos(System.nanoTime() - started);
+                    runnable.set(null);
                     // repair the thread in case the runnable mucked it up...
                     if(getPriority() != tp.getThreadPriority()) {
                         setPriority(tp.getThreadPriority());
@@ -528,20 +1197,21 @@ public class ResizableSimpleThreadPool implements ThreadPool {
                     if (runOnce) {
                         run.set(false);
                         clearFromBusyWorkersList(this);
-                    } else if(ran) {
-                        ran = false;
-                        makeAvailable(this);
+                    } else {
+                        Runnable queued = pollQueued();
+                        if (queued != null) {
+                            runnable.set(queued); //Stays busy and takes the next queued job
+                        } else {
+                            idleSince = System.nanoTime();
+                            makeAvailable(this);
+                            if (queuedCount.get() > 0) {
+                                drainQueueToIdleWorkers();
+                            }
+                        }
                     }
 
                 }
             }
-
-            //if (log.isDebugEnabled())
-            try {
-                getLog().debug("WorkerThread is shut down.");
-            } catch(Exception e) {
-                // ignore to help with a tomcat glitch
-            }
         }
     }
-}
\ No newline at end of file
+}
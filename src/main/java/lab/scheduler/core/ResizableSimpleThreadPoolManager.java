@@ -1,43 +1,245 @@
 package lab.scheduler.core;
 
-import java.util.HashMap;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+@Slf4j
 public class ResizableSimpleThreadPoolManager {
-    private Map<String, ResizableSimpleThreadPool> instances = new HashMap<>();
-    private static ResizableSimpleThreadPoolManager threadManager;
+    private final Map<String, ResizableThreadPool> instances = new ConcurrentHashMap<>();
+    private volatile WorkerBudget workerBudget;
 
     private ResizableSimpleThreadPoolManager() {}
 
+    //Thread pools of schedulers started concurrently register at the same time
+    private static final class Holder {
+        private static final ResizableSimpleThreadPoolManager THREAD_MANAGER = new ResizableSimpleThreadPoolManager();
+    }
+
     public static ResizableSimpleThreadPoolManager getInstance() {
-        if (threadManager == null) {
-            threadManager = new ResizableSimpleThreadPoolManager();
-            threadManager.instances = new HashMap<>();
-        }
-        return threadManager;
+        return Holder.THREAD_MANAGER;
     }
 
-    public void register(String schedulerId, ResizableSimpleThreadPool pool) {
+    public void register(String schedulerId, ResizableThreadPool pool) {
+        if (schedulerId == null) {
+            return;
+        }
         instances.put(schedulerId, pool);
+        registerMBean(schedulerId, pool);
+        WorkerBudget budget = workerBudget;
+        if (budget != null) {
+            clampToBudget(budget, schedulerId, pool);
+        }
+    }
+
+    /**
+     * Shrinks a pool which started with more workers than the budget has left, after borrowing what idle workers
+     * of other schedulers can lend, the same way {@link #addWorkerThread(String, int)} grows a pool. It keeps its
+     * guaranteed workers.
+     */
+    private void clampToBudget(WorkerBudget budget, String schedulerId, ResizableThreadPool pool) {
+        int started = pool.getCurrentThreadCount();
+        int excess = -budget.free(schedulerId, instances);
+        if (excess <= 0) {
+            return;
+        }
+        if (lendIdleWorkers(budget, schedulerId, excess) > 0) {
+            excess = -budget.free(schedulerId, instances);
+            if (excess <= 0) {
+                return;
+            }
+        }
+        int removable = Math.min(excess, started - budget.getGuaranteedWorkers(schedulerId));
+        if (removable > 0) {
+            pool.removeWorkerThread(removable);
+        }
+        log.warn("The thread pool of the scheduler '{}' started with {} workers, the worker budget of {} leaves it {}",
+                schedulerId, started, budget.getTotalWorkers(), pool.getCurrentThreadCount());
     }
 
     public void remove(String schedulerId) {
-        instances.remove(schedulerId);
+        if (schedulerId == null) {
+            return;
+        }
+        if (instances.remove(schedulerId) != null) {
+            unregisterMBean(schedulerId);
+            WorkerBudget budget = workerBudget;
+            if (budget != null) {
+                budget.forget(schedulerId);
+            }
+        }
+    }
+
+    public ResizableThreadPool getThreadPool(String schedulerId) {
+        return instances.get(schedulerId);
+    }
+
+    /**
+     * Limits the worker capacity of all registered pools together to <code>totalWorkers</code>.
+     * Pools then grow only within the budget, borrowing idle workers of other schedulers above their
+     * guaranteed minimum when it is used up. 0 removes the budget.
+     * */
+    public void setWorkerBudget(int totalWorkers) {
+        if (totalWorkers < 0) {
+            throw new IllegalArgumentException("totalWorkers cannot be negative");
+        }
+        workerBudget = totalWorkers == 0 ? null : new WorkerBudget(totalWorkers);
+    }
+
+    public int getWorkerBudget() {
+        WorkerBudget budget = workerBudget;
+        return budget == null ? 0 : budget.getTotalWorkers();
+    }
+
+    /**
+     * Sets the workers the scheduler can always grow to, no matter how much of the budget other schedulers hold.
+     * */
+    public void setGuaranteedWorkers(String schedulerId, int guaranteedWorkers) {
+        if (guaranteedWorkers < 1) {
+            throw new IllegalArgumentException("guaranteedWorkers must be at least 1");
+        }
+        WorkerBudget budget = workerBudget;
+        if (budget == null) {
+            throw new IllegalStateException("No worker budget is set");
+        }
+        budget.setGuaranteedWorkers(schedulerId, guaranteedWorkers);
+    }
+
+    /**
+     * Returns the workers the scheduler could add now without borrowing, or -1 when no budget is set.
+     * */
+    public int getFreeWorkers(String schedulerId) {
+        WorkerBudget budget = workerBudget;
+        return budget == null ? -1 : Math.max(budget.free(schedulerId, instances), 0);
     }
 
     public int addWorkerThread(String schedulerId, int createCount) {
-        ResizableSimpleThreadPool pool = instances.get(schedulerId);
-        if (pool != null) {
+        ResizableThreadPool pool = instances.get(schedulerId);
+        if (pool == null) {
+            return 0;
+        }
+        WorkerBudget budget = workerBudget;
+        if (budget == null || createCount <= 0) {
             return pool.addWorkerThread(createCount);
         }
-        return 0;
+
+        int granted = budget.reserve(schedulerId, createCount, instances);
+        try {
+            if (granted < createCount && lendIdleWorkers(budget, schedulerId, createCount - granted) > 0) {
+                granted += budget.reserve(schedulerId, createCount - granted, instances);
+            }
+            if (granted < createCount) {
+                log.info("Worker budget of {} used up, scheduler '{}' gets {} of {} requested workers",
+                        budget.getTotalWorkers(), schedulerId, granted, createCount);
+            }
+            return granted > 0 ? pool.addWorkerThread(granted) : 0;
+        } finally {
+            budget.settle(granted);
+        }
+    }
+
+    /**
+     * Retires idle workers of other schedulers above their guaranteed minimum, the most idle first,
+     * so the budget they held can be granted to <code>borrowerId</code>.
+     */
+    private int lendIdleWorkers(WorkerBudget budget, String borrowerId, int needed) {
+        List<Map.Entry<String, ResizableThreadPool>> lenders = new ArrayList<>();
+        Map<String, Integer> spareWorkers = new LinkedHashMap<>();
+        for (Map.Entry<String, ResizableThreadPool> entry : instances.entrySet()) {
+            if (entry.getKey().equals(borrowerId)) {
+                continue;
+            }
+            ResizableThreadPool pool = entry.getValue();
+            int spare = Math.min(pool.getMetrics().availableWorkers(),
+                    pool.getCurrentThreadCount() - budget.getGuaranteedWorkers(entry.getKey()));
+            if (spare > 0) {
+                lenders.add(entry);
+                spareWorkers.put(entry.getKey(), spare);
+            }
+        }
+        lenders.sort((a, b) -> spareWorkers.get(b.getKey()) - spareWorkers.get(a.getKey()));
+
+        int lent = 0;
+        for (Map.Entry<String, ResizableThreadPool> lender : lenders) {
+            if (lent >= needed) {
+                break;
+            }
+            int removed = lender.getValue().removeWorkerThread(Math.min(spareWorkers.get(lender.getKey()), needed - lent));
+            if (removed > 0) {
+                log.info("Scheduler '{}' lent {} idle workers to scheduler '{}'", lender.getKey(), removed, borrowerId);
+                lent += removed;
+            }
+        }
+        return lent;
+    }
+
+    /**
+     * Grows a pool from inside, e.g. by its auto scaler, through the budget when the pool is registered.
+     */
+    int addWorkerThread(ResizableThreadPool pool, String schedulerId, int createCount) {
+        if (schedulerId != null && instances.get(schedulerId) == pool) {
+            return addWorkerThread(schedulerId, createCount);
+        }
+        return pool.addWorkerThread(createCount);
     }
 
     public int removeWorkerThread(String schedulerId, int removeCount) {
-        ResizableSimpleThreadPool pool = instances.get(schedulerId);
+        ResizableThreadPool pool = instances.get(schedulerId);
         if (pool != null) {
             return pool.removeWorkerThread(removeCount);
         }
         return 0;
     }
+
+    /**
+     * Returns the current pool metrics of the scheduler, or null when it has no registered pool.
+     * */
+    public ThreadPoolMetricsSnapshot getMetrics(String schedulerId) {
+        ResizableThreadPool pool = instances.get(schedulerId);
+        return pool == null ? null : pool.getMetrics();
+    }
+
+    public Map<String, ThreadPoolMetricsSnapshot> getAllMetrics() {
+        Map<String, ThreadPoolMetricsSnapshot> metrics = new LinkedHashMap<>();
+        for (Map.Entry<String, ResizableThreadPool> entry : instances.entrySet()) {
+            metrics.put(entry.getKey(), entry.getValue().getMetrics());
+        }
+        return metrics;
+    }
+
+    private static ObjectName objectName(String schedulerId) throws Exception {
+        return new ObjectName("lab.scheduler:type=ThreadPool,scheduler=" + ObjectName.quote(schedulerId));
+    }
+
+    private void registerMBean(String schedulerId, ResizableThreadPool pool) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = objectName(schedulerId);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new ThreadPoolMXBeanImpl(pool), name);
+        } catch (Exception e) {
+            log.warn("Couldn't register the thread pool MBean of the scheduler '{}'", schedulerId, e);
+        }
+    }
+
+    private void unregisterMBean(String schedulerId) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = objectName(schedulerId);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            log.warn("Couldn't unregister the thread pool MBean of the scheduler '{}'", schedulerId, e);
+        }
+    }
 }
@@ -0,0 +1,56 @@
+package lab.scheduler.core;
+
+import org.quartz.spi.ThreadPool;
+
+/**
+ * A Quartz {@link ThreadPool} whose capacity can be changed while the scheduler is running.
+ * {@link ResizableSimpleThreadPoolManager} drives every implementation through this interface.
+ */
+public interface ResizableThreadPool extends ThreadPool {
+
+    /**
+     * Grows the pool capacity by <code>createCount</code>.
+     *
+     * @return the capacity actually added
+     */
+    int addWorkerThread(int createCount);
+
+    /**
+     * Shrinks the pool capacity by <code>removeCount</code>. A pool always keeps a capacity of 1 at least.
+     *
+     * @return the capacity actually removed
+     */
+    int removeWorkerThread(int removeCount);
+
+    int getMaxThreadCount();
+
+    /**
+     * Hands the Runnable to an idle worker, or to a free slot of the submission queue, without waiting for either.
+     *
+     * @return false if the pool has no capacity for it now or is shutting down, the caller keeps it then
+     */
+    boolean tryRunInThread(Runnable runnable);
+
+    /**
+     * Returns the capacity the pool holds now: its worker threads, or its concurrency cap for pools which start
+     * a thread per job. Unlike getPoolSize() it follows resizing. Reading it takes no pool lock.
+     */
+    int getCurrentThreadCount();
+
+    /**
+     * Returns the current metrics of the pool. Reading them takes no pool lock.
+     */
+    ThreadPoolMetricsSnapshot getMetrics();
+
+    /**
+     * Bounds the next <code>shutdown(true)</code> to <code>timeoutMs</code> from now. From now on
+     * blockForAvailableThreads() no longer blocks, so the scheduler thread can halt, and the jobs still
+     * running at the deadline are interrupted instead of waited for.
+     */
+    void beginDrain(long timeoutMs);
+
+    /**
+     * Returns the outcome of the last shutdown, or null if the pool was not shut down yet.
+     */
+    DrainReport getDrainReport();
+}
@@ -0,0 +1,64 @@
+package lab.scheduler.core;
+
+import org.quartz.JobKey;
+import org.quartz.TriggerKey;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Job and trigger keys of the scheduled templates by scheduler ID and job name.
+ * <p>
+ * Every scheduler has its own ConcurrentHashMap of job names, so lookups never lock, writers only contend
+ * on the bins of their own keys and the keys of a removed scheduler are dropped at once.
+ * */
+final class ScheduleKeyRegistry {
+    record Keys(JobKey jobKey, TriggerKey triggerKey) {}
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Keys>> registry = new ConcurrentHashMap<>();
+
+    void put(String schedulerId, String jobName, JobKey jobKey, TriggerKey triggerKey) {
+        registry.computeIfAbsent(schedulerId, id -> new ConcurrentHashMap<>()).put(jobName, new Keys(jobKey, triggerKey));
+    }
+
+    Keys get(String schedulerId, String jobName) {
+        Map<String, Keys> keys = registry.get(schedulerId);
+        return keys == null || jobName == null ? null : keys.get(jobName);
+    }
+
+    JobKey getJobKey(String schedulerId, String jobName) {
+        Keys keys = get(schedulerId, jobName);
+        return keys == null ? null : keys.jobKey();
+    }
+
+    TriggerKey getTriggerKey(String schedulerId, String jobName) {
+        Keys keys = get(schedulerId, jobName);
+        return keys == null ? null : keys.triggerKey();
+    }
+
+    /**
+     * Removes the keys of the job only if they are still the given ones, so a job re-added concurrently keeps its entry.
+     * */
+    boolean remove(String schedulerId, String jobName, Keys expected) {
+        Map<String, Keys> keys = registry.get(schedulerId);
+        return keys != null && expected != null && keys.remove(jobName, expected);
+    }
+
+    void removeScheduler(String schedulerId) {
+        registry.remove(schedulerId);
+    }
+
+    /**
+     * Returns a copy of the keys of the scheduler by job name. It is weakly consistent with concurrent changes.
+     * */
+    Map<String, Keys> snapshot(String schedulerId) {
+        Map<String, Keys> keys = registry.get(schedulerId);
+        return keys == null ? Map.of() : Map.copyOf(keys);
+    }
+
+    int size(String schedulerId) {
+        Map<String, Keys> keys = registry.get(schedulerId);
+        return keys == null ? 0 : keys.size();
+    }
+}
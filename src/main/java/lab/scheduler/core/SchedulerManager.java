@@ -2,38 +2,58 @@ package lab.scheduler.core;
 
 import lab.scheduler.cluster.JobClusterContext;
 import lab.scheduler.config.JobClusterConfig;
+import lab.scheduler.config.RegistrationMode;
 import lab.scheduler.config.ScheduleTemplate;
 import lab.scheduler.config.SchedulerConfig;
 import lab.scheduler.cluster.JobClusterType;
+import lab.scheduler.listeners.AsyncCompletionJobListener;
+import lab.scheduler.listeners.AsyncCompletionTriggerListener;
+import lab.scheduler.listeners.ConcurrencyLimitListener;
+import lab.scheduler.listeners.ConcurrencyLimitSchedulerListener;
+import lab.scheduler.listeners.FanOutSchedulerListener;
+import lab.scheduler.listeners.HandoffVetoTriggerListener;
+import lab.scheduler.listeners.MisfirePolicyListener;
+import lab.scheduler.listeners.MisfirePolicySchedulerListener;
 import lab.scheduler.listeners.NextFireTimeCheckTriggerListener;
 import lombok.extern.slf4j.Slf4j;
 import org.quartz.*;
+import org.quartz.core.QuartzSchedulerResources;
 import org.quartz.impl.StdSchedulerFactory;
 import org.quartz.utils.Key;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.ToLongFunction;
 
 @Slf4j
 public class SchedulerManager {
-    private Map<String, Scheduler> schedulerRegistry;
-    private Map<String, SchedulerConfig> configRegistry;
-    private Map<String, TriggerKey> triggerKeyRegistry;
-    private Map<String, JobKey> jobKeyRegistry;
-    private Class<? extends Job> defaultedJobClass;
-
-    private static SchedulerManager manager;
+    private static final long STOP_GRACE_MS = 1000;
+    private final Map<String, Scheduler> schedulerRegistry = new ConcurrentHashMap<>();
+    private final Map<String, SchedulerConfig> configRegistry = new ConcurrentHashMap<>();
+    private final Map<String, DeferredScheduler> deferredRegistry = new ConcurrentHashMap<>();
+    private final ScheduleKeyRegistry keyRegistry = new ScheduleKeyRegistry();
+    //Shutdowns which outlived their drain deadline, their schedulers stay registered until they end
+    private final Map<String, Thread> stoppingRegistry = new ConcurrentHashMap<>();
+    private final PooledJobFactory jobFactory = new PooledJobFactory();
+    private volatile Class<? extends Job> defaultedJobClass;
+    private volatile SharedSchedulerEngine sharedEngine;
 
     private SchedulerManager() {}
 
+    //Initialized by the class loader on first use, which publishes it safely to all threads
+    private static final class Holder {
+        private static final SchedulerManager MANAGER = new SchedulerManager();
+    }
+
     public static SchedulerManager getInstance() {
-        if (manager == null) {
-            manager = new SchedulerManager();
-            manager.schedulerRegistry = new HashMap<>();
-            manager.configRegistry = new HashMap<>();
-            manager.triggerKeyRegistry = new HashMap<>();
-            manager.jobKeyRegistry = new HashMap<>();
-        }
-        return manager;
+        return Holder.MANAGER;
     }
 
     public void setDefaultJobClass(Class<? extends Job> jobClass) {
@@ -72,9 +92,6 @@ public class SchedulerManager {
         if (schedulerId == null || schedulerId.isEmpty()) {
             schedulerId = Key.createUniqueName("SCHEDULER");
         }
-        if (schedulerRegistry.containsKey(schedulerId)) {
-            throw new SchedulerException("Scheduler with ID " + schedulerId + " already exists");
-        }
         if (config == null) {
             throw new IllegalArgumentException("SchedulerConfig is null");
         }
@@ -88,41 +105,406 @@ public class SchedulerManager {
             JobClusterContext.initialize(clusterType);
         }
 
-        Properties props = config.getProperties();
-        props.put("org.quartz.scheduler.instanceId", schedulerId);
-        SchedulerFactory factory = new StdSchedulerFactory(props);
         Map<String, ScheduleTemplate> templates = config.getScheduleTemplates();
         if (templates == null || templates.isEmpty()) {
             throw new IllegalArgumentException("ScheduleTemplates are null or empty");
         }
+        for (ScheduleTemplate template : templates.values()) {
+            template.validate();
+        }
+        if (configRegistry.putIfAbsent(schedulerId, config) != null) {
+            throw new SchedulerException("Scheduler with ID " + schedulerId + " already exists");
+        }
+        try {
+            if (config.isSharedEngine()) {
+                return registerSharedScheduler(schedulerId, config, templates);
+            }
+            return registerStandaloneScheduler(schedulerId, config, templates);
+        } catch (SchedulerException | RuntimeException e) {
+            configRegistry.remove(schedulerId, config);
+            throw e;
+        }
+    }
+
+    private String registerStandaloneScheduler(String schedulerId, SchedulerConfig config, Map<String, ScheduleTemplate> templates) throws SchedulerException {
+        if (config.getRegistrationMode() == RegistrationMode.EAGER) {
+            schedulerRegistry.put(schedulerId, createScheduler(schedulerId, config, templates));
+            return schedulerId;
+        }
+        DeferredScheduler deferred = new DeferredScheduler(schedulerId, () -> {
+            Scheduler scheduler = createScheduler(schedulerId, config, templates);
+            schedulerRegistry.put(schedulerId, scheduler);
+            deferredRegistry.remove(schedulerId);
+            return scheduler;
+        });
+        deferredRegistry.put(schedulerId, deferred);
+        if (config.getRegistrationMode() == RegistrationMode.BACKGROUND) {
+            Thread.ofVirtual().name(schedulerId + "-Create").start(() -> {
+                try {
+                    deferred.get();
+                } catch (SchedulerException e) {
+                    //Nobody sees the error, so the registration is dropped as an eager one would have been
+                    if (deferredRegistry.remove(schedulerId, deferred)) {
+                        configRegistry.remove(schedulerId, config);
+                    }
+                    log.error("Failed to create the scheduler '{}' in the background", schedulerId, e);
+                }
+            });
+        }
+        log.info("Registered the scheduler '{}' with {} jobs, creating it {}", schedulerId, templates.size(),
+                config.getRegistrationMode() == RegistrationMode.LAZY ? "on first use" : "in the background");
+        return schedulerId;
+    }
+
+    /**
+     * Creates the Quartz scheduler with its thread pool and stores the jobs and triggers of the templates.
+     * */
+    private Scheduler createScheduler(String schedulerId, SchedulerConfig config, Map<String, ScheduleTemplate> templates) throws SchedulerException {
+        Properties props = config.getProperties();
+        props.put("org.quartz.scheduler.instanceId", schedulerId);
+        if (!config.isClustered()) {
+            //StdSchedulerFactory hands out the scheduler already created with the same name
+            props.putIfAbsent("org.quartz.scheduler.instanceName", schedulerId);
+        }
+        SchedulerFactory factory = new StdSchedulerFactory(props);
         Scheduler scheduler = factory.getScheduler();
-        for (String jobName : templates.keySet()) {
-            ScheduleTemplate template = templates.get(jobName);
-            JobDetail jobDetail = template.getJob();
-            JobDataMap dataMap = jobDetail.getJobDataMap();
-            if (dataMap != null) {
-                dataMap.put("schedulerId", schedulerId);
-            }
-            Trigger trigger = template.getTrigger();
-            scheduler.scheduleJob(jobDetail, trigger);
-            jobKeyRegistry.put(jobName, jobDetail.getKey());
-            triggerKeyRegistry.put(jobName, trigger.getKey());
-        }
-        addTriggerListener(scheduler, new NextFireTimeCheckTriggerListener());
-
-        schedulerRegistry.put(schedulerId, scheduler);
-        configRegistry.put(schedulerId, config);
+        try {
+            installJobFactory(scheduler, props);
+            if (config.isFanOutTriggers()) {
+                installFanOutGroups(schedulerId, scheduler);
+            }
+            if (config.getGuaranteedThreadCount() > 0 && ResizableSimpleThreadPoolManager.getInstance().getWorkerBudget() > 0) {
+                ResizableSimpleThreadPoolManager.getInstance().setGuaranteedWorkers(schedulerId, config.getGuaranteedThreadCount());
+            }
+            List<BuiltJob> builtJobs = buildJobs(schedulerId, config, templates.values());
+            for (BuiltJob builtJob : builtJobs) {
+                if (builtJob.error() != null) {
+                    throw builtJob.error();
+                }
+            }
+            storeJobs(schedulerId, scheduler, config, builtJobs, false);
+            addTriggerListener(scheduler, new NextFireTimeCheckTriggerListener());
+            addTriggerListener(scheduler, new HandoffVetoTriggerListener());
+            DeferredJobHolds holds = new DeferredJobHolds();
+            addConcurrencyLimitListener(scheduler, holds);
+            addMisfirePolicyListener(scheduler, config, holds);
+            installAsyncJobTracker(scheduler, config);
+            applyGroupConcurrencyLimits(schedulerId, scheduler, config, null);
+            if (config.isAdaptiveBatchAcquisition()) {
+                enableAdaptiveBatchAcquisition(schedulerId, scheduler, config);
+            }
+            addReleaseListener(scheduler, props);
+        } catch (SchedulerException | RuntimeException e) {
+            scheduler.shutdown(false); //Its workers would outlive the failed registration
+            throw e;
+        }
+        return scheduler;
+    }
+
+    /**
+     * Registers the scheduler as a namespace of the shared engine, which is created with this config's
+     * properties on first use. Its pool grows by one worker per job unless autoAdjustThreadCount is off.
+     * */
+    private synchronized String registerSharedScheduler(String schedulerId, SchedulerConfig config, Map<String, ScheduleTemplate> templates) throws SchedulerException {
+        SharedSchedulerEngine engine = getSharedEngine(config);
+        engine.host(schedulerId);
+        int scheduled = templates.size();
+        try {
+            applyGroupConcurrencyLimits(schedulerId, engine.getScheduler(), config, null);
+            if (config.isFanOutTriggers()) {
+                installFanOutGroups(schedulerId, engine.getScheduler());
+            }
+            List<BuiltJob> builtJobs = buildJobs(schedulerId, config, templates.values());
+            for (BuiltJob builtJob : builtJobs) {
+                if (builtJob.error() != null) {
+                    throw builtJob.error();
+                }
+            }
+            storeJobs(schedulerId, engine.getScheduler(), config, builtJobs, false);
+        } catch (SchedulerException | RuntimeException e) {
+            engine.remove(schedulerId);
+            applyGroupConcurrencyLimits(schedulerId, engine.getScheduler(), null, config);
+            throw e;
+        }
+        if (config.isAutoAdjustThreadCount()) {
+            addThread(SharedSchedulerEngine.ENGINE_ID, scheduled);
+        }
+
+        schedulerRegistry.put(schedulerId, engine.getScheduler());
+        log.info("Registered the scheduler '{}' with {} jobs on the shared engine", schedulerId, scheduled);
         return schedulerId;
     }
 
+    private SharedSchedulerEngine getSharedEngine(SchedulerConfig config) throws SchedulerException {
+        if (sharedEngine == null || sharedEngine.getScheduler().isShutdown()) {
+            Properties props = new Properties();
+            props.putAll(config.getProperties());
+            props.put("org.quartz.scheduler.instanceName", "SharedSchedulerEngine");
+            props.put("org.quartz.scheduler.instanceId", SharedSchedulerEngine.ENGINE_ID);
+            props.put("org.quartz.threadPool.threadCount", "1"); //Grows with the jobs of the hosted schedulers
+            Scheduler scheduler = new StdSchedulerFactory(props).getScheduler();
+            installJobFactory(scheduler, props);
+            addTriggerListener(scheduler, new NextFireTimeCheckTriggerListener());
+            addTriggerListener(scheduler, new HandoffVetoTriggerListener());
+            DeferredJobHolds holds = new DeferredJobHolds();
+            addConcurrencyLimitListener(scheduler, holds);
+            addMisfirePolicyListener(scheduler, config, holds);
+            installAsyncJobTracker(scheduler, config);
+            if (config.isAdaptiveBatchAcquisition()) {
+                enableAdaptiveBatchAcquisition(SharedSchedulerEngine.ENGINE_ID, scheduler, config);
+            }
+            addReleaseListener(scheduler, props);
+            sharedEngine = new SharedSchedulerEngine(scheduler);
+        }
+        return sharedEngine;
+    }
+
+    private void addConcurrencyLimitListener(Scheduler scheduler, DeferredJobHolds holds) throws SchedulerException {
+        ConcurrencyLimitListener listener = new ConcurrencyLimitListener(holds);
+        addTriggerListener(scheduler, listener);
+        addJobListener(scheduler, listener);
+        scheduler.getListenerManager().addSchedulerListener(new ConcurrencyLimitSchedulerListener(listener.getLimiter()));
+    }
+
+    private void addMisfirePolicyListener(Scheduler scheduler, SchedulerConfig config, DeferredJobHolds holds) throws SchedulerException {
+        MisfirePolicyListener listener = new MisfirePolicyListener(holds);
+        listener.getCatchUp().setMaxParallelism(config.getCatchUpParallelism());
+        addTriggerListener(scheduler, listener);
+        addJobListener(scheduler, listener);
+        scheduler.getListenerManager().addSchedulerListener(new MisfirePolicySchedulerListener(listener.getCatchUp()));
+    }
+
+    /**
+     * Returns the trigger listener registered under the name, unwrapped from its AsyncCompletionTriggerListener.
+     * */
+    private static <T extends TriggerListener> T getTriggerListener(Scheduler scheduler, String name, Class<T> type) throws SchedulerException {
+        TriggerListener registered = scheduler.getListenerManager().getTriggerListener(name);
+        if (registered instanceof AsyncCompletionTriggerListener asyncCompletion) {
+            registered = asyncCompletion.getDelegate();
+        }
+        return type.isInstance(registered) ? type.cast(registered) : null;
+    }
+
+    /**
+     * Returns the catch-up state of the templates with the CATCH_UP misfire policy, null if the scheduler isn't
+     * created yet. Schedulers on the shared engine share the one of the engine.
+     * */
+    public MisfireCatchUp getMisfireCatchUp(String schedulerId) throws SchedulerException {
+        Scheduler scheduler = schedulerRegistry.get(schedulerId);
+        if (scheduler == null || scheduler.isShutdown()) {
+            return null;
+        }
+        MisfirePolicyListener listener = getTriggerListener(scheduler, MisfirePolicyListener.NAME, MisfirePolicyListener.class);
+        return listener == null ? null : listener.getCatchUp();
+    }
+
+    /**
+     * Returns the concurrency limiter of the scheduler, null if the scheduler isn't created yet. Schedulers on the
+     * shared engine share the one of the engine.
+     * */
+    public ConcurrencyLimiter getConcurrencyLimiter(String schedulerId) throws SchedulerException {
+        Scheduler scheduler = schedulerRegistry.get(schedulerId);
+        if (scheduler == null || scheduler.isShutdown()) {
+            return null;
+        }
+        ConcurrencyLimitListener listener = getTriggerListener(scheduler, ConcurrencyLimitListener.NAME, ConcurrencyLimitListener.class);
+        return listener == null ? null : listener.getLimiter();
+    }
+
+    /**
+     * Sets the group caps of the config on the concurrency limiter of the scheduler and removes the caps of the
+     * previous config it no longer has. The groups are namespaced on the shared engine.
+     * */
+    private void applyGroupConcurrencyLimits(String schedulerId, Scheduler scheduler, SchedulerConfig config, SchedulerConfig previous) throws SchedulerException {
+        ConcurrencyLimitListener listener = getTriggerListener(scheduler, ConcurrencyLimitListener.NAME, ConcurrencyLimitListener.class);
+        if (listener == null) {
+            return;
+        }
+        boolean shared = isShared(schedulerId);
+        if (previous != null) {
+            for (String jobGroup : previous.getGroupConcurrencyLimits().keySet()) {
+                if (config == null || !config.getGroupConcurrencyLimits().containsKey(jobGroup)) {
+                    listener.getLimiter().setGroupLimit(shared ? SharedSchedulerEngine.namespace(schedulerId, jobGroup) : jobGroup, 0);
+                }
+            }
+        }
+        if (config != null) {
+            for (Map.Entry<String, Integer> limit : config.getGroupConcurrencyLimits().entrySet()) {
+                listener.getLimiter().setGroupLimit(shared ? SharedSchedulerEngine.namespace(schedulerId, limit.getKey()) : limit.getKey(), limit.getValue());
+            }
+        }
+    }
+
+    private void installAsyncJobTracker(Scheduler scheduler, SchedulerConfig config) throws SchedulerException {
+        AsyncJobTracker tracker = new AsyncJobTracker();
+        tracker.setMaxInFlight(config.getMaxAsyncInFlight());
+        scheduler.getContext().put(AsyncJobTracker.CONTEXT_KEY, tracker);
+    }
+
+    /**
+     * Returns the tracker of the AsyncJob fires of the scheduler, null if it isn't created yet.
+     * Schedulers on the shared engine share the tracker of the engine.
+     * */
+    public AsyncJobTracker getAsyncJobTracker(String schedulerId) throws SchedulerException {
+        Scheduler scheduler = schedulerRegistry.get(schedulerId);
+        if (scheduler == null || scheduler.isShutdown()) {
+            return null;
+        }
+        return scheduler.getContext().get(AsyncJobTracker.CONTEXT_KEY) instanceof AsyncJobTracker tracker ? tracker : null;
+    }
+
+    /**
+     * Puts fan-out groups into the context of the scheduler, unless it has them already or its job store persists
+     * jobs, which the groups could not be restored with.
+     * */
+    private synchronized void installFanOutGroups(String schedulerId, Scheduler scheduler) throws SchedulerException {
+        if (FanOutGroups.of(scheduler) != null) {
+            return;
+        }
+        QuartzSchedulerResources resources = QuartzInternals.getResources(scheduler);
+        if (resources == null || resources.getJobStore().supportsPersistence()) {
+            log.warn("Scheduler '{}' gives every template its own trigger, fan-out triggers need a local in-memory job store", schedulerId);
+            return;
+        }
+        FanOutGroups groups = new FanOutGroups(scheduler);
+        scheduler.getContext().put(FanOutGroups.CONTEXT_KEY, groups);
+        scheduler.getListenerManager().addSchedulerListener(new FanOutSchedulerListener(groups));
+    }
+
+    /**
+     * Returns the fan-out groups of the scheduler, null if it has none.
+     * Schedulers on the shared engine share the groups of the engine.
+     * */
+    public FanOutGroups getFanOutGroups(String schedulerId) throws SchedulerException {
+        Scheduler scheduler = schedulerRegistry.get(schedulerId);
+        if (scheduler == null || scheduler.isShutdown()) {
+            return null;
+        }
+        return FanOutGroups.of(scheduler);
+    }
+
+    private void deleteEmptyFanOutGroups(Scheduler scheduler) throws SchedulerException {
+        FanOutGroups groups = FanOutGroups.of(scheduler);
+        if (groups != null) {
+            groups.deleteEmptyGroups();
+        }
+    }
+
+    /**
+     * Installs the job factory shared by all schedulers, unless the properties configure another one.
+     * */
+    private void installJobFactory(Scheduler scheduler, Properties props) throws SchedulerException {
+        if (props.getProperty(StdSchedulerFactory.PROP_SCHED_JOB_FACTORY_CLASS) != null) {
+            return;
+        }
+        scheduler.setJobFactory(jobFactory);
+    }
+
+    /**
+     * Adds the listener returning pooled job instances. It is added after the other listeners of the scheduler.
+     * */
+    private void addReleaseListener(Scheduler scheduler, Properties props) throws SchedulerException {
+        if (props.getProperty(StdSchedulerFactory.PROP_SCHED_JOB_FACTORY_CLASS) != null) {
+            return;
+        }
+        addTriggerListener(scheduler, jobFactory.getReleaseListener());
+        addJobListener(scheduler, jobFactory.getReleaseListener());
+    }
+
+    public PooledJobFactory getJobFactory() {
+        return jobFactory;
+    }
+
+    private boolean isShared(String schedulerId) {
+        SharedSchedulerEngine engine = sharedEngine;
+        return engine != null && engine.hosts(schedulerId);
+    }
+
+    /**
+     * Returns the ID the thread pool of the scheduler is registered with in ResizableSimpleThreadPoolManager.
+     * */
+    private String poolIdOf(String schedulerId) {
+        return isShared(schedulerId) ? SharedSchedulerEngine.ENGINE_ID : schedulerId;
+    }
+
+    private Trigger scheduleTemplate(String schedulerId, Scheduler scheduler, ScheduleTemplate template) throws SchedulerException {
+        SchedulerConfig config = configRegistry.get(schedulerId);
+        BuiltJob builtJob = buildJobs(schedulerId, config, List.of(template)).getFirst();
+        if (builtJob.error() != null) {
+            throw builtJob.error();
+        }
+        storeJobs(schedulerId, scheduler, config, List.of(builtJob), false);
+        return builtJob.trigger();
+    }
+
+    /**
+     * Returns the Quartz scheduler of the scheduler, creating it if it was registered lazily. Schedulers on the
+     * shared engine all return the engine, their jobs and triggers are in the groups prefixed with their ID and a '/'.
+     * */
     public Scheduler getScheduler(String schedulerId) {
-        return schedulerRegistry.get(schedulerId);
+        try {
+            return createdScheduler(schedulerId);
+        } catch (SchedulerException e) {
+            log.error("Failed to create the scheduler '{}'", schedulerId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the Quartz scheduler, creating it if it was registered lazily. Returns null if it is not registered.
+     * */
+    private Scheduler createdScheduler(String schedulerId) throws SchedulerException {
+        Scheduler scheduler = schedulerRegistry.get(schedulerId);
+        if (scheduler != null) {
+            return scheduler;
+        }
+        DeferredScheduler deferred = deferredRegistry.get(schedulerId);
+        if (deferred == null) {
+            return schedulerRegistry.get(schedulerId); //Created since the first lookup
+        }
+        return deferred.get();
+    }
+
+    /**
+     * Returns the Quartz scheduler to stop, or null if it was registered lazily and was not created yet, in which
+     * case it never will be.
+     * */
+    private Scheduler schedulerToStop(String schedulerId) throws SchedulerException {
+        Scheduler scheduler = schedulerRegistry.get(schedulerId);
+        if (scheduler != null) {
+            return scheduler;
+        }
+        DeferredScheduler deferred = deferredRegistry.get(schedulerId);
+        if (deferred == null) {
+            scheduler = schedulerRegistry.get(schedulerId); //Created since the first lookup
+            if (scheduler == null) {
+                throw new SchedulerException("Scheduler with ID " + schedulerId + " does not exist");
+            }
+            return scheduler;
+        }
+        if (deferred.cancel()) {
+            return null;
+        }
+        try {
+            return deferred.get(); //It was created meanwhile
+        } catch (SchedulerException e) {
+            return null;
+        }
+    }
+
+    private List<String> registeredSchedulerIds() {
+        Set<String> schedulerIds = new LinkedHashSet<>(schedulerRegistry.keySet());
+        schedulerIds.addAll(deferredRegistry.keySet());
+        return new ArrayList<>(schedulerIds);
     }
 
     public SchedulerConfig getSchedulerConfig(String schedulerId) {
         return configRegistry.get(schedulerId);
     }
 
+    /**
+     * Returns the Quartz schedulers which were created, lazily registered schedulers are left out until they are.
+     * */
     public List<Scheduler> getAllSchedulers() {
         return new ArrayList<>(schedulerRegistry.values());
     }
@@ -131,72 +513,414 @@ public class SchedulerManager {
         return new ArrayList<>(configRegistry.values());
     }
 
+    /**
+     * Computes how many fires the triggers of the scheduler's templates make in each second of the next
+     * <code>horizonMs</code>, starting at the next whole second. Calendars are not applied.
+     * */
+    public FireDistribution getFireDistribution(String schedulerId, long horizonMs) throws SchedulerException {
+        Scheduler scheduler = getScheduler(schedulerId);
+        if (scheduler == null) {
+            throw new SchedulerException("Scheduler with ID " + schedulerId + " not found");
+        }
+        if (horizonMs <= 0) {
+            throw new IllegalArgumentException("horizonMs must be greater than 0");
+        }
+        long from = (System.currentTimeMillis() / 1000 + 1) * 1000;
+        int[] firesPerSecond = new int[(int) ((horizonMs + 999) / 1000)];
+        long to = from + firesPerSecond.length * 1000L;
+        for (ScheduleKeyRegistry.Keys keys : keyRegistry.snapshot(schedulerId).values()) {
+            Trigger trigger = scheduler.getTrigger(keys.triggerKey());
+            if (trigger == null) {
+                trigger = FanOutGroups.getFanOutTrigger(scheduler, keys.jobKey()); //It fires by the trigger of its fan-out group
+            }
+            if (trigger == null) {
+                continue;
+            }
+            Date fireTime = trigger.getFireTimeAfter(new Date(from - 1));
+            while (fireTime != null && fireTime.getTime() < to) {
+                firesPerSecond[(int) ((fireTime.getTime() - from) / 1000)]++;
+                fireTime = trigger.getFireTimeAfter(fireTime);
+            }
+        }
+        return new FireDistribution(schedulerId, from, firesPerSecond);
+    }
+
+    public JobKey getJobKey(String schedulerId, String jobName) {
+        return keyRegistry.getJobKey(schedulerId, jobName);
+    }
+
+    /**
+     * Returns the key of the job's trigger. A member of a fan-out group has no trigger of its own in the job store,
+     * only its fires carry this key; {@link FanOutGroups#getFanOutTrigger(Scheduler, JobKey)} returns the trigger it
+     * fires by, which it shares with its group.
+     * */
+    public TriggerKey getTriggerKey(String schedulerId, String jobName) {
+        return keyRegistry.getTriggerKey(schedulerId, jobName);
+    }
+
+    /**
+     * Returns a snapshot of the job keys of the scheduler by job name.
+     * */
+    public Map<String, JobKey> getJobKeys(String schedulerId) {
+        Map<String, JobKey> jobKeys = new HashMap<>();
+        keyRegistry.snapshot(schedulerId).forEach((jobName, keys) -> jobKeys.put(jobName, keys.jobKey()));
+        return jobKeys;
+    }
+
+    private void enableAdaptiveBatchAcquisition(String schedulerId, Scheduler scheduler, SchedulerConfig config) {
+        ResizableThreadPool pool = ResizableSimpleThreadPoolManager.getInstance().getThreadPool(schedulerId);
+        if (!(pool instanceof ResizableSimpleThreadPool)) {
+            log.info("Scheduler '{}' acquires triggers in fixed batches of {}, its thread pool does not adapt them", schedulerId, config.getResolvedMaxBatchSize());
+            return;
+        }
+        QuartzSchedulerResources resources = QuartzInternals.getResources(scheduler);
+        if (resources == null) {
+            log.warn("Adaptive batch acquisition is not available for scheduler '{}', keeping fixed batches", schedulerId);
+            return;
+        }
+        ((ResizableSimpleThreadPool) pool).setBatchAcquisition(
+                new AdaptiveBatchAcquisition(resources, config.getResolvedMaxBatchSize(), config.getBatchTimeWindowMs()));
+    }
+
+    /**
+     * Adds the listener to the scheduler. It sees an AsyncJob fire complete when the stage of the job completed.
+     * */
     public void addJobListener(Scheduler scheduler, JobListener jobListener) throws SchedulerException {
-        scheduler.getListenerManager().addJobListener(jobListener);
+        if (!(jobListener instanceof AsyncCompletionJobListener)) {
+            jobListener = new AsyncCompletionJobListener(jobListener);
+        }
+        ListenerManager listenerManager = scheduler.getListenerManager();
+        listenerManager.addJobListener(jobListener);
+        //Listeners are notified in the order they were added, the release listener has to stay the last one
+        JobListener releaseListener = listenerManager.getJobListener(jobFactory.getReleaseListener().getName());
+        if (releaseListener != null && releaseListener != jobListener) {
+            listenerManager.removeJobListener(releaseListener.getName());
+            listenerManager.addJobListener(releaseListener);
+        }
     }
 
+    /**
+     * Adds the listener to the scheduler. It sees an AsyncJob fire complete when the stage of the job completed.
+     * */
     public void addTriggerListener(Scheduler scheduler, TriggerListener triggerListener) throws SchedulerException {
-        scheduler.getListenerManager().addTriggerListener(triggerListener);
+        if (!(triggerListener instanceof AsyncCompletionTriggerListener)) {
+            triggerListener = new AsyncCompletionTriggerListener(triggerListener);
+        }
+        ListenerManager listenerManager = scheduler.getListenerManager();
+        listenerManager.addTriggerListener(triggerListener);
+        TriggerListener releaseListener = listenerManager.getTriggerListener(jobFactory.getReleaseListener().getName());
+        if (releaseListener != null && releaseListener != triggerListener) {
+            listenerManager.removeTriggerListener(releaseListener.getName());
+            listenerManager.addTriggerListener(releaseListener);
+        }
     }
 
     public void startScheduler(String schedulerId) throws SchedulerException {
-        Scheduler scheduler = getScheduler(schedulerId);
+        Scheduler scheduler = createdScheduler(schedulerId);
         if (scheduler == null) {
             throw new SchedulerException("Scheduler with ID " + schedulerId + " not found");
         }
+        if (isShared(schedulerId)) {
+            sharedEngine.start(schedulerId);
+            return;
+        }
         if (!scheduler.isStarted()) {
             scheduler.start();
         }
     }
 
-    public Map<String, Exception> startAllSchedulers() throws SchedulerException {
-        Map<String, Exception> resultMap = new LinkedHashMap<>();
-        for (String schedulerId : schedulerRegistry.keySet()) {
+    /**
+     * Starts all schedulers concurrently, waiting for each at most the startTimeoutMs of its config.
+     * */
+    public SchedulerOperationResult startAllSchedulers() {
+        return runOnAllSchedulers("Start", this::startScheduler, schedulerId -> {
+            SchedulerConfig config = configRegistry.get(schedulerId);
+            return config == null ? 0 : config.getStartTimeoutMs();
+        });
+    }
+
+    /**
+     * Starts all schedulers concurrently, waiting for each at most <code>timeoutMs</code>.
+     * */
+    public SchedulerOperationResult startAllSchedulers(long timeoutMs) {
+        if (timeoutMs < 1) {
+            throw new IllegalArgumentException("timeoutMs must be at least 1");
+        }
+        return runOnAllSchedulers("Start", this::startScheduler, schedulerId -> timeoutMs);
+    }
+
+    private interface SchedulerOperation {
+        void run(String schedulerId) throws Exception;
+    }
+
+    private record Outcome(Exception error, long elapsedMs) {}
+
+    /**
+     * Runs the operation for every scheduler on its own virtual thread. Each scheduler is waited for at most its
+     * timeout counted from the start of all operations, 0 waits until the operation completed.
+     * */
+    private SchedulerOperationResult runOnAllSchedulers(String operationName, SchedulerOperation operation, ToLongFunction<String> timeoutOf) {
+        long start = System.nanoTime();
+        Map<String, FutureTask<Outcome>> tasks = new LinkedHashMap<>();
+        for (String schedulerId : registeredSchedulerIds()) {
+            FutureTask<Outcome> task = new FutureTask<>(() -> {
+                long operationStart = System.nanoTime();
+                try {
+                    operation.run(schedulerId);
+                    return new Outcome(null, elapsedMillis(operationStart));
+                } catch (Exception e) {
+                    return new Outcome(e, elapsedMillis(operationStart));
+                }
+            });
+            Thread.ofVirtual().name(schedulerId + "-" + operationName).start(task);
+            tasks.put(schedulerId, task);
+        }
+
+        SchedulerOperationResult result = new SchedulerOperationResult();
+        for (Map.Entry<String, FutureTask<Outcome>> task : tasks.entrySet()) {
+            String schedulerId = task.getKey();
+            long timeoutMs = timeoutOf.applyAsLong(schedulerId);
             try {
-                startScheduler(schedulerId);
-                resultMap.put(schedulerId, null);
+                Outcome outcome;
+                if (timeoutMs > 0) {
+                    long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs) - (System.nanoTime() - start);
+                    outcome = task.getValue().get(Math.max(remainingNanos, 0), TimeUnit.NANOSECONDS);
+                } else {
+                    outcome = task.getValue().get();
+                }
+                result.put(schedulerId, outcome.error(), outcome.elapsedMs());
+            } catch (TimeoutException e) {
+                log.warn("{} of the scheduler '{}' did not complete within {}ms, it continues in the background", operationName, schedulerId, timeoutMs);
+                result.put(schedulerId, new TimeoutException(operationName + " of the scheduler '" + schedulerId + "' did not complete within " + timeoutMs + "ms"), elapsedMillis(start));
             } catch (Exception e) {
-                resultMap.put(schedulerId, e);
+                result.put(schedulerId, unwrap(e), elapsedMillis(start));
             }
         }
-        return resultMap;
+        return result;
     }
 
     public void stopScheduler(String schedulerId) throws SchedulerException {
-        Scheduler scheduler = schedulerRegistry.get(schedulerId);
+        Scheduler scheduler = schedulerToStop(schedulerId);
         if (scheduler == null) {
-            throw new SchedulerException("Scheduler with ID " + schedulerId + " does not exist");
+            return;
         }
         SchedulerConfig config = configRegistry.get(schedulerId);
-        if (scheduler.isStarted()) {
+        if (isShared(schedulerId)) {
+            sharedEngine.drain(schedulerId, config.isShutdownAfterAllJobsDone() ? config.getShutdownTimeoutMs() : -1);
+            return;
+        }
+        if (config.isShutdownAfterAllJobsDone() && config.getShutdownTimeoutMs() > 0) {
+            stopScheduler(schedulerId, config.getShutdownTimeoutMs());
+            return;
+        }
+        //A scheduler which never started is shut down too, the factory would hand it out again under its name
+        if (!scheduler.isShutdown()) {
             scheduler.shutdown(config.isShutdownAfterAllJobsDone());
         }
     }
 
-    public Map<String, Exception> stopAllSchedulers() {
-        Map<String, Exception> resultMap = new LinkedHashMap<>();
-        for (String schedulerId : schedulerRegistry.keySet()) {
-            try {
-                stopScheduler(schedulerId);
-                resultMap.put(schedulerId, null);
-            } catch (Exception e) {
-                resultMap.put(schedulerId, e);
+    /**
+     * Stops the scheduler, waiting at most <code>timeoutMs</code> for its running jobs. No trigger fires once
+     * the drain started, and the jobs still running at the deadline are interrupted and reported as cut off.
+     * */
+    public DrainReport stopScheduler(String schedulerId, long timeoutMs) throws SchedulerException {
+        if (timeoutMs < 1) {
+            throw new IllegalArgumentException("timeoutMs must be at least 1");
+        }
+        Scheduler scheduler = schedulerToStop(schedulerId);
+        if (scheduler == null) {
+            return new DrainReport(schedulerId, timeoutMs, 0, List.of(), null);
+        }
+        long drainStart = System.nanoTime();
+        if (isShared(schedulerId)) {
+            return sharedEngine.drain(schedulerId, timeoutMs);
+        }
+        if (!scheduler.isStarted() && !isStopping(schedulerId)) {
+            scheduler.shutdown(false);
+            return new DrainReport(schedulerId, timeoutMs, 0, List.of(), null);
+        }
+
+        ResizableThreadPool pool = ResizableSimpleThreadPoolManager.getInstance().getThreadPool(schedulerId);
+        if (pool != null) {
+            pool.beginDrain(timeoutMs);
+            scheduler.shutdown(true);
+            DrainReport report = pool.getDrainReport();
+            if (report != null) {
+                return report;
+            }
+            return new DrainReport(schedulerId, timeoutMs, elapsedMillis(drainStart), List.of(), null);
+        }
+
+        // The thread pool cannot drain with a deadline, bound the wait for Quartz's own shutdown instead.
+        // A shutdown which outlived an earlier deadline is waited for again rather than started twice.
+        Thread shutdownThread = stoppingRegistry.computeIfAbsent(schedulerId, id -> {
+            Thread thread = new Thread(() -> {
+                try {
+                    scheduler.shutdown(true);
+                } catch (SchedulerException e) {
+                    log.error("Failed to shutdown scheduler '" + schedulerId + "'", e);
+                } finally {
+                    stoppingRegistry.remove(schedulerId, Thread.currentThread());
+                }
+            }, schedulerId + "-Shutdown");
+            thread.setDaemon(true);
+            thread.start();
+            return thread;
+        });
+        try {
+            shutdownThread.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<String> cutOffJobs = new ArrayList<>();
+        if (shutdownThread.isAlive()) {
+            for (JobExecutionContext context : scheduler.getCurrentlyExecutingJobs()) {
+                cutOffJobs.add(context.getJobDetail().getKey().toString());
+                interruptJob(scheduler, context);
             }
+            log.warn("Drain deadline of {}ms passed for scheduler '{}', interrupted the InterruptableJobs of {}. It stays "
+                    + "registered as stopping until they end", timeoutMs, schedulerId, cutOffJobs);
         }
+        return new DrainReport(schedulerId, timeoutMs, elapsedMillis(drainStart), cutOffJobs, null);
+    }
+
+    private static void interruptJob(Scheduler scheduler, JobExecutionContext context) {
+        if (!(context.getJobInstance() instanceof InterruptableJob)) {
+            return;
+        }
+        try {
+            scheduler.interrupt(context.getFireInstanceId());
+        } catch (UnableToInterruptJobException e) {
+            log.warn("Couldn't interrupt the job '{}'", context.getJobDetail().getKey(), e);
+        }
+    }
+
+    /**
+     * Returns true if the scheduler's shutdown outlived the deadline of its drain and is still waiting for jobs.
+     * removeScheduler keeps such a scheduler registered, so it can be stopped and removed again later.
+     * */
+    public boolean isStopping(String schedulerId) {
+        return stoppingRegistry.containsKey(schedulerId);
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Stops all schedulers concurrently. The shutdownTimeoutMs of each config bounds how long its running jobs
+     * are waited for, and how long its stop is waited for. A stop which takes longer is reported as a
+     * TimeoutException and continues in the background. A config without shutdownTimeoutMs is waited for until
+     * its stop completed.
+     * */
+    public SchedulerOperationResult stopAllSchedulers() {
+        SchedulerOperationResult result = runOnAllSchedulers("Stop", this::stopScheduler, schedulerId -> {
+            SchedulerConfig config = configRegistry.get(schedulerId);
+            //The drain ends at the deadline, the grace leaves it the time to report the jobs it cut off
+            return config == null || config.getShutdownTimeoutMs() == 0 ? 0 : config.getShutdownTimeoutMs() + STOP_GRACE_MS;
+        });
+        shutdownSharedEngine(0);
+        return result;
+    }
+
+    /**
+     * Drains all schedulers concurrently, each with the deadline <code>timeoutMs</code>.
+     * */
+    public Map<String, DrainReport> stopAllSchedulers(long timeoutMs) {
+        if (timeoutMs < 1) {
+            throw new IllegalArgumentException("timeoutMs must be at least 1");
+        }
+        long drainStart = System.nanoTime();
+        Map<String, Future<DrainReport>> drains = new LinkedHashMap<>();
+        Map<String, DrainReport> resultMap = new LinkedHashMap<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String schedulerId : registeredSchedulerIds()) {
+                drains.put(schedulerId, executor.submit(() -> stopScheduler(schedulerId, timeoutMs)));
+            }
+            for (Map.Entry<String, Future<DrainReport>> drain : drains.entrySet()) {
+                try {
+                    resultMap.put(drain.getKey(), drain.getValue().get());
+                } catch (Exception e) {
+                    resultMap.put(drain.getKey(), DrainReport.failed(drain.getKey(), timeoutMs, elapsedMillis(drainStart), unwrap(e)));
+                }
+            }
+        }
+        shutdownSharedEngine(Math.max(timeoutMs - elapsedMillis(drainStart), 1));
         return resultMap;
     }
 
+    /**
+     * Shuts the shared engine down once its schedulers were stopped. A timeout greater than 0 bounds the wait for
+     * jobs which ignored the interrupt of their drain.
+     * */
+    private synchronized void shutdownSharedEngine(long timeoutMs) {
+        SharedSchedulerEngine engine = sharedEngine;
+        if (engine == null) {
+            return;
+        }
+        sharedEngine = null;
+        try {
+            if (engine.getScheduler().isShutdown()) {
+                return;
+            }
+            ResizableThreadPool pool = ResizableSimpleThreadPoolManager.getInstance().getThreadPool(SharedSchedulerEngine.ENGINE_ID);
+            if (timeoutMs > 0 && pool != null) {
+                pool.beginDrain(timeoutMs);
+            }
+            engine.getScheduler().shutdown(true);
+            log.info("Shut down the shared engine");
+        } catch (SchedulerException e) {
+            log.error("Failed to shutdown the shared engine", e);
+        }
+    }
+
+    private static Exception unwrap(Exception e) {
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        if (e instanceof ExecutionException && e.getCause() instanceof Exception) {
+            return (Exception) e.getCause();
+        }
+        return e;
+    }
+
     public void removeScheduler(String schedulerId) {
-        Scheduler scheduler = schedulerRegistry.get(schedulerId);
+        boolean shared = isShared(schedulerId);
         try {
             stopScheduler(schedulerId);
         } catch (Exception e) {}
-        schedulerRegistry.remove(schedulerId);
+        if (isStopping(schedulerId)) {
+            log.warn("The scheduler '{}' is still stopping and stays registered, remove it again once its jobs ended", schedulerId);
+            return;
+        }
+        if (shared) {
+            try {
+                SchedulerConfig config = configRegistry.get(schedulerId);
+                applyGroupConcurrencyLimits(schedulerId, sharedEngine.getScheduler(), null, config);
+                sharedEngine.remove(schedulerId);
+                if (sharedEngine.isEmpty()) {
+                    shutdownSharedEngine(0);
+                } else if (config != null && config.isAutoAdjustThreadCount()) {
+                    //Gives back the workers its jobs added to the engine's pool
+                    removeThread(SharedSchedulerEngine.ENGINE_ID, keyRegistry.size(schedulerId));
+                }
+            } catch (Exception e) {
+                log.warn("Couldn't remove the jobs of the scheduler '{}' from the shared engine", schedulerId, e);
+            }
+        }
+        Scheduler scheduler = schedulerRegistry.remove(schedulerId);
+        deferredRegistry.remove(schedulerId);
         configRegistry.remove(schedulerId);
+        if (scheduler != null) {
+            for (ScheduleKeyRegistry.Keys keys : keyRegistry.snapshot(schedulerId).values()) {
+                unregisterFunction(scheduler, keys.jobKey());
+            }
+        }
+        keyRegistry.removeScheduler(schedulerId);
     }
 
     public void removeAllSchedulers() {
-        List<String> schedulerIDs = new ArrayList<>(schedulerRegistry.keySet());
+        List<String> schedulerIDs = registeredSchedulerIds();
         for (String schedulerId : schedulerIDs) {
             removeScheduler(schedulerId);
         }
@@ -204,15 +928,17 @@ public class SchedulerManager {
 
     public void addScheduleJob(ScheduleTemplate template) throws SchedulerException {
         try {
-            if (schedulerRegistry.size() != 1) {
+            List<String> schedulerIds = registeredSchedulerIds();
+            if (schedulerIds.size() != 1) {
                 throw new SchedulerException("addScheduleJob method is only supported when there is only one scheduler in registry");
             }
             if (template == null) {
                 throw new IllegalArgumentException("ScheduleTemplate is null");
             }
-            Scheduler scheduler = new ArrayList<>(schedulerRegistry.values()).getFirst();
-            addThread(schedulerRegistry.keySet().toArray()[0].toString(), 1);
-            scheduler.scheduleJob(template.getJob(), template.getTrigger());
+            String schedulerId = schedulerIds.getFirst();
+            Scheduler scheduler = createdScheduler(schedulerId);
+            addThread(schedulerId, 1);
+            scheduleTemplate(schedulerId, scheduler, template);
         } catch (SchedulerException e) {
 
         }
@@ -229,18 +955,387 @@ public class SchedulerManager {
         if (addThread) {
             addThread(schedulerId, 1);
         }
-        scheduler.scheduleJob(template.getJob(), template.getTrigger());
+        scheduleTemplate(schedulerId, scheduler, template);
         log.info("Added the job '{}' to the scheduler '{}'", template.getJobName(), schedulerId);
     }
 
+    /**
+     * Schedules many templates at once. The jobs and triggers are built in parallel and stored with one
+     * <code>scheduleJobs</code> call, which is a single transaction on JDBC job stores. If the batch is rejected,
+     * the templates are scheduled one by one. Templates which fail are reported and do not abort the batch.
+     *
+     * @param addThread adds a worker per scheduled template
+     * @param replace replaces jobs and triggers with the same keys instead of failing
+     * */
+    public BulkScheduleResult addScheduleJobs(String schedulerId, Collection<ScheduleTemplate> templates, boolean addThread, boolean replace) throws SchedulerException {
+        Scheduler scheduler = getScheduler(schedulerId);
+        if (scheduler == null) {
+            throw new SchedulerException("Scheduler with ID " + schedulerId + " not found");
+        }
+        if (templates == null) {
+            throw new IllegalArgumentException("ScheduleTemplates are null");
+        }
+        long start = System.nanoTime();
+        Map<String, Exception> failures = new LinkedHashMap<>();
+        List<BuiltJob> builtJobs = new ArrayList<>();
+        Set<JobKey> jobKeys = new HashSet<>();
+        Set<TriggerKey> triggerKeys = new HashSet<>();
+        SchedulerConfig config = configRegistry.get(schedulerId);
+        for (BuiltJob builtJob : buildJobs(schedulerId, config, templates)) {
+            if (builtJob.error() != null) {
+                failures.put(String.valueOf(builtJob.template().getJobName()), builtJob.error());
+            } else if (!jobKeys.add(builtJob.jobDetail().getKey()) || !triggerKeys.add(builtJob.trigger().getKey())) {
+                //The batch would be rejected as a whole for a key it contains twice
+                failures.put(builtJob.template().getJobName(), new ObjectAlreadyExistsException(builtJob.jobDetail()));
+            } else {
+                builtJobs.add(builtJob);
+            }
+        }
+
+        int scheduled = storeJobs(schedulerId, scheduler, config, builtJobs, replace, failures);
+        if (addThread && scheduled > 0) {
+            addThread(schedulerId, scheduled);
+        }
+        log.info("Added {} of {} jobs to the scheduler '{}'", scheduled, templates.size(), schedulerId);
+        return new BulkScheduleResult(schedulerId, scheduled, failures, elapsedMillis(start));
+    }
+
+    /**
+     * Applies the schedule templates of <code>config</code> to the running scheduler without re-registering it.
+     * Only the templates which were added, removed or changed are scheduled, unscheduled or replaced, the triggers
+     * of the others keep running with their fire times. With autoAdjustThreadCount the thread pool grows or shrinks
+     * by the net number of added templates.
+     * <p>
+     * The config replaces the running one, its thread pool and job store settings take effect when the scheduler
+     * is registered again.
+     * */
+    public ReloadResult reloadScheduler(String schedulerId, SchedulerConfig config) throws SchedulerException {
+        Scheduler scheduler = getScheduler(schedulerId);
+        SchedulerConfig running = configRegistry.get(schedulerId);
+        if (scheduler == null || running == null) {
+            throw new SchedulerException("Scheduler with ID " + schedulerId + " not found");
+        }
+        if (config == null) {
+            throw new IllegalArgumentException("SchedulerConfig is null");
+        }
+        Map<String, ScheduleTemplate> templates = config.getScheduleTemplates();
+        if (templates == null || templates.isEmpty()) {
+            throw new IllegalArgumentException("ScheduleTemplates are null or empty");
+        }
+
+        synchronized (running) {
+            if (configRegistry.get(schedulerId) != running) {
+                throw new SchedulerException("Scheduler with ID " + schedulerId + " was reloaded or removed concurrently");
+            }
+            long start = System.nanoTime();
+            Map<String, ScheduleTemplate> current = running.getScheduleTemplates();
+            List<String> removed = new ArrayList<>();
+            List<ScheduleTemplate> added = new ArrayList<>();
+            List<ScheduleTemplate> changed = new ArrayList<>();
+            for (String jobName : current.keySet()) {
+                if (!templates.containsKey(jobName)) {
+                    removed.add(jobName);
+                }
+            }
+            for (Map.Entry<String, ScheduleTemplate> template : templates.entrySet()) {
+                ScheduleTemplate currentTemplate = current.get(template.getKey());
+                if (currentTemplate == null) {
+                    added.add(template.getValue());
+                } else if (!currentTemplate.hasSameDefinition(template.getValue())
+                        || template.getValue().getStaggerWindowMs() < 0 && running.getStaggerWindowMs() != config.getStaggerWindowMs()) {
+                    changed.add(template.getValue());
+                }
+            }
+
+            Map<String, Exception> failures = new LinkedHashMap<>();
+            int unscheduled = unscheduleJobs(schedulerId, scheduler, removed, failures);
+            List<BuiltJob> builtJobs = new ArrayList<>();
+            List<JobKey> movedJobKeys = new ArrayList<>();
+            for (BuiltJob builtJob : buildJobs(schedulerId, config, changed.isEmpty() ? added : concat(changed, added))) {
+                if (builtJob.error() != null) {
+                    failures.put(String.valueOf(builtJob.template().getJobName()), builtJob.error());
+                    continue;
+                }
+                ScheduleKeyRegistry.Keys keys = keyRegistry.get(schedulerId, builtJob.template().getJobName());
+                if (keys != null && (!keys.jobKey().equals(builtJob.jobDetail().getKey()) || !keys.triggerKey().equals(builtJob.trigger().getKey()))) {
+                    movedJobKeys.add(keys.jobKey()); //Replacing would leave the job under its old group behind
+                }
+                builtJobs.add(builtJob);
+            }
+            if (!movedJobKeys.isEmpty()) {
+                scheduler.deleteJobs(movedJobKeys);
+                movedJobKeys.forEach(jobKey -> unregisterFunction(scheduler, jobKey));
+            }
+            storeJobs(schedulerId, scheduler, config, builtJobs, true, failures);
+
+            int threadDelta = 0;
+            if (config.isAutoAdjustThreadCount()) {
+                int scheduled = 0;
+                for (ScheduleTemplate template : added) {
+                    if (!failures.containsKey(template.getJobName())) {
+                        scheduled++;
+                    }
+                }
+                threadDelta = scheduled - unscheduled;
+                if (threadDelta > 0) {
+                    addThread(schedulerId, threadDelta);
+                } else if (threadDelta < 0) {
+                    removeThread(schedulerId, -threadDelta);
+                }
+            }
+            applyGroupConcurrencyLimits(schedulerId, scheduler, config, running);
+            AsyncJobTracker asyncJobTracker = isShared(schedulerId) ? null : getAsyncJobTracker(schedulerId);
+            if (asyncJobTracker != null) {
+                asyncJobTracker.setMaxInFlight(config.getMaxAsyncInFlight());
+            }
+            MisfireCatchUp misfireCatchUp = isShared(schedulerId) ? null : getMisfireCatchUp(schedulerId);
+            if (misfireCatchUp != null) {
+                misfireCatchUp.setMaxParallelism(config.getCatchUpParallelism());
+            }
+            configRegistry.replace(schedulerId, running, config);
+            List<String> addedNames = added.stream().map(ScheduleTemplate::getJobName).toList();
+            List<String> changedNames = changed.stream().map(ScheduleTemplate::getJobName).toList();
+            log.info("Reloaded the scheduler '{}': {} added, {} removed, {} changed, {} unchanged", schedulerId,
+                    addedNames.size(), removed.size(), changedNames.size(), templates.size() - addedNames.size() - changedNames.size());
+            return new ReloadResult(schedulerId, addedNames, removed, changedNames,
+                    templates.size() - addedNames.size() - changedNames.size(), threadDelta, failures, elapsedMillis(start));
+        }
+    }
+
+    private static List<ScheduleTemplate> concat(List<ScheduleTemplate> first, List<ScheduleTemplate> second) {
+        List<ScheduleTemplate> templates = new ArrayList<>(first.size() + second.size());
+        templates.addAll(first);
+        templates.addAll(second);
+        return templates;
+    }
+
+    /**
+     * Deletes the jobs of the job names in one call, falling back to deleting them one by one if it fails.
+     *
+     * @return the number of deleted jobs
+     * */
+    private int unscheduleJobs(String schedulerId, Scheduler scheduler, List<String> jobNames, Map<String, Exception> failures) {
+        Map<String, ScheduleKeyRegistry.Keys> jobs = new LinkedHashMap<>();
+        for (String jobName : jobNames) {
+            ScheduleKeyRegistry.Keys keys = keyRegistry.get(schedulerId, jobName);
+            if (keys != null) {
+                jobs.put(jobName, keys);
+            }
+        }
+        if (jobs.isEmpty()) {
+            return 0;
+        }
+        try {
+            scheduler.deleteJobs(jobs.values().stream().map(ScheduleKeyRegistry.Keys::jobKey).toList());
+        } catch (SchedulerException e) {
+            log.warn("Batch unscheduling of {} jobs on the scheduler '{}' failed, unscheduling them one by one: {}", jobs.size(), schedulerId, e.getMessage());
+            for (Map.Entry<String, ScheduleKeyRegistry.Keys> job : new ArrayList<>(jobs.entrySet())) {
+                try {
+                    scheduler.deleteJob(job.getValue().jobKey());
+                } catch (SchedulerException jobError) {
+                    failures.put(job.getKey(), jobError);
+                    jobs.remove(job.getKey());
+                }
+            }
+        }
+        jobs.forEach((jobName, keys) -> {
+            keyRegistry.remove(schedulerId, jobName, keys);
+            unregisterFunction(scheduler, keys.jobKey());
+        });
+        try {
+            deleteEmptyFanOutGroups(scheduler);
+        } catch (SchedulerException e) {
+            log.warn("Couldn't delete the emptied fan-out triggers of the scheduler '{}'", schedulerId, e);
+        }
+        return jobs.size();
+    }
+
+    private record BuiltJob(ScheduleTemplate template, JobDetail jobDetail, Trigger trigger, RuntimeException error) {}
+
+    /**
+     * Builds the jobs and triggers of the templates in parallel, namespaced when the scheduler is on the shared engine.
+     * Cron triggers are staggered over the window of the config unless their template sets its own.
+     * */
+    private List<BuiltJob> buildJobs(String schedulerId, SchedulerConfig config, Collection<ScheduleTemplate> templates) {
+        boolean shared = isShared(schedulerId);
+        long staggerWindowMs = config == null ? 0 : config.getStaggerWindowMs();
+        return templates.parallelStream().map(template -> {
+            try {
+                JobDetail jobDetail = template.getJob();
+                jobDetail.getJobDataMap().put("schedulerId", schedulerId);
+                Trigger trigger = template.getTrigger(staggerWindowMs);
+                if (shared) {
+                    jobDetail = SharedSchedulerEngine.namespace(schedulerId, jobDetail);
+                    trigger = SharedSchedulerEngine.namespace(schedulerId, trigger);
+                }
+                return new BuiltJob(template, jobDetail, trigger, null);
+            } catch (RuntimeException e) {
+                return new BuiltJob(template, null, null, e);
+            }
+        }).toList();
+    }
+
+    /**
+     * Stores the jobs in one batch, falling back to storing them one by one if the batch is rejected.
+     *
+     * @return the number of stored jobs
+     * */
+    private int storeJobs(String schedulerId, Scheduler scheduler, SchedulerConfig config, List<BuiltJob> builtJobs, boolean replace, Map<String, Exception> failures) {
+        try {
+            storeJobs(schedulerId, scheduler, config, builtJobs, replace);
+            return builtJobs.size();
+        } catch (SchedulerException e) {
+            log.warn("Batch scheduling of {} jobs on the scheduler '{}' failed, scheduling them one by one: {}", builtJobs.size(), schedulerId, e.getMessage());
+        }
+        int scheduled = 0;
+        for (BuiltJob builtJob : builtJobs) {
+            try {
+                storeJobs(schedulerId, scheduler, config, List.of(builtJob), replace);
+                scheduled++;
+            } catch (SchedulerException | RuntimeException jobError) {
+                failures.put(builtJob.template().getJobName(), jobError);
+            }
+        }
+        return scheduled;
+    }
+
+    private void storeJobs(String schedulerId, Scheduler scheduler, SchedulerConfig config, List<BuiltJob> builtJobs, boolean replace) throws SchedulerException {
+        if (builtJobs.isEmpty()) {
+            return;
+        }
+        //Functions are registered first, a trigger may fire as soon as it is stored
+        for (BuiltJob builtJob : builtJobs) {
+            if (builtJob.template().getJobFunction() != null) {
+                jobFactory.registerFunction(scheduler.getSchedulerName(), builtJob.jobDetail().getKey(), builtJob.template().getJobFunction());
+            }
+        }
+        try {
+            storeBuiltJobs(schedulerId, scheduler, config, builtJobs, replace);
+        } catch (SchedulerException | RuntimeException e) {
+            if (!replace) {
+                for (BuiltJob builtJob : builtJobs) {
+                    if (builtJob.template().getJobFunction() != null) {
+                        unregisterFunction(scheduler, builtJob.jobDetail().getKey());
+                    }
+                }
+            }
+            throw e;
+        }
+        for (BuiltJob builtJob : builtJobs) {
+            keyRegistry.put(schedulerId, builtJob.template().getJobName(), builtJob.jobDetail().getKey(), builtJob.trigger().getKey());
+        }
+    }
+
+    /**
+     * Stores the jobs, as members of fan-out groups if the config asks for it and the scheduler has them.
+     * Replaced jobs which are stored with triggers of their own leave their group.
+     * */
+    private void storeBuiltJobs(String schedulerId, Scheduler scheduler, SchedulerConfig config, List<BuiltJob> builtJobs, boolean replace) throws SchedulerException {
+        FanOutGroups fanOutGroups = FanOutGroups.of(scheduler);
+        if (fanOutGroups != null && config != null && config.isFanOutTriggers()) {
+            storeFanOutJobs(schedulerId, scheduler, fanOutGroups, builtJobs, replace);
+            return;
+        }
+        if (fanOutGroups != null && replace) {
+            for (BuiltJob builtJob : builtJobs) {
+                fanOutGroups.leave(builtJob.jobDetail().getKey());
+            }
+        }
+        if (builtJobs.size() == 1 && !replace) {
+            BuiltJob builtJob = builtJobs.getFirst();
+            if (isShared(schedulerId)) {
+                sharedEngine.scheduleNamespacedJob(schedulerId, builtJob.jobDetail(), builtJob.trigger());
+            } else {
+                scheduler.scheduleJob(builtJob.jobDetail(), builtJob.trigger());
+            }
+        } else {
+            Map<JobDetail, Set<? extends Trigger>> jobs = new LinkedHashMap<>();
+            for (BuiltJob builtJob : builtJobs) {
+                jobs.put(builtJob.jobDetail(), Set.of(builtJob.trigger()));
+            }
+            if (isShared(schedulerId)) {
+                sharedEngine.scheduleNamespacedJobs(schedulerId, jobs, replace);
+            } else {
+                scheduler.scheduleJobs(jobs, replace);
+            }
+        }
+        if (fanOutGroups != null && replace) {
+            fanOutGroups.deleteEmptyGroups();
+        }
+    }
+
+    /**
+     * Stores the jobs whose triggers can fan out as durable members of the group of their schedule, without their
+     * triggers, and the others with their triggers, in one batch with the dispatchers and triggers of the groups
+     * created for them. Replacing a job which had a trigger of its own unschedules it.
+     * */
+    private void storeFanOutJobs(String schedulerId, Scheduler scheduler, FanOutGroups fanOutGroups, List<BuiltJob> builtJobs, boolean replace) throws SchedulerException {
+        String dispatcherGroup = isShared(schedulerId) ? SharedSchedulerEngine.namespace(schedulerId, FanOutGroups.DISPATCHER_GROUP) : FanOutGroups.DISPATCHER_GROUP;
+        Map<JobDetail, Set<? extends Trigger>> jobs = new LinkedHashMap<>();
+        List<JobKey> joined = new ArrayList<>();
+        List<TriggerKey> ownTriggerKeys = new ArrayList<>();
+        try {
+            for (BuiltJob builtJob : builtJobs) {
+                JobDetail jobDetail = builtJob.jobDetail();
+                Trigger trigger = builtJob.trigger();
+                if (!FanOutGroups.canFanOut(jobDetail, trigger)) {
+                    if (replace) {
+                        fanOutGroups.leave(jobDetail.getKey());
+                    }
+                    jobs.put(jobDetail, Set.of(trigger));
+                    continue;
+                }
+                //A trigger may fire as soon as it is stored, the member joins first
+                TriggerKey previousGroup = fanOutGroups.getTriggerKey(jobDetail.getKey());
+                FanOutGroups.Dispatcher created = fanOutGroups.join(jobDetail, trigger, dispatcherGroup);
+                if (!Objects.equals(previousGroup, fanOutGroups.getTriggerKey(jobDetail.getKey()))) {
+                    joined.add(jobDetail.getKey());
+                }
+                ownTriggerKeys.add(trigger.getKey());
+                jobs.put(jobDetail.getJobBuilder().storeDurably().build(), Set.of());
+                if (created != null) {
+                    jobs.put(created.jobDetail(), Set.of(created.trigger()));
+                }
+            }
+            if (isShared(schedulerId)) {
+                sharedEngine.scheduleNamespacedJobs(schedulerId, jobs, replace);
+            } else {
+                scheduler.scheduleJobs(jobs, replace);
+            }
+        } catch (SchedulerException | RuntimeException e) {
+            joined.forEach(fanOutGroups::leave);
+            try {
+                fanOutGroups.deleteEmptyGroups();
+            } catch (SchedulerException cleanupError) {
+                e.addSuppressed(cleanupError);
+            }
+            throw e;
+        }
+        if (replace && !ownTriggerKeys.isEmpty()) {
+            scheduler.unscheduleJobs(ownTriggerKeys);
+        }
+        fanOutGroups.deleteEmptyGroups(); //Left by jobs which moved to another group
+    }
+
+    private void unregisterFunction(Scheduler scheduler, JobKey jobKey) {
+        try {
+            jobFactory.unregisterFunction(scheduler.getSchedulerName(), jobKey);
+        } catch (SchedulerException e) {
+            log.warn("Couldn't unregister the job function of '{}'", jobKey, e);
+        }
+    }
+
     public boolean removeScheduleJob(String schedulerId, String jobID, boolean removeThread) throws SchedulerException {
         Scheduler scheduler = getScheduler(schedulerId);
         if (scheduler == null) {
             throw new SchedulerException("Scheduler with ID " + schedulerId + " not found");
         }
-        JobKey key = jobKeyRegistry.get(jobID);
-        if (key != null) {
-            boolean result = scheduler.deleteJob(key);
+        ScheduleKeyRegistry.Keys keys = keyRegistry.get(schedulerId, jobID);
+        if (keys != null) {
+            boolean result = scheduler.deleteJob(keys.jobKey());
+            keyRegistry.remove(schedulerId, jobID, keys);
+            unregisterFunction(scheduler, keys.jobKey());
+            deleteEmptyFanOutGroups(scheduler);
             if (!result) {
                 log.warn("Couldn't remove the job '{}'", jobID);
                 return false;
@@ -249,6 +1344,7 @@ public class SchedulerManager {
             if (removeThread) {
                 removeThread(schedulerId, 1);
             }
+            return true;
         } else {
             log.warn("Couldn't remove the job '{}'. job key is null", jobID);
         }
@@ -256,16 +1352,21 @@ public class SchedulerManager {
     }
 
     public boolean removeScheduleJob(String schedulerId, String jobID) throws SchedulerException {
-        Scheduler scheduler = getScheduler(schedulerId);
-        boolean removeThread = configRegistry.get(schedulerId).getScheduleTemplate(jobID).isRemoveThreadWhenNextJobNotExist();
+        SchedulerConfig config = configRegistry.get(schedulerId);
+        if (config == null) {
+            throw new SchedulerException("Scheduler with ID " + schedulerId + " not found");
+        }
+        //Jobs added after registration have no template in the config
+        ScheduleTemplate template = config.getScheduleTemplate(jobID);
+        boolean removeThread = template != null && template.isRemoveThreadWhenNextJobNotExist();
         return removeScheduleJob(schedulerId, jobID, removeThread);
     }
 
     private int addThread(String schedulerId, int addCount) {
-        return ResizableSimpleThreadPoolManager.getInstance().addWorkerThread(schedulerId, addCount);
+        return ResizableSimpleThreadPoolManager.getInstance().addWorkerThread(poolIdOf(schedulerId), addCount);
     }
 
     private int removeThread(String schedulerId, int removeCount) {
-        return ResizableSimpleThreadPoolManager.getInstance().removeWorkerThread(schedulerId, removeCount);
+        return ResizableSimpleThreadPoolManager.getInstance().removeWorkerThread(poolIdOf(schedulerId), removeCount);
     }
 }
@@ -0,0 +1,37 @@
+package lab.scheduler.core;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outcome of starting or stopping all schedulers: the exception of every scheduler by ID, null if the operation
+ * succeeded, and how long the operation took for each scheduler.
+ * <p>
+ * A scheduler which did not finish within its timeout maps to a {@link java.util.concurrent.TimeoutException},
+ * the operation keeps running in the background.
+ * */
+public class SchedulerOperationResult extends LinkedHashMap<String, Exception> {
+    private static final long serialVersionUID = 1L;
+    private final LinkedHashMap<String, Long> elapsedMs = new LinkedHashMap<>();
+
+    void put(String schedulerId, Exception error, long elapsedMs) {
+        put(schedulerId, error);
+        this.elapsedMs.put(schedulerId, elapsedMs);
+    }
+
+    /**
+     * Returns how long the operation took for the scheduler, -1 if it was not part of the operation.
+     * */
+    public long getElapsedMs(String schedulerId) {
+        return elapsedMs.getOrDefault(schedulerId, -1L);
+    }
+
+    public Map<String, Long> getElapsedMs() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(elapsedMs));
+    }
+
+    public boolean isSuccessful() {
+        return values().stream().allMatch(error -> error == null);
+    }
+}
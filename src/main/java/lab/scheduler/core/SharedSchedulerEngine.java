@@ -0,0 +1,209 @@
+package lab.scheduler.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.*;
+import org.quartz.impl.matchers.GroupMatcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * One Quartz scheduler hosting many logical schedulers. A logical scheduler owns the job and trigger groups
+ * prefixed with its ID and a '/', so all of them share one scheduler thread, one job store and one thread pool.
+ * </p>
+ * <p>
+ * Starting a logical scheduler resumes its trigger groups and stopping it pauses them, so unlike a scheduler of
+ * its own it can be started again. The trigger groups of a logical scheduler that is not started are paused
+ * before its first trigger is stored, so nothing fires before it is started.
+ * </p>
+ */
+@Slf4j
+class SharedSchedulerEngine {
+
+    static final String ENGINE_ID = "SHARED-ENGINE";
+    static final String SEPARATOR = "/";
+
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Scheduler scheduler;
+    private final Map<String, Set<String>> triggerGroups = new ConcurrentHashMap<>();
+    private final Set<String> startedSchedulers = ConcurrentHashMap.newKeySet();
+
+    SharedSchedulerEngine(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    static String namespace(String schedulerId, String group) {
+        return schedulerId + SEPARATOR + group;
+    }
+
+    boolean hosts(String schedulerId) {
+        return schedulerId != null && triggerGroups.containsKey(schedulerId);
+    }
+
+    boolean isEmpty() {
+        return triggerGroups.isEmpty();
+    }
+
+    void host(String schedulerId) {
+        if (schedulerId.contains(SEPARATOR)) {
+            throw new IllegalArgumentException("The ID of a scheduler on the shared engine cannot contain '" + SEPARATOR + "': " + schedulerId);
+        }
+        triggerGroups.putIfAbsent(schedulerId, ConcurrentHashMap.newKeySet());
+    }
+
+    static JobDetail namespace(String schedulerId, JobDetail jobDetail) {
+        JobKey jobKey = new JobKey(jobDetail.getKey().getName(), namespace(schedulerId, jobDetail.getKey().getGroup()));
+        return jobDetail.getJobBuilder().withIdentity(jobKey).build();
+    }
+
+    static Trigger namespace(String schedulerId, Trigger trigger) {
+        JobKey jobKey = new JobKey(trigger.getJobKey().getName(), namespace(schedulerId, trigger.getJobKey().getGroup()));
+        TriggerKey triggerKey = new TriggerKey(trigger.getKey().getName(), namespace(schedulerId, trigger.getKey().getGroup()));
+        return trigger.getTriggerBuilder().withIdentity(triggerKey).forJob(jobKey).build();
+    }
+
+    /**
+     * Schedules a job and trigger which are in the namespace of the logical scheduler already.
+     */
+    synchronized void scheduleNamespacedJob(String schedulerId, JobDetail jobDetail, Trigger trigger) throws SchedulerException {
+        prepareTriggerGroups(schedulerId, List.of(trigger));
+        scheduler.scheduleJob(jobDetail, trigger);
+    }
+
+    /**
+     * Stores jobs and triggers which are in the namespace of the logical scheduler already, in one batch.
+     */
+    synchronized void scheduleNamespacedJobs(String schedulerId, Map<JobDetail, Set<? extends Trigger>> jobs, boolean replace) throws SchedulerException {
+        List<Trigger> triggers = new ArrayList<>();
+        for (Set<? extends Trigger> jobTriggers : jobs.values()) {
+            triggers.addAll(jobTriggers);
+        }
+        prepareTriggerGroups(schedulerId, triggers);
+        scheduler.scheduleJobs(jobs, replace);
+    }
+
+    private void prepareTriggerGroups(String schedulerId, Collection<? extends Trigger> triggers) throws SchedulerException {
+        Set<String> groups = triggerGroups.get(schedulerId);
+        if (groups == null) {
+            throw new SchedulerException("Scheduler with ID " + schedulerId + " is not hosted on the shared engine");
+        }
+        for (Trigger trigger : triggers) {
+            String group = trigger.getKey().getGroup();
+            if (groups.add(group) && !startedSchedulers.contains(schedulerId)) {
+                //Pausing a group by its exact name also pauses the triggers stored into it later
+                scheduler.pauseTriggers(GroupMatcher.triggerGroupEquals(group));
+            }
+        }
+    }
+
+    synchronized void start(String schedulerId) throws SchedulerException {
+        Set<String> groups = triggerGroups.get(schedulerId);
+        if (groups == null) {
+            throw new SchedulerException("Scheduler with ID " + schedulerId + " is not hosted on the shared engine");
+        }
+        startedSchedulers.add(schedulerId);
+        for (String group : groups) {
+            scheduler.resumeTriggers(GroupMatcher.triggerGroupEquals(group));
+        }
+        if (!scheduler.isStarted()) {
+            scheduler.start();
+        }
+    }
+
+    boolean isStarted(String schedulerId) {
+        return startedSchedulers.contains(schedulerId);
+    }
+
+    synchronized void pause(String schedulerId) throws SchedulerException {
+        startedSchedulers.remove(schedulerId);
+        Set<String> groups = triggerGroups.get(schedulerId);
+        if (groups != null && !scheduler.isShutdown()) {
+            for (String group : groups) {
+                scheduler.pauseTriggers(GroupMatcher.triggerGroupEquals(group));
+            }
+        }
+    }
+
+    /**
+     * Pauses the logical scheduler and waits for its running jobs: for all of them when <code>timeoutMs</code> is 0,
+     * not at all when it is negative. Jobs still running at the deadline are interrupted, which Quartz can only do
+     * for an InterruptableJob.
+     */
+    DrainReport drain(String schedulerId, long timeoutMs) throws SchedulerException {
+        long drainStart = System.nanoTime();
+        pause(schedulerId);
+
+        if (timeoutMs < 0) {
+            return new DrainReport(schedulerId, 0, 0, List.of(), null);
+        }
+        long deadline = drainStart + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        List<JobExecutionContext> running = getExecutingJobs(schedulerId);
+        boolean interrupted = false;
+        while (!running.isEmpty() && (timeoutMs == 0 || deadline - System.nanoTime() > 0)) {
+            LockSupport.parkNanos(this, POLL_NANOS);
+            interrupted |= Thread.interrupted();
+            running = getExecutingJobs(schedulerId);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<String> cutOffJobs = new ArrayList<>();
+        for (JobExecutionContext context : running) {
+            cutOffJobs.add(context.getJobDetail().getKey().toString());
+            try {
+                scheduler.interrupt(context.getFireInstanceId());
+            } catch (UnableToInterruptJobException e) {
+                log.warn("Couldn't interrupt the job '{}'", context.getJobDetail().getKey(), e);
+            }
+        }
+        if (!cutOffJobs.isEmpty()) {
+            log.warn("Drain deadline of {}ms passed for scheduler '{}', {} job(s) still running: {}", timeoutMs, schedulerId, cutOffJobs.size(), cutOffJobs);
+        }
+        return new DrainReport(schedulerId, timeoutMs,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - drainStart), cutOffJobs, null);
+    }
+
+    List<JobExecutionContext> getExecutingJobs(String schedulerId) throws SchedulerException {
+        String prefix = schedulerId + SEPARATOR;
+        List<JobExecutionContext> executing = new ArrayList<>();
+        if (scheduler.isShutdown()) {
+            return executing;
+        }
+        for (JobExecutionContext context : scheduler.getCurrentlyExecutingJobs()) {
+            if (context.getJobDetail().getKey().getGroup().startsWith(prefix)) {
+                executing.add(context);
+            }
+        }
+        return executing;
+    }
+
+    /**
+     * Deletes all jobs of the logical scheduler and forgets it.
+     */
+    synchronized void remove(String schedulerId) throws SchedulerException {
+        Set<String> groups = triggerGroups.remove(schedulerId);
+        startedSchedulers.remove(schedulerId);
+        if (groups == null || scheduler.isShutdown()) {
+            return;
+        }
+        List<JobKey> jobKeys = new ArrayList<>(scheduler.getJobKeys(GroupMatcher.jobGroupStartsWith(schedulerId + SEPARATOR)));
+        scheduler.deleteJobs(jobKeys);
+        for (String group : groups) {
+            scheduler.resumeTriggers(GroupMatcher.triggerGroupEquals(group)); //Drops the group from the paused groups of the job store
+        }
+        log.info("Removed {} jobs of the scheduler '{}' from the shared engine", jobKeys.size(), schedulerId);
+    }
+}
@@ -0,0 +1,85 @@
+package lab.scheduler.core;
+
+import org.quartz.CronTrigger;
+import org.quartz.ScheduleBuilder;
+
+import java.text.ParseException;
+import java.util.Date;
+
+/**
+ * <p>
+ * A cron trigger whose fire times are those of its cron expression shifted by a fixed offset, so jobs sharing
+ * the same cron second fire spread over a window and keep the cadence of the expression.
+ * </p>
+ * <p>
+ * The offset is derived from the job key by {@link #offsetOf}, so a job fires at the same point of the window
+ * on every node and after every restart. JDBC job stores keep it as a serialized trigger. The unshifted fire times
+ * come from the shared table of its expression, and the schedule builder it inherits keeps the offset.
+ * </p>
+ */
+public class StaggeredCronTrigger extends CachedCronTrigger {
+    private static final long serialVersionUID = 1L;
+
+    private long offsetMs;
+
+    public StaggeredCronTrigger() {
+    }
+
+    /**
+     * Returns a schedule firing at the times of the cron expression shifted by <code>offsetMs</code>.
+     * */
+    public static ScheduleBuilder<CronTrigger> cronSchedule(String cronExpression, long offsetMs) {
+        StaggeredCronTrigger prototype = new StaggeredCronTrigger();
+        try {
+            prototype.setCronExpression(cronExpression);
+        } catch (ParseException e) {
+            throw new RuntimeException("CronExpression '" + cronExpression + "' is invalid.", e);
+        }
+        prototype.setOffsetMs(offsetMs);
+        return prototype.getScheduleBuilder();
+    }
+
+    /**
+     * Spreads the job over the window deterministically by hashing its group and name.
+     *
+     * @return the offset in [0, windowMs), 0 if the window is not positive
+     * */
+    public static long offsetOf(String jobGroup, String jobName, long windowMs) {
+        if (windowMs <= 0) {
+            return 0;
+        }
+        int hash = (jobGroup + '.' + jobName).hashCode();
+        //Mixes the bits, names differing in their last characters only would get neighbouring offsets
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return Math.floorMod((long) hash, windowMs);
+    }
+
+    public long getOffsetMs() {
+        return offsetMs;
+    }
+
+    public void setOffsetMs(long offsetMs) {
+        if (offsetMs < 0) {
+            throw new IllegalArgumentException("offsetMs cannot be negative");
+        }
+        this.offsetMs = offsetMs;
+    }
+
+    @Override
+    public Date getFireTimeAfter(Date afterTime) {
+        if (afterTime == null) {
+            afterTime = new Date();
+        }
+        Date fireTime = super.getFireTimeAfter(new Date(afterTime.getTime() - offsetMs));
+        return fireTime == null ? null : new Date(fireTime.getTime() + offsetMs);
+    }
+
+    @Override
+    public boolean hasAdditionalProperties() {
+        return offsetMs != 0; //Keeps JDBC stores from flattening it into a plain cron trigger
+    }
+}
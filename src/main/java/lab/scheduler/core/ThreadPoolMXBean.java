@@ -0,0 +1,58 @@
+package lab.scheduler.core;
+
+/**
+ * JMX view of the thread pool of one scheduler, registered by {@link ResizableSimpleThreadPoolManager}
+ * as <code>lab.scheduler:type=ThreadPool,scheduler=&lt;schedulerId&gt;</code>. Times are in microseconds.
+ */
+public interface ThreadPoolMXBean {
+
+    String getPoolClass();
+
+    int getLiveWorkers();
+
+    int getAvailableWorkers();
+
+    int getBusyWorkers();
+
+    int getMaxThreadCount();
+
+    long getHandoffCount();
+
+    double getHandoffWaitMeanMicros();
+
+    long getHandoffWaitP50Micros();
+
+    long getHandoffWaitP99Micros();
+
+    long getHandoffWaitMaxMicros();
+
+    long getJobRunCount();
+
+    double getJobRunMeanMicros();
+
+    long getJobRunP50Micros();
+
+    long getJobRunP99Micros();
+
+    long getJobRunMaxMicros();
+
+    long getResizeEvents();
+
+    long getWorkersAdded();
+
+    long getWorkersRemoved();
+
+    long getRejectedGrows();
+
+    int getReplacedWorkers();
+
+    int getQueueDepth();
+
+    int getQueueCapacity();
+
+    long getOverflowCallerRuns();
+
+    long getOverflowDropped();
+
+    long getOverflowMisfired();
+}
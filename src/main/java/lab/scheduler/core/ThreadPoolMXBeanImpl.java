@@ -0,0 +1,114 @@
+package lab.scheduler.core;
+
+class ThreadPoolMXBeanImpl implements ThreadPoolMXBean {
+
+    private final ResizableThreadPool pool;
+
+    ThreadPoolMXBeanImpl(ResizableThreadPool pool) {
+        this.pool = pool;
+    }
+
+    private ThreadPoolMetricsSnapshot metrics() {
+        return pool.getMetrics();
+    }
+
+    public String getPoolClass() {
+        return pool.getClass().getName();
+    }
+
+    public int getLiveWorkers() {
+        return metrics().liveWorkers();
+    }
+
+    public int getAvailableWorkers() {
+        return metrics().availableWorkers();
+    }
+
+    public int getBusyWorkers() {
+        return metrics().busyWorkers();
+    }
+
+    public int getMaxThreadCount() {
+        return pool.getMaxThreadCount();
+    }
+
+    public long getHandoffCount() {
+        return metrics().handoffWait().count();
+    }
+
+    public double getHandoffWaitMeanMicros() {
+        return metrics().handoffWait().meanMicros();
+    }
+
+    public long getHandoffWaitP50Micros() {
+        return metrics().handoffWait().percentileMicros(0.50);
+    }
+
+    public long getHandoffWaitP99Micros() {
+        return metrics().handoffWait().percentileMicros(0.99);
+    }
+
+    public long getHandoffWaitMaxMicros() {
+        return metrics().handoffWait().maxMicros();
+    }
+
+    public long getJobRunCount() {
+        return metrics().jobRunTime().count();
+    }
+
+    public double getJobRunMeanMicros() {
+        return metrics().jobRunTime().meanMicros();
+    }
+
+    public long getJobRunP50Micros() {
+        return metrics().jobRunTime().percentileMicros(0.50);
+    }
+
+    public long getJobRunP99Micros() {
+        return metrics().jobRunTime().percentileMicros(0.99);
+    }
+
+    public long getJobRunMaxMicros() {
+        return metrics().jobRunTime().maxMicros();
+    }
+
+    public long getResizeEvents() {
+        return metrics().resizeEvents();
+    }
+
+    public long getWorkersAdded() {
+        return metrics().workersAdded();
+    }
+
+    public long getWorkersRemoved() {
+        return metrics().workersRemoved();
+    }
+
+    public long getRejectedGrows() {
+        return metrics().rejectedGrows();
+    }
+
+    public int getReplacedWorkers() {
+        return metrics().replacedWorkers();
+    }
+
+    public int getQueueDepth() {
+        return metrics().queueDepth();
+    }
+
+    public int getQueueCapacity() {
+        return metrics().queueCapacity();
+    }
+
+    public long getOverflowCallerRuns() {
+        return metrics().overflowCallerRuns();
+    }
+
+    public long getOverflowDropped() {
+        return metrics().overflowDropped();
+    }
+
+    public long getOverflowMisfired() {
+        return metrics().overflowMisfired();
+    }
+}
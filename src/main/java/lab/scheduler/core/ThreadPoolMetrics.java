@@ -0,0 +1,41 @@
+package lab.scheduler.core;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Counters a thread pool updates while it works. Everything is recorded with LongAdders so that no pool
+ * lock is taken, neither to record nor to read, and the metrics can be scraped at a high rate under load.
+ * </p>
+ */
+class ThreadPoolMetrics {
+
+    final LatencyHistogram handoffWait = new LatencyHistogram();
+    final LatencyHistogram jobRunTime = new LatencyHistogram();
+    final LongAdder growEvents = new LongAdder();
+    final LongAdder shrinkEvents = new LongAdder();
+    final LongAdder workersAdded = new LongAdder();
+    final LongAdder workersRemoved = new LongAdder();
+    final LongAdder rejectedGrows = new LongAdder();
+    final LongAdder overflowCallerRuns = new LongAdder();
+    final LongAdder overflowDropped = new LongAdder();
+    final LongAdder overflowMisfired = new LongAdder();
+
+    void recordGrow(int count) {
+        growEvents.increment();
+        workersAdded.add(count);
+    }
+
+    void recordShrink(int count) {
+        shrinkEvents.increment();
+        workersRemoved.add(count);
+    }
+
+    ThreadPoolMetricsSnapshot snapshot(String poolClass, int liveWorkers, int availableWorkers, int busyWorkers,
+                                       int maxThreadCount, int replacedWorkers, int queueDepth, int queueCapacity) {
+        return new ThreadPoolMetricsSnapshot(poolClass, System.currentTimeMillis(), liveWorkers, availableWorkers,
+                busyWorkers, maxThreadCount, handoffWait.snapshot(), jobRunTime.snapshot(), growEvents.sum(),
+                shrinkEvents.sum(), workersAdded.sum(), workersRemoved.sum(), rejectedGrows.sum(), replacedWorkers,
+                queueDepth, queueCapacity, overflowCallerRuns.sum(), overflowDropped.sum(), overflowMisfired.sum());
+    }
+}
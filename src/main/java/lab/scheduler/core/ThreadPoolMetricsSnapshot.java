@@ -0,0 +1,36 @@
+package lab.scheduler.core;
+
+/**
+ * A point-in-time view of the metrics of a {@link ResizableThreadPool}.
+ *
+ * @param liveWorkers      threads (or for VirtualThreadPool, running virtual threads) owned by the pool
+ * @param availableWorkers jobs the pool could start right now without waiting
+ * @param busyWorkers      jobs running right now
+ * @param rejectedGrows    grow requests refused because they would exceed maxThreadCount
+ * @param replacedWorkers  workers replaced after they terminated abnormally
+ * @param queueDepth       fired jobs waiting in the submission queue (ForkJoinThreadPool: queued submissions)
+ */
+public record ThreadPoolMetricsSnapshot(String poolClass,
+                                        long timestamp,
+                                        int liveWorkers,
+                                        int availableWorkers,
+                                        int busyWorkers,
+                                        int maxThreadCount,
+                                        LatencyHistogram.Snapshot handoffWait,
+                                        LatencyHistogram.Snapshot jobRunTime,
+                                        long growEvents,
+                                        long shrinkEvents,
+                                        long workersAdded,
+                                        long workersRemoved,
+                                        long rejectedGrows,
+                                        int replacedWorkers,
+                                        int queueDepth,
+                                        int queueCapacity,
+                                        long overflowCallerRuns,
+                                        long overflowDropped,
+                                        long overflowMisfired) {
+
+    public long resizeEvents() {
+        return growEvents + shrinkEvents;
+    }
+}
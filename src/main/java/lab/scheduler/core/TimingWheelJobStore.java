@@ -0,0 +1,1017 @@
+package lab.scheduler.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.Calendar;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.JobPersistenceException;
+import org.quartz.ObjectAlreadyExistsException;
+import org.quartz.Trigger;
+import org.quartz.Trigger.CompletedExecutionInstruction;
+import org.quartz.Trigger.TriggerState;
+import org.quartz.TriggerKey;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.quartz.impl.matchers.StringMatcher;
+import org.quartz.spi.ClassLoadHelper;
+import org.quartz.spi.JobStore;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.SchedulerSignaler;
+import org.quartz.spi.TriggerFiredBundle;
+import org.quartz.spi.TriggerFiredResult;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * An in-memory JobStore for millions of triggers, with the semantics of RAMJobStore. The waiting triggers are kept in
+ * a {@link TriggerTimingWheel} instead of a TreeSet, so storing and removing a trigger is O(1), and
+ * acquireNextTriggers takes the due triggers slot by slot from the front of the wheel.
+ * </p>
+ * <p>
+ * Instead of one global lock, a job and its triggers are guarded by one of {@value #STRIPES} stripe locks picked by
+ * the job key, and the wheel by a lock of its own held only to link or unlink a trigger. Stripe locks are taken
+ * before the wheel lock and never two at a time. A trigger record links itself into its wheel slot and into the
+ * triggers of its job, and there are no per-group indexes, so group queries scan the store.
+ * </p>
+ * <p>
+ * Select it with <code>org.quartz.jobStore.class</code> or {@link lab.scheduler.config.JobStoreType#TIMING_WHEEL}.
+ * </p>
+ */
+@Slf4j
+public class TimingWheelJobStore implements JobStore {
+    private static final int STRIPES = 64;
+    private static final AtomicLong FIRE_INSTANCE_IDS = new AtomicLong(System.currentTimeMillis());
+
+    private static final byte STATE_WAITING = 0;
+    private static final byte STATE_ACQUIRED = 1;
+    private static final byte STATE_BLOCKED = 2;
+    private static final byte STATE_PAUSED = 3;
+    private static final byte STATE_PAUSED_BLOCKED = 4;
+    private static final byte STATE_COMPLETE = 5;
+    private static final byte STATE_ERROR = 6;
+
+    private final Map<JobKey, JobRecord> jobs = new ConcurrentHashMap<>();
+    private final Map<TriggerKey, TriggerRecord> triggers = new ConcurrentHashMap<>();
+    private final Map<String, Integer> jobGroups = new ConcurrentHashMap<>();
+    private final Map<String, Integer> triggerGroups = new ConcurrentHashMap<>();
+    private final Map<String, Calendar> calendars = new ConcurrentHashMap<>();
+    private final Set<String> pausedTriggerGroups = ConcurrentHashMap.newKeySet();
+    private final Set<String> pausedJobGroups = ConcurrentHashMap.newKeySet();
+    private final Object[] stripes = new Object[STRIPES];
+    private final TriggerTimingWheel wheel = new TriggerTimingWheel(System.currentTimeMillis());
+    private SchedulerSignaler signaler;
+    private volatile long misfireThreshold = 5000L;
+
+    private static final class JobRecord {
+        private JobDetail jobDetail;
+        private TriggerRecord triggers;
+        private boolean blocked;
+
+        private JobRecord(JobDetail jobDetail) {
+            this.jobDetail = jobDetail;
+        }
+    }
+
+    private static final class TriggerRecord extends TriggerTimingWheel.Entry {
+        private final TriggerKey key;
+        private final JobKey jobKey;
+        private final OperableTrigger trigger;
+        private byte state = STATE_WAITING;
+        private TriggerRecord nextOfJob;
+
+        private TriggerRecord(OperableTrigger trigger) {
+            this.key = trigger.getKey();
+            this.jobKey = trigger.getJobKey();
+            this.trigger = trigger;
+        }
+    }
+
+    public TimingWheelJobStore() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    public long getMisfireThreshold() {
+        return misfireThreshold;
+    }
+
+    public void setMisfireThreshold(long misfireThreshold) {
+        if (misfireThreshold < 1) {
+            throw new IllegalArgumentException("misfireThreshold must be greater than 0");
+        }
+        this.misfireThreshold = misfireThreshold;
+    }
+
+    /**
+     * Returns the number of triggers waiting in the wheel to be acquired.
+     * */
+    public int getWaitingTriggerCount() {
+        synchronized (wheel) {
+            return wheel.size();
+        }
+    }
+
+    @Override
+    public void initialize(ClassLoadHelper loadHelper, SchedulerSignaler signaler) {
+        this.signaler = signaler;
+        log.info("TimingWheelJobStore initialized.");
+    }
+
+    @Override
+    public void schedulerStarted() {
+    }
+
+    @Override
+    public void schedulerPaused() {
+    }
+
+    @Override
+    public void schedulerResumed() {
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public boolean supportsPersistence() {
+        return false;
+    }
+
+    @Override
+    public long getEstimatedTimeToReleaseAndAcquireTrigger() {
+        return 5;
+    }
+
+    @Override
+    public boolean isClustered() {
+        return false;
+    }
+
+    @Override
+    public void setInstanceId(String schedInstId) {
+    }
+
+    @Override
+    public void setInstanceName(String schedName) {
+    }
+
+    @Override
+    public void setThreadPoolSize(int poolSize) {
+    }
+
+    @Override
+    public long getAcquireRetryDelay(int failureCount) {
+        return 20;
+    }
+
+    private Object lockOf(JobKey jobKey) {
+        int hash = jobKey.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    /**
+     * Runs the action on the record of the trigger holding the lock of its job.
+     *
+     * @return the result of the action, <code>absent</code> if there is no such trigger
+     * */
+    private <T> T withTrigger(TriggerKey triggerKey, T absent, Function<TriggerRecord, T> action) {
+        while (true) {
+            TriggerRecord record = triggers.get(triggerKey);
+            if (record == null) {
+                return absent;
+            }
+            synchronized (lockOf(record.jobKey)) {
+                if (triggers.get(triggerKey) == record) {
+                    return action.apply(record);
+                }
+            }
+        }
+    }
+
+    private void queue(TriggerRecord record) {
+        Date nextFireTime = record.trigger.getNextFireTime();
+        if (nextFireTime != null) {
+            synchronized (wheel) {
+                wheel.add(record, nextFireTime.getTime(), record.trigger.getPriority());
+            }
+        }
+    }
+
+    private boolean dequeue(TriggerRecord record) {
+        synchronized (wheel) {
+            return wheel.remove(record);
+        }
+    }
+
+    private static void increment(Map<String, Integer> groups, String group) {
+        groups.merge(group, 1, Integer::sum);
+    }
+
+    private static void decrement(Map<String, Integer> groups, String group) {
+        groups.computeIfPresent(group, (name, count) -> count == 1 ? null : count - 1);
+    }
+
+    // Job & trigger storage
+
+    @Override
+    public void storeJobAndTrigger(JobDetail newJob, OperableTrigger newTrigger) throws JobPersistenceException {
+        storeJob(newJob, false);
+        storeTrigger(newTrigger, false);
+    }
+
+    @Override
+    public void storeJob(JobDetail newJob, boolean replaceExisting) throws ObjectAlreadyExistsException {
+        JobDetail jobDetail = (JobDetail) newJob.clone();
+        JobKey jobKey = jobDetail.getKey();
+        synchronized (lockOf(jobKey)) {
+            JobRecord record = jobs.get(jobKey);
+            if (record != null) {
+                if (!replaceExisting) {
+                    throw new ObjectAlreadyExistsException(newJob);
+                }
+                record.jobDetail = jobDetail;
+                return;
+            }
+            jobs.put(jobKey, new JobRecord(jobDetail));
+            increment(jobGroups, jobKey.getGroup());
+        }
+    }
+
+    /**
+     * Stores the jobs and triggers one by one. If another thread stores one of the keys in between, the ones
+     * stored by this call are removed again.
+     * */
+    @Override
+    public void storeJobsAndTriggers(Map<JobDetail, Set<? extends Trigger>> triggersAndJobs, boolean replace) throws JobPersistenceException {
+        if (!replace) {
+            for (Map.Entry<JobDetail, Set<? extends Trigger>> entry : triggersAndJobs.entrySet()) {
+                if (checkExists(entry.getKey().getKey())) {
+                    throw new ObjectAlreadyExistsException(entry.getKey());
+                }
+                for (Trigger trigger : entry.getValue()) {
+                    if (checkExists(trigger.getKey())) {
+                        throw new ObjectAlreadyExistsException(trigger);
+                    }
+                }
+            }
+        }
+        List<JobKey> storedJobs = new ArrayList<>();
+        List<TriggerKey> storedTriggers = new ArrayList<>();
+        try {
+            for (Map.Entry<JobDetail, Set<? extends Trigger>> entry : triggersAndJobs.entrySet()) {
+                storeJob(entry.getKey(), replace);
+                storedJobs.add(entry.getKey().getKey());
+                for (Trigger trigger : entry.getValue()) {
+                    storeTrigger((OperableTrigger) trigger, replace);
+                    storedTriggers.add(trigger.getKey());
+                }
+            }
+        } catch (JobPersistenceException e) {
+            if (!replace) {
+                storedTriggers.forEach(triggerKey -> removeTrigger(triggerKey, false));
+                storedJobs.forEach(this::removeJob);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean removeJob(JobKey jobKey) {
+        synchronized (lockOf(jobKey)) {
+            JobRecord job = jobs.get(jobKey);
+            if (job == null) {
+                return false;
+            }
+            while (job.triggers != null) {
+                detach(job.triggers, job);
+            }
+            jobs.remove(jobKey);
+            decrement(jobGroups, jobKey.getGroup());
+            return true;
+        }
+    }
+
+    @Override
+    public boolean removeJobs(List<JobKey> jobKeys) {
+        boolean allFound = true;
+        for (JobKey jobKey : jobKeys) {
+            allFound = removeJob(jobKey) && allFound;
+        }
+        return allFound;
+    }
+
+    @Override
+    public JobDetail retrieveJob(JobKey jobKey) {
+        synchronized (lockOf(jobKey)) {
+            JobRecord job = jobs.get(jobKey);
+            return job == null ? null : (JobDetail) job.jobDetail.clone();
+        }
+    }
+
+    @Override
+    public void storeTrigger(OperableTrigger newTrigger, boolean replaceExisting) throws JobPersistenceException {
+        OperableTrigger trigger = (OperableTrigger) newTrigger.clone();
+        TriggerKey triggerKey = trigger.getKey();
+        JobKey jobKey = trigger.getJobKey();
+        while (true) {
+            TriggerRecord existing = triggers.get(triggerKey);
+            if (existing != null && !existing.jobKey.equals(jobKey)) {
+                //The trigger moves to another job, whose records are guarded by another lock
+                if (!replaceExisting) {
+                    throw new ObjectAlreadyExistsException(newTrigger);
+                }
+                withTrigger(triggerKey, null, record -> {
+                    detach(record, jobs.get(record.jobKey));
+                    return null;
+                });
+                continue;
+            }
+            synchronized (lockOf(jobKey)) {
+                existing = triggers.get(triggerKey);
+                if (existing != null) {
+                    if (!existing.jobKey.equals(jobKey)) {
+                        continue;
+                    }
+                    if (!replaceExisting) {
+                        throw new ObjectAlreadyExistsException(newTrigger);
+                    }
+                }
+                JobRecord job = jobs.get(jobKey);
+                if (job == null) {
+                    throw new JobPersistenceException("The job (" + jobKey + ") referenced by the trigger does not exist.");
+                }
+                if (existing != null) {
+                    detach(existing, job);
+                }
+                attach(new TriggerRecord(trigger), job);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds the record to the store and the triggers of its job, and queues it unless it's paused or blocked.
+     * Needs the lock of the job.
+     * */
+    private void attach(TriggerRecord record, JobRecord job) {
+        triggers.put(record.key, record);
+        record.nextOfJob = job.triggers;
+        job.triggers = record;
+        increment(triggerGroups, record.key.getGroup());
+        if (pausedTriggerGroups.contains(record.key.getGroup()) || pausedJobGroups.contains(record.jobKey.getGroup())) {
+            record.state = job.blocked ? STATE_PAUSED_BLOCKED : STATE_PAUSED;
+        } else if (job.blocked) {
+            record.state = STATE_BLOCKED;
+        } else {
+            record.state = STATE_WAITING;
+            queue(record);
+        }
+    }
+
+    /**
+     * Removes the record from the store, the wheel and the triggers of its job. Needs the lock of the job.
+     * */
+    private void detach(TriggerRecord record, JobRecord job) {
+        triggers.remove(record.key, record);
+        decrement(triggerGroups, record.key.getGroup());
+        dequeue(record);
+        if (job == null) {
+            return;
+        }
+        if (job.triggers == record) {
+            job.triggers = record.nextOfJob;
+        } else {
+            for (TriggerRecord previous = job.triggers; previous != null; previous = previous.nextOfJob) {
+                if (previous.nextOfJob == record) {
+                    previous.nextOfJob = record.nextOfJob;
+                    break;
+                }
+            }
+        }
+        record.nextOfJob = null;
+    }
+
+    @Override
+    public boolean removeTrigger(TriggerKey triggerKey) {
+        return removeTrigger(triggerKey, true);
+    }
+
+    private boolean removeTrigger(TriggerKey triggerKey, boolean removeOrphanedJob) {
+        return withTrigger(triggerKey, false, record -> {
+            JobRecord job = jobs.get(record.jobKey);
+            detach(record, job);
+            if (removeOrphanedJob && job != null && job.triggers == null && !job.jobDetail.isDurable()) {
+                if (removeJob(record.jobKey)) {
+                    signaler.notifySchedulerListenersJobDeleted(record.jobKey);
+                }
+            }
+            return true;
+        });
+    }
+
+    @Override
+    public boolean removeTriggers(List<TriggerKey> triggerKeys) {
+        boolean allFound = true;
+        for (TriggerKey triggerKey : triggerKeys) {
+            allFound = removeTrigger(triggerKey) && allFound;
+        }
+        return allFound;
+    }
+
+    @Override
+    public boolean replaceTrigger(TriggerKey triggerKey, OperableTrigger newTrigger) throws JobPersistenceException {
+        while (true) {
+            TriggerRecord record = triggers.get(triggerKey);
+            if (record == null) {
+                return false;
+            }
+            synchronized (lockOf(record.jobKey)) {
+                if (triggers.get(triggerKey) != record) {
+                    continue;
+                }
+                if (!record.jobKey.equals(newTrigger.getJobKey())) {
+                    throw new JobPersistenceException("New trigger is not related to the same job as the old trigger.");
+                }
+                JobRecord job = jobs.get(record.jobKey);
+                detach(record, job);
+                try {
+                    storeTrigger(newTrigger, false);
+                } catch (JobPersistenceException e) {
+                    attach(record, job); //Puts the previous trigger back
+                    throw e;
+                }
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public OperableTrigger retrieveTrigger(TriggerKey triggerKey) {
+        return withTrigger(triggerKey, null, record -> (OperableTrigger) record.trigger.clone());
+    }
+
+    @Override
+    public boolean checkExists(JobKey jobKey) {
+        return jobs.containsKey(jobKey);
+    }
+
+    @Override
+    public boolean checkExists(TriggerKey triggerKey) {
+        return triggers.containsKey(triggerKey);
+    }
+
+    @Override
+    public TriggerState getTriggerState(TriggerKey triggerKey) {
+        TriggerRecord record = triggers.get(triggerKey);
+        if (record == null) {
+            return TriggerState.NONE;
+        }
+        switch (record.state) {
+            case STATE_COMPLETE : return TriggerState.COMPLETE;
+            case STATE_PAUSED : case STATE_PAUSED_BLOCKED : return TriggerState.PAUSED;
+            case STATE_BLOCKED : return TriggerState.BLOCKED;
+            case STATE_ERROR : return TriggerState.ERROR;
+            default: return TriggerState.NORMAL;
+        }
+    }
+
+    @Override
+    public void resetTriggerFromErrorState(TriggerKey triggerKey) {
+        withTrigger(triggerKey, null, record -> {
+            if (record.state != STATE_ERROR) {
+                return null;
+            }
+            if (pausedTriggerGroups.contains(triggerKey.getGroup())) {
+                record.state = STATE_PAUSED;
+            } else {
+                record.state = STATE_WAITING;
+                queue(record);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void clearAllSchedulingData() throws JobPersistenceException {
+        for (TriggerKey triggerKey : new ArrayList<>(triggers.keySet())) {
+            removeTrigger(triggerKey);
+        }
+        for (JobKey jobKey : new ArrayList<>(jobs.keySet())) {
+            removeJob(jobKey);
+        }
+        for (String calendarName : getCalendarNames()) {
+            removeCalendar(calendarName);
+        }
+    }
+
+    // Calendars
+
+    @Override
+    public void storeCalendar(String name, Calendar calendar, boolean replaceExisting, boolean updateTriggers) throws ObjectAlreadyExistsException {
+        Calendar stored = (Calendar) calendar.clone();
+        Calendar previous;
+        synchronized (calendars) {
+            previous = calendars.get(name);
+            if (previous != null && !replaceExisting) {
+                throw new ObjectAlreadyExistsException("Calendar with name '" + name + "' already exists.");
+            }
+            calendars.put(name, stored);
+        }
+        if (previous != null && updateTriggers) {
+            for (TriggerRecord candidate : triggers.values()) {
+                if (!name.equals(candidate.trigger.getCalendarName())) {
+                    continue;
+                }
+                withTrigger(candidate.key, null, record -> {
+                    boolean queued = dequeue(record);
+                    record.trigger.updateWithNewCalendar(stored, misfireThreshold);
+                    if (queued) {
+                        queue(record);
+                    }
+                    return null;
+                });
+            }
+        }
+    }
+
+    @Override
+    public boolean removeCalendar(String calName) throws JobPersistenceException {
+        synchronized (calendars) {
+            for (TriggerRecord record : triggers.values()) {
+                if (calName.equals(record.trigger.getCalendarName())) {
+                    throw new JobPersistenceException("Calender cannot be removed if it referenced by a Trigger!");
+                }
+            }
+            return calendars.remove(calName) != null;
+        }
+    }
+
+    @Override
+    public Calendar retrieveCalendar(String calName) {
+        Calendar calendar = calendars.get(calName);
+        return calendar == null ? null : (Calendar) calendar.clone();
+    }
+
+    // Informational methods
+
+    @Override
+    public int getNumberOfJobs() {
+        return jobs.size();
+    }
+
+    @Override
+    public int getNumberOfTriggers() {
+        return triggers.size();
+    }
+
+    @Override
+    public int getNumberOfCalendars() {
+        return calendars.size();
+    }
+
+    @Override
+    public Set<JobKey> getJobKeys(GroupMatcher<JobKey> matcher) {
+        if (matcher.getCompareWithOperator() == StringMatcher.StringOperatorName.EQUALS && !jobGroups.containsKey(matcher.getCompareToValue())) {
+            return new HashSet<>();
+        }
+        Set<JobKey> jobKeys = new HashSet<>();
+        for (JobKey jobKey : jobs.keySet()) {
+            if (matcher.isMatch(jobKey)) {
+                jobKeys.add(jobKey);
+            }
+        }
+        return jobKeys;
+    }
+
+    @Override
+    public Set<TriggerKey> getTriggerKeys(GroupMatcher<TriggerKey> matcher) {
+        if (matcher.getCompareWithOperator() == StringMatcher.StringOperatorName.EQUALS && !triggerGroups.containsKey(matcher.getCompareToValue())) {
+            return new HashSet<>();
+        }
+        Set<TriggerKey> triggerKeys = new HashSet<>();
+        for (TriggerKey triggerKey : triggers.keySet()) {
+            if (matcher.isMatch(triggerKey)) {
+                triggerKeys.add(triggerKey);
+            }
+        }
+        return triggerKeys;
+    }
+
+    @Override
+    public List<String> getJobGroupNames() {
+        return new ArrayList<>(jobGroups.keySet());
+    }
+
+    @Override
+    public List<String> getTriggerGroupNames() {
+        return new ArrayList<>(triggerGroups.keySet());
+    }
+
+    @Override
+    public List<String> getCalendarNames() {
+        return new ArrayList<>(calendars.keySet());
+    }
+
+    @Override
+    public List<OperableTrigger> getTriggersForJob(JobKey jobKey) {
+        List<OperableTrigger> jobTriggers = new ArrayList<>();
+        synchronized (lockOf(jobKey)) {
+            JobRecord job = jobs.get(jobKey);
+            for (TriggerRecord record = job == null ? null : job.triggers; record != null; record = record.nextOfJob) {
+                jobTriggers.add((OperableTrigger) record.trigger.clone());
+            }
+        }
+        return jobTriggers;
+    }
+
+    @Override
+    public Set<String> getPausedTriggerGroups() {
+        return new HashSet<>(pausedTriggerGroups);
+    }
+
+    // Pausing and resuming
+
+    @Override
+    public void pauseTrigger(TriggerKey triggerKey) {
+        withTrigger(triggerKey, null, record -> {
+            pause(record);
+            return null;
+        });
+    }
+
+    private void pause(TriggerRecord record) {
+        if (record.state == STATE_COMPLETE) {
+            return;
+        }
+        record.state = record.state == STATE_BLOCKED ? STATE_PAUSED_BLOCKED : STATE_PAUSED;
+        dequeue(record);
+    }
+
+    @Override
+    public List<String> pauseTriggers(GroupMatcher<TriggerKey> matcher) {
+        List<String> pausedGroups = new ArrayList<>();
+        StringMatcher.StringOperatorName operator = matcher.getCompareWithOperator();
+        if (operator == StringMatcher.StringOperatorName.EQUALS) {
+            if (pausedTriggerGroups.add(matcher.getCompareToValue())) {
+                pausedGroups.add(matcher.getCompareToValue());
+            }
+        } else {
+            for (String group : triggerGroups.keySet()) {
+                if (operator.evaluate(group, matcher.getCompareToValue()) && pausedTriggerGroups.add(group)) {
+                    pausedGroups.add(group);
+                }
+            }
+        }
+        for (String pausedGroup : pausedGroups) {
+            for (TriggerKey triggerKey : getTriggerKeys(GroupMatcher.triggerGroupEquals(pausedGroup))) {
+                pauseTrigger(triggerKey);
+            }
+        }
+        return pausedGroups;
+    }
+
+    @Override
+    public void pauseJob(JobKey jobKey) {
+        synchronized (lockOf(jobKey)) {
+            JobRecord job = jobs.get(jobKey);
+            for (TriggerRecord record = job == null ? null : job.triggers; record != null; record = record.nextOfJob) {
+                pause(record);
+            }
+        }
+    }
+
+    @Override
+    public List<String> pauseJobs(GroupMatcher<JobKey> matcher) {
+        List<String> pausedGroups = new ArrayList<>();
+        StringMatcher.StringOperatorName operator = matcher.getCompareWithOperator();
+        if (operator == StringMatcher.StringOperatorName.EQUALS) {
+            if (pausedJobGroups.add(matcher.getCompareToValue())) {
+                pausedGroups.add(matcher.getCompareToValue());
+            }
+        } else {
+            for (String group : jobGroups.keySet()) {
+                if (operator.evaluate(group, matcher.getCompareToValue()) && pausedJobGroups.add(group)) {
+                    pausedGroups.add(group);
+                }
+            }
+        }
+        for (String pausedGroup : pausedGroups) {
+            for (JobKey jobKey : getJobKeys(GroupMatcher.jobGroupEquals(pausedGroup))) {
+                pauseJob(jobKey);
+            }
+        }
+        return pausedGroups;
+    }
+
+    @Override
+    public void resumeTrigger(TriggerKey triggerKey) {
+        withTrigger(triggerKey, null, record -> {
+            resume(record);
+            return null;
+        });
+    }
+
+    private void resume(TriggerRecord record) {
+        if (record.state != STATE_PAUSED && record.state != STATE_PAUSED_BLOCKED) {
+            return;
+        }
+        JobRecord job = jobs.get(record.jobKey);
+        record.state = job != null && job.blocked ? STATE_BLOCKED : STATE_WAITING;
+        applyMisfire(record);
+        if (record.state == STATE_WAITING) {
+            queue(record);
+        }
+    }
+
+    @Override
+    public List<String> resumeTriggers(GroupMatcher<TriggerKey> matcher) {
+        Set<String> groups = new HashSet<>();
+        for (TriggerKey triggerKey : getTriggerKeys(matcher)) {
+            groups.add(triggerKey.getGroup());
+            TriggerRecord record = triggers.get(triggerKey);
+            if (record != null && pausedJobGroups.contains(record.jobKey.getGroup())) {
+                continue;
+            }
+            resumeTrigger(triggerKey);
+        }
+        StringMatcher.StringOperatorName operator = matcher.getCompareWithOperator();
+        if (operator == StringMatcher.StringOperatorName.EQUALS) {
+            pausedTriggerGroups.remove(matcher.getCompareToValue());
+        } else {
+            pausedTriggerGroups.removeIf(group -> operator.evaluate(group, matcher.getCompareToValue()));
+        }
+        return new ArrayList<>(groups);
+    }
+
+    @Override
+    public void resumeJob(JobKey jobKey) {
+        synchronized (lockOf(jobKey)) {
+            JobRecord job = jobs.get(jobKey);
+            for (TriggerRecord record = job == null ? null : job.triggers; record != null; record = record.nextOfJob) {
+                resume(record);
+            }
+        }
+    }
+
+    @Override
+    public Collection<String> resumeJobs(GroupMatcher<JobKey> matcher) {
+        Set<String> resumedGroups = new HashSet<>();
+        for (String pausedJobGroup : pausedJobGroups) {
+            if (matcher.getCompareWithOperator().evaluate(pausedJobGroup, matcher.getCompareToValue())) {
+                resumedGroups.add(pausedJobGroup);
+            }
+        }
+        pausedJobGroups.removeAll(resumedGroups);
+        for (JobKey jobKey : getJobKeys(matcher)) {
+            resumeJob(jobKey);
+        }
+        return resumedGroups;
+    }
+
+    @Override
+    public void pauseAll() {
+        for (String group : getTriggerGroupNames()) {
+            pauseTriggers(GroupMatcher.triggerGroupEquals(group));
+        }
+    }
+
+    @Override
+    public void resumeAll() {
+        pausedJobGroups.clear();
+        resumeTriggers(GroupMatcher.anyTriggerGroup());
+    }
+
+    // Firing
+
+    /**
+     * Applies the misfire instruction of a trigger later than the misfire threshold. Needs the lock of its job.
+     *
+     * @return true if the next fire time of the trigger changed
+     * */
+    private boolean applyMisfire(TriggerRecord record) {
+        OperableTrigger trigger = record.trigger;
+        long misfireTime = System.currentTimeMillis() - misfireThreshold;
+        Date nextFireTime = trigger.getNextFireTime();
+        if (nextFireTime == null || nextFireTime.getTime() > misfireTime
+                || trigger.getMisfireInstruction() == Trigger.MISFIRE_INSTRUCTION_IGNORE_MISFIRE_POLICY) {
+            return false;
+        }
+        Calendar calendar = null;
+        if (trigger.getCalendarName() != null) {
+            calendar = retrieveCalendar(trigger.getCalendarName());
+        }
+        signaler.notifyTriggerListenersMisfired((OperableTrigger) trigger.clone());
+        trigger.updateAfterMisfire(calendar);
+        if (trigger.getNextFireTime() == null) {
+            record.state = STATE_COMPLETE;
+            signaler.notifySchedulerListenersFinalized(trigger);
+            dequeue(record);
+        } else if (nextFireTime.equals(trigger.getNextFireTime())) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Takes the due triggers from the front of the wheel. The wheel lock is held only to find and unlink a trigger,
+     * each trigger is acquired under the lock of its job.
+     * */
+    @Override
+    public List<OperableTrigger> acquireNextTriggers(long noLaterThan, int maxCount, long timeWindow) {
+        List<OperableTrigger> acquired = new ArrayList<>();
+        Set<JobKey> acquiredNonConcurrentJobs = new HashSet<>();
+        List<TriggerRecord> excluded = new ArrayList<>();
+        long batchEnd = noLaterThan;
+        while (acquired.size() < maxCount) {
+            TriggerRecord record;
+            synchronized (wheel) {
+                record = (TriggerRecord) wheel.peek(System.currentTimeMillis());
+                if (record == null || record.wheelTime > batchEnd) {
+                    break; //Only triggers which aren't due yet are queued later than now
+                }
+            }
+            synchronized (lockOf(record.jobKey)) {
+                if (!dequeue(record)) {
+                    continue; //Taken, paused or removed since it was peeked
+                }
+                OperableTrigger trigger = record.trigger;
+                if (trigger.getNextFireTime() == null) {
+                    continue;
+                }
+                if (applyMisfire(record)) {
+                    if (record.state == STATE_WAITING) {
+                        queue(record);
+                    }
+                    continue;
+                }
+                if (trigger.getNextFireTime().getTime() > batchEnd) {
+                    queue(record);
+                    break;
+                }
+                JobRecord job = jobs.get(record.jobKey);
+                if (job.jobDetail.isConcurrentExectionDisallowed() && !acquiredNonConcurrentJobs.add(record.jobKey)) {
+                    excluded.add(record);
+                    continue;
+                }
+                record.state = STATE_ACQUIRED;
+                trigger.setFireInstanceId(String.valueOf(FIRE_INSTANCE_IDS.incrementAndGet()));
+                if (acquired.isEmpty()) {
+                    batchEnd = Math.max(trigger.getNextFireTime().getTime(), System.currentTimeMillis()) + timeWindow;
+                }
+                acquired.add((OperableTrigger) trigger.clone());
+            }
+        }
+        for (TriggerRecord record : excluded) {
+            withTrigger(record.key, null, current -> {
+                if (current == record && record.state == STATE_WAITING) {
+                    queue(record);
+                }
+                return null;
+            });
+        }
+        return acquired;
+    }
+
+    @Override
+    public void releaseAcquiredTrigger(OperableTrigger trigger) {
+        withTrigger(trigger.getKey(), null, record -> {
+            if (record.state == STATE_ACQUIRED) {
+                record.state = STATE_WAITING;
+                queue(record);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public List<TriggerFiredResult> triggersFired(List<OperableTrigger> firedTriggers) {
+        List<TriggerFiredResult> results = new ArrayList<>(firedTriggers.size());
+        for (OperableTrigger trigger : firedTriggers) {
+            TriggerFiredResult result = withTrigger(trigger.getKey(), null, record -> fire(record, trigger));
+            if (result != null) {
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    private TriggerFiredResult fire(TriggerRecord record, OperableTrigger trigger) {
+        if (record.state != STATE_ACQUIRED) {
+            return null; //Completed, paused or blocked since it was acquired
+        }
+        Calendar calendar = null;
+        if (record.trigger.getCalendarName() != null) {
+            calendar = retrieveCalendar(record.trigger.getCalendarName());
+            if (calendar == null) {
+                return null;
+            }
+        }
+        Date previousFireTime = trigger.getPreviousFireTime();
+        dequeue(record); //In case the trigger was replaced between acquiring and firing
+        record.trigger.triggered(calendar);
+        trigger.triggered(calendar);
+        record.state = STATE_WAITING;
+        JobRecord job = jobs.get(record.jobKey);
+        TriggerFiredBundle bundle = new TriggerFiredBundle((JobDetail) job.jobDetail.clone(), trigger, calendar, false, new Date(),
+                trigger.getPreviousFireTime(), previousFireTime, trigger.getNextFireTime());
+        if (job.jobDetail.isConcurrentExectionDisallowed()) {
+            for (TriggerRecord jobTrigger = job.triggers; jobTrigger != null; jobTrigger = jobTrigger.nextOfJob) {
+                if (jobTrigger.state == STATE_WAITING) {
+                    jobTrigger.state = STATE_BLOCKED;
+                } else if (jobTrigger.state == STATE_PAUSED) {
+                    jobTrigger.state = STATE_PAUSED_BLOCKED;
+                }
+                dequeue(jobTrigger);
+            }
+            job.blocked = true;
+        } else if (record.trigger.getNextFireTime() != null) {
+            queue(record);
+        }
+        return new TriggerFiredResult(bundle);
+    }
+
+    @Override
+    public void triggeredJobComplete(OperableTrigger trigger, JobDetail jobDetail, CompletedExecutionInstruction triggerInstCode) {
+        synchronized (lockOf(jobDetail.getKey())) {
+            JobRecord job = jobs.get(jobDetail.getKey());
+            if (job != null) {
+                if (job.jobDetail.isPersistJobDataAfterExecution()) {
+                    JobDataMap newData = jobDetail.getJobDataMap();
+                    if (newData != null) {
+                        newData = (JobDataMap) newData.clone();
+                        newData.clearDirtyFlag();
+                    }
+                    job.jobDetail = job.jobDetail.getJobBuilder().setJobData(newData).build();
+                }
+                if (job.jobDetail.isConcurrentExectionDisallowed()) {
+                    job.blocked = false;
+                    for (TriggerRecord record = job.triggers; record != null; record = record.nextOfJob) {
+                        if (record.state == STATE_BLOCKED) {
+                            record.state = STATE_WAITING;
+                            queue(record);
+                        } else if (record.state == STATE_PAUSED_BLOCKED) {
+                            record.state = STATE_PAUSED;
+                        }
+                    }
+                    signaler.signalSchedulingChange(0L);
+                }
+            }
+            TriggerRecord record = triggers.get(trigger.getKey());
+            if (record == null || !record.jobKey.equals(jobDetail.getKey())) {
+                return;
+            }
+            switch (triggerInstCode) {
+                case DELETE_TRIGGER :
+                    if (trigger.getNextFireTime() == null) {
+                        //Rescheduled during its execution, the trigger is still needed
+                        if (record.trigger.getNextFireTime() == null) {
+                            removeTrigger(trigger.getKey());
+                        }
+                    } else {
+                        removeTrigger(trigger.getKey());
+                        signaler.signalSchedulingChange(0L);
+                    }
+                    break;
+                case SET_TRIGGER_COMPLETE :
+                    record.state = STATE_COMPLETE;
+                    dequeue(record);
+                    signaler.signalSchedulingChange(0L);
+                    break;
+                case SET_TRIGGER_ERROR :
+                    log.info("Trigger {} set to ERROR state.", trigger.getKey());
+                    record.state = STATE_ERROR;
+                    signaler.signalSchedulingChange(0L);
+                    break;
+                case SET_ALL_JOB_TRIGGERS_ERROR :
+                    log.info("All triggers of Job {} set to ERROR state.", trigger.getJobKey());
+                    setAllTriggersOfJobToState(job, STATE_ERROR);
+                    signaler.signalSchedulingChange(0L);
+                    break;
+                case SET_ALL_JOB_TRIGGERS_COMPLETE :
+                    setAllTriggersOfJobToState(job, STATE_COMPLETE);
+                    signaler.signalSchedulingChange(0L);
+                    break;
+                default:
+            }
+        }
+    }
+
+    private void setAllTriggersOfJobToState(JobRecord job, byte state) {
+        for (TriggerRecord record = job == null ? null : job.triggers; record != null; record = record.nextOfJob) {
+            record.state = state;
+            dequeue(record);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package lab.scheduler.core;
+
+/**
+ * <p>
+ * A hierarchical timing wheel ordering the waiting triggers of {@link TimingWheelJobStore} by their next fire time.
+ * Level 0 has a slot per millisecond for the next 65 to 131 seconds, level 1 a slot per 65536 milliseconds for the
+ * next 49 days, later triggers wait in an overflow list. A level 1 slot is cascaded into level 0 before level 0 runs
+ * out of lookahead, so the earliest trigger is always found in level 0 when one is due within a minute.
+ * </p>
+ * <p>
+ * Entries are linked into their slot, inserting and removing one is O(1) and allocates nothing. A slot keeps its
+ * entries by descending priority and then in insertion order, and occupied slots are found through bitmaps.
+ * The cursor never passes an occupied slot, so an entry which is due is inserted into the cursor slot.
+ * Not thread-safe, the job store guards it with a lock.
+ * </p>
+ */
+final class TriggerTimingWheel {
+    private static final int LEVEL0_BITS = 17;
+    private static final int LEVEL0_SIZE = 1 << LEVEL0_BITS;
+    private static final int LEVEL0_MASK = LEVEL0_SIZE - 1;
+    private static final int LEVEL1_SHIFT = 16;
+    private static final long LEVEL1_SPAN = 1L << LEVEL1_SHIFT;
+    private static final int LEVEL1_SIZE = 1 << 16;
+    private static final int LEVEL1_MASK = LEVEL1_SIZE - 1;
+    private static final long LEVEL1_RANGE = LEVEL1_SPAN * LEVEL1_SIZE;
+
+    static final byte NOT_QUEUED = -1;
+    private static final byte LEVEL0 = 0;
+    private static final byte LEVEL1 = 1;
+    private static final byte OVERFLOW = 2;
+
+    /**
+     * The links of an entry, extended by the trigger records of the job store.
+     * */
+    static class Entry {
+        long wheelTime;
+        int priority;
+        byte level = NOT_QUEUED;
+        int slot;
+        Entry prev;
+        Entry next;
+
+        boolean isQueued() {
+            return level != NOT_QUEUED;
+        }
+    }
+
+    private final Entry[] level0 = new Entry[LEVEL0_SIZE];
+    private final Entry[] level1 = new Entry[LEVEL1_SIZE];
+    private final SlotBitmap level0Bitmap = new SlotBitmap(LEVEL0_SIZE);
+    private final SlotBitmap level1Bitmap = new SlotBitmap(LEVEL1_SIZE);
+    private Entry overflow;
+    private long overflowMin = Long.MAX_VALUE;
+    private long cursor;
+    private long level0Limit;
+    private int size;
+
+    TriggerTimingWheel(long now) {
+        cursor = now;
+        level0Limit = now - (now & (LEVEL1_SPAN - 1)) + LEVEL1_SPAN;
+        cascade();
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Inserts the entry at the time, or into the cursor slot if the time is already past. Does nothing if the entry
+     * is queued already.
+     * */
+    void add(Entry entry, long time, int priority) {
+        if (entry.isQueued()) {
+            return;
+        }
+        entry.wheelTime = Math.max(time, cursor);
+        entry.priority = priority;
+        link(entry);
+        size++;
+    }
+
+    /**
+     * @return false if the entry wasn't queued
+     * */
+    boolean remove(Entry entry) {
+        if (!entry.isQueued()) {
+            return false;
+        }
+        unlink(entry);
+        size--;
+        return true;
+    }
+
+    /**
+     * Moves the cursor towards now and returns the earliest entry, without removing it.
+     *
+     * @return the entry of the earliest slot with the highest priority, null if the wheel is empty
+     * */
+    Entry peek(long now) {
+        if (size == 0) {
+            return null;
+        }
+        advance(now);
+        int slot = level0Bitmap.next((int) (cursor & LEVEL0_MASK), (int) (level0Limit - cursor));
+        if (slot >= 0) {
+            return level0[slot];
+        }
+        slot = level1Bitmap.next((int) ((level0Limit >> LEVEL1_SHIFT) & LEVEL1_MASK), LEVEL1_SIZE);
+        if (slot >= 0) {
+            return earliest(level1[slot]);
+        }
+        return earliest(overflow);
+    }
+
+    /**
+     * Moves the cursor up to now but never past an occupied slot, cascading level 1 slots as level 0 runs out of lookahead.
+     * */
+    private void advance(long now) {
+        while (cursor < now) {
+            int slot = level0Bitmap.next((int) (cursor & LEVEL0_MASK), (int) (level0Limit - cursor));
+            if (slot >= 0) {
+                long occupied = cursor + ((slot - cursor) & LEVEL0_MASK);
+                cursor = Math.min(occupied, now);
+                return;
+            }
+            cursor = Math.min(now, level0Limit);
+            cascade();
+        }
+    }
+
+    private void cascade() {
+        while (level0Limit - cursor < LEVEL1_SPAN) {
+            int slot = (int) ((level0Limit >> LEVEL1_SHIFT) & LEVEL1_MASK);
+            Entry entries = level1[slot];
+            if (entries != null) {
+                level1[slot] = null;
+                level1Bitmap.clear(slot);
+            }
+            level0Limit += LEVEL1_SPAN;
+            relinkAll(entries);
+            if (overflowMin < level0Limit + LEVEL1_RANGE) {
+                Entry overflowing = overflow;
+                overflow = null;
+                overflowMin = Long.MAX_VALUE;
+                relinkAll(overflowing);
+            }
+        }
+    }
+
+    private void relinkAll(Entry head) {
+        if (head == null) {
+            return;
+        }
+        head.prev.next = null;
+        Entry entry = head;
+        while (entry != null) {
+            Entry next = entry.next;
+            link(entry);
+            entry = next;
+        }
+    }
+
+    private void link(Entry entry) {
+        long time = entry.wheelTime;
+        if (time < level0Limit) {
+            int slot = (int) (time & LEVEL0_MASK);
+            level0[slot] = insert(level0[slot], entry);
+            level0Bitmap.set(slot);
+            entry.level = LEVEL0;
+            entry.slot = slot;
+        } else if (time < level0Limit + LEVEL1_RANGE) {
+            int slot = (int) ((time >> LEVEL1_SHIFT) & LEVEL1_MASK);
+            level1[slot] = insert(level1[slot], entry);
+            level1Bitmap.set(slot);
+            entry.level = LEVEL1;
+            entry.slot = slot;
+        } else {
+            overflow = insert(overflow, entry);
+            overflowMin = Math.min(overflowMin, time);
+            entry.level = OVERFLOW;
+        }
+    }
+
+    private void unlink(Entry entry) {
+        Entry head = entry.next == entry ? null : entry.next;
+        if (head != null) {
+            entry.prev.next = entry.next;
+            entry.next.prev = entry.prev;
+        }
+        switch (entry.level) {
+            case LEVEL0 :
+                if (head == null) {
+                    level0Bitmap.clear(entry.slot);
+                }
+                if (level0[entry.slot] == entry) {
+                    level0[entry.slot] = head;
+                }
+                break;
+            case LEVEL1 :
+                if (head == null) {
+                    level1Bitmap.clear(entry.slot);
+                }
+                if (level1[entry.slot] == entry) {
+                    level1[entry.slot] = head;
+                }
+                break;
+            default:
+                if (overflow == entry) {
+                    overflow = head;
+                }
+                //overflowMin stays a lower bound, the next cascade past it recomputes it
+        }
+        entry.prev = null;
+        entry.next = null;
+        entry.level = NOT_QUEUED;
+    }
+
+    /**
+     * Inserts the entry into the circular list after the last entry of at least its priority.
+     *
+     * @return the new head of the list
+     * */
+    private static Entry insert(Entry head, Entry entry) {
+        if (head == null) {
+            entry.prev = entry;
+            entry.next = entry;
+            return entry;
+        }
+        Entry after = head.prev;
+        while (after.priority < entry.priority) {
+            if (after == head) {
+                after = null;
+                break;
+            }
+            after = after.prev;
+        }
+        Entry anchor = after == null ? head.prev : after;
+        entry.prev = anchor;
+        entry.next = anchor.next;
+        anchor.next.prev = entry;
+        anchor.next = entry;
+        return after == null ? entry : head;
+    }
+
+    /**
+     * Finds the earliest entry of a level 1 slot or the overflow list, whose entries aren't ordered by time.
+     * */
+    private static Entry earliest(Entry head) {
+        if (head == null) {
+            return null;
+        }
+        Entry earliest = head;
+        for (Entry entry = head.next; entry != head; entry = entry.next) {
+            if (entry.wheelTime < earliest.wheelTime || (entry.wheelTime == earliest.wheelTime && entry.priority > earliest.priority)) {
+                earliest = entry;
+            }
+        }
+        return earliest;
+    }
+
+    /**
+     * A bitmap of occupied slots with a summary word per 64 words, so a sparse wheel is searched in a few steps.
+     * */
+    private static final class SlotBitmap {
+        private final long[] words;
+        private final long[] summary;
+        private final int size;
+
+        SlotBitmap(int size) {
+            this.size = size;
+            words = new long[size >>> 6];
+            summary = new long[Math.max(1, size >>> 12)];
+        }
+
+        void set(int index) {
+            int word = index >>> 6;
+            words[word] |= 1L << index;
+            summary[word >>> 6] |= 1L << word;
+        }
+
+        void clear(int index) {
+            int word = index >>> 6;
+            words[word] &= ~(1L << index);
+            if (words[word] == 0) {
+                summary[word >>> 6] &= ~(1L << word);
+            }
+        }
+
+        /**
+         * Returns the first set index of the ring range of <code>length</code> slots starting at <code>from</code>, -1 if none.
+         * */
+        int next(int from, int length) {
+            if (length <= 0) {
+                return -1;
+            }
+            int end = from + Math.min(length, size);
+            int index = nextInRange(from, Math.min(end, size));
+            if (index < 0 && end > size) {
+                index = nextInRange(0, end - size);
+            }
+            return index;
+        }
+
+        private int nextInRange(int from, int to) {
+            if (from >= to) {
+                return -1;
+            }
+            int word = from >>> 6;
+            long bits = words[word] & (-1L << from);
+            if (bits == 0) {
+                word = nextWord(word + 1);
+                if (word < 0) {
+                    return -1;
+                }
+                bits = words[word];
+            }
+            int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+            return index < to ? index : -1;
+        }
+
+        private int nextWord(int from) {
+            int group = from >>> 6;
+            if (group >= summary.length) {
+                return -1;
+            }
+            long bits = summary[group] & (-1L << from);
+            while (bits == 0) {
+                if (++group >= summary.length) {
+                    return -1;
+                }
+                bits = summary[group];
+            }
+            return (group << 6) + Long.numberOfTrailingZeros(bits);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package lab.scheduler.core;
+
+import org.quartz.SchedulerConfigException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * A {@link ResizableThreadPool} that runs every fired job on its own virtual thread.
+ * There are no pooled workers. The thread count configured for the pool is a cap on
+ * the number of jobs running at the same time, and growing or shrinking the pool
+ * moves that cap.
+ * </p>
+ */
+public class VirtualThreadPool implements ResizableThreadPool {
+
+    private volatile int count = 1;
+    private int maxThreadCount = 10000;
+    private int prio = Thread.NORM_PRIORITY;
+    private volatile boolean isShutdown = false;
+    private final Object resizeLock = new Object();
+    private final ConcurrencyPermits permits = new ConcurrencyPermits();
+    private final InFlightJobs inFlight = new InFlightJobs();
+    private volatile boolean draining = false;
+    private volatile long drainTimeoutMs = 0;
+    private volatile long drainStart;
+    private volatile long drainDeadline;
+    private volatile DrainReport drainReport;
+    private ThreadFactory threadFactory;
+    private String threadNamePrefix;
+    private String schedulerInstanceName;
+    private String schedulerInstanceId;
+    private boolean initialized = false;
+    private boolean minSizeReached = false;
+    private final ThreadPoolMetrics metrics = new ThreadPoolMetrics();
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    public VirtualThreadPool() {}
+
+    public VirtualThreadPool(int threadCount) {
+        this.count = threadCount;
+        this.maxThreadCount = Math.max(maxThreadCount, threadCount);
+    }
+
+    public Logger getLog() {
+        return log;
+    }
+
+    public int getPoolSize() {
+        return getThreadCount();
+    }
+
+    /**
+     * Sets the number of jobs which may run concurrently.
+     */
+    public void setThreadCount(int count) {
+        this.count = count;
+        if (this.count > maxThreadCount) {
+            maxThreadCount = this.count;
+        }
+    }
+
+    public int getThreadCount() {
+        return count;
+    }
+
+    public int getCurrentThreadCount() {
+        return count;
+    }
+
+    /**
+     * Virtual threads always run at {@link Thread#NORM_PRIORITY}. The value is only kept so that
+     * a configuration shared with {@link ResizableSimpleThreadPool} can be applied to this pool.
+     */
+    public void setThreadPriority(int prio) {
+        this.prio = prio;
+    }
+
+    public int getThreadPriority() {
+        return prio;
+    }
+
+    public void setThreadNamePrefix(String prfx) {
+        this.threadNamePrefix = prfx;
+    }
+
+    public String getThreadNamePrefix() {
+        return threadNamePrefix;
+    }
+
+    public void setInstanceId(String schedulerInstanceId) {
+        this.schedulerInstanceId = schedulerInstanceId;
+    }
+
+    public void setInstanceName(String schedulerInstanceName) {
+        this.schedulerInstanceName = schedulerInstanceName;
+    }
+
+    public void setMaxThreadCount(int maxThreadCount) {
+        if (maxThreadCount < 1) {
+            throw new IllegalArgumentException("maxThreadCount must be at least 1");
+        }
+        this.maxThreadCount = maxThreadCount;
+    }
+
+    public int getMaxThreadCount() {
+        return maxThreadCount;
+    }
+
+    public int getRunningCount() {
+        return inFlight.size();
+    }
+
+    public ThreadPoolMetricsSnapshot getMetrics() {
+        int running = inFlight.size();
+        return metrics.snapshot(getClass().getName(), running, Math.max(permits.availablePermits(), 0), running, maxThreadCount, 0, 0, 0);
+    }
+
+    public void initialize() throws SchedulerConfigException {
+        if (initialized)
+            return;
+
+        if (count <= 0) {
+            throw new SchedulerConfigException("Thread count must be > 0");
+        }
+
+        String threadPrefix = getThreadNamePrefix();
+        if (threadPrefix == null) {
+            threadPrefix = schedulerInstanceName + "_VirtualWorker";
+        }
+        threadFactory = Thread.ofVirtual().name(threadPrefix + "-", 1).factory();
+        permits.release(count);
+        initialized = true;
+        ResizableSimpleThreadPoolManager.getInstance().register(schedulerInstanceId, this);
+    }
+
+    public int addWorkerThread(int createCount) {
+        if (!initialized) {
+            getLog().info("The thread pool " + VirtualThreadPool.class.getName() + " is not initialized");
+            return 0;
+        }
+
+        synchronized (resizeLock) {
+            if (isShutdown) {
+                return 0;
+            }
+
+            if (minSizeReached) { //Same rule as ResizableSimpleThreadPool: the cap of 1 left after the last job was removed is reused.
+                createCount = createCount - 1;
+                if (createCount >= 0) {
+                    minSizeReached = false;
+                }
+                if (createCount == 0) {
+                    return 0;
+                }
+            }
+
+            if (createCount <= 0) {
+                return 0;
+            }
+
+            if ((count + createCount) > maxThreadCount) {
+                metrics.rejectedGrows.increment();
+                getLog().warn("Max thread count reached. Current concurrency cap: " + count + ", Count to add: " + createCount + ", Max thread count: " + maxThreadCount);
+                return 0;
+            }
+
+            count += createCount;
+            permits.release(createCount);
+            metrics.recordGrow(createCount);
+        }
+        getLog().info("Raised the concurrency cap by " + createCount + " to " + count);
+        return createCount;
+    }
+
+    public int removeWorkerThread(int removeCount) {
+        if (!initialized)
+            return 0;
+
+        synchronized (resizeLock) {
+            if (removeCount >= count) {
+                removeCount = count - 1; //The cap must be 1 at least.
+            }
+
+            if (count == 1) {
+                minSizeReached = true;
+                return 0;
+            }
+
+            if (removeCount <= 0) {
+                return 0;
+            }
+
+            count -= removeCount;
+            permits.reducePermits(removeCount); //Running jobs keep their permits, so the new cap applies as they finish.
+            metrics.recordShrink(removeCount);
+        }
+        getLog().info("Lowered the concurrency cap by " + removeCount + " to " + count);
+        return removeCount;
+    }
+
+    public void shutdown() {
+        shutdown(true);
+    }
+
+    public void beginDrain(long timeoutMs) {
+        if (timeoutMs < 1) {
+            throw new IllegalArgumentException("timeoutMs must be at least 1");
+        }
+        drainTimeoutMs = timeoutMs;
+        drainStart = System.nanoTime();
+        drainDeadline = drainStart + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        draining = true;
+    }
+
+    public DrainReport getDrainReport() {
+        return drainReport;
+    }
+
+    public void shutdown(boolean waitForJobsToComplete) {
+        getLog().debug("Shutting down threadpool...");
+        isShutdown = true;
+
+        long shutdownStart = draining ? drainStart : System.nanoTime();
+        List<String> cutOffJobs = List.of();
+        if (waitForJobsToComplete) {
+            boolean interrupted = false;
+            if (draining) {
+                if (!inFlight.awaitEmpty(drainDeadline)) {
+                    cutOffJobs = inFlight.interruptAll();
+                    getLog().warn("Drain deadline of " + drainTimeoutMs + "ms passed, interrupted "
+                            + cutOffJobs.size() + " running job(s): " + cutOffJobs);
+                }
+            } else {
+                for (Thread thread : inFlight.threads()) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (cutOffJobs.isEmpty()) {
+                getLog().debug("No executing jobs remaining, all threads stopped.");
+            }
+        }
+        drainReport = new DrainReport(schedulerInstanceId, waitForJobsToComplete && draining ? drainTimeoutMs : 0,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - shutdownStart), cutOffJobs, null);
+        getLog().debug("Shutdown of threadpool complete.");
+        ResizableSimpleThreadPoolManager.getInstance().remove(schedulerInstanceId);
+    }
+
+    /**
+     * <p>
+     * Run the given <code>Runnable</code> on a new virtual thread once the number of running
+     * jobs is under the cap. If the pool is asked to shut down while waiting, the Runnable
+     * is started immediately regardless of the cap.
+     * </p>
+     */
+    public boolean runInThread(Runnable runnable) {
+        if (runnable == null) {
+            return false;
+        }
+
+        long waitStart = System.nanoTime();
+        boolean acquired = false;
+        while (!acquired && !isShutdown && !draining) {
+            try {
+                acquired = permits.tryAcquire(500, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ignore) {
+            }
+        }
+        metrics.handoffWait.recordNanos(System.nanoTime() - waitStart);
+        start(runnable, acquired);
+        return true;
+    }
+
+    @Override
+    public boolean tryRunInThread(Runnable runnable) {
+        if (runnable == null || isShutdown || draining || !permits.tryAcquire()) {
+            return false;
+        }
+        start(runnable, true);
+        return true;
+    }
+
+    private void start(Runnable runnable, boolean release) {
+        Thread thread = threadFactory.newThread(() -> {
+            long started = System.nanoTime();
+            try {
+                runnable.run();
+            } catch (Throwable exceptionInRunnable) {
+                getLog().error("Error while executing the Runnable: ", exceptionInRunnable);
+            } finally {
+                metrics.jobRunTime.recordNanos(System.nanoTime() - started);
+                inFlight.untrack(Thread.currentThread());
+                if (release) {
+                    permits.release();
+                }
+            }
+        });
+        inFlight.track(thread, runnable);
+        thread.start();
+    }
+
+    public int blockForAvailableThreads() {
+        if (draining) {
+            // No new triggers while draining, the scheduler thread only has to notice it was halted
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+            return 0;
+        }
+        while (!isShutdown && !draining) {
+            try {
+                if (permits.tryAcquire(500, TimeUnit.MILLISECONDS)) {
+                    permits.release();
+                    break;
+                }
+            } catch (InterruptedException ignore) {
+            }
+        }
+        return Math.max(permits.availablePermits(), 0);
+    }
+}
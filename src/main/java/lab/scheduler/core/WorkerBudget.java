@@ -0,0 +1,87 @@
+package lab.scheduler.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * A process-wide limit on the worker capacity of all registered thread pools.
+ * What a scheduler uses is read from its pool's current thread count rather than booked on every resize,
+ * so retired, replaced and removed workers can never make the budget drift.
+ * </p>
+ * <p>
+ * A scheduler can always grow to its guaranteed minimum: the part of another scheduler's guarantee it does not use
+ * is kept free. Grants which were handed out but not applied to their pool yet count as used until they are settled.
+ * No pool lock is taken while the budget's monitor is held.
+ * </p>
+ */
+final class WorkerBudget {
+
+    private final int totalWorkers;
+    private final Map<String, Integer> guaranteedWorkers = new HashMap<>();
+    private int pendingGrants = 0;
+
+    WorkerBudget(int totalWorkers) {
+        if (totalWorkers < 1) {
+            throw new IllegalArgumentException("totalWorkers must be at least 1");
+        }
+        this.totalWorkers = totalWorkers;
+    }
+
+    int getTotalWorkers() {
+        return totalWorkers;
+    }
+
+    synchronized void setGuaranteedWorkers(String schedulerId, int guaranteed) {
+        int othersGuaranteed = 0;
+        for (Map.Entry<String, Integer> entry : guaranteedWorkers.entrySet()) {
+            if (!entry.getKey().equals(schedulerId)) {
+                othersGuaranteed += entry.getValue();
+            }
+        }
+        if (othersGuaranteed + guaranteed > totalWorkers) {
+            throw new IllegalArgumentException("Guaranteed workers of all schedulers (" + (othersGuaranteed + guaranteed)
+                    + ") exceed the worker budget of " + totalWorkers);
+        }
+        guaranteedWorkers.put(schedulerId, guaranteed);
+    }
+
+    synchronized int getGuaranteedWorkers(String schedulerId) {
+        return guaranteedWorkers.getOrDefault(schedulerId, 1); //Every pool keeps one worker at least
+    }
+
+    synchronized void forget(String schedulerId) {
+        guaranteedWorkers.remove(schedulerId);
+    }
+
+    /**
+     * Grants up to <code>requested</code> workers to the scheduler. The grant must be {@link #settle(int) settled}
+     * once the pool was resized.
+     *
+     * @return the number of workers granted
+     */
+    synchronized int reserve(String schedulerId, int requested, Map<String, ResizableThreadPool> pools) {
+        int granted = Math.max(0, Math.min(requested, free(schedulerId, pools)));
+        pendingGrants += granted;
+        return granted;
+    }
+
+    synchronized void settle(int granted) {
+        pendingGrants -= granted;
+    }
+
+    /**
+     * Returns the workers the scheduler could be granted now.
+     */
+    synchronized int free(String schedulerId, Map<String, ResizableThreadPool> pools) {
+        int free = totalWorkers - pendingGrants;
+        for (Map.Entry<String, ResizableThreadPool> entry : pools.entrySet()) {
+            int held = entry.getValue().getCurrentThreadCount();
+            free -= held;
+            if (!entry.getKey().equals(schedulerId)) {
+                free -= Math.max(getGuaranteedWorkers(entry.getKey()) - held, 0);
+            }
+        }
+        return free;
+    }
+}
@@ -0,0 +1,40 @@
+package lab.scheduler.listeners;
+
+import lab.scheduler.core.AsyncJobTracker;
+import lombok.Getter;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobListener;
+
+/**
+ * Holds jobWasExecuted back until the stage of an AsyncJob completed, so the delegate sees the fire complete
+ * with its result or failure. It keeps the name of the delegate.
+ * */
+public class AsyncCompletionJobListener implements JobListener {
+    @Getter
+    private final JobListener delegate;
+
+    public AsyncCompletionJobListener(JobListener delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public void jobToBeExecuted(JobExecutionContext jobExecutionContext) {
+        delegate.jobToBeExecuted(jobExecutionContext);
+    }
+
+    @Override
+    public void jobExecutionVetoed(JobExecutionContext jobExecutionContext) {
+        delegate.jobExecutionVetoed(jobExecutionContext);
+    }
+
+    @Override
+    public void jobWasExecuted(JobExecutionContext jobExecutionContext, JobExecutionException e) {
+        AsyncJobTracker.whenComplete(jobExecutionContext, error -> delegate.jobWasExecuted(jobExecutionContext, error == null ? e : error));
+    }
+}
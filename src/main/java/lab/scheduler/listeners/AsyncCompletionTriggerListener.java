@@ -0,0 +1,44 @@
+package lab.scheduler.listeners;
+
+import lab.scheduler.core.AsyncJobTracker;
+import lombok.Getter;
+import org.quartz.JobExecutionContext;
+import org.quartz.Trigger;
+import org.quartz.TriggerListener;
+
+/**
+ * Holds triggerComplete back until the stage of an AsyncJob completed. It keeps the name of the delegate.
+ * */
+public class AsyncCompletionTriggerListener implements TriggerListener {
+    @Getter
+    private final TriggerListener delegate;
+
+    public AsyncCompletionTriggerListener(TriggerListener delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public void triggerFired(Trigger trigger, JobExecutionContext jobExecutionContext) {
+        delegate.triggerFired(trigger, jobExecutionContext);
+    }
+
+    @Override
+    public boolean vetoJobExecution(Trigger trigger, JobExecutionContext jobExecutionContext) {
+        return delegate.vetoJobExecution(trigger, jobExecutionContext);
+    }
+
+    @Override
+    public void triggerMisfired(Trigger trigger) {
+        delegate.triggerMisfired(trigger);
+    }
+
+    @Override
+    public void triggerComplete(Trigger trigger, JobExecutionContext jobExecutionContext, Trigger.CompletedExecutionInstruction completedExecutionInstruction) {
+        AsyncJobTracker.whenComplete(jobExecutionContext, error -> delegate.triggerComplete(trigger, jobExecutionContext, completedExecutionInstruction));
+    }
+}
@@ -0,0 +1,61 @@
+package lab.scheduler.listeners;
+
+import lab.scheduler.core.ConcurrencyLimiter;
+import lab.scheduler.core.DeferredJobHolds;
+import lombok.Getter;
+import org.quartz.*;
+
+/**
+ * Vetoes the fires over the caps of the ConcurrencyLimiter and gives their permits back once they completed.
+ * It is registered as trigger and as job listener, the job listener also sees fires vetoed by other listeners.
+ * */
+public class ConcurrencyLimitListener implements TriggerListener, JobListener {
+    public static final String NAME = "ConcurrencyLimitListener";
+
+    @Getter
+    private final ConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitListener() {
+        this(new DeferredJobHolds());
+    }
+
+    public ConcurrencyLimitListener(DeferredJobHolds holds) {
+        limiter = new ConcurrencyLimiter(holds);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void triggerFired(Trigger trigger, JobExecutionContext jobExecutionContext) {
+    }
+
+    @Override
+    public boolean vetoJobExecution(Trigger trigger, JobExecutionContext jobExecutionContext) {
+        return !limiter.tryAcquire(jobExecutionContext);
+    }
+
+    @Override
+    public void triggerMisfired(Trigger trigger) {
+    }
+
+    @Override
+    public void triggerComplete(Trigger trigger, JobExecutionContext jobExecutionContext, Trigger.CompletedExecutionInstruction completedExecutionInstruction) {
+    }
+
+    @Override
+    public void jobToBeExecuted(JobExecutionContext jobExecutionContext) {
+    }
+
+    @Override
+    public void jobExecutionVetoed(JobExecutionContext jobExecutionContext) {
+        limiter.release(jobExecutionContext);
+    }
+
+    @Override
+    public void jobWasExecuted(JobExecutionContext jobExecutionContext, JobExecutionException e) {
+        limiter.release(jobExecutionContext);
+    }
+}
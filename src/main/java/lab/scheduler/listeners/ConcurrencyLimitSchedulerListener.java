@@ -0,0 +1,26 @@
+package lab.scheduler.listeners;
+
+import lab.scheduler.core.ConcurrencyLimiter;
+import org.quartz.JobKey;
+import org.quartz.listeners.SchedulerListenerSupport;
+
+/**
+ * Drops the deferred fires and counters of the jobs deleted from the scheduler, however they were deleted.
+ * */
+public class ConcurrencyLimitSchedulerListener extends SchedulerListenerSupport {
+    private final ConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitSchedulerListener(ConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public void jobDeleted(JobKey jobKey) {
+        limiter.jobDeleted(jobKey);
+    }
+
+    @Override
+    public void schedulingDataCleared() {
+        limiter.clear();
+    }
+}
@@ -0,0 +1,26 @@
+package lab.scheduler.listeners;
+
+import lab.scheduler.core.FanOutGroups;
+import org.quartz.JobKey;
+import org.quartz.listeners.SchedulerListenerSupport;
+
+/**
+ * Takes the jobs deleted from the scheduler out of their fan-out group, however they were deleted.
+ * */
+public class FanOutSchedulerListener extends SchedulerListenerSupport {
+    private final FanOutGroups groups;
+
+    public FanOutSchedulerListener(FanOutGroups groups) {
+        this.groups = groups;
+    }
+
+    @Override
+    public void jobDeleted(JobKey jobKey) {
+        groups.jobDeleted(jobKey);
+    }
+
+    @Override
+    public void schedulingDataCleared() {
+        groups.clear();
+    }
+}
@@ -0,0 +1,36 @@
+package lab.scheduler.listeners;
+
+import lab.scheduler.core.HandoffVeto;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.JobExecutionContext;
+import org.quartz.Trigger;
+import org.quartz.TriggerListener;
+
+@Slf4j
+public class HandoffVetoTriggerListener implements TriggerListener {
+    @Override
+    public String getName() {
+        return "HandoffVetoTriggerListener";
+    }
+
+    @Override
+    public void triggerFired(Trigger trigger, JobExecutionContext jobExecutionContext) {
+    }
+
+    @Override
+    public boolean vetoJobExecution(Trigger trigger, JobExecutionContext jobExecutionContext) {
+        if (HandoffVeto.isVetoed()) {
+            log.warn("Skipped the fire of '{}' scheduled at {}, the thread pool could not take it", trigger.getJobKey(), jobExecutionContext.getScheduledFireTime());
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void triggerMisfired(Trigger trigger) {
+    }
+
+    @Override
+    public void triggerComplete(Trigger trigger, JobExecutionContext jobExecutionContext, Trigger.CompletedExecutionInstruction completedExecutionInstruction) {
+    }
+}
@@ -0,0 +1,61 @@
+package lab.scheduler.listeners;
+
+import lab.scheduler.core.DeferredJobHolds;
+import lab.scheduler.core.MisfireCatchUp;
+import lombok.Getter;
+import org.quartz.*;
+
+/**
+ * Coalesces the late fires of the templates with a misfire policy and gives the permits of catch-up fires back
+ * once they completed. It is registered as trigger and as job listener, like ConcurrencyLimitListener.
+ * */
+public class MisfirePolicyListener implements TriggerListener, JobListener {
+    public static final String NAME = "MisfirePolicyListener";
+
+    @Getter
+    private final MisfireCatchUp catchUp;
+
+    public MisfirePolicyListener() {
+        this(new DeferredJobHolds());
+    }
+
+    public MisfirePolicyListener(DeferredJobHolds holds) {
+        catchUp = new MisfireCatchUp(holds);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void triggerFired(Trigger trigger, JobExecutionContext jobExecutionContext) {
+    }
+
+    @Override
+    public boolean vetoJobExecution(Trigger trigger, JobExecutionContext jobExecutionContext) {
+        return !catchUp.tryFire(trigger, jobExecutionContext);
+    }
+
+    @Override
+    public void triggerMisfired(Trigger trigger) {
+    }
+
+    @Override
+    public void triggerComplete(Trigger trigger, JobExecutionContext jobExecutionContext, Trigger.CompletedExecutionInstruction completedExecutionInstruction) {
+    }
+
+    @Override
+    public void jobToBeExecuted(JobExecutionContext jobExecutionContext) {
+    }
+
+    @Override
+    public void jobExecutionVetoed(JobExecutionContext jobExecutionContext) {
+        catchUp.release(jobExecutionContext);
+    }
+
+    @Override
+    public void jobWasExecuted(JobExecutionContext jobExecutionContext, JobExecutionException e) {
+        catchUp.release(jobExecutionContext);
+    }
+}
@@ -0,0 +1,39 @@
+package lab.scheduler.listeners;
+
+import lab.scheduler.core.MisfireCatchUp;
+import org.quartz.JobKey;
+import org.quartz.Trigger;
+import org.quartz.TriggerKey;
+import org.quartz.listeners.SchedulerListenerSupport;
+
+/**
+ * Drops the backlogs of the triggers and the deferred catch-ups of the jobs removed from the scheduler, however they
+ * were removed.
+ * */
+public class MisfirePolicySchedulerListener extends SchedulerListenerSupport {
+    private final MisfireCatchUp catchUp;
+
+    public MisfirePolicySchedulerListener(MisfireCatchUp catchUp) {
+        this.catchUp = catchUp;
+    }
+
+    @Override
+    public void jobUnscheduled(TriggerKey triggerKey) {
+        catchUp.triggerRemoved(triggerKey);
+    }
+
+    @Override
+    public void triggerFinalized(Trigger trigger) {
+        catchUp.triggerRemoved(trigger.getKey());
+    }
+
+    @Override
+    public void jobDeleted(JobKey jobKey) {
+        catchUp.jobDeleted(jobKey);
+    }
+
+    @Override
+    public void schedulingDataCleared() {
+        catchUp.clear();
+    }
+}
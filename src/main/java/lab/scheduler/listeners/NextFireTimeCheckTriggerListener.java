@@ -1,10 +1,14 @@
 package lab.scheduler.listeners;
 
+import lab.scheduler.core.FanOutGroups;
+import lab.scheduler.core.FanOutJob;
 import lab.scheduler.core.SchedulerManager;
 import lombok.extern.slf4j.Slf4j;
 import org.quartz.*;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 @Slf4j
 public class NextFireTimeCheckTriggerListener implements TriggerListener {
@@ -34,7 +38,22 @@ public class NextFireTimeCheckTriggerListener implements TriggerListener {
         if (nextFireTime == null) {
             try {
                 JobDetail jobDetail = jobExecutionContext.getJobDetail();
-                String schedulerId = jobDetail.getJobDataMap().getString("schedulerID");
+                Scheduler scheduler = jobExecutionContext.getScheduler();
+                if (FanOutJob.class.equals(jobDetail.getJobClass())) {
+                    return; //Deleted with its trigger, its members remove themselves
+                }
+                List<Trigger> jobTriggers = new ArrayList<>(scheduler.getTriggersOfJob(jobDetail.getKey()));
+                Trigger fanOutTrigger = FanOutGroups.getFanOutTrigger(scheduler, jobDetail.getKey());
+                if (fanOutTrigger != null) {
+                    jobTriggers.add(fanOutTrigger); //The member of a fan-out group fires by the trigger of its group
+                }
+                //One-shot triggers of triggerJob, e.g. deferred fires, must not remove a job which still has its own trigger
+                for (Trigger jobTrigger : jobTriggers) {
+                    if (!jobTrigger.getKey().equals(trigger.getKey()) && jobTrigger.getNextFireTime() != null) {
+                        return;
+                    }
+                }
+                String schedulerId = jobDetail.getJobDataMap().getString("schedulerId");
                 String jobId = jobDetail.getKey().getName();
                 SchedulerManager.getInstance().removeScheduleJob(schedulerId, jobId);
             } catch (SchedulerException e) {
@@ -0,0 +1,31 @@
+package lab.scheduler.config;
+
+import lab.scheduler.core.TimingWheelJobStore;
+import org.junit.jupiter.api.Test;
+import org.quartz.simpl.RAMJobStore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchedulerConfigTest {
+    private static final String JOB_STORE_CLASS = "org.quartz.jobStore.class";
+
+    @Test
+    void removesTheTimingWheelJobStoreItSetOnceTheTypeChanges() {
+        SchedulerConfig config = new SchedulerConfig();
+        config.setJobStoreType(JobStoreType.TIMING_WHEEL);
+        assertEquals(TimingWheelJobStore.class.getName(), config.getProperties().getProperty(JOB_STORE_CLASS));
+
+        config.setJobStoreType(JobStoreType.RAM);
+        assertNull(config.getProperties().getProperty(JOB_STORE_CLASS));
+    }
+
+    @Test
+    void keepsAnExplicitJobStoreClassAndRejectsTheTimingWheelTypeOverIt() {
+        SchedulerConfig config = new SchedulerConfig();
+        config.getProperties().setProperty(JOB_STORE_CLASS, RAMJobStore.class.getName());
+        assertEquals(RAMJobStore.class.getName(), config.getProperties().getProperty(JOB_STORE_CLASS));
+
+        config.setJobStoreType(JobStoreType.TIMING_WHEEL);
+        assertThrows(IllegalStateException.class, config::getProperties);
+    }
+}
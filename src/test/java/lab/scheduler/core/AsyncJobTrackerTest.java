@@ -0,0 +1,107 @@
+package lab.scheduler.core;
+
+import lab.scheduler.config.ScheduleTemplate;
+import lab.scheduler.config.SchedulerConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.quartz.*;
+import org.quartz.listeners.JobListenerSupport;
+import org.quartz.listeners.TriggerListenerSupport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncJobTrackerTest {
+    private static final CountDownLatch launched = new CountDownLatch(1);
+    private static final CompletableFuture<String> stage = new CompletableFuture<>();
+
+    private final SchedulerManager manager = SchedulerManager.getInstance();
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    private String schedulerId;
+
+    public static class PooledAsyncJob implements AsyncJob {
+        @Override
+        public CompletionStage<?> executeAsync(JobExecutionContext context) {
+            launched.countDown();
+            return stage;
+        }
+    }
+
+    @AfterEach
+    void removeScheduler() {
+        if (schedulerId != null) {
+            manager.removeScheduler(schedulerId);
+        }
+    }
+
+    @Test
+    void notifiesTheListenersOfAnAsyncFireInQuartzOrderBeforeReleasingItsInstance() throws Exception {
+        ScheduleTemplate template = new ScheduleTemplate();
+        template.setJobName("async");
+        template.setJobClass(PooledAsyncJob.class);
+        template.setJobInstancePolicy("pooled");
+        template.setSimpleTrigger(null, null, 1, 1); //Fires again in an hour, so the job store keeps the job
+        template.setIntervalUnit("HOUR");
+        SchedulerConfig config = new SchedulerConfig();
+        config.addScheduleTemplate(template);
+        schedulerId = manager.registerScheduler("AsyncListenerOrder", config);
+        Scheduler scheduler = manager.getScheduler(schedulerId);
+        JobKey jobKey = manager.getJobKey(schedulerId, "async");
+        manager.addJobListener(scheduler, jobListener("job-1", scheduler, jobKey));
+        manager.addJobListener(scheduler, jobListener("job-2", scheduler, jobKey));
+        manager.addTriggerListener(scheduler, triggerListener("trigger-1"));
+        manager.addTriggerListener(scheduler, triggerListener("trigger-2"));
+
+        manager.startScheduler(schedulerId);
+        assertTrue(launched.await(10, TimeUnit.SECONDS));
+        Thread.sleep(200); //The listeners wait on the stage by now
+        assertTrue(events.isEmpty());
+        stage.complete("done");
+
+        assertEquals(List.of("job-1 job exists, 0 idle", "job-2 job exists, 0 idle", "trigger-1 0 idle", "trigger-2 0 idle"), events);
+        assertEquals(1, manager.getJobFactory().getIdleInstances(PooledAsyncJob.class));
+    }
+
+    private JobListener jobListener(String name, Scheduler scheduler, JobKey jobKey) {
+        return new JobListenerSupport() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public void jobWasExecuted(JobExecutionContext context, JobExecutionException jobException) {
+                try {
+                    events.add(name + (scheduler.checkExists(jobKey) ? " job exists, " : " job deleted, ") + idleInstances() + " idle");
+                } catch (SchedulerException e) {
+                    events.add(name + " " + e);
+                }
+            }
+        };
+    }
+
+    private TriggerListener triggerListener(String name) {
+        return new TriggerListenerSupport() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public void triggerComplete(Trigger trigger, JobExecutionContext context, Trigger.CompletedExecutionInstruction triggerInstructionCode) {
+                events.add(name + " " + idleInstances() + " idle");
+            }
+        };
+    }
+
+    private int idleInstances() {
+        return manager.getJobFactory().getIdleInstances(PooledAsyncJob.class);
+    }
+}
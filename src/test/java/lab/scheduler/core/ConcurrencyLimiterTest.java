@@ -0,0 +1,141 @@
+package lab.scheduler.core;
+
+import lab.scheduler.config.ScheduleTemplate;
+import lab.scheduler.config.SchedulerConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.quartz.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimiterTest {
+    private static final AtomicInteger running = new AtomicInteger();
+    private static final AtomicInteger maxRunning = new AtomicInteger();
+    private static final AtomicInteger runs = new AtomicInteger();
+    private static volatile long runMs;
+
+    private final SchedulerManager manager = SchedulerManager.getInstance();
+    private String schedulerId;
+
+    public static class SlowJob implements Job {
+        @Override
+        public void execute(JobExecutionContext context) throws JobExecutionException {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(runMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+                runs.incrementAndGet();
+            }
+        }
+    }
+
+    @BeforeEach
+    void resetCounters() {
+        running.set(0);
+        maxRunning.set(0);
+        runs.set(0);
+    }
+
+    @AfterEach
+    void removeScheduler() {
+        if (schedulerId != null) {
+            manager.removeScheduler(schedulerId);
+        }
+    }
+
+    @Test
+    void defersTheFiresOverTheCapAndRunsThemAll() throws Exception {
+        runMs = 100;
+        Scheduler scheduler = start("defer", "DEFER", 1, "HOUR");
+        JobKey jobKey = manager.getJobKey(schedulerId, "defer");
+        for (int i = 0; i < 4; i++) {
+            scheduler.triggerJob(jobKey);
+        }
+
+        awaitRuns(5);
+        ConcurrencyLimiter limiter = manager.getConcurrencyLimiter(schedulerId);
+        assertEquals(1, maxRunning.get());
+        assertTrue(limiter.getDeferredCount() > 0);
+        assertEquals(0, limiter.getPendingFires(jobKey));
+    }
+
+    @Test
+    void coalescesTheFiresOverTheCapIntoOne() throws Exception {
+        runMs = 300;
+        Scheduler scheduler = start("coalesce", "COALESCE", 1, "HOUR");
+        JobKey jobKey = manager.getJobKey(schedulerId, "coalesce");
+        awaitRunning();
+        for (int i = 0; i < 4; i++) {
+            scheduler.triggerJob(jobKey);
+        }
+
+        awaitRuns(2);
+        Thread.sleep(2 * runMs); //No more fires come
+        ConcurrencyLimiter limiter = manager.getConcurrencyLimiter(schedulerId);
+        assertEquals(2, runs.get());
+        assertEquals(1, maxRunning.get());
+        assertEquals(3, limiter.getCoalescedCount());
+        assertEquals(0, limiter.getPendingFires(jobKey));
+    }
+
+    @Test
+    void keepsTheJobForTheFiresDeferredPastItsLastTriggerAndDeletesItAfterwards() throws Exception {
+        runMs = 1500;
+        Scheduler scheduler = start("last", "DEFER", 2, "SECOND");
+        JobKey jobKey = manager.getJobKey(schedulerId, "last");
+
+        awaitRuns(3);
+        assertEquals(1, maxRunning.get());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.checkExists(jobKey) && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse(scheduler.checkExists(jobKey));
+        assertEquals(0, manager.getConcurrencyLimiter(schedulerId).getPendingFires(jobKey));
+    }
+
+    /**
+     * Starts a scheduler with a non-durable job capped at one running fire, fired right away and repeatCount times
+     * every interval unit.
+     * */
+    private Scheduler start(String jobName, String policy, int repeatCount, String intervalUnit) throws SchedulerException {
+        ScheduleTemplate template = new ScheduleTemplate();
+        template.setJobName(jobName);
+        template.setJobClass(SlowJob.class);
+        template.setMaxConcurrentExecutions(1);
+        template.setConcurrencyLimitPolicy(policy);
+        template.setSimpleTrigger(null, null, repeatCount, 1);
+        template.setIntervalUnit(intervalUnit);
+        SchedulerConfig config = new SchedulerConfig();
+        config.addScheduleTemplate(template);
+        config.setAutoAdjustThreadCount(false);
+        config.setThreadCount(4);
+        schedulerId = manager.registerScheduler("ConcurrencyLimit-" + jobName, config);
+        Scheduler scheduler = manager.getScheduler(schedulerId);
+        manager.startScheduler(schedulerId);
+        return scheduler;
+    }
+
+    private static void awaitRunning() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (running.get() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, running.get());
+    }
+
+    private static void awaitRuns(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (runs.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, runs.get());
+    }
+}
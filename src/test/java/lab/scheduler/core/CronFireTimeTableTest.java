@@ -0,0 +1,80 @@
+package lab.scheduler.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.quartz.CronExpression;
+
+import java.lang.ref.WeakReference;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CronFireTimeTableTest {
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "0 30 2 ? * SUN      | Europe/Berlin",    //Sundays at a time skipped once a year and passed twice once a year
+            "0 30 1 ? * SUN      | America/New_York",
+            "0 0/30 1-3 ? * SUN  | Europe/Berlin",
+            "0 0/30 0-3 ? * SUN  | America/New_York",
+            "0 15 10 L * ?       | Australia/Sydney",
+    })
+    void findsTheFireTimesOfTheCronExpressionAcrossDaylightSavingChangesAndRefills(String cron, String timeZoneId) throws Exception {
+        TimeZone timeZone = TimeZone.getTimeZone(timeZoneId);
+        CronExpression expression = new CronExpression(cron);
+        expression.setTimeZone(timeZone);
+        CronFireTimeTable table = CronFireTimeTable.of(cron, timeZone);
+        Date now = new Date();
+        table.getTimeAfter(now);
+        awaitBufferedFireTimes(table);
+
+        Date fireTime = now;
+        boolean offsetChanged = false;
+        int lookups = table.getBufferedFireTimes() + 100; //Runs into the refill started at the last quarter, and past it
+        for (int i = 0; i < lookups && fireTime != null; i++) {
+            Date next = table.getTimeAfter(fireTime);
+            long halfway = next == null ? fireTime.getTime() : (fireTime.getTime() + next.getTime()) / 2;
+            for (long after : new long[] {fireTime.getTime() - 1, fireTime.getTime(), fireTime.getTime() + 1, halfway}) {
+                Date afterTime = new Date(after);
+                assertEquals(expression.getTimeAfter(afterTime), table.getTimeAfter(afterTime), () -> "after " + afterTime);
+            }
+            offsetChanged |= next != null && timeZone.getOffset(next.getTime()) != timeZone.getOffset(fireTime.getTime());
+            fireTime = next;
+        }
+        assertTrue(offsetChanged, "The fire times cross no daylight saving change");
+        assertTrue(table.getHitCount() > table.getMissCount());
+    }
+
+    @Test
+    void sharesATableWhileTriggersUseItAndDropsItAfterwards() throws Exception {
+        String cron = "0 7 7 7 7 ? 2099";
+        TimeZone timeZone = TimeZone.getTimeZone("UTC");
+        CachedCronTrigger trigger = new CachedCronTrigger();
+        trigger.setTimeZone(timeZone);
+        trigger.setCronExpression(cron);
+        CronFireTimeTable table = CronFireTimeTable.of(cron, timeZone);
+        assertSame(table, CronFireTimeTable.of(cron, timeZone));
+        int tables = CronFireTimeTable.getTableCount();
+
+        WeakReference<CronFireTimeTable> released = new WeakReference<>(table);
+        table = null;
+        trigger = null;
+        for (int i = 0; i < 50 && released.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(released.get());
+        assertTrue(CronFireTimeTable.getTableCount() < tables);
+    }
+
+    private static void awaitBufferedFireTimes(CronFireTimeTable table) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (table.getBufferedFireTimes() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(table.getBufferedFireTimes() > 0);
+    }
+}
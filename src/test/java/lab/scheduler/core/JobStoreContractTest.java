@@ -0,0 +1,291 @@
+package lab.scheduler.core;
+
+import org.junit.jupiter.api.Named;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.quartz.*;
+import org.quartz.Trigger.CompletedExecutionInstruction;
+import org.quartz.Trigger.TriggerState;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.quartz.simpl.RAMJobStore;
+import org.quartz.simpl.SimpleClassLoadHelper;
+import org.quartz.spi.JobStore;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.SchedulerSignaler;
+import org.quartz.spi.TriggerFiredBundle;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the same scenarios against RAMJobStore and TimingWheelJobStore, which must behave alike.
+ * */
+class JobStoreContractTest {
+    private final RecordingSignaler signaler = new RecordingSignaler();
+
+    public static class NoopJob implements Job {
+        @Override
+        public void execute(JobExecutionContext context) {
+        }
+    }
+
+    @DisallowConcurrentExecution
+    public static class NonConcurrentJob implements Job {
+        @Override
+        public void execute(JobExecutionContext context) {
+        }
+    }
+
+    private static final class RecordingSignaler implements SchedulerSignaler {
+        private final List<TriggerKey> misfired = new ArrayList<>();
+        private final List<JobKey> deletedJobs = new ArrayList<>();
+
+        @Override
+        public void notifyTriggerListenersMisfired(Trigger trigger) {
+            misfired.add(trigger.getKey());
+        }
+
+        @Override
+        public void notifySchedulerListenersFinalized(Trigger trigger) {
+        }
+
+        @Override
+        public void notifySchedulerListenersJobDeleted(JobKey jobKey) {
+            deletedJobs.add(jobKey);
+        }
+
+        @Override
+        public void signalSchedulingChange(long candidateNewNextFireTime) {
+        }
+
+        @Override
+        public void notifySchedulerListenersError(String string, SchedulerException jpe) {
+        }
+    }
+
+    static Stream<Named<Supplier<JobStore>>> stores() {
+        return Stream.of(Named.of("RAMJobStore", RAMJobStore::new), Named.of("TimingWheelJobStore", TimingWheelJobStore::new));
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void acquiresTriggersInFireTimeOrder(Supplier<JobStore> stores) throws Exception {
+        JobStore store = start(stores);
+        long now = System.currentTimeMillis();
+        JobDetail job = job("job", NoopJob.class, true);
+        store.storeJob(job, false);
+        store.storeTrigger(trigger("late", job, now + 300, 5), false);
+        store.storeTrigger(trigger("early", job, now + 100, 5), false);
+        store.storeTrigger(trigger("middle", job, now + 200, 5), false);
+
+        assertEquals(List.of("early", "middle", "late"), names(store.acquireNextTriggers(now + 1000, 10, 1000)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void leavesTriggersAfterTheBatchWindow(Supplier<JobStore> stores) throws Exception {
+        JobStore store = start(stores);
+        long now = System.currentTimeMillis();
+        JobDetail job = job("job", NoopJob.class, true);
+        store.storeJob(job, false);
+        store.storeTrigger(trigger("soon", job, now + 100, 5), false);
+        store.storeTrigger(trigger("later", job, now + 60_000, 5), false);
+
+        assertEquals(List.of("soon"), names(store.acquireNextTriggers(now + 1000, 10, 0)));
+        assertEquals(TriggerState.NORMAL, store.getTriggerState(TriggerKey.triggerKey("later")));
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void acquiresHigherPriorityFirstAtTheSameFireTime(Supplier<JobStore> stores) throws Exception {
+        JobStore store = start(stores);
+        long fireTime = System.currentTimeMillis() + 100;
+        JobDetail job = job("job", NoopJob.class, true);
+        store.storeJob(job, false);
+        store.storeTrigger(trigger("low", job, fireTime, 1), false);
+        store.storeTrigger(trigger("high", job, fireTime, 10), false);
+        store.storeTrigger(trigger("medium", job, fireTime, 5), false);
+
+        assertEquals(List.of("high", "medium", "low"), names(store.acquireNextTriggers(fireTime + 1000, 10, 1000)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void appliesTheMisfireInstructionOfLateTriggers(Supplier<JobStore> stores) throws Exception {
+        JobStore store = start(stores);
+        long now = System.currentTimeMillis();
+        JobDetail job = job("job", NoopJob.class, true);
+        store.storeJob(job, false);
+        OperableTrigger fireNow = (OperableTrigger) TriggerBuilder.newTrigger().withIdentity("fireNow").forJob(job)
+                .startAt(new Date(now - 60_000))
+                .withSchedule(SimpleScheduleBuilder.simpleSchedule().withMisfireHandlingInstructionFireNow()).build();
+        OperableTrigger skipped = (OperableTrigger) TriggerBuilder.newTrigger().withIdentity("skipped").forJob(job)
+                .startAt(new Date(now - 90_000))
+                .withSchedule(SimpleScheduleBuilder.repeatMinutelyForever().withMisfireHandlingInstructionNextWithRemainingCount()).build();
+        fireNow.computeFirstFireTime(null);
+        skipped.computeFirstFireTime(null);
+        store.storeTrigger(fireNow, false);
+        store.storeTrigger(skipped, false);
+
+        assertEquals(List.of("fireNow"), names(store.acquireNextTriggers(System.currentTimeMillis() + 1000, 10, 0)));
+        assertEquals(Set.of(fireNow.getKey(), skipped.getKey()), Set.copyOf(signaler.misfired));
+        assertTrue(store.retrieveTrigger(skipped.getKey()).getNextFireTime().getTime() > now);
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void pausedTriggersAreNotAcquiredUntilResumed(Supplier<JobStore> stores) throws Exception {
+        JobStore store = start(stores);
+        long now = System.currentTimeMillis();
+        JobDetail job = job("job", NoopJob.class, true);
+        store.storeJob(job, false);
+        OperableTrigger trigger = trigger("trigger", job, now + 100, 5);
+        store.storeTrigger(trigger, false);
+
+        store.pauseTrigger(trigger.getKey());
+        assertEquals(TriggerState.PAUSED, store.getTriggerState(trigger.getKey()));
+        assertTrue(store.acquireNextTriggers(now + 1000, 10, 0).isEmpty());
+
+        store.resumeTrigger(trigger.getKey());
+        assertEquals(TriggerState.NORMAL, store.getTriggerState(trigger.getKey()));
+        assertEquals(List.of("trigger"), names(store.acquireNextTriggers(now + 1000, 10, 0)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void pausingAJobPausesAllItsTriggers(Supplier<JobStore> stores) throws Exception {
+        JobStore store = start(stores);
+        long now = System.currentTimeMillis();
+        JobDetail job = job("job", NoopJob.class, true);
+        store.storeJob(job, false);
+        store.storeTrigger(trigger("first", job, now + 100, 5), false);
+        store.storeTrigger(trigger("second", job, now + 200, 5), false);
+
+        store.pauseJob(job.getKey());
+        assertEquals(TriggerState.PAUSED, store.getTriggerState(TriggerKey.triggerKey("first")));
+        assertEquals(TriggerState.PAUSED, store.getTriggerState(TriggerKey.triggerKey("second")));
+        assertTrue(store.acquireNextTriggers(now + 1000, 10, 1000).isEmpty());
+
+        store.resumeJob(job.getKey());
+        assertEquals(List.of("first", "second"), names(store.acquireNextTriggers(now + 1000, 10, 1000)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void triggersStoredInAPausedGroupArePaused(Supplier<JobStore> stores) throws Exception {
+        JobStore store = start(stores);
+        JobDetail job = job("job", NoopJob.class, true);
+        store.storeJob(job, false);
+        store.pauseTriggers(GroupMatcher.triggerGroupEquals("reports"));
+        OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger().withIdentity("daily", "reports").forJob(job)
+                .startAt(new Date(System.currentTimeMillis() + 100)).build();
+        trigger.computeFirstFireTime(null);
+        store.storeTrigger(trigger, false);
+
+        assertEquals(TriggerState.PAUSED, store.getTriggerState(trigger.getKey()));
+        assertEquals(Set.of("reports"), store.getPausedTriggerGroups());
+
+        store.resumeTriggers(GroupMatcher.triggerGroupEquals("reports"));
+        assertEquals(TriggerState.NORMAL, store.getTriggerState(trigger.getKey()));
+        assertTrue(store.getPausedTriggerGroups().isEmpty());
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void removesANonDurableJobWithItsLastTrigger(Supplier<JobStore> stores) throws Exception {
+        JobStore store = start(stores);
+        JobDetail job = job("orphan", NoopJob.class, false);
+        store.storeJobAndTrigger(job, trigger("once", job, System.currentTimeMillis(), 5));
+
+        TriggerFiredBundle bundle = fire(store);
+        OperableTrigger fired = bundle.getTrigger();
+        CompletedExecutionInstruction instruction = fired.executionComplete(null, null);
+        assertEquals(CompletedExecutionInstruction.DELETE_TRIGGER, instruction);
+        store.triggeredJobComplete(fired, bundle.getJobDetail(), instruction);
+
+        assertFalse(store.checkExists(fired.getKey()));
+        assertFalse(store.checkExists(job.getKey()));
+        assertEquals(List.of(job.getKey()), signaler.deletedJobs);
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void keepsADurableJobAfterItsLastTrigger(Supplier<JobStore> stores) throws Exception {
+        JobStore store = start(stores);
+        JobDetail job = job("durable", NoopJob.class, true);
+        store.storeJobAndTrigger(job, trigger("once", job, System.currentTimeMillis(), 5));
+
+        TriggerFiredBundle bundle = fire(store);
+        store.triggeredJobComplete(bundle.getTrigger(), bundle.getJobDetail(), bundle.getTrigger().executionComplete(null, null));
+
+        assertFalse(store.checkExists(bundle.getTrigger().getKey()));
+        assertTrue(store.checkExists(job.getKey()));
+        assertTrue(signaler.deletedJobs.isEmpty());
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void removingTheOnlyTriggerRemovesANonDurableJob(Supplier<JobStore> stores) throws Exception {
+        JobStore store = start(stores);
+        JobDetail job = job("orphan", NoopJob.class, false);
+        OperableTrigger trigger = trigger("trigger", job, System.currentTimeMillis() + 60_000, 5);
+        store.storeJobAndTrigger(job, trigger);
+
+        assertTrue(store.removeTrigger(trigger.getKey()));
+        assertFalse(store.checkExists(job.getKey()));
+        assertEquals(0, store.getNumberOfJobs());
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void blocksTheOtherTriggersOfANonConcurrentJobWhileItRuns(Supplier<JobStore> stores) throws Exception {
+        JobStore store = start(stores);
+        long fireTime = System.currentTimeMillis() + 100;
+        JobDetail job = job("job", NonConcurrentJob.class, true);
+        store.storeJob(job, false);
+        store.storeTrigger(trigger("first", job, fireTime, 5), false);
+        store.storeTrigger(trigger("second", job, fireTime, 5), false);
+
+        List<OperableTrigger> acquired = store.acquireNextTriggers(fireTime + 1000, 10, 1000);
+        assertEquals(List.of("first"), names(acquired));
+        TriggerFiredBundle bundle = store.triggersFired(acquired).get(0).getTriggerFiredBundle();
+        assertEquals(TriggerState.BLOCKED, store.getTriggerState(TriggerKey.triggerKey("second")));
+
+        store.triggeredJobComplete(bundle.getTrigger(), bundle.getJobDetail(), CompletedExecutionInstruction.NOOP);
+        assertEquals(TriggerState.NORMAL, store.getTriggerState(TriggerKey.triggerKey("second")));
+        assertEquals(List.of("second"), names(store.acquireNextTriggers(fireTime + 1000, 10, 1000)));
+    }
+
+    private JobStore start(Supplier<JobStore> stores) throws SchedulerConfigException {
+        JobStore store = stores.get();
+        store.initialize(new SimpleClassLoadHelper(), signaler);
+        return store;
+    }
+
+    private static TriggerFiredBundle fire(JobStore store) throws JobPersistenceException {
+        List<OperableTrigger> acquired = store.acquireNextTriggers(System.currentTimeMillis() + 1000, 1, 0);
+        assertEquals(1, acquired.size());
+        return store.triggersFired(acquired).get(0).getTriggerFiredBundle();
+    }
+
+    private static JobDetail job(String name, Class<? extends Job> jobClass, boolean durable) {
+        return JobBuilder.newJob(jobClass).withIdentity(name).storeDurably(durable).build();
+    }
+
+    private static OperableTrigger trigger(String name, JobDetail job, long fireTime, int priority) {
+        OperableTrigger trigger = (OperableTrigger) TriggerBuilder.newTrigger().withIdentity(name).forJob(job)
+                .startAt(new Date(fireTime)).withPriority(priority).build();
+        trigger.computeFirstFireTime(null);
+        return trigger;
+    }
+
+    private static List<String> names(List<OperableTrigger> triggers) {
+        return triggers.stream().map(trigger -> trigger.getKey().getName()).toList();
+    }
+}
@@ -0,0 +1,92 @@
+package lab.scheduler.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TriggerTimingWheelTest {
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    private static final class NamedEntry extends TriggerTimingWheel.Entry {
+        private final String name;
+
+        private NamedEntry(String name) {
+            this.name = name;
+        }
+    }
+
+    @Test
+    void takesEntriesInTimeOrderAcrossAllLevels() {
+        TriggerTimingWheel wheel = new TriggerTimingWheel(NOW);
+        wheel.add(new NamedEntry("overflow"), NOW + 60 * DAY_MS, 5);
+        wheel.add(new NamedEntry("level1"), NOW + 3 * DAY_MS, 5);
+        wheel.add(new NamedEntry("nextMinutes"), NOW + 200_000, 5);
+        wheel.add(new NamedEntry("level0"), NOW + 10, 5);
+        wheel.add(new NamedEntry("due"), NOW + 1, 5);
+
+        assertEquals(List.of("due", "level0", "nextMinutes", "level1", "overflow"), drain(wheel, Long.MAX_VALUE));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void ordersASlotByPriorityThenByInsertion() {
+        TriggerTimingWheel wheel = new TriggerTimingWheel(NOW);
+        wheel.add(new NamedEntry("first5"), NOW + 100, 5);
+        wheel.add(new NamedEntry("10"), NOW + 100, 10);
+        wheel.add(new NamedEntry("second5"), NOW + 100, 5);
+        wheel.add(new NamedEntry("1"), NOW + 100, 1);
+
+        assertEquals(List.of("10", "first5", "second5", "1"), drain(wheel, NOW + 100));
+    }
+
+    @Test
+    void queuesPastTimesAtTheCursor() {
+        TriggerTimingWheel wheel = new TriggerTimingWheel(NOW);
+        NamedEntry late = new NamedEntry("late");
+        wheel.add(late, NOW - 60_000, 5);
+
+        assertEquals(NOW, late.wheelTime);
+        assertSame(late, wheel.peek(NOW));
+    }
+
+    @Test
+    void neverMovesTheCursorPastAnOccupiedSlot() {
+        TriggerTimingWheel wheel = new TriggerTimingWheel(NOW);
+        NamedEntry first = new NamedEntry("first");
+        wheel.add(first, NOW + 50, 5);
+        assertSame(first, wheel.peek(NOW + 1000));
+
+        NamedEntry added = new NamedEntry("added");
+        wheel.add(added, NOW + 20, 5);
+        assertEquals(NOW + 50, added.wheelTime);
+        assertEquals(List.of("first", "added"), drain(wheel, NOW + 1000));
+    }
+
+    @Test
+    void skipsRemovedEntries() {
+        TriggerTimingWheel wheel = new TriggerTimingWheel(NOW);
+        NamedEntry removed = new NamedEntry("removed");
+        wheel.add(removed, NOW + 10, 5);
+        wheel.add(new NamedEntry("kept"), NOW + 10, 5);
+        wheel.add(new NamedEntry("far"), NOW + 3 * DAY_MS, 5);
+
+        assertTrue(wheel.remove(removed));
+        assertFalse(wheel.remove(removed));
+        assertFalse(removed.isQueued());
+        assertEquals(List.of("kept", "far"), drain(wheel, Long.MAX_VALUE));
+    }
+
+    private static List<String> drain(TriggerTimingWheel wheel, long now) {
+        List<String> names = new ArrayList<>();
+        TriggerTimingWheel.Entry entry;
+        while ((entry = wheel.peek(now)) != null) {
+            wheel.remove(entry);
+            names.add(((NamedEntry) entry).name);
+        }
+        return names;
+    }
+}